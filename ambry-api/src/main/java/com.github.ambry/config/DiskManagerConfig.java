@@ -32,11 +32,31 @@ public class DiskManagerConfig {
   @Default("false")
   public final boolean diskManagerEnableSegmentPooling;
 
+  /**
+   * The interval at which the reserve pool is topped up in the background. Segments that are freed are also recreated
+   * in the background instead of in the thread that frees them. 0 disables background replenishment.
+   */
+  @Config("disk.manager.reserve.pool.replenish.interval.ms")
+  @Default("0")
+  public final long diskManagerReservePoolReplenishIntervalMs;
+
+  /**
+   * The maximum number of segments of each size that the background replenisher keeps in the pool in addition to the
+   * segments required by the stores, to absorb the allocations predicted from the recent allocation rate.
+   */
+  @Config("disk.manager.reserve.pool.max.extra.segments.per.size")
+  @Default("1")
+  public final int diskManagerReservePoolMaxExtraSegmentsPerSize;
+
   public DiskManagerConfig(VerifiableProperties verifiableProperties) {
     diskManagerReserveFileDirName =
         verifiableProperties.getString("disk.manager.reserve.file.dir.name", "reserve-pool");
     diskManagerRequiredSwapSegmentsPerSize =
         verifiableProperties.getIntInRange("disk.manager.required.swap.segments.per.size", 1, 0, 1000);
     diskManagerEnableSegmentPooling = verifiableProperties.getBoolean("disk.manager.enable.segment.pooling", false);
+    diskManagerReservePoolReplenishIntervalMs =
+        verifiableProperties.getLongInRange("disk.manager.reserve.pool.replenish.interval.ms", 0, 0, Long.MAX_VALUE);
+    diskManagerReservePoolMaxExtraSegmentsPerSize =
+        verifiableProperties.getIntInRange("disk.manager.reserve.pool.max.extra.segments.per.size", 1, 0, 100);
   }
 }
@@ -76,6 +76,117 @@ public class NetworkConfig {
   @Default("false")
   public final boolean networkClientEnableConnectionReplenishment;
 
+  /**
+   * The maximum number of requests that the client can have outstanding on a single connection. Responses are matched
+   * to requests by correlation id and can arrive in any order. 1 sends every request on a connection of its own.
+   */
+  @Config("network.client.max.in.flight.requests.per.connection")
+  @Default("1")
+  public final int networkClientMaxInFlightRequestsPerConnection;
+
+  /**
+   * The maximum number of bytes of released receive buffers that are kept for reuse by the requests and responses
+   * received afterwards. Buffers are pooled in power of two size classes. 0 disables pooling and every receive
+   * allocates a buffer of its own.
+   */
+  @Config("network.receive.buffer.pool.capacity.bytes")
+  @Default("0")
+  public final long networkReceiveBufferPoolCapacityBytes;
+
+  /**
+   * The size of the largest receive buffer that is pooled. Larger requests and responses get buffers of their own that
+   * are not reused.
+   */
+  @Config("network.receive.buffer.pool.max.pooled.buffer.size.bytes")
+  @Default("4194304")
+  public final int networkReceiveBufferPoolMaxPooledBufferSizeBytes;
+
+  /**
+   * Whether pooled receive buffers are allocated outside of the heap.
+   */
+  @Config("network.receive.buffer.pool.use.direct.buffers")
+  @Default("false")
+  public final boolean networkReceiveBufferPoolUseDirectBuffers;
+
+  /**
+   * Whether the storage server should use the Netty based transport instead of the NIO {@code SocketServer}.
+   */
+  @Config("network.netty.server.enabled")
+  @Default("false")
+  public final boolean networkNettyServerEnabled;
+
+  /**
+   * Whether the Netty based transport should use the native epoll transport. The NIO transport is used if this is
+   * disabled or if epoll is not available on the platform.
+   */
+  @Config("network.netty.server.use.epoll")
+  @Default("true")
+  public final boolean networkNettyServerUseEpoll;
+
+  /**
+   * The weight of the queue of client reads when request handlers pick the next request to handle. Queues with waiting
+   * requests are served in proportion to their weights. Only used if the server classifies its requests.
+   */
+  @Config("network.request.queue.client.read.weight")
+  @Default("8")
+  public final int networkRequestQueueClientReadWeight;
+
+  /**
+   * The weight of the queue of client puts, deletes and TTL updates when request handlers pick the next request.
+   */
+  @Config("network.request.queue.client.write.weight")
+  @Default("4")
+  public final int networkRequestQueueClientWriteWeight;
+
+  /**
+   * The weight of the queue of replication requests when request handlers pick the next request.
+   */
+  @Config("network.request.queue.replication.weight")
+  @Default("2")
+  public final int networkRequestQueueReplicationWeight;
+
+  /**
+   * The weight of the queue of admin requests when request handlers pick the next request.
+   */
+  @Config("network.request.queue.admin.weight")
+  @Default("1")
+  public final int networkRequestQueueAdminWeight;
+
+  /**
+   * The number of threads that accept connections on each port of the server. More than one requires SO_REUSEPORT,
+   * with which every acceptor binds a socket of its own to the port and the kernel spreads new connections across
+   * them. If SO_REUSEPORT is not available on the platform, a single acceptor is used.
+   */
+  @Config("network.acceptor.threads.per.port")
+  @Default("1")
+  public final int networkAcceptorThreadsPerPort;
+
+  /**
+   * The maximum total size in bytes of the free buffers of SSL connections that are kept for reuse. If positive, SSL
+   * connections take direct buffers from a shared pool and return them whenever they have no data buffered. 0 lets
+   * every SSL connection allocate its own heap buffers.
+   */
+  @Config("network.ssl.buffer.pool.capacity.bytes")
+  @Default("0")
+  public final long networkSslBufferPoolCapacityBytes;
+
+  /**
+   * The number of records that SSL connections encrypt before they write them to the socket. If larger than 1, writes
+   * smaller than a record, like the chunks in which blobs are transferred from the log, are also combined into full
+   * records.
+   */
+  @Config("network.ssl.write.batch.records")
+  @Default("1")
+  public final int networkSslWriteBatchRecords;
+
+  /**
+   * If true, SSL connections measure the CPU time of every read and write to report the bytes they send and receive
+   * per CPU second. Reading the CPU time of a thread is not free, so this is meant for comparing configurations.
+   */
+  @Config("network.ssl.cpu.time.metrics.enabled")
+  @Default("false")
+  public final boolean networkSslCpuTimeMetricsEnabled;
+
   public NetworkConfig(VerifiableProperties verifiableProperties) {
 
     numIoThreads = verifiableProperties.getIntInRange("num.io.threads", 8, 1, Integer.MAX_VALUE);
@@ -88,5 +199,30 @@ public class NetworkConfig {
     queuedMaxRequests = verifiableProperties.getIntInRange("queued.max.requests", 500, 1, Integer.MAX_VALUE);
     networkClientEnableConnectionReplenishment =
         verifiableProperties.getBoolean("network.client.enable.connection.replenishment", false);
+    networkClientMaxInFlightRequestsPerConnection =
+        verifiableProperties.getIntInRange("network.client.max.in.flight.requests.per.connection", 1, 1, 1000);
+    networkReceiveBufferPoolCapacityBytes =
+        verifiableProperties.getLongInRange("network.receive.buffer.pool.capacity.bytes", 0, 0, Long.MAX_VALUE);
+    networkReceiveBufferPoolMaxPooledBufferSizeBytes =
+        verifiableProperties.getIntInRange("network.receive.buffer.pool.max.pooled.buffer.size.bytes",
+            4 * 1024 * 1024, 1, 1 << 30);
+    networkReceiveBufferPoolUseDirectBuffers =
+        verifiableProperties.getBoolean("network.receive.buffer.pool.use.direct.buffers", false);
+    networkNettyServerEnabled = verifiableProperties.getBoolean("network.netty.server.enabled", false);
+    networkNettyServerUseEpoll = verifiableProperties.getBoolean("network.netty.server.use.epoll", true);
+    networkRequestQueueClientReadWeight =
+        verifiableProperties.getIntInRange("network.request.queue.client.read.weight", 8, 1, 1000);
+    networkRequestQueueClientWriteWeight =
+        verifiableProperties.getIntInRange("network.request.queue.client.write.weight", 4, 1, 1000);
+    networkRequestQueueReplicationWeight =
+        verifiableProperties.getIntInRange("network.request.queue.replication.weight", 2, 1, 1000);
+    networkRequestQueueAdminWeight =
+        verifiableProperties.getIntInRange("network.request.queue.admin.weight", 1, 1, 1000);
+    networkAcceptorThreadsPerPort =
+        verifiableProperties.getIntInRange("network.acceptor.threads.per.port", 1, 1, 64);
+    networkSslBufferPoolCapacityBytes =
+        verifiableProperties.getLongInRange("network.ssl.buffer.pool.capacity.bytes", 0, 0, Long.MAX_VALUE);
+    networkSslWriteBatchRecords = verifiableProperties.getIntInRange("network.ssl.write.batch.records", 1, 1, 16);
+    networkSslCpuTimeMetricsEnabled = verifiableProperties.getBoolean("network.ssl.cpu.time.metrics.enabled", false);
   }
 }
@@ -13,6 +13,13 @@
  */
 package com.github.ambry.config;
 
+import com.github.ambry.utils.Utils;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+
 /**
  * The configs for the replication layer
  */
@@ -59,6 +66,30 @@ public class ReplicationConfig {
   @Default("5")
   public final int replicationTokenFlushDelaySeconds;
 
+  /**
+   * If true, the replica tokens of a disk are flushed by appending the tokens that changed since the last flush to a
+   * token log instead of rewriting the whole replica token file. The log is compacted into the token file once it grows
+   * past {@link #replicationTokenLogCompactionThresholdBytes}.
+   */
+  @Config("replication.token.log.enabled")
+  @Default("false")
+  public final boolean replicationTokenLogEnabled;
+
+  /**
+   * The flush interval for appending changed replica tokens to the token log. Only used if the token log is enabled,
+   * in which case it replaces {@link #replicationTokenFlushIntervalSeconds}.
+   */
+  @Config("replication.token.log.flush.interval.ms")
+  @Default("10000")
+  public final long replicationTokenLogFlushIntervalMs;
+
+  /**
+   * The size of the token log beyond which it is compacted into the replica token file.
+   */
+  @Config("replication.token.log.compaction.threshold.bytes")
+  @Default("4194304")
+  public final long replicationTokenLogCompactionThresholdBytes;
+
   /**
    * The time (in ms) to sleep between replication cycles to throttle the replica thread in case the thread handles
    * intra datacenter replicas
@@ -124,6 +155,185 @@ public class ReplicationConfig {
   @Default("false")
   public final boolean replicationTrackPerPartitionLagFromRemote;
 
+  /**
+   * If true, replica threads use a non-blocking network client instead of the blocking connection pool. A single
+   * thread then has requests to many remote nodes in flight at the same time instead of waiting for every response
+   * before talking to the next node.
+   */
+  @Config("replication.network.client.enabled")
+  @Default("false")
+  public final boolean replicationNetworkClientEnabled;
+
+  /**
+   * The maximum number of replication requests that a replica thread has in flight to a single remote node when
+   * {@link #replicationNetworkClientEnabled} is true. The replicas of a remote node are split into this many groups
+   * that replicate independently of each other.
+   */
+  @Config("replication.max.in.flight.requests.per.node")
+  @Default("1")
+  public final int replicationMaxInFlightRequestsPerNode;
+
+  /**
+   * The time (in ms) after which a replication request that has not received a response is failed when
+   * {@link #replicationNetworkClientEnabled} is true.
+   */
+  @Config("replication.request.timeout.ms")
+  @Default("30000")
+  public final int replicationRequestTimeoutMs;
+
+  /**
+   * The time (in ms) that a replica thread asks a node in the local datacenter to wait for new entries before
+   * answering a metadata request when none of the replicas in the request have any. The thread only asks to wait when
+   * {@link #replicationNetworkClientEnabled} is true and none of its replicas had new entries in the previous cycle, so
+   * new entries are replicated as soon as they are written instead of on the next poll. The remote node caps the wait
+   * at its own limit. Within this time from the start of a cycle, the replicas of a remote node that had new entries
+   * are asked for more right away instead of after the requests that are waiting. 0 disables waiting.
+   */
+  @Config("replication.metadata.request.max.wait.time.ms")
+  @Default("0")
+  public final int replicationMetadataRequestMaxWaitTimeMs;
+
+  /**
+   * The remote datacenters from which replica threads ask for compressed replication responses. The remote nodes have
+   * to understand compressed responses, so a datacenter should only be listed once all of its nodes do.
+   */
+  @Config("replication.compression.enabled.datacenters")
+  @Default("")
+  public final List<String> replicationCompressionEnabledDatacenters;
+
+  /**
+   * If true, a replica thread that uses the connection pool writes the messages it fetched from a remote node to the
+   * local stores on a separate thread, and moves on to the next remote node while they are written. The tokens of the
+   * replicas are only advanced once their messages are written.
+   */
+  @Config("replication.pipelined.store.writes.enabled")
+  @Default("false")
+  public final boolean replicationPipelinedStoreWritesEnabled;
+
+  /**
+   * The most bytes of fetched messages that a replica thread holds in memory while they wait to be written to the
+   * local stores when {@link #replicationPipelinedStoreWritesEnabled} is true. A single response that is larger than
+   * this is still fetched, but only once every earlier response has been written.
+   */
+  @Config("replication.pipeline.max.pending.bytes")
+  @Default("4194304")
+  public final long replicationPipelineMaxPendingBytes;
+
+  /**
+   * If true, replica threads size the metadata requests of each remote replica on their own, starting at
+   * {@link #replicationFetchSizeInBytes}. The fetch size of a replica grows while it lags behind the remote replica and
+   * the node answers within {@link #replicationAdaptiveFetchLatencyTargetMs}, and shrinks once it has caught up or
+   * when the node takes longer than that. The remote nodes have to understand replica metadata requests with a fetch
+   * size per replica.
+   */
+  @Config("replication.adaptive.fetch.size.enabled")
+  @Default("false")
+  public final boolean replicationAdaptiveFetchSizeEnabled;
+
+  /**
+   * The smallest fetch size in bytes of a replica when {@link #replicationAdaptiveFetchSizeEnabled} is true.
+   */
+  @Config("replication.adaptive.fetch.min.size.in.bytes")
+  @Default("65536")
+  public final long replicationAdaptiveFetchMinSizeInBytes;
+
+  /**
+   * The largest fetch size in bytes of a replica when {@link #replicationAdaptiveFetchSizeEnabled} is true.
+   */
+  @Config("replication.adaptive.fetch.max.size.in.bytes")
+  @Default("16777216")
+  public final long replicationAdaptiveFetchMaxSizeInBytes;
+
+  /**
+   * The time (in ms) within which the metadata exchange with a remote node and the fetch of the missing messages
+   * should complete when {@link #replicationAdaptiveFetchSizeEnabled} is true.
+   */
+  @Config("replication.adaptive.fetch.latency.target.ms")
+  @Default("1000")
+  public final long replicationAdaptiveFetchLatencyTargetMs;
+
+  /**
+   * If true, replica threads replicate from the remote replicas that the local replicas lag behind the most first, and
+   * only replicate from a replica that has caught up once every
+   * {@link #replicationCaughtUpReplicaIntervalCycles} replication cycles.
+   */
+  @Config("replication.lag.prioritized.scheduling.enabled")
+  @Default("false")
+  public final boolean replicationLagPrioritizedSchedulingEnabled;
+
+  /**
+   * The number of replication cycles in which a replica thread replicates once from a remote replica that has caught
+   * up when {@link #replicationLagPrioritizedSchedulingEnabled} is true.
+   */
+  @Config("replication.caught.up.replica.interval.cycles")
+  @Default("4")
+  public final int replicationCaughtUpReplicaIntervalCycles;
+
+  /**
+   * True to bootstrap the empty stores of this node by copying the sealed log segments and index files of a peer
+   * replica, instead of replicating every blob. Replication of a partition starts once its store is bootstrapped.
+   */
+  @Config("replication.bootstrap.enabled")
+  @Default("false")
+  public final boolean replicationBootstrapEnabled;
+
+  /**
+   * The size of the chunks in which the sealed files of a peer replica are copied when bootstrapping a store.
+   */
+  @Config("replication.bootstrap.chunk.size.in.bytes")
+  @Default("4194304")
+  public final int replicationBootstrapChunkSizeInBytes;
+
+  /**
+   * The rate in bytes per second at which the sealed files of peer replicas are copied when bootstrapping stores.
+   */
+  @Config("replication.bootstrap.bytes.per.sec")
+  @Default("52428800")
+  public final long replicationBootstrapBytesPerSec;
+
+  /**
+   * The interval at which the replicas of this node are compared with a peer replica through their key range digests,
+   * to detect keys the two disagree on. 0 disables the comparison.
+   */
+  @Config("replication.divergence.check.interval.seconds")
+  @Default("0")
+  public final long replicationDivergenceCheckIntervalSeconds;
+
+  /**
+   * Operations that happened within this period before a divergence check are left out of the comparison, because
+   * replication may not have caught up on them yet. The keys are compared as of the start of the period.
+   */
+  @Config("replication.divergence.check.grace.period.seconds")
+  @Default("3600")
+  public final long replicationDivergenceCheckGracePeriodSeconds;
+
+  /**
+   * If true, a key that is missing locally is only fetched from one remote replica of a partition at a time. The other
+   * replica threads skip the key while it is being fetched and only advance their tokens once it has been written.
+   */
+  @Config("replication.missing.key.fetch.dedup.enabled")
+  @Default("false")
+  public final boolean replicationMissingKeyFetchDedupEnabled;
+
+  /**
+   * The number of consecutive replication cycles in which a replica thread may hold back the token of a remote replica
+   * for keys that another replica thread is fetching. After that, the thread fetches those keys itself so that the
+   * token can move on. Only used if {@link #replicationMissingKeyFetchDedupEnabled} is true.
+   */
+  @Config("replication.missing.key.fetch.max.token.deferrals")
+  @Default("3")
+  public final int replicationMissingKeyFetchMaxTokenDeferrals;
+
+  /**
+   * The bytes per second that the replica threads of a node can fetch from each of the listed datacenters, as a comma
+   * separated list of "datacenter:bytesPerSec" pairs. The budget of a datacenter is shared by all the replica threads
+   * that replicate from it. Replication from datacenters that are not listed is not limited. The budgets can be
+   * changed at runtime with an admin request.
+   */
+  @Config("replication.datacenter.bandwidth.budgets")
+  @Default("")
+  public final Map<String, Long> replicationDatacenterBandwidthBudgets;
+
   public ReplicationConfig(VerifiableProperties verifiableProperties) {
 
     replicationTokenFactory =
@@ -138,6 +348,12 @@ public class ReplicationConfig {
         verifiableProperties.getIntInRange("replication.token.flush.interval.seconds", 300, 5, Integer.MAX_VALUE);
     replicationTokenFlushDelaySeconds =
         verifiableProperties.getIntInRange("replication.token.flush.delay.seconds", 5, 1, Integer.MAX_VALUE);
+    replicationTokenLogEnabled = verifiableProperties.getBoolean("replication.token.log.enabled", false);
+    replicationTokenLogFlushIntervalMs =
+        verifiableProperties.getLongInRange("replication.token.log.flush.interval.ms", 10000, 100, Long.MAX_VALUE);
+    replicationTokenLogCompactionThresholdBytes =
+        verifiableProperties.getLongInRange("replication.token.log.compaction.threshold.bytes", 4 * 1024 * 1024, 0,
+            Long.MAX_VALUE);
     replicationIntraReplicaThreadThrottleSleepDurationMs =
         verifiableProperties.getLongInRange("replication.intra.replica.thread.throttle.sleep.duration.ms", 0, 0,
             Long.MAX_VALUE);
@@ -155,5 +371,57 @@ public class ReplicationConfig {
         verifiableProperties.getBoolean("replication.persist.token.on.shutdown.or.replica.remove", true);
     replicationTrackPerPartitionLagFromRemote =
         verifiableProperties.getBoolean("replication.track.per.partition.lag.from.remote", false);
+    replicationNetworkClientEnabled = verifiableProperties.getBoolean("replication.network.client.enabled", false);
+    replicationMaxInFlightRequestsPerNode =
+        verifiableProperties.getIntInRange("replication.max.in.flight.requests.per.node", 1, 1, 100);
+    replicationRequestTimeoutMs =
+        verifiableProperties.getIntInRange("replication.request.timeout.ms", 30000, 1, Integer.MAX_VALUE);
+    replicationMetadataRequestMaxWaitTimeMs =
+        verifiableProperties.getIntInRange("replication.metadata.request.max.wait.time.ms", 0, 0, Integer.MAX_VALUE);
+    replicationCompressionEnabledDatacenters =
+        Utils.splitString(verifiableProperties.getString("replication.compression.enabled.datacenters", ""), ",");
+    replicationPipelinedStoreWritesEnabled =
+        verifiableProperties.getBoolean("replication.pipelined.store.writes.enabled", false);
+    replicationPipelineMaxPendingBytes =
+        verifiableProperties.getLongInRange("replication.pipeline.max.pending.bytes", 4194304, 1, Long.MAX_VALUE);
+    replicationAdaptiveFetchSizeEnabled =
+        verifiableProperties.getBoolean("replication.adaptive.fetch.size.enabled", false);
+    replicationAdaptiveFetchMinSizeInBytes =
+        verifiableProperties.getLongInRange("replication.adaptive.fetch.min.size.in.bytes", 65536, 1, Long.MAX_VALUE);
+    replicationAdaptiveFetchMaxSizeInBytes =
+        verifiableProperties.getLongInRange("replication.adaptive.fetch.max.size.in.bytes", 16777216,
+            replicationAdaptiveFetchMinSizeInBytes, Long.MAX_VALUE);
+    replicationAdaptiveFetchLatencyTargetMs =
+        verifiableProperties.getLongInRange("replication.adaptive.fetch.latency.target.ms", 1000, 1, Long.MAX_VALUE);
+    replicationLagPrioritizedSchedulingEnabled =
+        verifiableProperties.getBoolean("replication.lag.prioritized.scheduling.enabled", false);
+    replicationCaughtUpReplicaIntervalCycles =
+        verifiableProperties.getIntInRange("replication.caught.up.replica.interval.cycles", 4, 1, Integer.MAX_VALUE);
+    replicationBootstrapEnabled = verifiableProperties.getBoolean("replication.bootstrap.enabled", false);
+    replicationBootstrapChunkSizeInBytes =
+        verifiableProperties.getIntInRange("replication.bootstrap.chunk.size.in.bytes", 4194304, 1, Integer.MAX_VALUE);
+    replicationBootstrapBytesPerSec =
+        verifiableProperties.getLongInRange("replication.bootstrap.bytes.per.sec", 52428800, 1, Long.MAX_VALUE);
+    replicationDivergenceCheckIntervalSeconds =
+        verifiableProperties.getLongInRange("replication.divergence.check.interval.seconds", 0, 0, Long.MAX_VALUE);
+    replicationDivergenceCheckGracePeriodSeconds =
+        verifiableProperties.getLongInRange("replication.divergence.check.grace.period.seconds", 3600, 0,
+            Long.MAX_VALUE);
+    replicationMissingKeyFetchDedupEnabled =
+        verifiableProperties.getBoolean("replication.missing.key.fetch.dedup.enabled", false);
+    replicationMissingKeyFetchMaxTokenDeferrals =
+        verifiableProperties.getIntInRange("replication.missing.key.fetch.max.token.deferrals", 3, 1,
+            Integer.MAX_VALUE);
+    List<String> bandwidthBudgetList =
+        Utils.splitString(verifiableProperties.getString("replication.datacenter.bandwidth.budgets", ""), ",");
+    Map<String, Long> bandwidthBudgets = new HashMap<>();
+    for (String budget : bandwidthBudgetList) {
+      String[] datacenterAndBytesPerSec = budget.trim().split(":");
+      if (datacenterAndBytesPerSec.length != 2 || Long.parseLong(datacenterAndBytesPerSec[1]) < 0) {
+        throw new IllegalArgumentException("Invalid replication bandwidth budget: " + budget);
+      }
+      bandwidthBudgets.put(datacenterAndBytesPerSec[0], Long.parseLong(datacenterAndBytesPerSec[1]));
+    }
+    replicationDatacenterBandwidthBudgets = Collections.unmodifiableMap(bandwidthBudgets);
   }
 }
@@ -30,6 +30,22 @@ public class ServerConfig {
   @Default("7")
   public final int serverRequestHandlerNumOfThreads;
 
+  /**
+   * The number of threads per disk that execute requests targeting replicas on that disk. If 0, requests are executed
+   * on the request handler threads.
+   */
+  @Config("server.request.disk.executor.num.of.threads")
+  @Default("0")
+  public final int serverRequestDiskExecutorNumOfThreads;
+
+  /**
+   * The maximum number of requests that can be waiting for an executor thread of a disk. Requests that arrive when the
+   * queue of their disk is full are rejected right away.
+   */
+  @Config("server.request.disk.executor.queue.size")
+  @Default("100")
+  public final int serverRequestDiskExecutorQueueSize;
+
   /**
    * The number of scheduler threads the server will use to perform background tasks (store, replication)
    */
@@ -86,8 +102,29 @@ public class ServerConfig {
   @Default("")
   public final List<String> serverStatsReportsToPublish;
 
+  /**
+   * The longest time a client or replication request can wait in the request queue. Requests that waited longer are
+   * not executed, since their sender has probably given up on them, and are answered with
+   * {@code Request_Deadline_Exceeded}. 0 disables the deadline.
+   */
+  @Config("server.request.queue.time.budget.ms")
+  @Default("0")
+  public final long serverRequestQueueTimeBudgetMs;
+
+  /**
+   * The longest time a replica metadata request that asks to wait for new entries is held when none of its replicas
+   * have any. The request is answered as soon as an entry is added to one of them. 0 answers such requests right away.
+   */
+  @Config("server.replica.metadata.request.max.wait.time.ms")
+  @Default("0")
+  public final long serverReplicaMetadataRequestMaxWaitTimeMs;
+
   public ServerConfig(VerifiableProperties verifiableProperties) {
     serverRequestHandlerNumOfThreads = verifiableProperties.getInt("server.request.handler.num.of.threads", 7);
+    serverRequestDiskExecutorNumOfThreads =
+        verifiableProperties.getIntInRange("server.request.disk.executor.num.of.threads", 0, 0, Integer.MAX_VALUE);
+    serverRequestDiskExecutorQueueSize =
+        verifiableProperties.getIntInRange("server.request.disk.executor.queue.size", 100, 1, Integer.MAX_VALUE);
     serverSchedulerNumOfthreads = verifiableProperties.getInt("server.scheduler.num.of.threads", 10);
     serverStatsPublishLocalEnabled = verifiableProperties.getBoolean("server.stats.publish.local.enabled", false);
     serverStatsPublishHealthReportEnabled =
@@ -101,5 +138,9 @@ public class ServerConfig {
         "com.github.ambry.messageformat.ValidatingTransformer");
     serverStatsReportsToPublish =
         Utils.splitString(verifiableProperties.getString("server.stats.reports.to.publish", ""), ",");
+    serverRequestQueueTimeBudgetMs =
+        verifiableProperties.getLongInRange("server.request.queue.time.budget.ms", 0, 0, Long.MAX_VALUE);
+    serverReplicaMetadataRequestMaxWaitTimeMs =
+        verifiableProperties.getLongInRange("server.replica.metadata.request.max.wait.time.ms", 0, 0, Long.MAX_VALUE);
   }
 }
@@ -85,6 +85,14 @@ public class StoreConfig {
   @Default("100*1024")
   public final int storeHardDeleteOperationsBytesPerSec;
 
+  /**
+   * The largest gap (in bytes) between the regions of two hard deleted records in a log segment that is rewritten with
+   * its current content so that both records are overwritten in a single write. 0 only combines contiguous regions.
+   */
+  @Config("store.hard.delete.coalesce.max.gap.bytes")
+  @Default("4*1024")
+  public final int storeHardDeleteCoalesceMaxGapBytes;
+
   /**
    * The rate of I/O allowed per disk for compaction.
    */
@@ -265,6 +273,23 @@ public class StoreConfig {
   @Default("Integer.MAX_VALUE")
   public final int storeIoErrorCountToTriggerShutdown;
 
+  /**
+   * The maximum number of bytes of serialized blob properties and user metadata records that each store keeps in memory
+   * to serve metadata only gets without reading the log. 0 disables the cache.
+   */
+  @Config("store.metadata.cache.max.size.in.bytes")
+  @Default("0")
+  public final int storeMetadataCacheMaxSizeInBytes;
+
+  /**
+   * The maximum number of bytes of sealed index segments that each store keeps in heap memory when
+   * {@link #storeIndexMemState} is {@link IndexMemState#ADAPTIVE}. The most accessed and the most recent segments are
+   * kept in memory first.
+   */
+  @Config("store.index.adaptive.mem.budget.bytes")
+  @Default("16 * 1024 * 1024")
+  public final long storeIndexAdaptiveMemBudgetBytes;
+
   public StoreConfig(VerifiableProperties verifiableProperties) {
 
     storeKeyFactory = verifiableProperties.getString("store.key.factory", "com.github.ambry.commons.BlobIdFactory");
@@ -280,6 +305,8 @@ public class StoreConfig {
     storeHardDeleteOperationsBytesPerSec =
         verifiableProperties.getIntInRange("store.hard.delete.operations.bytes.per.sec", 100 * 1024, 1,
             Integer.MAX_VALUE);
+    storeHardDeleteCoalesceMaxGapBytes =
+        verifiableProperties.getIntInRange("store.hard.delete.coalesce.max.gap.bytes", 4 * 1024, 0, Integer.MAX_VALUE);
     storeCompactionOperationsBytesPerSec =
         verifiableProperties.getIntInRange("store.compaction.operations.bytes.per.sec", 1 * 1024 * 1024, 1,
             Integer.MAX_VALUE);
@@ -322,6 +349,11 @@ public class StoreConfig {
     storeIoErrorCountToTriggerShutdown =
         verifiableProperties.getIntInRange("store.io.error.count.to.trigger.shutdown", Integer.MAX_VALUE, 1,
             Integer.MAX_VALUE);
+    storeMetadataCacheMaxSizeInBytes =
+        verifiableProperties.getIntInRange("store.metadata.cache.max.size.in.bytes", 0, 0, Integer.MAX_VALUE);
+    storeIndexAdaptiveMemBudgetBytes =
+        verifiableProperties.getLongInRange("store.index.adaptive.mem.budget.bytes", 16 * 1024 * 1024, 0,
+            Long.MAX_VALUE);
   }
 }
 
@@ -13,16 +13,21 @@
  */
 package com.github.ambry.network;
 
+import com.github.ambry.utils.ByteBufferPool;
 import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
  * A byte buffer version of Receive to buffer the incoming request or response.
+ * <p/>
+ * If constructed with a {@link ByteBufferPool}, the buffer is taken from the pool and has to be returned to it through
+ * {@link #release()} once the payload is no longer used.
  */
 public class BoundedByteBufferReceive implements Receive {
 
@@ -30,12 +35,22 @@ public class BoundedByteBufferReceive implements Receive {
   private ByteBuffer sizeBuffer;
   private long sizeToRead;
   private long sizeRead;
+  private final ByteBufferPool bufferPool;
+  private boolean pooled = false;
   private Logger logger = LoggerFactory.getLogger(getClass());
 
   public BoundedByteBufferReceive() {
+    this(null);
+  }
+
+  /**
+   * @param bufferPool the {@link ByteBufferPool} to take the buffer for the payload from. Can be {@code null}.
+   */
+  public BoundedByteBufferReceive(ByteBufferPool bufferPool) {
     sizeToRead = 0;
     sizeRead = 0;
     sizeBuffer = ByteBuffer.allocate(8);
+    this.bufferPool = bufferPool;
   }
 
   @Override
@@ -55,7 +70,7 @@ public class BoundedByteBufferReceive implements Receive {
         sizeBuffer.flip();
         sizeToRead = sizeBuffer.getLong();
         sizeRead += 8;
-        buffer = ByteBuffer.allocate((int) sizeToRead - 8);
+        buffer = allocate((int) sizeToRead - 8);
       }
     }
     if (buffer != null && sizeRead < sizeToRead) {
@@ -77,6 +92,38 @@ public class BoundedByteBufferReceive implements Receive {
     return buffer;
   }
 
+  /**
+   * Returns the buffer of the payload to the {@link ByteBufferPool} it was taken from, if any. The payload (and
+   * anything that reads from it) must not be used after this call. Calling this more than once has no effect.
+   */
+  public void release() {
+    if (pooled && buffer != null) {
+      bufferPool.deallocate(buffer);
+      buffer = null;
+      pooled = false;
+    }
+  }
+
+  /**
+   * @param size the size of the payload.
+   * @return a buffer of {@code size} bytes from the pool if there is one and it has a buffer available immediately.
+   * A newly allocated buffer otherwise.
+   */
+  private ByteBuffer allocate(int size) {
+    if (bufferPool != null) {
+      try {
+        ByteBuffer pooledBuffer = bufferPool.allocate(size, 0);
+        pooled = true;
+        return pooledBuffer;
+      } catch (TimeoutException e) {
+        logger.trace("Buffer pool could not serve {} bytes, allocating a buffer instead", size);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return ByteBuffer.allocate(size);
+  }
+
   /**
    * The total size in bytes that needs to receive from the channel
    * It will be initialized only after header is read.
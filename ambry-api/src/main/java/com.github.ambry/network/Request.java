@@ -31,4 +31,11 @@ public interface Request {
    * @return The start time in ms when the request started
    */
   long getStartTimeInMs();
+
+  /**
+   * Releases the resources that back the request, such as a pooled buffer that holds it. Called once the request has
+   * been deserialized and handled. Neither the request nor its input stream can be used afterwards.
+   */
+  default void release() {
+  }
 }
@@ -0,0 +1,37 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+/**
+ * The classes of requests that a server queues separately, so that a burst of requests of one class does not delay the
+ * requests of the others.
+ */
+public enum RequestClass {
+  /**
+   * Reads by clients of the cluster.
+   */
+  CLIENT_READ,
+  /**
+   * Puts, deletes and TTL updates by clients of the cluster.
+   */
+  CLIENT_WRITE,
+  /**
+   * Metadata and data fetches by the replication of other servers.
+   */
+  REPLICATION,
+  /**
+   * Administrative requests.
+   */
+  ADMIN
+}
@@ -0,0 +1,29 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+/**
+ * Determines the {@link RequestClass} of the requests received by a {@link NetworkServer}. The network layer does not
+ * know the protocol that is spoken on top of it, so the classification is supplied by the server.
+ */
+public interface RequestClassifier {
+
+  /**
+   * Classifies {@code request}. Called by the network threads as requests are received, so it should only look at the
+   * header of the request. The content of the input stream of the request must be left unconsumed.
+   * @param request the {@link Request} to classify.
+   * @return the {@link RequestClass} of {@code request}. Never {@code null}.
+   */
+  RequestClass classify(Request request);
+}
@@ -14,7 +14,9 @@
 package com.github.ambry.network;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.util.List;
 
 
 /**
@@ -41,4 +43,34 @@ public interface Send {
    * @return The size of the data in bytes to be written
    */
   long sizeInBytes();
+
+  /**
+   * Adds the buffers that hold the next bytes to be written by this send to {@code buffers}, in order, so that they can
+   * be written together with the buffers of other sends in a single gathering write. The first part of the send that is
+   * not held in memory, like a region of a file that is written with {@code transferTo}, ends the list. The buffers
+   * added are those of the send and not copies, so {@link #onBuffersWritten(long)} has to be called once bytes were
+   * written from them.
+   * <p/>
+   * Sends that do not support this add no buffers and are written with {@link #writeTo(WritableByteChannel)}.
+   * @param buffers the list to add the pending buffers to.
+   * @return {@code true} if the buffers added hold all the bytes left to write, {@code false} otherwise.
+   */
+  default boolean addPendingBuffers(List<ByteBuffer> buffers) {
+    return false;
+  }
+
+  /**
+   * Accounts for bytes that were written from the buffers added by the last call to {@link #addPendingBuffers(List)}.
+   * @param bytesWritten the number of bytes written from those buffers.
+   */
+  default void onBuffersWritten(long bytesWritten) {
+  }
+
+  /**
+   * Releases the resources that the send holds, such as a view of the file that it is written from. Called once the
+   * send is complete, or once it will not be completed because the connection it was being written to was closed. The
+   * send cannot be written afterwards. Releasing a send more than once has no further effect.
+   */
+  default void release() {
+  }
 }
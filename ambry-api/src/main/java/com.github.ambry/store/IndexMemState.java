@@ -31,5 +31,11 @@ public enum IndexMemState {
   /**
    * If mmaped, the index should be force loaded into memory
    */
-  FORCE_LOAD_MMAP
+  FORCE_LOAD_MMAP,
+
+  /**
+   * The index should be mmaped and the most accessed segments should be kept in heap memory within a budget. The access
+   * profile is persisted so that the same segments can be loaded into memory on startup
+   */
+  ADAPTIVE
 }
@@ -63,4 +63,14 @@ public interface MessageReadSet {
    * @throws IOException
    */
   void doPrefetch(int index, long relativeOffset, long size) throws IOException;
+
+  /**
+   * Returns the cache that can be used to serve the metadata records of the messages in this set without reading them
+   * from the store and that can be populated with records that were read.
+   * @return the {@link MetadataRecordCache} of the store that created this set or {@code null} if the messages in this
+   * set should not be served from or added to a cache.
+   */
+  default MetadataRecordCache getMetadataRecordCache() {
+    return null;
+  }
 }
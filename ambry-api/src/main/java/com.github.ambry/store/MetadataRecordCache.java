@@ -0,0 +1,46 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ * A bounded, in memory cache of the metadata records (blob properties, user metadata etc) of the messages in a store,
+ * keyed by {@link StoreKey}. The cached content is opaque to the store and is defined by the message format that
+ * populates it. The store invalidates an entry whenever the message it belongs to is updated or deleted.
+ */
+public interface MetadataRecordCache {
+
+  /**
+   * @param key the {@link StoreKey} whose metadata records are required.
+   * @return a read only view of the records cached for {@code key}, positioned at the start of the records. {@code null}
+   * if there is nothing cached for {@code key}.
+   */
+  ByteBuffer get(StoreKey key);
+
+  /**
+   * Caches {@code records} for {@code key}, evicting other entries if required. The cache takes ownership of
+   * {@code records} and callers should not modify it after this call.
+   * @param key the {@link StoreKey} whose metadata records are being cached.
+   * @param records the metadata records of {@code key}, from position to limit.
+   */
+  void put(StoreKey key, ByteBuffer records);
+
+  /**
+   * Removes whatever is cached for {@code key}.
+   * @param key the {@link StoreKey} whose entry needs to be removed.
+   */
+  void invalidate(StoreKey key);
+}
@@ -64,7 +64,7 @@ public class CloudBackupManager extends ReplicationEngine {
       ConnectionPool connectionPool, MetricRegistry metricRegistry, NotificationSystem requestNotification,
       StoreKeyConverterFactory storeKeyConverterFactory, String transformerClassName) throws ReplicationException {
     super(replicationConfig, clusterMapConfig, storeKeyFactory, clusterMap, scheduler,
-        virtualReplicatorCluster.getCurrentDataNodeId(), Collections.emptyList(), connectionPool, metricRegistry,
+        virtualReplicatorCluster.getCurrentDataNodeId(), Collections.emptyList(), connectionPool, null, metricRegistry,
         requestNotification, storeKeyConverterFactory, transformerClassName);
     this.properties = properties;
     this.cloudConfig = cloudConfig;
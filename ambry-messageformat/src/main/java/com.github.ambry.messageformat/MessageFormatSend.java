@@ -15,6 +15,7 @@ package com.github.ambry.messageformat;
 
 import com.github.ambry.network.Send;
 import com.github.ambry.store.MessageReadSet;
+import com.github.ambry.store.MetadataRecordCache;
 import com.github.ambry.store.StoreKey;
 import com.github.ambry.store.StoreKeyFactory;
 import com.github.ambry.utils.ByteBufferInputStream;
@@ -43,6 +44,7 @@ import static com.github.ambry.messageformat.MessageFormatRecord.*;
 public class MessageFormatSend implements Send {
 
   private MessageReadSet readSet;
+  private MetadataRecordCache metadataRecordCache;
   private MessageFormatFlags flag;
   private ArrayList<SendInfo> sendInfoList;
   private ArrayList<MessageMetadata> messageMetadataList;
@@ -57,12 +59,29 @@ public class MessageFormatSend implements Send {
   private class SendInfo {
     private long relativeOffset;
     private long sizeToSend;
+    private ByteBuffer cachedRecords;
 
     public SendInfo(long relativeOffset, long sizeToSend) {
       this.relativeOffset = relativeOffset;
       this.sizeToSend = sizeToSend;
     }
 
+    /**
+     * Creates a SendInfo for records that are sent from memory instead of from the read set.
+     * @param cachedRecords the records to send, from position to limit.
+     */
+    public SendInfo(ByteBuffer cachedRecords) {
+      this(0, cachedRecords.remaining());
+      this.cachedRecords = cachedRecords;
+    }
+
+    /**
+     * @return the records to send if they are in memory. {@code null} if they have to be read from the read set.
+     */
+    public ByteBuffer cachedRecords() {
+      return cachedRecords;
+    }
+
     public long relativeOffset() {
       return relativeOffset;
     }
@@ -75,6 +94,7 @@ public class MessageFormatSend implements Send {
   public MessageFormatSend(MessageReadSet readSet, MessageFormatFlags flag, MessageFormatMetrics metrics,
       StoreKeyFactory storeKeyFactory, boolean enableDataPrefetch) throws IOException, MessageFormatException {
     this.readSet = readSet;
+    this.metadataRecordCache = isMetadataFlag(flag) ? readSet.getMetadataRecordCache() : null;
     this.flag = flag;
     this.storeKeyFactory = storeKeyFactory;
     totalSizeToWrite = 0;
@@ -112,6 +132,15 @@ public class MessageFormatSend implements Send {
             readSet.doPrefetch(i, 0, readSet.sizeInBytes(i));
           }
         } else {
+          if (metadataRecordCache != null) {
+            ByteBuffer cachedRecords = metadataRecordCache.get(readSet.getKeyAt(i));
+            if (cachedRecords != null) {
+              addCachedMetadataRecords(i, cachedRecords);
+              logger.trace("Sending cached metadata records for message {} size : {}", readSet.getKeyAt(i),
+                  sendInfoList.get(i).sizetoSend());
+              continue;
+            }
+          }
           long startTime = SystemTime.getInstance().milliseconds();
           BufferedInputStream bufferedInputStream =
               new BufferedInputStream(new MessageReadSetIndexInputStream(readSet, i, 0),
@@ -153,6 +182,13 @@ public class MessageFormatSend implements Send {
           logger.trace("Calculate offsets, read and verify storeKey time: {}",
               SystemTime.getInstance().milliseconds() - startTime);
 
+          if (metadataRecordCache != null && headerFormat.isPutRecord()) {
+            ByteBuffer records = readMetadataRecords(i, headerFormat);
+            metadataRecordCache.put(storeKey, records.duplicate());
+            addCachedMetadataRecords(i, records);
+            continue;
+          }
+
           startTime = SystemTime.getInstance().milliseconds();
           if (flag == MessageFormatFlags.BlobProperties) {
             sendInfoList.add(i, new SendInfo(headerFormat.getBlobPropertiesRecordRelativeOffset(),
@@ -241,6 +277,85 @@ public class MessageFormatSend implements Send {
     return deserializeBlobEncryptionKey(new ByteBufferInputStream(serializedEncryptionKeyRecord));
   }
 
+  /**
+   * Reads the encryption key, the blob properties record and the user metadata record of the message at the given
+   * index into memory, in the layout expected by {@link #addCachedMetadataRecords(int, ByteBuffer)}: the size of the
+   * encryption key (-1 if there is none), the encryption key, the size of the blob properties record, the size of the
+   * user metadata record and the two records.
+   * @param readSetIndex the index in the readSet of the message whose metadata records are required.
+   * @param headerFormat the header of the message.
+   * @return the metadata records of the message.
+   * @throws IOException if an IO error is encountered while reading the message.
+   * @throws MessageFormatException if a Message Format error is encountered while deserializing the message.
+   */
+  private ByteBuffer readMetadataRecords(int readSetIndex, MessageHeader_Format headerFormat)
+      throws IOException, MessageFormatException {
+    ByteBuffer encryptionKey = headerFormat.hasEncryptionKeyRecord() ? extractEncryptionKey(readSetIndex,
+        headerFormat.getBlobEncryptionKeyRecordRelativeOffset(), headerFormat.getBlobEncryptionKeyRecordSize()) : null;
+    int encryptionKeySize = encryptionKey == null ? 0 : encryptionKey.remaining();
+    int blobPropertiesRecordSize = headerFormat.getBlobPropertiesRecordSize();
+    int userMetadataRecordSize = headerFormat.getUserMetadataRecordSize();
+    ByteBuffer records = ByteBuffer.allocate(
+        3 * Integer.BYTES + encryptionKeySize + blobPropertiesRecordSize + userMetadataRecordSize);
+    records.putInt(encryptionKey == null ? -1 : encryptionKeySize);
+    if (encryptionKey != null) {
+      records.put(encryptionKey.duplicate());
+    }
+    records.putInt(blobPropertiesRecordSize);
+    records.putInt(userMetadataRecordSize);
+    readSet.writeTo(readSetIndex, Channels.newChannel(new ByteBufferOutputStream(records)),
+        headerFormat.getBlobPropertiesRecordRelativeOffset(), blobPropertiesRecordSize + userMetadataRecordSize);
+    if (records.hasRemaining()) {
+      throw new MessageFormatException(
+          "Could not read the metadata records of " + readSet.getKeyAt(readSetIndex) + " completely",
+          MessageFormatErrorCodes.IO_Error);
+    }
+    records.flip();
+    return records;
+  }
+
+  /**
+   * Adds the {@link SendInfo} and the {@link MessageMetadata} of the message at the given index, sending the records
+   * required by the flag from {@code records} instead of from the readSet.
+   * @param readSetIndex the index in the readSet of the message.
+   * @param records the metadata records of the message as laid out by {@link #readMetadataRecords(int,
+   * MessageHeader_Format)}.
+   */
+  private void addCachedMetadataRecords(int readSetIndex, ByteBuffer records) {
+    int encryptionKeySize = records.getInt();
+    ByteBuffer encryptionKey = null;
+    if (encryptionKeySize >= 0) {
+      encryptionKey = records.slice();
+      encryptionKey.limit(encryptionKeySize);
+      records.position(records.position() + encryptionKeySize);
+    }
+    int blobPropertiesRecordSize = records.getInt();
+    // the user metadata record size is implied by the remaining bytes
+    records.getInt();
+    ByteBuffer toSend = records.slice();
+    MessageMetadata messageMetadata = encryptionKey == null ? null : new MessageMetadata(encryptionKey);
+    if (flag == MessageFormatFlags.BlobProperties) {
+      toSend.limit(blobPropertiesRecordSize);
+      messageMetadata = null;
+    } else if (flag == MessageFormatFlags.BlobUserMetadata) {
+      toSend.position(blobPropertiesRecordSize);
+      toSend = toSend.slice();
+    }
+    messageMetadataList.add(readSetIndex, messageMetadata);
+    sendInfoList.add(readSetIndex, new SendInfo(toSend));
+    totalSizeToWrite += toSend.remaining();
+  }
+
+  /**
+   * @param flag the {@link MessageFormatFlags} of a request.
+   * @return {@code true} if {@code flag} only requires metadata records that can be served from a
+   * {@link MetadataRecordCache}.
+   */
+  private static boolean isMetadataFlag(MessageFormatFlags flag) {
+    return flag == MessageFormatFlags.BlobProperties || flag == MessageFormatFlags.BlobUserMetadata
+        || flag == MessageFormatFlags.BlobInfo;
+  }
+
   public List<MessageMetadata> getMessageMetadataList() {
     return messageMetadataList;
   }
@@ -249,9 +364,11 @@ public class MessageFormatSend implements Send {
   public long writeTo(WritableByteChannel channel) throws IOException {
     long written = 0;
     if (!isSendComplete()) {
-      written = readSet.writeTo(currentWriteIndex, channel,
-          sendInfoList.get(currentWriteIndex).relativeOffset() + sizeWrittenFromCurrentIndex,
-          sendInfoList.get(currentWriteIndex).sizetoSend() - sizeWrittenFromCurrentIndex);
+      ByteBuffer cachedRecords = sendInfoList.get(currentWriteIndex).cachedRecords();
+      written = cachedRecords != null ? channel.write(cachedRecords)
+          : readSet.writeTo(currentWriteIndex, channel,
+              sendInfoList.get(currentWriteIndex).relativeOffset() + sizeWrittenFromCurrentIndex,
+              sendInfoList.get(currentWriteIndex).sizetoSend() - sizeWrittenFromCurrentIndex);
       logger.trace("writeindex {} relativeOffset {} maxSize {} written {}", currentWriteIndex,
           sendInfoList.get(currentWriteIndex).relativeOffset() + sizeWrittenFromCurrentIndex,
           sendInfoList.get(currentWriteIndex).sizetoSend() - sizeWrittenFromCurrentIndex, written);
@@ -266,6 +383,33 @@ public class MessageFormatSend implements Send {
     return written;
   }
 
+  /**
+   * Adds the cached records of the messages that are next to be written. Messages that are read from the read set are
+   * written with {@link MessageReadSet#writeTo(int, WritableByteChannel, long, long)} and end the list.
+   */
+  @Override
+  public boolean addPendingBuffers(List<ByteBuffer> buffers) {
+    for (int i = currentWriteIndex; i < sendInfoList.size(); i++) {
+      ByteBuffer cachedRecords = sendInfoList.get(i).cachedRecords();
+      if (cachedRecords == null) {
+        return false;
+      }
+      buffers.add(cachedRecords);
+    }
+    return true;
+  }
+
+  @Override
+  public void onBuffersWritten(long bytesWritten) {
+    sizeWritten += bytesWritten;
+    sizeWrittenFromCurrentIndex += bytesWritten;
+    while (currentWriteIndex < sendInfoList.size()
+        && sizeWrittenFromCurrentIndex >= sendInfoList.get(currentWriteIndex).sizetoSend()) {
+      sizeWrittenFromCurrentIndex -= sendInfoList.get(currentWriteIndex).sizetoSend();
+      currentWriteIndex++;
+    }
+  }
+
   @Override
   public boolean isSendComplete() {
     return totalSizeToWrite == sizeWritten;
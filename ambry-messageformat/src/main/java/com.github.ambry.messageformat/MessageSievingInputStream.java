@@ -20,12 +20,14 @@ import com.github.ambry.store.Message;
 import com.github.ambry.store.MessageInfo;
 import com.github.ambry.store.TransformationOutput;
 import com.github.ambry.store.Transformer;
+import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Utils;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
@@ -112,8 +114,10 @@ public class MessageSievingInputStream extends InputStream {
       } else {
         // Read the entire message to create an InputStream for just this message. This is to isolate the message
         // from the batched stream, as well as to ensure that subsequent messages can be correctly processed even if there
-        // was an error during the sieving for this message.
-        Message msg = new Message(msgInfo, new ByteArrayInputStream(Utils.readBytesFromStream(inStream, msgSize)));
+        // was an error during the sieving for this message. The message is read into a ByteBufferInputStream so that
+        // transformers that deserialize the blob record share its content instead of copying it once more.
+        Message msg = new Message(msgInfo,
+            new ByteBufferInputStream(ByteBuffer.wrap(Utils.readBytesFromStream(inStream, msgSize))));
         logger.trace("Read stream for message info " + msgInfo + "  into memory");
         validateAndTransform(msg, msgStreamList, bytesRead);
       }
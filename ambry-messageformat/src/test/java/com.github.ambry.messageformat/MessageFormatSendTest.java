@@ -15,6 +15,7 @@ package com.github.ambry.messageformat;
 
 import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.store.MessageReadSet;
+import com.github.ambry.store.MetadataRecordCache;
 import com.github.ambry.store.MockId;
 import com.github.ambry.store.MockIdFactory;
 import com.github.ambry.store.StoreKey;
@@ -30,7 +31,9 @@ import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import org.junit.After;
 import org.junit.Assert;
@@ -69,6 +72,8 @@ public class MessageFormatSendTest {
 
     ArrayList<ByteBuffer> buffers;
     ArrayList<StoreKey> keys;
+    MetadataRecordCache metadataRecordCache;
+    boolean failReads = false;
     private long prefetchRelativeOffset;
     private long preFetchSize;
 
@@ -79,6 +84,9 @@ public class MessageFormatSendTest {
 
     @Override
     public long writeTo(int index, WritableByteChannel channel, long relativeOffset, long maxSize) throws IOException {
+      if (failReads) {
+        throw new IOException("Reads from the read set are not expected");
+      }
       buffers.get(index).position((int) relativeOffset);
       buffers.get(index).limit((int) Math.min(buffers.get(index).limit(), relativeOffset + maxSize));
       int written = channel.write(buffers.get(index));
@@ -107,6 +115,11 @@ public class MessageFormatSendTest {
       this.preFetchSize = size;
     }
 
+    @Override
+    public MetadataRecordCache getMetadataRecordCache() {
+      return metadataRecordCache;
+    }
+
     /**
      * Check if prefetched offset and size are correct.
      */
@@ -574,6 +587,95 @@ public class MessageFormatSendTest {
     }
   }
 
+  /**
+   * Tests that metadata only sends populate the {@link MetadataRecordCache} of the read set and are served from it
+   * without reading the read set once the records are cached.
+   */
+  @Test
+  public void sendWithMetadataRecordCacheTest() throws Exception {
+    if (!putFormat.equals(PutMessageFormatInputStream.class.getSimpleName())) {
+      return;
+    }
+    MessageFormatRecord.headerVersionToUse = MessageFormatRecord.Message_Header_Version_V2;
+    ByteBuffer encryptionKey = ByteBuffer.wrap(TestUtils.getRandomBytes(256));
+    byte[] blob = TestUtils.getRandomBytes(1000);
+    byte[] userMetadata = TestUtils.getRandomBytes(200);
+    StoreKey storeKey = new MockId("012345678910123456789012");
+    BlobProperties properties =
+        new BlobProperties(blob.length, "serviceId", "owner", "bin", false, 100, (short) 10, (short) 2, true, null);
+    MessageFormatInputStream putStream =
+        new PutMessageFormatInputStream(storeKey, encryptionKey.duplicate(), properties, ByteBuffer.wrap(userMetadata),
+            new ByteBufferInputStream(ByteBuffer.wrap(blob)), blob.length, BlobType.DataBlob);
+    ByteBuffer buf = ByteBuffer.allocate((int) putStream.getSize());
+    putStream.read(buf.array());
+    ArrayList<ByteBuffer> listbuf = new ArrayList<>();
+    listbuf.add(buf);
+    ArrayList<StoreKey> storeKeys = new ArrayList<>();
+    storeKeys.add(storeKey);
+    MockMessageReadSet readSet = new MockMessageReadSet(listbuf, storeKeys);
+    MessageFormatMetrics metrics = new MessageFormatMetrics(new MetricRegistry());
+    MessageFormatFlags[] metadataFlags =
+        {MessageFormatFlags.BlobProperties, MessageFormatFlags.BlobUserMetadata, MessageFormatFlags.BlobInfo};
+
+    // the expected output is the one produced without a cache
+    Map<MessageFormatFlags, byte[]> expectedOutputs = new HashMap<>();
+    for (MessageFormatFlags flag : metadataFlags) {
+      MessageFormatSend send = new MessageFormatSend(readSet, flag, metrics, new MockIdFactory(), false);
+      expectedOutputs.put(flag, getSendOutput(send));
+    }
+
+    MockMetadataRecordCache cache = new MockMetadataRecordCache();
+    readSet.metadataRecordCache = cache;
+    MessageFormatSend send =
+        new MessageFormatSend(readSet, MessageFormatFlags.BlobInfo, metrics, new MockIdFactory(), false);
+    Assert.assertArrayEquals("Output not as expected", expectedOutputs.get(MessageFormatFlags.BlobInfo),
+        getSendOutput(send));
+    Assert.assertTrue("Records should have been cached", cache.records.containsKey(storeKey));
+
+    // once cached, no reads of the read set are required for any of the metadata flags
+    readSet.failReads = true;
+    for (MessageFormatFlags flag : metadataFlags) {
+      send = new MessageFormatSend(readSet, flag, metrics, new MockIdFactory(), false);
+      Assert.assertArrayEquals("Output not as expected for " + flag, expectedOutputs.get(flag), getSendOutput(send));
+      if (flag == MessageFormatFlags.BlobProperties) {
+        Assert.assertNull("There should be no message metadata", send.getMessageMetadataList().get(0));
+      } else {
+        Assert.assertEquals("Encryption key not as expected", encryptionKey,
+            send.getMessageMetadataList().get(0).getEncryptionKey());
+      }
+    }
+    // cached records are pending in buffers and can be written without writeTo()
+    send = new MessageFormatSend(readSet, MessageFormatFlags.BlobInfo, metrics, new MockIdFactory(), false);
+    List<ByteBuffer> buffers = new ArrayList<>();
+    Assert.assertTrue("All bytes should be pending in buffers", send.addPendingBuffers(buffers));
+    Assert.assertEquals("Unexpected number of pending buffers", 1, buffers.size());
+    ByteBuffer output = ByteBuffer.allocate((int) send.sizeInBytes());
+    while (!send.isSendComplete()) {
+      buffers.clear();
+      send.addPendingBuffers(buffers);
+      // write 10 bytes at a time to simulate partial writes
+      ByteBuffer pending = buffers.get(0);
+      int written = Math.min(pending.remaining(), 10);
+      for (int i = 0; i < written; i++) {
+        output.put(pending.get());
+      }
+      send.onBuffersWritten(written);
+    }
+    Assert.assertArrayEquals("Output not as expected", expectedOutputs.get(MessageFormatFlags.BlobInfo),
+        output.array());
+    buffers.clear();
+    Assert.assertTrue("No bytes should be pending", send.addPendingBuffers(buffers));
+    Assert.assertEquals("No buffers should be pending", 0, buffers.size());
+
+    // the cache is not used for other flags
+    try {
+      new MessageFormatSend(readSet, MessageFormatFlags.Blob, metrics, new MockIdFactory(), false);
+      Assert.fail("Send of the blob should have read from the read set");
+    } catch (MessageFormatException e) {
+      Assert.assertEquals("Unexpected error code", MessageFormatErrorCodes.IO_Error, e.getErrorCode());
+    }
+  }
+
   @Test
   public void sendWriteTestWithBadId() throws IOException, MessageFormatException {
     // add header,system metadata, user metadata and data to the buffers
@@ -744,6 +846,20 @@ public class MessageFormatSendTest {
             && a.getContainerId() == b.getContainerId());
   }
 
+  /**
+   * @param send the {@link MessageFormatSend} whose output is required.
+   * @return all the bytes written by {@code send}.
+   * @throws IOException
+   */
+  private byte[] getSendOutput(MessageFormatSend send) throws IOException {
+    ByteBuffer output = ByteBuffer.allocate((int) send.sizeInBytes());
+    WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(output));
+    while (!send.isSendComplete()) {
+      send.writeTo(channel);
+    }
+    return output.array();
+  }
+
   /**
    * Get blob header info from input stream.
    */
@@ -757,4 +873,27 @@ public class MessageFormatSendTest {
     headerBuf.rewind();
     return MessageFormatRecord.getMessageHeader(headerVersion, headerBuf);
   }
+
+  /**
+   * A {@link MetadataRecordCache} that caches everything it is given.
+   */
+  private static class MockMetadataRecordCache implements MetadataRecordCache {
+    final Map<StoreKey, ByteBuffer> records = new HashMap<>();
+
+    @Override
+    public ByteBuffer get(StoreKey key) {
+      ByteBuffer cached = records.get(key);
+      return cached == null ? null : cached.duplicate();
+    }
+
+    @Override
+    public void put(StoreKey key, ByteBuffer value) {
+      records.put(key, value);
+    }
+
+    @Override
+    public void invalidate(StoreKey key) {
+      records.remove(key);
+    }
+  }
 }
@@ -14,7 +14,9 @@
 package com.github.ambry.network;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
 import java.util.List;
 
 
@@ -26,6 +28,8 @@ public class CompositeSend implements Send {
   private final List<Send> compositSendList;
   private long totalSizeToWrite;
   private int currentIndexInProgress;
+  // the number of bytes pending in the buffers of each send, starting at currentIndexInProgress
+  private final List<Long> pendingBytesPerSend = new ArrayList<>();
 
   public CompositeSend(List<Send> compositSendList) {
     this.compositSendList = compositSendList;
@@ -47,6 +51,39 @@ public class CompositeSend implements Send {
     return written;
   }
 
+  @Override
+  public boolean addPendingBuffers(List<ByteBuffer> buffers) {
+    pendingBytesPerSend.clear();
+    for (int i = currentIndexInProgress; i < compositSendList.size(); i++) {
+      int firstBuffer = buffers.size();
+      boolean allPending = compositSendList.get(i).addPendingBuffers(buffers);
+      long pendingBytes = 0;
+      for (int j = firstBuffer; j < buffers.size(); j++) {
+        pendingBytes += buffers.get(j).remaining();
+      }
+      pendingBytesPerSend.add(pendingBytes);
+      if (!allPending) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public void onBuffersWritten(long bytesWritten) {
+    for (long pendingBytes : pendingBytesPerSend) {
+      Send send = compositSendList.get(currentIndexInProgress);
+      long written = Math.min(bytesWritten, pendingBytes);
+      send.onBuffersWritten(written);
+      bytesWritten -= written;
+      if (!send.isSendComplete()) {
+        break;
+      }
+      currentIndexInProgress++;
+    }
+    pendingBytesPerSend.clear();
+  }
+
   @Override
   public boolean isSendComplete() {
     return currentIndexInProgress == compositSendList.size();
@@ -56,4 +93,11 @@ public class CompositeSend implements Send {
   public long sizeInBytes() {
     return totalSizeToWrite;
   }
+
+  @Override
+  public void release() {
+    for (Send send : compositSendList) {
+      send.release();
+    }
+  }
 }
@@ -0,0 +1,50 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
+
+/**
+ * Metrics for the Netty based storage server transport ({@link NettySocketServer}).
+ */
+class NettyServerNetworkMetrics {
+  // NettyServerRequestResponseChannel metrics
+  private final Gauge<Integer> requestQueueSize;
+  public final Counter responseSendErrorCount;
+
+  // NettySocketServer metrics
+  public final Counter connectionCreatedCount;
+  public final Counter connectionClosedCount;
+  public final Counter channelExceptionCount;
+  public final Counter requestQueueFullCount;
+  public final Histogram requestSizeInBytes;
+
+  NettyServerNetworkMetrics(NettyServerRequestResponseChannel channel, MetricRegistry registry) {
+    requestQueueSize = channel::getRequestQueueSize;
+    registry.register(MetricRegistry.name(NettyServerRequestResponseChannel.class, "RequestQueueSize"),
+        requestQueueSize);
+    responseSendErrorCount =
+        registry.counter(MetricRegistry.name(NettyServerRequestResponseChannel.class, "ResponseSendErrorCount"));
+
+    connectionCreatedCount = registry.counter(MetricRegistry.name(NettySocketServer.class, "ConnectionCreatedCount"));
+    connectionClosedCount = registry.counter(MetricRegistry.name(NettySocketServer.class, "ConnectionClosedCount"));
+    channelExceptionCount = registry.counter(MetricRegistry.name(NettySocketServer.class, "ChannelExceptionCount"));
+    requestQueueFullCount = registry.counter(MetricRegistry.name(NettySocketServer.class, "RequestQueueFullCount"));
+    requestSizeInBytes = registry.histogram(MetricRegistry.name(NettySocketServer.class, "RequestSizeInBytes"));
+  }
+}
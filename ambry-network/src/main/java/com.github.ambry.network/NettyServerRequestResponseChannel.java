@@ -0,0 +1,216 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.utils.Time;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.channel.Channel;
+import io.netty.handler.ssl.SslHandler;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+// The request at the network layer when the Netty transport is used
+class NettyServerRequest implements Request {
+  private final Channel channel;
+  private final ByteBuf content;
+  private final InputStream input;
+  private final long startTimeInMs;
+  private final AtomicBoolean released = new AtomicBoolean(false);
+
+  /**
+   * @param channel the {@link Channel} the request was received on.
+   * @param content the bytes of the request, without the size header. Owned by this request until it is released.
+   * @param startTimeInMs the time at which the request was received.
+   */
+  NettyServerRequest(Channel channel, ByteBuf content, long startTimeInMs) {
+    this.channel = channel;
+    this.content = content;
+    this.input = new ByteBufInputStream(content);
+    this.startTimeInMs = startTimeInMs;
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return input;
+  }
+
+  @Override
+  public long getStartTimeInMs() {
+    return startTimeInMs;
+  }
+
+  @Override
+  public void release() {
+    if (released.compareAndSet(false, true)) {
+      content.release();
+    }
+  }
+
+  Channel getChannel() {
+    return channel;
+  }
+
+  @Override
+  public String toString() {
+    return "NettyServerRequest{channel=" + channel + ", size=" + content.capacity() + "}";
+  }
+}
+
+/**
+ * {@link RequestResponseChannel} for the Netty based storage server transport. Requests are queued for the request
+ * handlers like in {@link SocketRequestResponseChannel}. Responses do not need a queue of their own since they are
+ * written straight to the {@link Channel} of the request, which hands them to its event loop.
+ * <p/>
+ * Requests arrive on the event loops, which must never block. When the queue is full, a connection stops reading and
+ * registers a callback through {@link #waitForRoom(Runnable)} that runs once a request handler has made room.
+ */
+public class NettyServerRequestResponseChannel implements RequestResponseChannel {
+  private final ArrayBlockingQueue<Request> requestQueue;
+  private final ConcurrentLinkedQueue<Runnable> roomWaiters = new ConcurrentLinkedQueue<>();
+  private final Time time;
+  private final NettyServerNetworkMetrics metrics;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param queueSize the maximum number of requests that can wait for a request handler.
+   * @param registry the {@link MetricRegistry} to register the metrics of the transport with.
+   * @param time the {@link Time} instance to use.
+   */
+  public NettyServerRequestResponseChannel(int queueSize, MetricRegistry registry, Time time) {
+    requestQueue = new ArrayBlockingQueue<>(queueSize);
+    this.time = time;
+    metrics = new NettyServerNetworkMetrics(this, registry);
+  }
+
+  /** Send a request to be handled, potentially blocking until there is room in the queue for the request */
+  @Override
+  public void sendRequest(Request request) throws InterruptedException {
+    requestQueue.put(request);
+  }
+
+  /**
+   * Queues a request for the request handlers without blocking.
+   * @param request the {@link Request} to queue.
+   * @return {@code true} if the request was queued, {@code false} if the queue is full.
+   */
+  boolean offerRequest(Request request) {
+    return requestQueue.offer(request);
+  }
+
+  /**
+   * Registers a callback to run once there is room in the request queue. The callback runs at most once, on the
+   * thread that made room, so it should only hand work off to another thread (e.g. an event loop).
+   * @param waiter the callback to run.
+   */
+  void waitForRoom(Runnable waiter) {
+    roomWaiters.add(waiter);
+    // a handler may have taken a request between the failed offer and the registration above.
+    if (requestQueue.remainingCapacity() > 0) {
+      wakeUpWaiter();
+    }
+  }
+
+  /**
+   * Runs the next callback waiting for room in the request queue, if any.
+   */
+  private void wakeUpWaiter() {
+    Runnable waiter = roomWaiters.poll();
+    if (waiter != null) {
+      waiter.run();
+    }
+  }
+
+  /**
+   * Writes the response to the channel the request was received on. Responses on plaintext connections are written as
+   * a {@link SendFileRegion} so that log data can go from the file to the socket without being copied. Responses on
+   * SSL connections have to be encrypted and are written in chunks.
+   */
+  @Override
+  public void sendResponse(Send payloadToSend, Request originalRequest, ServerNetworkResponseMetrics responseMetrics)
+      throws InterruptedException {
+    Channel channel = ((NettyServerRequest) originalRequest).getChannel();
+    long enqueueTimeInMs = time.milliseconds();
+    try {
+      channel.eventLoop().execute(() -> {
+        long sendStartTimeInMs = time.milliseconds();
+        if (responseMetrics != null) {
+          responseMetrics.updateQueueTime(sendStartTimeInMs - enqueueTimeInMs);
+        }
+        Object message = channel.pipeline().get(SslHandler.class) == null ? new SendFileRegion(payloadToSend)
+            : new SendChunkedInput(payloadToSend);
+        channel.writeAndFlush(message).addListener(future -> {
+          if (future.isSuccess()) {
+            if (responseMetrics != null) {
+              responseMetrics.updateSendTime(time.milliseconds() - sendStartTimeInMs);
+            }
+          } else {
+            metrics.responseSendErrorCount.inc();
+            logger.error("Error while sending response on {}. Closing the connection", channel, future.cause());
+            channel.close();
+          }
+        });
+      });
+    } catch (RejectedExecutionException e) {
+      metrics.responseSendErrorCount.inc();
+      logger.error("Could not send response on {} because the transport is shutting down", channel);
+    }
+  }
+
+  /**
+   * Closes the connection and does not send any response
+   */
+  @Override
+  public void closeConnection(Request originalRequest) throws InterruptedException {
+    ((NettyServerRequest) originalRequest).getChannel().close();
+  }
+
+  /** Get the next request or block until there is one */
+  @Override
+  public Request receiveRequest() throws InterruptedException {
+    Request request = requestQueue.take();
+    wakeUpWaiter();
+    return request;
+  }
+
+  public int getRequestQueueSize() {
+    return requestQueue.size();
+  }
+
+  /**
+   * @return the {@link NettyServerNetworkMetrics} of the transport.
+   */
+  NettyServerNetworkMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Drops the requests that are still waiting for a handler and releases their buffers.
+   */
+  @Override
+  public void shutdown() {
+    roomWaiters.clear();
+    Request request;
+    while ((request = requestQueue.poll()) != null) {
+      request.release();
+    }
+  }
+}
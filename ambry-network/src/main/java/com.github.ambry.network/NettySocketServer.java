@@ -0,0 +1,306 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.commons.SSLFactory;
+import com.github.ambry.config.NetworkConfig;
+import com.github.ambry.config.SSLConfig;
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.Time;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.SSLEngine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A {@link NetworkServer} for the storage protocol that is built on Netty. It is an alternative to {@link SocketServer}
+ * that speaks the same protocol and hands requests to the request handlers through a
+ * {@link NettyServerRequestResponseChannel}.
+ * <p/>
+ * The native epoll transport is used when it is enabled and available, and the NIO transport otherwise. Request
+ * buffers come from the pooled allocator and are returned to it when the request is released. Responses on plaintext
+ * ports are written as a {@link SendFileRegion}.
+ */
+public class NettySocketServer implements NetworkServer {
+  // the size header of a request includes its own 8 bytes.
+  private static final int SIZE_HEADER_LENGTH = 8;
+
+  private final String host;
+  private final int numIoThreads;
+  private final int sendBufferSize;
+  private final int recvBufferSize;
+  private final int maxRequestSize;
+  private final boolean useEpoll;
+  private final HashMap<PortType, Port> ports = new HashMap<>();
+  private final NettyServerRequestResponseChannel requestResponseChannel;
+  private final NettyServerNetworkMetrics metrics;
+  private final Time time = SystemTime.getInstance();
+  private final List<Channel> serverChannels = new ArrayList<>();
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private SSLFactory sslFactory;
+  private EventLoopGroup bossGroup;
+  private EventLoopGroup workerGroup;
+
+  public NettySocketServer(NetworkConfig config, SSLConfig sslConfig, MetricRegistry registry,
+      ArrayList<Port> portList) {
+    this.host = config.hostName;
+    this.numIoThreads = config.numIoThreads;
+    this.sendBufferSize = config.socketSendBufferBytes;
+    this.recvBufferSize = config.socketReceiveBufferBytes;
+    this.maxRequestSize = config.socketRequestMaxBytes;
+    this.useEpoll = config.networkNettyServerUseEpoll && Epoll.isAvailable();
+    requestResponseChannel = new NettyServerRequestResponseChannel(config.queuedMaxRequests, registry, time);
+    metrics = requestResponseChannel.getMetrics();
+    validatePorts(portList);
+    initializeSSLFactory(sslConfig);
+  }
+
+  public int getPort() {
+    return ports.get(PortType.PLAINTEXT).getPort();
+  }
+
+  public int getSSLPort() {
+    Port sslPort = ports.get(PortType.SSL);
+    if (sslPort != null) {
+      return sslPort.getPort();
+    }
+    throw new IllegalStateException("No SSL Port Exists for Server " + host);
+  }
+
+  @Override
+  public RequestResponseChannel getRequestResponseChannel() {
+    return requestResponseChannel;
+  }
+
+  @Override
+  public void start() throws IOException, InterruptedException {
+    logger.info("Starting Netty storage server with {} io threads using the {} transport", numIoThreads,
+        useEpoll ? "epoll" : "NIO");
+    if (useEpoll) {
+      bossGroup = new EpollEventLoopGroup(1);
+      workerGroup = new EpollEventLoopGroup(numIoThreads);
+    } else {
+      bossGroup = new NioEventLoopGroup(1);
+      workerGroup = new NioEventLoopGroup(numIoThreads);
+    }
+    for (Port port : ports.values()) {
+      bind(port);
+    }
+    logger.info("Started server");
+  }
+
+  @Override
+  public void shutdown() {
+    logger.info("Shutting down server");
+    for (Channel serverChannel : serverChannels) {
+      serverChannel.close().awaitUninterruptibly();
+    }
+    serverChannels.clear();
+    if (bossGroup != null && workerGroup != null) {
+      workerGroup.shutdownGracefully();
+      bossGroup.shutdownGracefully();
+      try {
+        if (!(workerGroup.awaitTermination(30, TimeUnit.SECONDS) && bossGroup.awaitTermination(30, TimeUnit.SECONDS))) {
+          logger.error("Netty event loops did not terminate in time");
+        }
+      } catch (InterruptedException e) {
+        logger.error("Interrupted while waiting for the Netty event loops to terminate", e);
+      }
+    }
+    logger.info("Shutdown completed");
+  }
+
+  /**
+   * Binds a server channel to {@code port}.
+   * @param port the {@link Port} to listen on.
+   * @throws InterruptedException if the bind was interrupted.
+   */
+  private void bind(Port port) throws InterruptedException {
+    boolean ssl = port.getPortType() == PortType.SSL;
+    Class<? extends ServerChannel> serverChannelClass =
+        useEpoll ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    ServerBootstrap bootstrap = new ServerBootstrap();
+    bootstrap.group(bossGroup, workerGroup)
+        .channel(serverChannelClass)
+        .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .option(ChannelOption.SO_RCVBUF, recvBufferSize)
+        .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+        .childOption(ChannelOption.TCP_NODELAY, true)
+        .childOption(ChannelOption.SO_SNDBUF, sendBufferSize)
+        .childHandler(new ChannelInitializer<SocketChannel>() {
+          @Override
+          protected void initChannel(SocketChannel channel) {
+            ChannelPipeline pipeline = channel.pipeline();
+            if (ssl) {
+              InetSocketAddress peer = channel.remoteAddress();
+              SSLEngine sslEngine =
+                  sslFactory.createSSLEngine(peer.getHostString(), peer.getPort(), SSLFactory.Mode.SERVER);
+              pipeline.addLast("sslHandler", new SslHandler(sslEngine));
+              pipeline.addLast("chunkedWriteHandler", new ChunkedWriteHandler());
+            }
+            pipeline.addLast("frameDecoder",
+                new LengthFieldBasedFrameDecoder(maxRequestSize, 0, SIZE_HEADER_LENGTH, -SIZE_HEADER_LENGTH,
+                    SIZE_HEADER_LENGTH));
+            pipeline.addLast("requestHandler", new RequestHandler());
+          }
+        });
+    serverChannels.add(bootstrap.bind(port.getPort()).sync().channel());
+    logger.info("Awaiting socket connections on port {} ({})", port.getPort(), port.getPortType());
+  }
+
+  private void validatePorts(ArrayList<Port> portList) {
+    HashSet<PortType> portTypeSet = new HashSet<>();
+    for (Port port : portList) {
+      if (portTypeSet.contains(port.getPortType())) {
+        throw new IllegalArgumentException("Not more than one port of same type is allowed : " + port.getPortType());
+      } else {
+        portTypeSet.add(port.getPortType());
+        this.ports.put(port.getPortType(), port);
+      }
+    }
+  }
+
+  private void initializeSSLFactory(SSLConfig sslConfig) {
+    if (ports.get(PortType.SSL) != null) {
+      try {
+        this.sslFactory = SSLFactory.getNewInstance(sslConfig);
+      } catch (Exception e) {
+        throw new IllegalStateException("Exception thrown during initialization of SSLFactory ", e);
+      }
+    }
+  }
+
+  /**
+   * Hands the framed requests received on a connection to the {@link NettyServerRequestResponseChannel}. The request
+   * takes ownership of the frame, which is returned to the allocator when the request is released. When the request
+   * queue is full, the connection stops reading and keeps the requests it already decoded until the queue has room
+   * again, so that the event loop and the other connections on it are never blocked.
+   */
+  private class RequestHandler extends SimpleChannelInboundHandler<ByteBuf> {
+    // only accessed on the event loop of the connection.
+    private final ArrayDeque<NettyServerRequest> pendingRequests = new ArrayDeque<>();
+    private boolean waitingForRoom = false;
+
+    RequestHandler() {
+      super(false);
+    }
+
+    @Override
+    public void channelActive(ChannelHandlerContext ctx) throws Exception {
+      metrics.connectionCreatedCount.inc();
+      super.channelActive(ctx);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+      metrics.connectionClosedCount.inc();
+      NettyServerRequest request;
+      while ((request = pendingRequests.poll()) != null) {
+        request.release();
+      }
+      super.channelInactive(ctx);
+    }
+
+    @Override
+    protected void channelRead0(ChannelHandlerContext ctx, ByteBuf frame) {
+      metrics.requestSizeInBytes.update(frame.readableBytes());
+      NettyServerRequest request = new NettyServerRequest(ctx.channel(), frame, time.milliseconds());
+      if (pendingRequests.isEmpty() && requestResponseChannel.offerRequest(request)) {
+        return;
+      }
+      // frames that were already decoded keep arriving after auto read is turned off, so keep them in order.
+      pendingRequests.add(request);
+      if (ctx.channel().config().isAutoRead()) {
+        metrics.requestQueueFullCount.inc();
+        ctx.channel().config().setAutoRead(false);
+      }
+      waitForRoom(ctx);
+    }
+
+    /**
+     * Asks the request channel to call back on the event loop of the connection once the queue has room.
+     * @param ctx the {@link ChannelHandlerContext} of the connection.
+     */
+    private void waitForRoom(ChannelHandlerContext ctx) {
+      if (waitingForRoom) {
+        return;
+      }
+      waitingForRoom = true;
+      requestResponseChannel.waitForRoom(() -> {
+        try {
+          ctx.executor().execute(() -> drainPendingRequests(ctx));
+        } catch (RejectedExecutionException e) {
+          logger.debug("Not resuming reads on {} because the transport is shutting down", ctx.channel());
+        }
+      });
+    }
+
+    /**
+     * Queues as many of the pending requests of the connection as there is room for, and resumes reading once all of
+     * them are queued.
+     * @param ctx the {@link ChannelHandlerContext} of the connection.
+     */
+    private void drainPendingRequests(ChannelHandlerContext ctx) {
+      waitingForRoom = false;
+      if (!ctx.channel().isActive()) {
+        return;
+      }
+      while (!pendingRequests.isEmpty() && requestResponseChannel.offerRequest(pendingRequests.peek())) {
+        pendingRequests.poll();
+      }
+      if (pendingRequests.isEmpty()) {
+        ctx.channel().config().setAutoRead(true);
+      } else {
+        waitForRoom(ctx);
+      }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+      metrics.channelExceptionCount.inc();
+      logger.error("Error on connection {}. Closing it", ctx.channel(), cause);
+      ctx.close();
+    }
+  }
+}
@@ -16,12 +16,15 @@ package com.github.ambry.network;
 import com.github.ambry.clustermap.DataNodeId;
 import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.config.NetworkConfig;
+import com.github.ambry.utils.Pair;
 import com.github.ambry.utils.Time;
 import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -39,9 +42,18 @@ import org.slf4j.LoggerFactory;
  * a request should be failed if connections could not be checked out if pool limit for its hostPort has been reached
  * and all connections to the hostPort are unavailable).
  *
+ * If {@link NetworkConfig#networkClientMaxInFlightRequestsPerConnection} is greater than 1, requests that carry a
+ * correlation id are multiplexed: a connection that is checked out for such a request is shared by up to that many
+ * requests to the same (host, port) and is checked back in once all of them have received their responses. The
+ * requests are written one after the other and the responses, which the server can send in any order, are matched to
+ * the requests by correlation id.
+ *
  * This class is not thread safe.
  */
 public class NetworkClient implements Closeable {
+  // responses start with a 2 byte type and a 2 byte version, followed by the correlation id (see RequestOrResponse).
+  private static final int RESPONSE_CORRELATION_ID_OFFSET = 4;
+
   private final Selector selector;
   private final ConnectionTracker connectionTracker;
   private final NetworkConfig networkConfig;
@@ -52,6 +64,12 @@ public class NetworkClient implements Closeable {
   private final HashMap<String, RequestMetadata> pendingConnectionsToAssociatedRequests;
   private final AtomicLong numPendingRequests;
   private final int checkoutTimeoutMs;
+  private final int maxInFlightRequestsPerConnection;
+  private final HashMap<String, MultiplexedConnection> multiplexedConnections = new HashMap<>();
+  private final HashMap<Pair<String, Port>, List<MultiplexedConnection>> hostPortToMultiplexedConnections =
+      new HashMap<>();
+  // sends on multiplexed connections that can start in the next poll because the send before them completed.
+  private final List<NetworkSend> multiplexedSendsReadyToStart = new ArrayList<>();
   private boolean closed = false;
   private static final Logger logger = LoggerFactory.getLogger(NetworkClient.class);
 
@@ -73,6 +91,7 @@ public class NetworkClient implements Closeable {
     this.networkConfig = networkConfig;
     this.networkMetrics = networkMetrics;
     this.checkoutTimeoutMs = checkoutTimeoutMs;
+    this.maxInFlightRequestsPerConnection = networkConfig.networkClientMaxInFlightRequestsPerConnection;
     this.time = time;
     pendingRequests = new LinkedList<>();
     numPendingRequests = new AtomicLong(0);
@@ -131,7 +150,8 @@ public class NetworkClient implements Closeable {
    * @return the list of {@link NetworkSend} objects to hand over to the Selector.
    */
   private List<NetworkSend> prepareSends(List<ResponseInfo> responseInfoList) {
-    List<NetworkSend> sends = new ArrayList<>();
+    List<NetworkSend> sends = new ArrayList<>(multiplexedSendsReadyToStart);
+    multiplexedSendsReadyToStart.clear();
     ListIterator<RequestMetadata> iter = pendingRequests.listIterator();
 
     /* Drop requests that have waited too long */
@@ -166,6 +186,20 @@ public class NetworkClient implements Closeable {
         if (replicaId == null) {
           throw new IllegalStateException("ReplicaId in request is null.");
         }
+        boolean multiplexed = isMultiplexed(requestMetadata);
+        if (multiplexed) {
+          MultiplexedConnection connection =
+              getMultiplexedConnection(host, port, requestMetadata.requestInfo.getCorrelationId());
+          if (connection != null) {
+            clearPendingConnection(requestMetadata);
+            logger.trace("Sharing connection {} to {}:{} with {} requests in flight", connection.connectionId, host,
+                port, connection.requestsInFlight.size());
+            sendOnMultiplexedConnection(connection, requestMetadata, sends);
+            iter.remove();
+            requestMetadata.onRequestDequeue();
+            continue;
+          }
+        }
         String connId = connectionTracker.checkOutConnection(host, port, replicaId.getDataNodeId());
         if (connId == null) {
           networkMetrics.connectionNotAvailable.inc();
@@ -180,14 +214,19 @@ public class NetworkClient implements Closeable {
             }
           }
         } else {
-          if (requestMetadata.pendingConnectionId != null) {
-            pendingConnectionsToAssociatedRequests.remove(requestMetadata.pendingConnectionId);
-            requestMetadata.pendingConnectionId = null;
-          }
+          clearPendingConnection(requestMetadata);
           logger.trace("Connection checkout succeeded for {}:{} with connectionId {} ", host, port, connId);
-          sends.add(new NetworkSend(connId, requestMetadata.requestInfo.getRequest(),
-              requestMetadata.clientNetworkRequestMetrics, time));
-          connectionIdToRequestInFlight.put(connId, requestMetadata);
+          if (multiplexed) {
+            MultiplexedConnection connection = new MultiplexedConnection(connId, new Pair<>(host, port));
+            multiplexedConnections.put(connId, connection);
+            hostPortToMultiplexedConnections.computeIfAbsent(connection.hostPort, k -> new ArrayList<>())
+                .add(connection);
+            sendOnMultiplexedConnection(connection, requestMetadata, sends);
+          } else {
+            sends.add(new NetworkSend(connId, requestMetadata.requestInfo.getRequest(),
+                requestMetadata.clientNetworkRequestMetrics, time));
+            connectionIdToRequestInFlight.put(connId, requestMetadata);
+          }
           iter.remove();
           requestMetadata.onRequestDequeue();
         }
@@ -199,6 +238,115 @@ public class NetworkClient implements Closeable {
     return sends;
   }
 
+  /**
+   * @param requestMetadata the {@link RequestMetadata} of the request.
+   * @return {@code true} if the request can share a connection with other requests.
+   */
+  private boolean isMultiplexed(RequestMetadata requestMetadata) {
+    return maxInFlightRequestsPerConnection > 1 && requestMetadata.requestInfo.getCorrelationId() != null;
+  }
+
+  /**
+   * Stops associating the connection that was initiated on behalf of {@code requestMetadata} (if any) with it.
+   * @param requestMetadata the {@link RequestMetadata} of the request.
+   */
+  private void clearPendingConnection(RequestMetadata requestMetadata) {
+    if (requestMetadata.pendingConnectionId != null) {
+      pendingConnectionsToAssociatedRequests.remove(requestMetadata.pendingConnectionId);
+      requestMetadata.pendingConnectionId = null;
+    }
+  }
+
+  /**
+   * Finds a multiplexed connection to the (host, port) that has room for another request.
+   * @param host the host of the request.
+   * @param port the port of the request.
+   * @param correlationId the correlation id of the request. Connections that already have a request with the same
+   *                      correlation id in flight are not returned because the responses could not be told apart.
+   * @return a {@link MultiplexedConnection} that can carry the request, or {@code null} if there is none.
+   */
+  private MultiplexedConnection getMultiplexedConnection(String host, Port port, int correlationId) {
+    List<MultiplexedConnection> connections = hostPortToMultiplexedConnections.get(new Pair<>(host, port));
+    if (connections != null) {
+      for (MultiplexedConnection connection : connections) {
+        if (connection.requestsInFlight.size() < maxInFlightRequestsPerConnection
+            && !connection.requestsInFlight.containsKey(correlationId)) {
+          return connection;
+        }
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Adds a request to the requests in flight on a multiplexed connection. The request is sent in this poll if no other
+   * send is in progress on the connection and queued behind the sends in progress otherwise.
+   * @param connection the {@link MultiplexedConnection} to send the request on.
+   * @param requestMetadata the {@link RequestMetadata} of the request.
+   * @param sends the list of {@link NetworkSend}s to hand over to the Selector in this poll.
+   */
+  private void sendOnMultiplexedConnection(MultiplexedConnection connection, RequestMetadata requestMetadata,
+      List<NetworkSend> sends) {
+    connection.requestsInFlight.put(requestMetadata.requestInfo.getCorrelationId(), requestMetadata);
+    NetworkSend send = new NetworkSend(connection.connectionId, requestMetadata.requestInfo.getRequest(),
+        requestMetadata.clientNetworkRequestMetrics, time);
+    if (connection.sendInProgress) {
+      connection.queuedSends.add(send);
+    } else {
+      connection.sendInProgress = true;
+      sends.add(send);
+    }
+    networkMetrics.multiplexedRequestCount.inc();
+    networkMetrics.requestsInFlightPerMultiplexedConnection.update(connection.requestsInFlight.size());
+  }
+
+  /**
+   * Stops tracking a multiplexed connection.
+   * @param connId the connection id of the connection.
+   * @return the removed {@link MultiplexedConnection}, or {@code null} if {@code connId} is not a multiplexed connection.
+   */
+  private MultiplexedConnection removeMultiplexedConnection(String connId) {
+    MultiplexedConnection connection = multiplexedConnections.remove(connId);
+    if (connection != null) {
+      List<MultiplexedConnection> connections = hostPortToMultiplexedConnections.get(connection.hostPort);
+      connections.remove(connection);
+      if (connections.isEmpty()) {
+        hostPortToMultiplexedConnections.remove(connection.hostPort);
+      }
+    }
+    return connection;
+  }
+
+  /**
+   * Matches a response received on a multiplexed connection to its request by correlation id. The connection is
+   * checked back in once there are no more requests in flight on it.
+   * @param connection the {@link MultiplexedConnection} the response was received on.
+   * @param recv the {@link NetworkReceive} of the response.
+   * @param responseInfoList the list to add the {@link ResponseInfo} of the response to.
+   */
+  private void handleMultiplexedReceive(MultiplexedConnection connection, NetworkReceive recv,
+      List<ResponseInfo> responseInfoList) {
+    ByteBuffer payload = recv.getReceivedBytes().getPayload();
+    RequestMetadata requestMetadata = null;
+    if (payload.remaining() >= RESPONSE_CORRELATION_ID_OFFSET + Integer.BYTES) {
+      int correlationId = payload.getInt(payload.position() + RESPONSE_CORRELATION_ID_OFFSET);
+      requestMetadata = connection.requestsInFlight.remove(correlationId);
+    }
+    if (requestMetadata == null) {
+      networkMetrics.unexpectedMultiplexedResponseCount.inc();
+      logger.error("Received a response that does not match any request in flight on connection {}",
+          connection.connectionId);
+      recv.getReceivedBytes().release();
+      return;
+    }
+    responseInfoList.add(new ResponseInfo(requestMetadata.requestInfo, recv.getReceivedBytes()));
+    requestMetadata.onResponseReceive();
+    if (connection.requestsInFlight.isEmpty()) {
+      removeMultiplexedConnection(connection.connectionId);
+      connectionTracker.checkInConnection(connection.connectionId);
+    }
+  }
+
   /**
    * Warm up connections to dataNodes in a specified time window.
    * If a connection established successfully, it's a successConnection.
@@ -276,6 +424,18 @@ public class NetworkClient implements Closeable {
     for (String connId : selector.disconnected()) {
       logger.trace("ConnectionId {} disconnected, removing it from connection tracker", connId);
       DataNodeId dataNodeId = connectionTracker.removeConnection(connId);
+      MultiplexedConnection multiplexedConnection = removeMultiplexedConnection(connId);
+      if (multiplexedConnection != null) {
+        logger.trace("Multiplexed connectionId {} with {} requests in flight disconnected", connId,
+            multiplexedConnection.requestsInFlight.size());
+        multiplexedSendsReadyToStart.removeIf(send -> send.getConnectionId().equals(connId));
+        for (RequestMetadata requestMetadata : multiplexedConnection.requestsInFlight.values()) {
+          responseInfoList.add(
+              new ResponseInfo(requestMetadata.requestInfo, NetworkClientErrorCode.NetworkError, null));
+        }
+        networkMetrics.connectionDisconnected.inc();
+        continue;
+      }
       // If this was a pending connection and if there is a request that initiated this connection,
       // mark the corresponding request as failed.
       RequestMetadata requestMetadata = pendingConnectionsToAssociatedRequests.remove(connId);
@@ -305,13 +465,30 @@ public class NetworkClient implements Closeable {
       networkMetrics.connectionDisconnected.inc();
     }
 
+    for (NetworkSend send : selector.completedSends()) {
+      MultiplexedConnection connection = multiplexedConnections.get(send.getConnectionId());
+      if (connection != null) {
+        NetworkSend nextSend = connection.queuedSends.poll();
+        if (nextSend != null) {
+          multiplexedSendsReadyToStart.add(nextSend);
+        } else {
+          connection.sendInProgress = false;
+        }
+      }
+    }
+
     for (NetworkReceive recv : selector.completedReceives()) {
       String connId = recv.getConnectionId();
+      MultiplexedConnection connection = multiplexedConnections.get(connId);
+      if (connection != null) {
+        handleMultiplexedReceive(connection, recv, responseInfoList);
+        continue;
+      }
       logger.trace("Receive completed for connectionId {} and checking in the connection back to connection tracker",
           connId);
       connectionTracker.checkInConnection(connId);
       RequestMetadata requestMetadata = connectionIdToRequestInFlight.remove(connId);
-      responseInfoList.add(new ResponseInfo(requestMetadata.requestInfo, null, recv.getReceivedBytes().getPayload()));
+      responseInfoList.add(new ResponseInfo(requestMetadata.requestInfo, recv.getReceivedBytes()));
       requestMetadata.onResponseReceive();
     }
   }
@@ -336,6 +513,24 @@ public class NetworkClient implements Closeable {
     selector.wakeup();
   }
 
+  /**
+   * A connection that is checked out for multiplexed requests and the requests that are in flight on it.
+   */
+  private static class MultiplexedConnection {
+    final String connectionId;
+    final Pair<String, Port> hostPort;
+    // the requests in flight keyed by correlation id
+    final LinkedHashMap<Integer, RequestMetadata> requestsInFlight = new LinkedHashMap<>();
+    // sends waiting for the send in progress to complete
+    final LinkedList<NetworkSend> queuedSends = new LinkedList<>();
+    boolean sendInProgress = false;
+
+    MultiplexedConnection(String connectionId, Pair<String, Port> hostPort) {
+      this.connectionId = connectionId;
+      this.hostPort = hostPort;
+    }
+  }
+
   /**
    * A class that consists of a {@link RequestInfo} and some metadata related to the request
    */
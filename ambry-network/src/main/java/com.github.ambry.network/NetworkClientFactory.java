@@ -15,6 +15,7 @@ package com.github.ambry.network;
 
 import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.NetworkConfig;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import com.github.ambry.utils.Time;
 import java.io.IOException;
 
@@ -30,6 +31,11 @@ public class NetworkClientFactory {
   private final int maxConnectionsPerPortSsl;
   private final int connectionCheckoutTimeoutMs;
   private final Time time;
+  // shared by the selectors of all the clients created by this factory. null if receive buffers are not pooled.
+  private final SizeClassedByteBufferPool receiveBufferPool;
+  // shared by the selectors of all the clients created by this factory. null if the buffers of SSL connections are not
+  // pooled.
+  private final SizeClassedByteBufferPool sslBufferPool;
 
   /**
    * Construct a factory using the given parameters.
@@ -49,6 +55,21 @@ public class NetworkClientFactory {
     this.maxConnectionsPerPortSsl = maxConnectionsPerPortSsl;
     this.connectionCheckoutTimeoutMs = connectionCheckoutTimeoutMs;
     this.time = time;
+    if (networkConfig.networkReceiveBufferPoolCapacityBytes > 0) {
+      receiveBufferPool = new SizeClassedByteBufferPool(networkConfig.networkReceiveBufferPoolCapacityBytes,
+          networkConfig.networkReceiveBufferPoolMaxPooledBufferSizeBytes,
+          networkConfig.networkReceiveBufferPoolUseDirectBuffers);
+      networkMetrics.registerReceiveBufferPool(receiveBufferPool);
+    } else {
+      receiveBufferPool = null;
+    }
+    if (networkConfig.networkSslBufferPoolCapacityBytes > 0) {
+      sslBufferPool = SSLTransmission.newBufferPool(networkConfig.networkSslBufferPoolCapacityBytes,
+          networkConfig.networkSslWriteBatchRecords);
+      networkMetrics.registerSslBufferPool(sslBufferPool);
+    } else {
+      sslBufferPool = null;
+    }
   }
 
   /**
@@ -57,7 +78,8 @@ public class NetworkClientFactory {
    * @throws IOException if the {@link Selector} could not be instantiated.
    */
   public NetworkClient getNetworkClient() throws IOException {
-    Selector selector = new Selector(networkMetrics, time, sslFactory);
+    Selector selector = new Selector(networkMetrics, time, sslFactory, receiveBufferPool, sslBufferPool,
+        networkConfig.networkSslWriteBatchRecords, networkConfig.networkSslCpuTimeMetricsEnabled);
     return new NetworkClient(selector, networkConfig, networkMetrics, maxConnectionsPerPortPlainText,
         maxConnectionsPerPortSsl, connectionCheckoutTimeoutMs, time);
   }
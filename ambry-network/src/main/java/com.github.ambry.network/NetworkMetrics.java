@@ -18,10 +18,12 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
 
 
 /**
@@ -44,6 +46,8 @@ public class NetworkMetrics {
   public final Counter selectorCloseSocketErrorCount;
   private final List<AtomicLong> selectorActiveConnectionsList;
   private final List<Set<String>> selectorUnreadyConnectionsList;
+  private final List<SizeClassedByteBufferPool> receiveBufferPoolList;
+  private final List<SizeClassedByteBufferPool> sslBufferPoolList;
 
   // Plaintext metrics
   // the bytes rate to receive the entire request
@@ -56,6 +60,8 @@ public class NetworkMetrics {
   public final Histogram plaintextSendTimeInUsPerKB;
   // the time to send data in one write call
   public final Histogram plaintextSendTime;
+  // the number of buffers written in one gathering write call
+  public final Histogram plaintextGatheredBuffersPerWrite;
 
   // SSL metrics
   public final Counter sslFactoryInitializationCount;
@@ -79,6 +85,11 @@ public class NetworkMetrics {
   public final Histogram sslSendTime;
   // the count of renegotiation after initial handshake done
   public final Counter sslRenegotiationCount;
+  // the bytes received or sent per second of CPU time spent by the thread, including decryption or encryption
+  public final Histogram sslReceiveBytesPerCpuSecond;
+  public final Histogram sslSendBytesPerCpuSecond;
+  // the number of bytes encrypted into one record
+  public final Histogram sslWrapSizeInBytes;
 
   // NetworkClient metrics
   public final Histogram networkClientSendAndPollTime;
@@ -95,6 +106,9 @@ public class NetworkMetrics {
   public final Counter connectionReplenished;
   public final Counter networkClientIOError;
   public final Counter networkClientException;
+  public final Counter multiplexedRequestCount;
+  public final Histogram requestsInFlightPerMultiplexedConnection;
+  public final Counter unexpectedMultiplexedResponseCount;
   private List<AtomicLong> networkClientPendingRequestList;
 
   public NetworkMetrics(MetricRegistry registry) {
@@ -120,6 +134,8 @@ public class NetworkMetrics {
         registry.histogram(MetricRegistry.name(Selector.class, "PlaintextReceiveTimeInUsPerKB"));
     plaintextSendTimeInUsPerKB = registry.histogram(MetricRegistry.name(Selector.class, "PlaintextSendTimeInUsPerKB"));
     plaintextSendTime = registry.histogram(MetricRegistry.name(Selector.class, "PlaintextSendTime"));
+    plaintextGatheredBuffersPerWrite =
+        registry.histogram(MetricRegistry.name(Selector.class, "PlaintextGatheredBuffersPerWrite"));
     sslReceiveBytesRate = registry.meter(MetricRegistry.name(Selector.class, "SslReceiveBytesRate"));
     sslSendBytesRate = registry.meter(MetricRegistry.name(Selector.class, "SslSendBytesRate"));
     sslEncryptionTimeInUsPerKB = registry.histogram(MetricRegistry.name(Selector.class, "SslEncryptionTimeInUsPerKB"));
@@ -139,6 +155,10 @@ public class NetworkMetrics {
     sslHandshakeCount = registry.counter(MetricRegistry.name(Selector.class, "SslHandshakeCount"));
     sslHandshakeErrorCount = registry.counter(MetricRegistry.name(Selector.class, "SslHandshakeErrorCount"));
     sslRenegotiationCount = registry.counter(MetricRegistry.name(Selector.class, "SslRenegotiationCount"));
+    sslReceiveBytesPerCpuSecond =
+        registry.histogram(MetricRegistry.name(Selector.class, "SslReceiveBytesPerCpuSecond"));
+    sslSendBytesPerCpuSecond = registry.histogram(MetricRegistry.name(Selector.class, "SslSendBytesPerCpuSecond"));
+    sslWrapSizeInBytes = registry.histogram(MetricRegistry.name(Selector.class, "SslWrapSizeInBytes"));
 
     networkClientSendAndPollTime =
         registry.histogram(MetricRegistry.name(NetworkClient.class, "NetworkClientSendAndPollTime"));
@@ -156,9 +176,16 @@ public class NetworkMetrics {
     connectionReplenished = registry.counter(MetricRegistry.name(NetworkClient.class, "ConnectionReplenished"));
     networkClientIOError = registry.counter(MetricRegistry.name(NetworkClient.class, "NetworkClientIOError"));
     networkClientException = registry.counter(MetricRegistry.name(NetworkClient.class, "NetworkClientException"));
+    multiplexedRequestCount = registry.counter(MetricRegistry.name(NetworkClient.class, "MultiplexedRequestCount"));
+    requestsInFlightPerMultiplexedConnection =
+        registry.histogram(MetricRegistry.name(NetworkClient.class, "RequestsInFlightPerMultiplexedConnection"));
+    unexpectedMultiplexedResponseCount =
+        registry.counter(MetricRegistry.name(NetworkClient.class, "UnexpectedMultiplexedResponseCount"));
 
     selectorActiveConnectionsList = new ArrayList<>();
     selectorUnreadyConnectionsList = new ArrayList<>();
+    receiveBufferPoolList = new ArrayList<>();
+    sslBufferPoolList = new ArrayList<>();
     networkClientPendingRequestList = new ArrayList<>();
 
     final Gauge<Long> selectorActiveConnectionsCount = () -> {
@@ -190,6 +217,44 @@ public class NetworkMetrics {
     };
     registry.register(MetricRegistry.name(NetworkClient.class, "NetworkClientPendingConnectionsCount"),
         networkClientPendingRequestsCount);
+
+    registerBufferPoolGauges(registry, "ReceiveBufferPool", receiveBufferPoolList);
+    registerBufferPoolGauges(registry, "SslBufferPool", sslBufferPoolList);
+  }
+
+  /**
+   * Registers gauges that sum the statistics of the buffer pools in {@code pools}.
+   * @param registry the {@link MetricRegistry} to register the gauges with.
+   * @param prefix the prefix of the names of the gauges.
+   * @param pools the list of pools that the gauges cover.
+   */
+  private void registerBufferPoolGauges(MetricRegistry registry, String prefix,
+      List<SizeClassedByteBufferPool> pools) {
+    registerBufferPoolGauge(registry, prefix + "FreeBytes", pools, SizeClassedByteBufferPool::getFreeBytes);
+    registerBufferPoolGauge(registry, prefix + "HitCount", pools, SizeClassedByteBufferPool::getHitCount);
+    registerBufferPoolGauge(registry, prefix + "MissCount", pools, SizeClassedByteBufferPool::getMissCount);
+    registerBufferPoolGauge(registry, prefix + "UnpooledAllocationCount", pools,
+        SizeClassedByteBufferPool::getUnpooledAllocationCount);
+    registerBufferPoolGauge(registry, prefix + "DroppedCount", pools, SizeClassedByteBufferPool::getDroppedCount);
+  }
+
+  /**
+   * Registers a gauge that sums {@code stat} over the buffer pools in {@code pools}.
+   * @param registry the {@link MetricRegistry} to register the gauge with.
+   * @param name the name of the gauge.
+   * @param pools the list of pools that the gauge covers.
+   * @param stat the statistic of a single {@link SizeClassedByteBufferPool}.
+   */
+  private void registerBufferPoolGauge(MetricRegistry registry, String name, List<SizeClassedByteBufferPool> pools,
+      ToLongFunction<SizeClassedByteBufferPool> stat) {
+    Gauge<Long> gauge = () -> {
+      long total = 0;
+      for (SizeClassedByteBufferPool pool : pools) {
+        total += stat.applyAsLong(pool);
+      }
+      return total;
+    };
+    registry.register(MetricRegistry.name(Selector.class, name), gauge);
   }
 
   /**
@@ -200,6 +265,22 @@ public class NetworkMetrics {
     selectorActiveConnectionsList.add(numActiveConnections);
   }
 
+  /**
+   * Registers a pool of receive buffers whose usage should be reported.
+   * @param receiveBufferPool the {@link SizeClassedByteBufferPool} that receive buffers are taken from.
+   */
+  void registerReceiveBufferPool(SizeClassedByteBufferPool receiveBufferPool) {
+    receiveBufferPoolList.add(receiveBufferPool);
+  }
+
+  /**
+   * Registers a pool of buffers for SSL connections whose usage should be reported.
+   * @param sslBufferPool the {@link SizeClassedByteBufferPool} that SSL connections take their buffers from.
+   */
+  void registerSslBufferPool(SizeClassedByteBufferPool sslBufferPool) {
+    sslBufferPoolList.add(sslBufferPool);
+  }
+
   /**
    * Registers the number of unready connections(SSL handshaking) for a selector
    * @param unreadyConnections count of unready connections.
@@ -221,12 +302,17 @@ class ServerNetworkMetrics extends NetworkMetrics {
   // SocketRequestResponseChannel metrics
   private final List<Gauge<Integer>> responseQueueSize;
   private final Gauge<Integer> requestQueueSize;
+  private final List<Gauge<Integer>> requestClassQueueSize;
 
   // SocketServer metrics
   public final Counter acceptConnectionErrorCount;
+  public final Meter acceptConnectionRate;
+  public final Histogram acceptConnectionTimeInUs;
   public final Counter acceptorShutDownErrorCount;
   public final Counter processorShutDownErrorCount;
   public final Counter processNewResponseErrorCount;
+  public final Counter processorWakeupCount;
+  public final Counter processorWakeupCoalescedCount;
   public Gauge<Integer> numberOfProcessorThreads;
 
   public ServerNetworkMetrics(final SocketRequestResponseChannel channel, MetricRegistry registry,
@@ -234,6 +320,13 @@ class ServerNetworkMetrics extends NetworkMetrics {
     super(registry);
     requestQueueSize = channel::getRequestQueueSize;
     registry.register(MetricRegistry.name(SocketRequestResponseChannel.class, "RequestQueueSize"), requestQueueSize);
+    requestClassQueueSize = new ArrayList<>(RequestClass.values().length);
+    for (RequestClass requestClass : RequestClass.values()) {
+      Gauge<Integer> gauge = () -> channel.getRequestQueueSize(requestClass);
+      requestClassQueueSize.add(gauge);
+      registry.register(MetricRegistry.name(SocketRequestResponseChannel.class, requestClass + "-RequestQueueSize"),
+          gauge);
+    }
     responseQueueSize = new ArrayList<Gauge<Integer>>(channel.getNumberOfProcessors());
 
     for (int i = 0; i < channel.getNumberOfProcessors(); i++) {
@@ -247,12 +340,17 @@ class ServerNetworkMetrics extends NetworkMetrics {
 
     acceptConnectionErrorCount =
         registry.counter(MetricRegistry.name(SocketServer.class, "AcceptConnectionErrorCount"));
+    acceptConnectionRate = registry.meter(MetricRegistry.name(SocketServer.class, "AcceptConnectionRate"));
+    acceptConnectionTimeInUs = registry.histogram(MetricRegistry.name(SocketServer.class, "AcceptConnectionTimeInUs"));
     acceptorShutDownErrorCount =
         registry.counter(MetricRegistry.name(SocketServer.class, "AcceptorShutDownErrorCount"));
     processorShutDownErrorCount =
         registry.counter(MetricRegistry.name(SocketServer.class, "ProcessorShutDownErrorCount"));
     processNewResponseErrorCount =
         registry.counter(MetricRegistry.name(SocketServer.class, "ProcessNewResponseErrorCount"));
+    processorWakeupCount = registry.counter(MetricRegistry.name(SocketServer.class, "ProcessorWakeupCount"));
+    processorWakeupCoalescedCount =
+        registry.counter(MetricRegistry.name(SocketServer.class, "ProcessorWakeupCoalescedCount"));
   }
 
   private int getLiveThreads(List<Processor> replicaThreads) {
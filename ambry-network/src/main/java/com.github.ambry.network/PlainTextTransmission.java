@@ -16,8 +16,11 @@ package com.github.ambry.network;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Time;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,6 +31,10 @@ import org.slf4j.LoggerFactory;
  */
 public class PlainTextTransmission extends Transmission {
   private static final Logger logger = LoggerFactory.getLogger(PlainTextTransmission.class);
+  // heap buffers are copied to temporary direct buffers for a gathering write and the JDK only caches a few of those,
+  // so a single write is limited to this many buffers.
+  private static final int MAX_BUFFERS_PER_GATHERING_WRITE = 16;
+  private final List<ByteBuffer> pendingBuffers = new ArrayList<>();
 
   public PlainTextTransmission(String connectionId, SocketChannel socketChannel, SelectionKey key, Time time,
       NetworkMetrics metrics) {
@@ -60,7 +67,7 @@ public class PlainTextTransmission extends Transmission {
   @Override
   public boolean read() throws IOException {
     if (!hasReceive()) {
-      networkReceive = new NetworkReceive(getConnectionId(), new BoundedByteBufferReceive(), time);
+      networkReceive = createNetworkReceive();
     }
     long startTimeMs = SystemTime.getInstance().milliseconds();
     long bytesRead = networkReceive.getReceivedBytes().readFrom(socketChannel);
@@ -86,7 +93,10 @@ public class PlainTextTransmission extends Transmission {
       throw new IllegalStateException("Registered for write interest but no response attached to key.");
     }
     long startTimeMs = SystemTime.getInstance().milliseconds();
-    long bytesWritten = send.writeTo(socketChannel);
+    long bytesWritten = writePendingBuffers(send);
+    if (bytesWritten < 0) {
+      bytesWritten = send.writeTo(socketChannel);
+    }
     long writeTimeMs = SystemTime.getInstance().milliseconds() - startTimeMs;
     logger.trace("Bytes written {} to {} using key {} Time: {}", bytesWritten,
         socketChannel.socket().getRemoteSocketAddress(), getConnectionId(), writeTimeMs);
@@ -97,12 +107,43 @@ public class PlainTextTransmission extends Transmission {
     return send.isSendComplete();
   }
 
+  /**
+   * Writes the buffers pending in {@code send} to the channel with a single gathering write. If they were all written
+   * and the send continues with a part that is not held in memory (like a region of a file), that part is written with
+   * {@link Send#writeTo(java.nio.channels.WritableByteChannel)} right after.
+   * @param send the {@link Send} to write.
+   * @return the number of bytes written, or -1 if {@code send} has less than two pending buffers and is better written
+   * with {@link Send#writeTo(java.nio.channels.WritableByteChannel)}.
+   * @throws IOException if the write fails.
+   */
+  private long writePendingBuffers(Send send) throws IOException {
+    pendingBuffers.clear();
+    send.addPendingBuffers(pendingBuffers);
+    if (pendingBuffers.size() < 2) {
+      return -1;
+    }
+    int bufferCount = Math.min(pendingBuffers.size(), MAX_BUFFERS_PER_GATHERING_WRITE);
+    ByteBuffer[] buffers = pendingBuffers.subList(0, bufferCount).toArray(new ByteBuffer[bufferCount]);
+    pendingBuffers.clear();
+    long pendingBytes = 0;
+    for (ByteBuffer buffer : buffers) {
+      pendingBytes += buffer.remaining();
+    }
+    long bytesWritten = socketChannel.write(buffers);
+    send.onBuffersWritten(bytesWritten);
+    metrics.plaintextGatheredBuffersPerWrite.update(bufferCount);
+    if (bytesWritten == pendingBytes && !send.isSendComplete()) {
+      bytesWritten += send.writeTo(socketChannel);
+    }
+    return bytesWritten;
+  }
+
   /**
    * Close the connection for the socket channel
    */
   @Override
   public void close() {
-    clearReceive();
+    abortReceive();
     clearSend();
     key.attach(null);
     key.cancel();
@@ -25,6 +25,7 @@ public class RequestInfo {
   private final Port port;
   private final Send request;
   private final ReplicaId replicaId;
+  private final Integer correlationId;
 
   /**
    * Construct a RequestInfo with the given parameters
@@ -34,10 +35,25 @@ public class RequestInfo {
    * @param replicaId the {@link ReplicaId} associated with this request
    */
   public RequestInfo(String host, Port port, Send request, ReplicaId replicaId) {
+    this(host, port, request, replicaId, null);
+  }
+
+  /**
+   * Construct a RequestInfo for a request whose response can be matched to it by correlation id. Such requests can
+   * share a connection with other requests.
+   * @param host the host to which the data is meant for
+   * @param port the port on the host to which the data is meant for
+   * @param request the data to be sent.
+   * @param replicaId the {@link ReplicaId} associated with this request
+   * @param correlationId the correlation id of {@code request}. This must be unique among the requests to the same
+   *                      (host, port) that are in flight at the same time.
+   */
+  public RequestInfo(String host, Port port, Send request, ReplicaId replicaId, Integer correlationId) {
     this.host = host;
     this.port = port;
     this.request = request;
     this.replicaId = replicaId;
+    this.correlationId = correlationId;
   }
 
   /**
@@ -67,4 +83,12 @@ public class RequestInfo {
   public ReplicaId getReplicaId() {
     return replicaId;
   }
+
+  /**
+   * @return the correlation id of the request. {@code null} if it is not known, in which case the request is sent on a
+   * connection that is not shared with other requests.
+   */
+  public Integer getCorrelationId() {
+    return correlationId;
+  }
 }
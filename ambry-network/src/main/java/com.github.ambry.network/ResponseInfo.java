@@ -28,6 +28,7 @@ public class ResponseInfo {
   private final NetworkClientErrorCode error;
   private final ByteBuffer response;
   private final DataNodeId dataNode;
+  private final BoundedByteBufferReceive receivedBytes;
 
   /**
    * Constructs a ResponseInfo with the given parameters.
@@ -40,10 +41,26 @@ public class ResponseInfo {
   }
 
   public ResponseInfo(RequestInfo requestInfo, NetworkClientErrorCode error, ByteBuffer response, DataNodeId dataNode) {
+    this(requestInfo, error, response, dataNode, null);
+  }
+
+  /**
+   * Constructs a ResponseInfo for a response that was received successfully.
+   * @param requestInfo the {@link RequestInfo} associated with this response.
+   * @param receivedBytes the {@link BoundedByteBufferReceive} that the response was received into. Its buffer is
+   *                      released by {@link #release()}.
+   */
+  ResponseInfo(RequestInfo requestInfo, BoundedByteBufferReceive receivedBytes) {
+    this(requestInfo, null, receivedBytes.getPayload(), requestInfo.getReplicaId().getDataNodeId(), receivedBytes);
+  }
+
+  private ResponseInfo(RequestInfo requestInfo, NetworkClientErrorCode error, ByteBuffer response,
+      DataNodeId dataNode, BoundedByteBufferReceive receivedBytes) {
     this.requestInfo = requestInfo;
     this.error = error;
     this.response = response;
     this.dataNode = dataNode;
+    this.receivedBytes = receivedBytes;
   }
 
   /**
@@ -73,4 +90,15 @@ public class ResponseInfo {
   public DataNodeId getDataNode() {
     return dataNode;
   }
+
+  /**
+   * Returns the buffer of the response to the pool it was taken from, if any. Consumers call this once they have
+   * deserialized the response and no longer hold on to anything that reads from it. The response must not be used
+   * afterwards. Responses that are never released are garbage collected as usual.
+   */
+  public void release() {
+    if (receivedBytes != null) {
+      receivedBytes.release();
+    }
+  }
 }
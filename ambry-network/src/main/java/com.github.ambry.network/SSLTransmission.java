@@ -13,18 +13,23 @@
  */
 package com.github.ambry.network;
 
+import com.codahale.metrics.Histogram;
 import com.github.ambry.commons.SSLFactory;
+import com.github.ambry.utils.ByteBufferPool;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Time;
-import com.github.ambry.utils.Utils;
 import java.io.EOFException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLException;
@@ -38,11 +43,22 @@ import static javax.net.ssl.SSLEngineResult.*;
  * Handles all the SSL related interactions. It is mainly responsible for establishing the handshake completely,
  * performing reads/writes and closing the transmission safely. This class also implements
  * ReadableByteChannel and WritableByteChannel to provide a way to encrypt and decrypt to/from a channel
+ * <p/>
+ * If constructed with a {@link ByteBufferPool}, the buffers of the transmission are taken from the pool and returned
+ * to it whenever the transmission has no data buffered, so that idle connections do not hold on to them. Encrypted
+ * records can be batched in the network write buffer so that several records are written to the socket at once.
  */
 public class SSLTransmission extends Transmission implements ReadableByteChannel, WritableByteChannel {
 
   private static final Logger logger = LoggerFactory.getLogger(SSLTransmission.class);
+  // an upper bound of the packet buffer size of an SSL session, used to size the pooled buffers
+  private static final int MAX_PACKET_BUFFER_SIZE = 32 * 1024;
+  private static final ThreadMXBean THREAD_MX_BEAN = ManagementFactory.getThreadMXBean();
+  private static final boolean CPU_TIME_SUPPORTED = THREAD_MX_BEAN.isCurrentThreadCpuTimeSupported();
   private final SSLEngine sslEngine;
+  private final ByteBufferPool bufferPool;
+  private final int writeBatchRecords;
+  private final boolean cpuTimeMetricsEnabled;
   private HandshakeStatus handshakeStatus;
   private SSLEngineResult handshakeResult;
   private boolean handshakeComplete = false;
@@ -53,19 +69,57 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
   // buffer used to hold the encrypted data to be sent over the network
   private ByteBuffer appReadBuffer;
   // buffer used to hold the decrypted data decrypted from networkReadBuffer
+  private ByteBuffer appWriteBuffer;
+  // buffer used to combine writes smaller than a record into full records. null unless records are batched
   private ByteBuffer emptyBuf = ByteBuffer.allocate(0);
   private long handshakeStartTime;
 
   public SSLTransmission(SSLFactory sslFactory, String connectionId, SocketChannel socketChannel, SelectionKey key,
       String remoteHost, int remotePort, Time time, NetworkMetrics metrics, SSLFactory.Mode mode) throws IOException {
+    this(sslFactory, connectionId, socketChannel, key, remoteHost, remotePort, time, metrics, mode, null, 1, false);
+  }
+
+  /**
+   * @param sslFactory the {@link SSLFactory} to create the {@link SSLEngine} with.
+   * @param connectionId the ID of the connection.
+   * @param socketChannel the {@link SocketChannel} of the connection.
+   * @param key the {@link SelectionKey} of the connection.
+   * @param remoteHost the remote host, used for SSL host verification.
+   * @param remotePort the remote port, used for SSL host verification.
+   * @param time the {@link Time} instance to use.
+   * @param metrics the {@link NetworkMetrics} to use.
+   * @param mode whether to operate in client or server mode.
+   * @param bufferPool the {@link ByteBufferPool} to take the buffers of the transmission from. {@code null} if the
+   *                   transmission should allocate its own buffers and keep them.
+   * @param writeBatchRecords the number of records that are encrypted before they are written to the socket. If larger
+   *                          than 1, writes smaller than a record are also combined into full records.
+   * @param cpuTimeMetricsEnabled if {@code true}, the CPU time of reads and writes is measured to report the bytes
+   *                              sent and received per CPU second.
+   * @throws IOException if the handshake could not be started.
+   */
+  public SSLTransmission(SSLFactory sslFactory, String connectionId, SocketChannel socketChannel, SelectionKey key,
+      String remoteHost, int remotePort, Time time, NetworkMetrics metrics, SSLFactory.Mode mode,
+      ByteBufferPool bufferPool, int writeBatchRecords, boolean cpuTimeMetricsEnabled) throws IOException {
     super(connectionId, socketChannel, key, time, metrics);
     this.sslEngine = sslFactory.createSSLEngine(remoteHost, remotePort, mode);
-    this.netReadBuffer = ByteBuffer.allocate(netReadBufferSize());
-    this.netWriteBuffer = ByteBuffer.allocate(netWriteBufferSize());
-    this.appReadBuffer = ByteBuffer.allocate(appReadBufferSize());
+    this.bufferPool = bufferPool;
+    this.writeBatchRecords = writeBatchRecords;
+    this.cpuTimeMetricsEnabled = cpuTimeMetricsEnabled && CPU_TIME_SUPPORTED;
+    acquireReadBuffers();
+    acquireWriteBuffers();
     startHandshake();
   }
 
+  /**
+   * Creates a pool of direct buffers for SSL transmissions.
+   * @param capacity the maximum total size in bytes of the free buffers that are kept for reuse.
+   * @param writeBatchRecords the number of records that the transmissions batch before writing them to the socket.
+   * @return the {@link SizeClassedByteBufferPool}.
+   */
+  static SizeClassedByteBufferPool newBufferPool(long capacity, int writeBatchRecords) {
+    return new SizeClassedByteBufferPool(capacity, MAX_PACKET_BUFFER_SIZE * writeBatchRecords, true);
+  }
+
   /**
    * starts sslEngine handshake process
    */
@@ -116,6 +170,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
       return;
     }
     closing = true;
+    acquireWriteBuffers();
     sslEngine.closeOutbound();
     try {
       if (!flush(netWriteBuffer)) {
@@ -131,7 +186,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
       }
       netWriteBuffer.flip();
       flush(netWriteBuffer);
-      clearReceive();
+      abortReceive();
       clearSend();
       socketChannel.socket().close();
       socketChannel.close();
@@ -141,6 +196,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
     }
     key.attach(null);
     key.cancel();
+    releaseBuffers();
   }
 
   /**
@@ -189,6 +245,8 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
    * @throws IOException
    */
   private void handshake() throws IOException {
+    acquireReadBuffers();
+    acquireWriteBuffers();
     boolean read = key.isReadable();
     boolean write = key.isWritable();
     handshakeComplete = false;
@@ -382,17 +440,23 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
   @Override
   public boolean read() throws IOException {
     if (!hasReceive()) {
-      this.networkReceive = new NetworkReceive(getConnectionId(), new BoundedByteBufferReceive(), time);
+      this.networkReceive = createNetworkReceive();
     }
     long startTimeMs = SystemTime.getInstance().milliseconds();
+    long startCpuTimeNs = currentThreadCpuTimeNs();
     long bytesRead = networkReceive.getReceivedBytes().readFrom(this);
     long readTimeMs = SystemTime.getInstance().milliseconds() - startTimeMs;
     logger.trace("Bytes read {} from {} using key {} Time: {}", bytesRead,
         socketChannel.socket().getRemoteSocketAddress(), getConnectionId(), readTimeMs);
     if (bytesRead > 0) {
       metrics.sslReceiveTimeInUsPerKB.update(TimeUnit.MILLISECONDS.toMicros(readTimeMs) * 1024 / bytesRead);
+      updateBytesPerCpuSecond(metrics.sslReceiveBytesPerCpuSecond, bytesRead, startCpuTimeNs);
+    }
+    boolean readComplete = networkReceive.getReceivedBytes().isReadComplete();
+    if (readComplete) {
+      releaseReadBuffersIfIdle();
     }
-    return networkReceive.getReceivedBytes().isReadComplete();
+    return readComplete;
   }
 
   /**
@@ -411,6 +475,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
     } else if (!handshakeComplete) {
       return 0;
     }
+    acquireReadBuffers();
 
     //if we have unread decrypted data in appReadBuffer read that into dst buffer.
     int read = 0;
@@ -421,7 +486,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
     // Each loop reads at most once from the socket.
     while (dst.remaining() > 0) {
       int netread = 0;
-      netReadBuffer = Utils.ensureCapacity(netReadBuffer, netReadBufferSize());
+      netReadBuffer = ensureCapacity(netReadBuffer, netReadBufferSize());
       if (netReadBuffer.remaining() > 0) {
         netread = readFromSocketChannel();
       }
@@ -440,8 +505,8 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
         // handle ssl renegotiation.
         if (unwrapResult.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING) {
           logger.trace(
-              "SSLChannel Read begin renegotiation getConnectionId() {}, appReadBuffer pos {}, netReadBuffer pos {}, netWriteBuffer pos {}",
-              getConnectionId(), appReadBuffer.position(), netReadBuffer.position(), netWriteBuffer.position());
+              "SSLChannel Read begin renegotiation getConnectionId() {}, appReadBuffer pos {}, netReadBuffer pos {}",
+              getConnectionId(), appReadBuffer.position(), netReadBuffer.position());
           handshake();
           metrics.sslRenegotiationCount.inc();
           break;
@@ -491,31 +556,47 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
     if (send == null) {
       throw new IllegalStateException("Registered for write interest but no response attached to key.");
     }
+    acquireWriteBuffers();
     if (!closing && handshakeComplete) {
       if (!flush(netWriteBuffer)) {
         return false;
       }
     }
     long startTimeMs = SystemTime.getInstance().milliseconds();
+    long startCpuTimeNs = currentThreadCpuTimeNs();
     long bytesWritten = send.writeTo(this);
+    if (!closing && handshakeComplete) {
+      if (send.isSendComplete() && appWriteBuffer != null && appWriteBuffer.position() > 0) {
+        // the end of the send did not fill a record
+        wrapAppWriteBuffer();
+      }
+      // records are batched in netWriteBuffer, so whatever is left of them has to be written now
+      flush(netWriteBuffer);
+    }
     long writeTimeMs = SystemTime.getInstance().milliseconds() - startTimeMs;
     logger.trace("Bytes written {} to {} using key {} Time: {}", bytesWritten,
         socketChannel.socket().getRemoteSocketAddress(), getConnectionId(), writeTimeMs);
     if (bytesWritten > 0) {
       metrics.sslSendTimeInUsPerKB.update(TimeUnit.MILLISECONDS.toMicros(writeTimeMs) * 1024 / bytesWritten);
       metrics.sslSendTime.update(writeTimeMs);
+      updateBytesPerCpuSecond(metrics.sslSendBytesPerCpuSecond, bytesWritten, startCpuTimeNs);
     }
-    return (send.isSendComplete() && netWriteBuffer.remaining() == 0);
+    boolean writeComplete = send.isSendComplete() && netWriteBuffer.remaining() == 0 && (appWriteBuffer == null
+        || appWriteBuffer.position() == 0);
+    if (writeComplete) {
+      releaseWriteBuffersIfIdle();
+    }
+    return writeComplete;
   }
 
   /**
    * Writes a sequence of bytes to this channel from the given buffer.
    *
    * @param src The buffer from which bytes are to be retrieved
-   * @return The number of bytes decrypted and written to netWriteBuffer. No guarantee that data in the temporary
-   * buffer will be completely written to the underlying channel right away. So the caller has to make sure to check
-   * the remaining bytes in the netWriteBuffer apart from checking the remaining bytes in src bytebuffer. This method
-   * is called from write() in the same class
+   * @return The number of bytes encrypted into netWriteBuffer (or, if records are batched, buffered to be encrypted).
+   * No guarantee that data in the temporary buffers will be completely written to the underlying channel right away.
+   * So the caller has to make sure to check the remaining bytes in the netWriteBuffer apart from checking the remaining
+   * bytes in src bytebuffer. This method is called from write() in the same class
    * @throws IOException If some other I/O error occurs
    */
   @Override
@@ -524,13 +605,64 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
       throw new IllegalStateException("Channel is in closing state");
     } else if (!handshakeComplete) {
       return 0;
-    } else if (!flush(netWriteBuffer)) {
-      return 0;
     }
+    acquireWriteBuffers();
+    if (appWriteBuffer == null) {
+      return wrap(src);
+    }
+    // writes smaller than a record, like the chunks in which a file is transferred to this channel, are combined into
+    // full records. Larger writes are encrypted directly.
+    int written = 0;
+    while (src.hasRemaining()) {
+      if (appWriteBuffer.position() == 0 && src.remaining() >= appWriteBuffer.capacity()) {
+        written += wrap(src);
+        break;
+      }
+      int bytesToBuffer = Math.min(src.remaining(), appWriteBuffer.remaining());
+      int limit = src.limit();
+      src.limit(src.position() + bytesToBuffer);
+      appWriteBuffer.put(src);
+      src.limit(limit);
+      written += bytesToBuffer;
+      if (!appWriteBuffer.hasRemaining() && !wrapAppWriteBuffer()) {
+        break;
+      }
+    }
+    return written;
+  }
 
+  /**
+   * Encrypts the data buffered in {@link #appWriteBuffer}.
+   * @return {@code true} if there is room in {@link #appWriteBuffer} afterwards, {@code false} otherwise.
+   * @throws IOException if the encryption or a write to the socket fails.
+   */
+  private boolean wrapAppWriteBuffer() throws IOException {
+    appWriteBuffer.flip();
+    wrap(appWriteBuffer);
+    appWriteBuffer.compact();
+    return appWriteBuffer.hasRemaining();
+  }
+
+  /**
+   * Encrypts bytes from {@code src} into {@link #netWriteBuffer}, one record at a time. The records are appended to the
+   * ones already in {@link #netWriteBuffer}, which is only written to the socket when there is no room for another
+   * record.
+   * @param src the buffer with the bytes to encrypt.
+   * @return the number of bytes of {@code src} that were encrypted. Less than the remaining bytes of {@code src} if
+   * the socket could not take more data or a renegotiation started.
+   * @throws IOException if the encryption or a write to the socket fails.
+   */
+  private int wrap(ByteBuffer src) throws IOException {
     int written = 0;
     while (src.remaining() != 0) {
-      netWriteBuffer.clear();
+      if (!ensureRoomForRecord()) {
+        // break if socketChannel can't accept enough data in netWriteBuffer
+        break;
+      }
+      // encrypt after the data that is pending in netWriteBuffer
+      int pendingPosition = netWriteBuffer.position();
+      netWriteBuffer.position(netWriteBuffer.limit());
+      netWriteBuffer.limit(netWriteBuffer.capacity());
       long startTimeMs = SystemTime.getInstance().milliseconds();
       SSLEngineResult wrapResult = sslEngine.wrap(src, netWriteBuffer);
       long encryptionTimeMs = SystemTime.getInstance().milliseconds() - startTimeMs;
@@ -538,8 +670,10 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
       if (wrapResult.bytesConsumed() > 0) {
         metrics.sslEncryptionTimeInUsPerKB.update(
             TimeUnit.MILLISECONDS.toMicros(encryptionTimeMs) * 1024 / wrapResult.bytesConsumed());
+        metrics.sslWrapSizeInBytes.update(wrapResult.bytesConsumed());
       }
-      netWriteBuffer.flip();
+      netWriteBuffer.limit(netWriteBuffer.position());
+      netWriteBuffer.position(pendingPosition);
       //handle ssl renegotiation
       if (wrapResult.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
         handshake();
@@ -549,13 +683,12 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
 
       if (wrapResult.getStatus() == SSLEngineResult.Status.OK) {
         written += wrapResult.bytesConsumed();
-        if (!flush(netWriteBuffer)) {
-          // break if socketChannel can't accept all data in netWriteBuffer
+      } else if (wrapResult.getStatus() == Status.BUFFER_OVERFLOW) {
+        if (!netWriteBuffer.hasRemaining()) {
+          handleWrapOverflow();
+        } else if (!flush(netWriteBuffer)) {
           break;
         }
-        // otherwise, we are safe to clear the buffer for next iteration.
-      } else if (wrapResult.getStatus() == Status.BUFFER_OVERFLOW) {
-        handleWrapOverflow();
       } else if (wrapResult.getStatus() == Status.BUFFER_UNDERFLOW) {
         throw new IllegalStateException("SSL BUFFER_UNDERFLOW during write");
       } else if (wrapResult.getStatus() == Status.CLOSED) {
@@ -565,6 +698,32 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
     return written;
   }
 
+  /**
+   * Makes sure that there is room for another record after the data pending in {@link #netWriteBuffer}, writing the
+   * pending data to the socket if there is not.
+   * @return {@code true} if there is room for another record, {@code false} if the socket did not take enough of the
+   * pending data.
+   * @throws IOException if the write to the socket fails.
+   */
+  private boolean ensureRoomForRecord() throws IOException {
+    int recordSize = netWriteBufferSize();
+    if (netWriteBuffer.capacity() - netWriteBuffer.limit() >= recordSize) {
+      return true;
+    }
+    flush(netWriteBuffer);
+    boolean tooSmall = netWriteBuffer.capacity() - netWriteBuffer.remaining() < recordSize;
+    if (tooSmall && netWriteBuffer.hasRemaining()) {
+      return false;
+    }
+    // move the pending data to the front of the buffer
+    netWriteBuffer.compact();
+    if (tooSmall) {
+      netWriteBuffer = ensureCapacity(netWriteBuffer, recordSize * writeBatchRecords);
+    }
+    netWriteBuffer.flip();
+    return true;
+  }
+
   /**
    * returns delegatedTask for the SSLEngine.
    */
@@ -627,7 +786,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
    */
   private void handleUnwrapOverflow() {
     int currentAppReadBufferSize = appReadBufferSize();
-    appReadBuffer = Utils.ensureCapacity(appReadBuffer, currentAppReadBufferSize);
+    appReadBuffer = ensureCapacity(appReadBuffer, currentAppReadBufferSize);
     if (appReadBuffer.position() >= currentAppReadBufferSize) {
       throw new IllegalStateException(
           "Buffer overflow when available data size (" + appReadBuffer.position() + ") >= application buffer size ("
@@ -641,7 +800,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
    */
   private void handleUnwrapUnderflow() {
     int currentNetReadBufferSize = netReadBufferSize();
-    netReadBuffer = Utils.ensureCapacity(netReadBuffer, currentNetReadBufferSize);
+    netReadBuffer = ensureCapacity(netReadBuffer, currentNetReadBufferSize);
     if (netReadBuffer.position() >= currentNetReadBufferSize) {
       throw new IllegalStateException(
           "Buffer underflow when available data size (" + netReadBuffer.position() + ") >= packet buffer size ("
@@ -655,7 +814,7 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
   private void handleWrapOverflow() {
     int currentNetWriteBufferSize = netWriteBufferSize();
     netWriteBuffer.compact();
-    netWriteBuffer = Utils.ensureCapacity(netWriteBuffer, currentNetWriteBufferSize);
+    netWriteBuffer = ensureCapacity(netWriteBuffer, currentNetWriteBufferSize);
     netWriteBuffer.flip();
     if (netWriteBuffer.limit() >= currentNetWriteBufferSize) {
       throw new IllegalStateException(
@@ -664,6 +823,142 @@ public class SSLTransmission extends Transmission implements ReadableByteChannel
     }
   }
 
+  /**
+   * Takes the buffers for reads from the pool if they were returned to it.
+   */
+  private void acquireReadBuffers() {
+    if (netReadBuffer == null) {
+      netReadBuffer = allocate(netReadBufferSize());
+      appReadBuffer = allocate(appReadBufferSize());
+    }
+  }
+
+  /**
+   * Takes the buffers for writes from the pool if they were returned to it.
+   */
+  private void acquireWriteBuffers() {
+    if (netWriteBuffer == null) {
+      netWriteBuffer = allocate(netWriteBufferSize() * writeBatchRecords);
+      // netWriteBuffer holds the data to write between position and limit
+      netWriteBuffer.limit(0);
+      if (writeBatchRecords > 1) {
+        appWriteBuffer = allocate(sslEngine.getSession().getApplicationBufferSize());
+      }
+    }
+  }
+
+  /**
+   * Returns the buffers for reads to the pool if they hold no data.
+   */
+  private void releaseReadBuffersIfIdle() {
+    if (bufferPool != null && handshakeComplete && !closing && netReadBuffer != null
+        && netReadBuffer.position() == 0 && appReadBuffer.position() == 0) {
+      bufferPool.deallocate(netReadBuffer);
+      bufferPool.deallocate(appReadBuffer);
+      netReadBuffer = null;
+      appReadBuffer = null;
+    }
+  }
+
+  /**
+   * Returns the buffers for writes to the pool if they hold no data.
+   */
+  private void releaseWriteBuffersIfIdle() {
+    if (bufferPool != null && handshakeComplete && !closing && netWriteBuffer != null
+        && !netWriteBuffer.hasRemaining() && (appWriteBuffer == null || appWriteBuffer.position() == 0)) {
+      releaseWriteBuffers();
+    }
+  }
+
+  /**
+   * Returns all the buffers to the pool.
+   */
+  private void releaseBuffers() {
+    if (bufferPool != null) {
+      if (netReadBuffer != null) {
+        bufferPool.deallocate(netReadBuffer);
+        bufferPool.deallocate(appReadBuffer);
+        netReadBuffer = null;
+        appReadBuffer = null;
+      }
+      if (netWriteBuffer != null) {
+        releaseWriteBuffers();
+      }
+    }
+  }
+
+  private void releaseWriteBuffers() {
+    bufferPool.deallocate(netWriteBuffer);
+    netWriteBuffer = null;
+    if (appWriteBuffer != null) {
+      bufferPool.deallocate(appWriteBuffer);
+      appWriteBuffer = null;
+    }
+  }
+
+  /**
+   * @param size the size of the buffer.
+   * @return a buffer from the pool if there is one, which may be larger than {@code size}. A newly allocated buffer of
+   * {@code size} bytes otherwise.
+   */
+  private ByteBuffer allocate(int size) {
+    if (bufferPool != null) {
+      try {
+        ByteBuffer buffer = bufferPool.allocate(size, 0);
+        // pooled buffers may be larger than requested, which only leaves more room
+        buffer.clear();
+        return buffer;
+      } catch (TimeoutException e) {
+        logger.trace("Buffer pool could not serve {} bytes, allocating a buffer instead", size);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    return ByteBuffer.allocate(size);
+  }
+
+  /**
+   * Like {@link com.github.ambry.utils.Utils#ensureCapacity(ByteBuffer, int)}, but takes the new buffer from the pool
+   * and returns the old one to it.
+   * @param existingBuffer the buffer, with the data to keep between 0 and its position.
+   * @param newLength the minimum capacity required.
+   * @return {@code existingBuffer} if it is large enough, a new buffer with the data of {@code existingBuffer} otherwise.
+   */
+  private ByteBuffer ensureCapacity(ByteBuffer existingBuffer, int newLength) {
+    if (newLength > existingBuffer.capacity()) {
+      ByteBuffer newBuffer = allocate(newLength);
+      existingBuffer.flip();
+      newBuffer.put(existingBuffer);
+      if (bufferPool != null) {
+        bufferPool.deallocate(existingBuffer);
+      }
+      return newBuffer;
+    }
+    return existingBuffer;
+  }
+
+  /**
+   * @return the CPU time of the current thread in nanoseconds, or -1 if it is not measured.
+   */
+  private long currentThreadCpuTimeNs() {
+    return cpuTimeMetricsEnabled ? THREAD_MX_BEAN.getCurrentThreadCpuTime() : -1;
+  }
+
+  /**
+   * Updates {@code histogram} with the bytes per CPU second of a read or write.
+   * @param histogram the histogram to update.
+   * @param bytes the number of bytes read or written.
+   * @param startCpuTimeNs the CPU time of the current thread before the read or write.
+   */
+  private void updateBytesPerCpuSecond(Histogram histogram, long bytes, long startCpuTimeNs) {
+    if (startCpuTimeNs >= 0) {
+      long cpuTimeNs = currentThreadCpuTimeNs() - startCpuTimeNs;
+      if (cpuTimeNs > 0) {
+        histogram.update(bytes * TimeUnit.SECONDS.toNanos(1) / cpuTimeNs);
+      }
+    }
+  }
+
   private void handshakeFailure() {
     //Release all resources such as internal buffers that SSLEngine is managing
     sslEngine.closeOutbound();
@@ -14,6 +14,7 @@
 package com.github.ambry.network;
 
 import com.github.ambry.commons.SSLFactory;
+import com.github.ambry.utils.ByteBufferPool;
 import com.github.ambry.utils.Time;
 import java.io.EOFException;
 import java.io.IOException;
@@ -81,11 +82,49 @@ public class Selector implements Selectable {
   private final AtomicLong idGenerator;
   private final AtomicLong numActiveConnections;
   private final SSLFactory sslFactory;
+  private final ByteBufferPool receiveBufferPool;
+  private final ByteBufferPool sslBufferPool;
+  private final int sslWriteBatchRecords;
+  private final boolean sslCpuTimeMetricsEnabled;
 
   /**
    * Create a new selector
    */
   public Selector(NetworkMetrics metrics, Time time, SSLFactory sslFactory) throws IOException {
+    this(metrics, time, sslFactory, null);
+  }
+
+  /**
+   * Create a new selector whose receives take their buffers from {@code receiveBufferPool}. The buffer of a completed
+   * {@link NetworkReceive} belongs to its consumer, which has to release it via
+   * {@link BoundedByteBufferReceive#release()} when done.
+   * @param metrics the {@link NetworkMetrics} to use.
+   * @param time the {@link Time} instance to use.
+   * @param sslFactory the {@link SSLFactory} for SSL connections. Can be {@code null} if there are none.
+   * @param receiveBufferPool the {@link ByteBufferPool} to take receive buffers from. {@code null} if every receive
+   *                          should allocate its own buffer.
+   */
+  public Selector(NetworkMetrics metrics, Time time, SSLFactory sslFactory, ByteBufferPool receiveBufferPool)
+      throws IOException {
+    this(metrics, time, sslFactory, receiveBufferPool, null, 1, false);
+  }
+
+  /**
+   * Create a new selector whose receives take their buffers from {@code receiveBufferPool} and whose SSL connections
+   * take their buffers from {@code sslBufferPool}.
+   * @param metrics the {@link NetworkMetrics} to use.
+   * @param time the {@link Time} instance to use.
+   * @param sslFactory the {@link SSLFactory} for SSL connections. Can be {@code null} if there are none.
+   * @param receiveBufferPool the {@link ByteBufferPool} to take receive buffers from. {@code null} if every receive
+   *                          should allocate its own buffer.
+   * @param sslBufferPool the {@link ByteBufferPool} that SSL connections take their buffers from while they are not
+   *                      idle. {@code null} if every SSL connection should allocate its own buffers.
+   * @param sslWriteBatchRecords the number of records that SSL connections encrypt before they write them to the
+   *                             socket.
+   * @param sslCpuTimeMetricsEnabled whether SSL connections measure the CPU time of their reads and writes.
+   */
+  public Selector(NetworkMetrics metrics, Time time, SSLFactory sslFactory, ByteBufferPool receiveBufferPool,
+      ByteBufferPool sslBufferPool, int sslWriteBatchRecords, boolean sslCpuTimeMetricsEnabled) throws IOException {
     this.nioSelector = java.nio.channels.Selector.open();
     this.time = time;
     this.keyMap = new HashMap<>();
@@ -96,6 +135,10 @@ public class Selector implements Selectable {
     this.closedConnections = new ArrayList<>();
     this.metrics = metrics;
     this.sslFactory = sslFactory;
+    this.receiveBufferPool = receiveBufferPool;
+    this.sslBufferPool = sslBufferPool;
+    this.sslWriteBatchRecords = sslWriteBatchRecords;
+    this.sslCpuTimeMetricsEnabled = sslCpuTimeMetricsEnabled;
     idGenerator = new AtomicLong(0);
     numActiveConnections = new AtomicLong(0);
     unreadyConnections = new HashSet<>();
@@ -259,6 +302,26 @@ public class Selector implements Selectable {
     }
   }
 
+  /**
+   * Queue the given request for sending in the subsequent {@poll(long)} calls after any sends on the same connection
+   * that are in progress or queued before it. Unlike {@link #send(NetworkSend)}, this allows several sends to be
+   * outstanding on a connection.
+   * @param networkSend The NetworkSend that is ready to be sent
+   */
+  public void queueSend(NetworkSend networkSend) {
+    SelectionKey key = keyForId(networkSend.getConnectionId());
+    if (key == null) {
+      throw new IllegalStateException("Attempt to send data to a null key");
+    }
+    Transmission transmission = getTransmission(key);
+    try {
+      transmission.queueNetworkSend(networkSend);
+    } catch (CancelledKeyException e) {
+      logger.debug("Ignoring response for closed socket.");
+      close(key);
+    }
+  }
+
   /**
    * Do whatever I/O can be done on each connection without blocking. This includes completing connections, completing
    * disconnections, initiating new sends, or making progress on in-progress sends or receives.
@@ -449,7 +512,8 @@ public class Selector implements Selectable {
     } else if (portType == PortType.SSL) {
       try {
         transmission =
-            new SSLTransmission(sslFactory, connectionId, channel(key), key, hostname, port, time, metrics, mode);
+            new SSLTransmission(sslFactory, connectionId, channel(key), key, hostname, port, time, metrics, mode,
+                sslBufferPool, sslWriteBatchRecords, sslCpuTimeMetricsEnabled);
         metrics.sslTransmissionInitializationCount.inc();
       } catch (IOException e) {
         metrics.sslTransmissionInitializationErrorCount.inc();
@@ -459,6 +523,7 @@ public class Selector implements Selectable {
     } else {
       throw new IllegalArgumentException("Unsupported portType " + portType + " passed in");
     }
+    transmission.setReceiveBufferPool(receiveBufferPool);
     return transmission;
   }
 
@@ -514,6 +579,7 @@ public class Selector implements Selectable {
       keyMap.remove(transmission.getConnectionId());
       numActiveConnections.set(keyMap.size());
       unreadyConnections.remove(transmission.getConnectionId());
+      transmission.releaseSends();
       try {
         transmission.close();
       } catch (IOException e) {
@@ -572,10 +638,12 @@ public class Selector implements Selectable {
       if (sendComplete) {
         logger.trace("Finished writing, registering for read on connection {}", transmission.getRemoteSocketAddress());
         transmission.onSendComplete();
+        transmission.getNetworkSend().getPayload().release();
         this.completedSends.add(transmission.getNetworkSend());
         metrics.sendInFlight.dec();
         transmission.clearSend();
         key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE | SelectionKey.OP_READ);
+        transmission.startQueuedSend();
       }
     } finally {
       long writeTime = time.milliseconds() - startTimeToWriteInMs;
@@ -0,0 +1,118 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * A {@link ChunkedInput} that writes a {@link Send} into buffers of at most {@link #CHUNK_SIZE} bytes taken from the
+ * allocator of the channel. Used for connections whose pipeline has to see the bytes of the response (such as SSL
+ * connections) so that a large response is never materialized in memory as a whole.
+ */
+class SendChunkedInput implements ChunkedInput<ByteBuf> {
+  static final int CHUNK_SIZE = 64 * 1024;
+
+  private final Send send;
+  private final ChunkChannel chunkChannel = new ChunkChannel();
+  private long progress = 0;
+
+  /**
+   * @param send the {@link Send} to write.
+   */
+  SendChunkedInput(Send send) {
+    this.send = send;
+  }
+
+  @Override
+  public boolean isEndOfInput() {
+    return send.isSendComplete();
+  }
+
+  @Override
+  public void close() {
+    send.release();
+  }
+
+  @Deprecated
+  @Override
+  public ByteBuf readChunk(ChannelHandlerContext ctx) throws Exception {
+    return readChunk(ctx.alloc());
+  }
+
+  @Override
+  public ByteBuf readChunk(ByteBufAllocator allocator) throws IOException {
+    if (send.isSendComplete()) {
+      return null;
+    }
+    ByteBuf chunk = allocator.buffer((int) Math.min(CHUNK_SIZE, send.sizeInBytes() - progress));
+    chunkChannel.chunk = chunk;
+    try {
+      while (chunk.isWritable() && !send.isSendComplete()) {
+        if (send.writeTo(chunkChannel) == 0) {
+          break;
+        }
+      }
+    } catch (IOException e) {
+      chunk.release();
+      throw e;
+    } finally {
+      chunkChannel.chunk = null;
+    }
+    progress += chunk.readableBytes();
+    return chunk;
+  }
+
+  @Override
+  public long length() {
+    return send.sizeInBytes();
+  }
+
+  @Override
+  public long progress() {
+    return progress;
+  }
+
+  /**
+   * A {@link WritableByteChannel} that accepts as many bytes as fit in the current chunk.
+   */
+  private static class ChunkChannel implements WritableByteChannel {
+    private ByteBuf chunk;
+
+    @Override
+    public int write(ByteBuffer src) {
+      int bytesToWrite = Math.min(src.remaining(), chunk.writableBytes());
+      ByteBuffer toWrite = src.duplicate();
+      toWrite.limit(toWrite.position() + bytesToWrite);
+      chunk.writeBytes(toWrite);
+      src.position(src.position() + bytesToWrite);
+      return bytesToWrite;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
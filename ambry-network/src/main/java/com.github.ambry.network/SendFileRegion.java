@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * A {@link FileRegion} that writes a {@link Send} to a Netty channel. Netty hands the socket to
+ * {@link #transferTo(WritableByteChannel, long)}, so sends that are backed by log segments (like the message sets of a
+ * get response) can transfer them from the file to the socket with {@link java.nio.channels.FileChannel#transferTo}
+ * instead of copying them through buffers.
+ * <p/>
+ * This can only be used on plaintext connections since the bytes reach the socket without passing through the
+ * pipeline.
+ */
+class SendFileRegion extends AbstractReferenceCounted implements FileRegion {
+  private final Send send;
+  private final long count;
+  private long transferred = 0;
+
+  /**
+   * @param send the {@link Send} to write.
+   */
+  SendFileRegion(Send send) {
+    this.send = send;
+    this.count = send.sizeInBytes();
+  }
+
+  @Override
+  public long position() {
+    return 0;
+  }
+
+  @Deprecated
+  @Override
+  public long transfered() {
+    return transferred;
+  }
+
+  @Override
+  public long transferred() {
+    return transferred;
+  }
+
+  @Override
+  public long count() {
+    return count;
+  }
+
+  @Override
+  public long transferTo(WritableByteChannel target, long position) throws IOException {
+    if (position != transferred) {
+      throw new IllegalArgumentException(
+          "Send can only be written sequentially. Position [" + position + "] transferred [" + transferred + "]");
+    }
+    long written = send.writeTo(target);
+    transferred += written;
+    return written;
+  }
+
+  @Override
+  public FileRegion retain() {
+    super.retain();
+    return this;
+  }
+
+  @Override
+  public FileRegion retain(int increment) {
+    super.retain(increment);
+    return this;
+  }
+
+  @Override
+  public FileRegion touch() {
+    return this;
+  }
+
+  @Override
+  public FileRegion touch(Object hint) {
+    return this;
+  }
+
+  @Override
+  protected void deallocate() {
+    send.release();
+  }
+}
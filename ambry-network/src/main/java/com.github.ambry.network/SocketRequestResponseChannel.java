@@ -17,9 +17,11 @@ import com.github.ambry.utils.SystemTime;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
 import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,12 +32,25 @@ class SocketServerRequest implements Request {
   private final String connectionId;
   private final InputStream input;
   private final long startTimeInMs;
+  private final BoundedByteBufferReceive receivedBytes;
   private Logger logger = LoggerFactory.getLogger(getClass());
 
   public SocketServerRequest(int processor, String connectionId, InputStream input) throws IOException {
+    this(processor, connectionId, input, null);
+  }
+
+  /**
+   * @param processor the id of the processor that received the request.
+   * @param connectionId the id of the connection the request was received on.
+   * @param input the request as an {@link InputStream}.
+   * @param receivedBytes the {@link BoundedByteBufferReceive} that {@code input} reads from. Released by
+   *                      {@link #release()}. Can be {@code null}.
+   */
+  SocketServerRequest(int processor, String connectionId, InputStream input, BoundedByteBufferReceive receivedBytes) {
     this.processor = processor;
     this.connectionId = connectionId;
     this.input = input;
+    this.receivedBytes = receivedBytes;
     this.startTimeInMs = SystemTime.getInstance().milliseconds();
     logger.trace("Processor {} received request : {}", processor, connectionId);
   }
@@ -57,6 +72,13 @@ class SocketServerRequest implements Request {
   public String getConnectionId() {
     return connectionId;
   }
+
+  @Override
+  public void release() {
+    if (receivedBytes != null) {
+      receivedBytes.release();
+    }
+  }
 }
 
 // The response at the network layer
@@ -107,31 +129,71 @@ interface ResponseListener {
 }
 
 /**
- * RequestResponse channel for socket server
+ * RequestResponse channel for socket server.
+ * <p/>
+ * Requests are queued by {@link RequestClass} so that a burst of one class of requests does not hold up the others.
+ * Request handlers take requests from the queues that have waiting requests in proportion to the weights of the
+ * queues, using smooth weighted round robin. Without a {@link RequestClassifier}, all requests share a single queue.
+ * <p/>
+ * Responses are queued for the processor that received the request in a lock-free queue, since many request handlers
+ * write to it and only the processor reads from it.
  */
 public class SocketRequestResponseChannel implements RequestResponseChannel {
   private final int numProcessors;
   private final int queueSize;
-  private final ArrayBlockingQueue<Request> requestQueue;
-  private final ArrayList<BlockingQueue<Response>> responseQueues;
+  private final RequestClassifier requestClassifier;
+  // indexed by the ordinal of the RequestClass.
+  private final ArrayList<ArrayBlockingQueue<Request>> requestQueues;
+  private final int[] queueWeights;
+  private final int[] currentQueueWeights;
+  // one permit for every request in the queues.
+  private final Semaphore queuedRequests = new Semaphore(0);
+  // written to by the request handlers and read by a single processor each.
+  private final ArrayList<ConcurrentLinkedQueue<Response>> responseQueues;
   private final ArrayList<ResponseListener> responseListeners;
 
   public SocketRequestResponseChannel(int numProcessors, int queueSize) {
+    this(numProcessors, queueSize, null, Collections.emptyMap());
+  }
+
+  /**
+   * @param numProcessors the number of processors that send the responses.
+   * @param queueSize the maximum number of requests that can wait in the queue of each {@link RequestClass}.
+   * @param requestClassifier the {@link RequestClassifier} that determines the queue of a request. If {@code null},
+   *                          all requests are queued as {@link RequestClass#CLIENT_READ}.
+   * @param queueWeights the weight of the queue of each {@link RequestClass}. Classes that are missing have weight 1.
+   */
+  public SocketRequestResponseChannel(int numProcessors, int queueSize, RequestClassifier requestClassifier,
+      Map<RequestClass, Integer> queueWeights) {
     this.numProcessors = numProcessors;
     this.queueSize = queueSize;
-    this.requestQueue = new ArrayBlockingQueue<Request>(this.queueSize);
-    responseQueues = new ArrayList<BlockingQueue<Response>>(this.numProcessors);
+    this.requestClassifier = requestClassifier;
+    RequestClass[] requestClasses = RequestClass.values();
+    requestQueues = new ArrayList<>(requestClasses.length);
+    this.queueWeights = new int[requestClasses.length];
+    currentQueueWeights = new int[requestClasses.length];
+    for (RequestClass requestClass : requestClasses) {
+      requestQueues.add(new ArrayBlockingQueue<>(this.queueSize));
+      this.queueWeights[requestClass.ordinal()] = queueWeights.getOrDefault(requestClass, 1);
+    }
+    responseQueues = new ArrayList<ConcurrentLinkedQueue<Response>>(this.numProcessors);
     responseListeners = new ArrayList<ResponseListener>();
 
     for (int i = 0; i < this.numProcessors; i++) {
-      responseQueues.add(i, new LinkedBlockingQueue<Response>());
+      responseQueues.add(i, new ConcurrentLinkedQueue<Response>());
     }
   }
 
-  /** Send a request to be handled, potentially blocking until there is room in the queue for the request */
+  /**
+   * Send a request to be handled, potentially blocking until there is room for the request in the queue of its
+   * {@link RequestClass}
+   */
   @Override
   public void sendRequest(Request request) throws InterruptedException {
-    requestQueue.put(request);
+    RequestClass requestClass =
+        requestClassifier == null ? RequestClass.CLIENT_READ : requestClassifier.classify(request);
+    requestQueues.get(requestClass.ordinal()).put(request);
+    queuedRequests.release();
   }
 
   /** Send a response back to the socket server to be sent over the network */
@@ -140,7 +202,7 @@ public class SocketRequestResponseChannel implements RequestResponseChannel {
       throws InterruptedException {
     SocketServerResponse response = new SocketServerResponse(originalRequest, payloadToSend, metrics);
     response.onEnqueueIntoResponseQueue();
-    responseQueues.get(response.getProcessor()).put(response);
+    responseQueues.get(response.getProcessor()).offer(response);
     for (ResponseListener listener : responseListeners) {
       listener.onResponse(response.getProcessor());
     }
@@ -152,7 +214,7 @@ public class SocketRequestResponseChannel implements RequestResponseChannel {
   @Override
   public void closeConnection(Request originalRequest) throws InterruptedException {
     SocketServerResponse response = new SocketServerResponse(originalRequest, null, null);
-    responseQueues.get(response.getProcessor()).put(response);
+    responseQueues.get(response.getProcessor()).offer(response);
     for (ResponseListener listener : responseListeners) {
       listener.onResponse(response.getProcessor());
     }
@@ -161,7 +223,33 @@ public class SocketRequestResponseChannel implements RequestResponseChannel {
   /** Get the next request or block until there is one */
   @Override
   public Request receiveRequest() throws InterruptedException {
-    return requestQueue.take();
+    queuedRequests.acquire();
+    return pollByWeight();
+  }
+
+  /**
+   * Takes a request from one of the queues that have waiting requests. Every queue with waiting requests earns its
+   * weight, the queue with the most earned weight is picked and pays the sum of the weights that were earned. This
+   * spreads the requests of every queue evenly instead of serving them in bursts.
+   * @return the next {@link Request} to handle. The caller must hold a permit of {@link #queuedRequests}, which
+   * guarantees that there is one.
+   */
+  private Request pollByWeight() {
+    synchronized (currentQueueWeights) {
+      int selected = -1;
+      int totalWeight = 0;
+      for (int i = 0; i < requestQueues.size(); i++) {
+        if (!requestQueues.get(i).isEmpty()) {
+          currentQueueWeights[i] += queueWeights[i];
+          totalWeight += queueWeights[i];
+          if (selected == -1 || currentQueueWeights[i] > currentQueueWeights[selected]) {
+            selected = i;
+          }
+        }
+      }
+      currentQueueWeights[selected] -= totalWeight;
+      return requestQueues.get(selected).poll();
+    }
   }
 
   /** Get a response for the given processor if there is one */
@@ -169,12 +257,28 @@ public class SocketRequestResponseChannel implements RequestResponseChannel {
     return responseQueues.get(processor).poll();
   }
 
+  /**
+   * @param processor the id of the processor.
+   * @return {@code true} if there are responses waiting to be sent by the given processor.
+   */
+  boolean hasResponses(int processor) {
+    return !responseQueues.get(processor).isEmpty();
+  }
+
   public void addResponseListener(ResponseListener listener) {
     responseListeners.add(listener);
   }
 
   public int getRequestQueueSize() {
-    return requestQueue.size();
+    return queuedRequests.availablePermits();
+  }
+
+  /**
+   * @param requestClass the {@link RequestClass} of interest.
+   * @return the number of requests of {@code requestClass} that wait for a request handler.
+   */
+  public int getRequestQueueSize(RequestClass requestClass) {
+    return requestQueues.get(requestClass.ordinal()).size();
   }
 
   public int getResponseQueueSize(int processor) {
@@ -186,7 +290,8 @@ public class SocketRequestResponseChannel implements RequestResponseChannel {
   }
 
   public void shutdown() {
-    requestQueue.clear();
+    requestQueues.forEach(ArrayBlockingQueue::clear);
+    queuedRequests.drainPermits();
   }
 }
 
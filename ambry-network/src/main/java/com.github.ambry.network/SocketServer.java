@@ -18,32 +18,40 @@ import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.NetworkConfig;
 import com.github.ambry.config.SSLConfig;
 import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.ByteBufferPool;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketException;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 
 /**
  * A NIO socket server. The threading model is
- *   1 Acceptor thread that handles new connections
+ *   1 Acceptor thread per port that handles new connections (more with SO_REUSEPORT)
  *   N Processor threads that each have their own selector and read requests from sockets
  *   M Handler threads that handle requests and produce responses back to the processor threads for writing.
  */
@@ -56,6 +64,7 @@ public class SocketServer implements NetworkServer {
   private final int sendBufferSize;
   private final int recvBufferSize;
   private final int maxRequestSize;
+  private final int acceptorThreadsPerPort;
   private final ArrayList<Processor> processors;
   private volatile ArrayList<Acceptor> acceptors;
   private final SocketRequestResponseChannel requestResponseChannel;
@@ -63,8 +72,27 @@ public class SocketServer implements NetworkServer {
   private final ServerNetworkMetrics metrics;
   private final HashMap<PortType, Port> ports;
   private SSLFactory sslFactory;
+  // shared by the selectors of all the processors. null if receive buffers are not pooled.
+  private final SizeClassedByteBufferPool receiveBufferPool;
+  // shared by the selectors of all the processors. null if the buffers of SSL connections are not pooled.
+  private final SizeClassedByteBufferPool sslBufferPool;
+  private final int sslWriteBatchRecords;
+  private final boolean sslCpuTimeMetricsEnabled;
 
   public SocketServer(NetworkConfig config, SSLConfig sslConfig, MetricRegistry registry, ArrayList<Port> portList) {
+    this(config, sslConfig, registry, portList, null);
+  }
+
+  /**
+   * @param config the {@link NetworkConfig} to use.
+   * @param sslConfig the {@link SSLConfig} to use for the SSL port.
+   * @param registry the {@link MetricRegistry} to register metrics with.
+   * @param portList the {@link Port}s to listen on.
+   * @param requestClassifier the {@link RequestClassifier} that decides which queue requests wait in. If {@code null},
+   *                          all requests share one queue.
+   */
+  public SocketServer(NetworkConfig config, SSLConfig sslConfig, MetricRegistry registry, ArrayList<Port> portList,
+      RequestClassifier requestClassifier) {
     this.host = config.hostName;
     this.port = config.port;
     this.numProcessorThreads = config.numIoThreads;
@@ -72,13 +100,36 @@ public class SocketServer implements NetworkServer {
     this.sendBufferSize = config.socketSendBufferBytes;
     this.recvBufferSize = config.socketReceiveBufferBytes;
     this.maxRequestSize = config.socketRequestMaxBytes;
+    this.acceptorThreadsPerPort = config.networkAcceptorThreadsPerPort;
     processors = new ArrayList<Processor>(numProcessorThreads);
-    requestResponseChannel = new SocketRequestResponseChannel(numProcessorThreads, maxQueuedRequests);
+    Map<RequestClass, Integer> queueWeights = new EnumMap<>(RequestClass.class);
+    queueWeights.put(RequestClass.CLIENT_READ, config.networkRequestQueueClientReadWeight);
+    queueWeights.put(RequestClass.CLIENT_WRITE, config.networkRequestQueueClientWriteWeight);
+    queueWeights.put(RequestClass.REPLICATION, config.networkRequestQueueReplicationWeight);
+    queueWeights.put(RequestClass.ADMIN, config.networkRequestQueueAdminWeight);
+    requestResponseChannel =
+        new SocketRequestResponseChannel(numProcessorThreads, maxQueuedRequests, requestClassifier, queueWeights);
     metrics = new ServerNetworkMetrics(requestResponseChannel, registry, processors);
     this.acceptors = new ArrayList<Acceptor>();
     this.ports = new HashMap<PortType, Port>();
     this.validatePorts(portList);
     this.initializeSSLFactory(sslConfig);
+    if (config.networkReceiveBufferPoolCapacityBytes > 0) {
+      receiveBufferPool = new SizeClassedByteBufferPool(config.networkReceiveBufferPoolCapacityBytes,
+          config.networkReceiveBufferPoolMaxPooledBufferSizeBytes, config.networkReceiveBufferPoolUseDirectBuffers);
+      metrics.registerReceiveBufferPool(receiveBufferPool);
+    } else {
+      receiveBufferPool = null;
+    }
+    if (config.networkSslBufferPoolCapacityBytes > 0) {
+      sslBufferPool =
+          SSLTransmission.newBufferPool(config.networkSslBufferPoolCapacityBytes, config.networkSslWriteBatchRecords);
+      metrics.registerSslBufferPool(sslBufferPool);
+    } else {
+      sslBufferPool = null;
+    }
+    sslWriteBatchRecords = config.networkSslWriteBatchRecords;
+    sslCpuTimeMetricsEnabled = config.networkSslCpuTimeMetricsEnabled;
   }
 
   public String getHost() {
@@ -149,28 +200,46 @@ public class SocketServer implements NetworkServer {
   public void start() throws IOException, InterruptedException {
     logger.info("Starting {} processor threads", numProcessorThreads);
     for (int i = 0; i < numProcessorThreads; i++) {
-      processors.add(i, new Processor(i, maxRequestSize, requestResponseChannel, metrics, sslFactory));
+      processors.add(i,
+          new Processor(i, maxRequestSize, requestResponseChannel, metrics, sslFactory, receiveBufferPool,
+              sslBufferPool, sslWriteBatchRecords, sslCpuTimeMetricsEnabled));
       Utils.newThread("ambry-processor-" + port + " " + i, processors.get(i), false).start();
     }
 
     requestResponseChannel.addResponseListener(new ResponseListener() {
       @Override
       public void onResponse(int processorId) {
-        processors.get(processorId).wakeup();
+        processors.get(processorId).onResponse();
       }
     });
 
     // start accepting connections
-    logger.info("Starting acceptor threads on port {}", port);
-    Acceptor plainTextAcceptor = new Acceptor(port, processors, sendBufferSize, recvBufferSize, metrics);
-    this.acceptors.add(plainTextAcceptor);
-    Utils.newThread("ambry-acceptor", plainTextAcceptor, false).start();
+    int numAcceptors = acceptorThreadsPerPort;
+    if (numAcceptors > 1 && !Acceptor.isReusePortSupported()) {
+      logger.warn("SO_REUSEPORT is not supported on this platform. Using one acceptor thread per port instead of {}",
+          numAcceptors);
+      numAcceptors = 1;
+    }
+    boolean reusePort = numAcceptors > 1;
+    logger.info("Starting {} acceptor threads on port {}", numAcceptors, port);
+    AtomicInteger nextPlainTextProcessor = new AtomicInteger(0);
+    for (int i = 0; i < numAcceptors; i++) {
+      Acceptor plainTextAcceptor =
+          new Acceptor(port, processors, sendBufferSize, recvBufferSize, metrics, reusePort, nextPlainTextProcessor);
+      this.acceptors.add(plainTextAcceptor);
+      Utils.newThread("ambry-acceptor-" + i, plainTextAcceptor, false).start();
+    }
 
     Port sslPort = ports.get(PortType.SSL);
     if (sslPort != null) {
-      SSLAcceptor sslAcceptor = new SSLAcceptor(sslPort.getPort(), processors, sendBufferSize, recvBufferSize, metrics);
-      acceptors.add(sslAcceptor);
-      Utils.newThread("ambry-sslacceptor", sslAcceptor, false).start();
+      AtomicInteger nextSslProcessor = new AtomicInteger(0);
+      for (int i = 0; i < numAcceptors; i++) {
+        SSLAcceptor sslAcceptor =
+            new SSLAcceptor(sslPort.getPort(), processors, sendBufferSize, recvBufferSize, metrics, reusePort,
+                nextSslProcessor);
+        acceptors.add(sslAcceptor);
+        Utils.newThread("ambry-sslacceptor-" + i, sslAcceptor, false).start();
+      }
     }
     for (Acceptor acceptor : acceptors) {
       acceptor.awaitStartup();
@@ -250,9 +319,12 @@ abstract class AbstractServerThread implements Runnable {
 }
 
 /**
- * Thread that accepts and configures new connections.
+ * Thread that accepts and configures new connections. Several acceptors can accept connections on the same port if
+ * they bind with SO_REUSEPORT, in which case the kernel spreads the new connections across them.
  */
 class Acceptor extends AbstractServerThread {
+  // StandardSocketOptions.SO_REUSEPORT only exists from JDK 9 on. null if it does not exist.
+  private static final SocketOption<Boolean> SO_REUSEPORT = lookUpReusePortOption();
   private final ArrayList<Processor> processors;
   private final int sendBufferSize;
   private final int recvBufferSize;
@@ -260,16 +332,53 @@ class Acceptor extends AbstractServerThread {
   private final java.nio.channels.Selector nioSelector;
   private static final long selectTimeOutMs = 500;
   private final ServerNetworkMetrics metrics;
+  // shared by all the acceptors of the port, so that their connections are spread evenly across the processors.
+  private final AtomicInteger nextProcessor;
+  private final Time time = SystemTime.getInstance();
   protected Logger logger = LoggerFactory.getLogger(getClass());
 
+  /**
+   * @param port the port to accept connections on.
+   * @param processors the {@link Processor}s to hand the connections to.
+   * @param sendBufferSize the size of the socket send buffer of the connections.
+   * @param recvBufferSize the size of the socket receive buffer of the connections.
+   * @param metrics the {@link ServerNetworkMetrics} to use.
+   * @param reusePort {@code true} if the server socket should be bound with SO_REUSEPORT.
+   * @param nextProcessor the index of the processor that gets the next connection, shared by the acceptors of the port.
+   * @throws IOException if the server socket cannot be opened.
+   */
   public Acceptor(int port, ArrayList<Processor> processors, int sendBufferSize, int recvBufferSize,
-      ServerNetworkMetrics metrics) throws IOException {
+      ServerNetworkMetrics metrics, boolean reusePort, AtomicInteger nextProcessor) throws IOException {
     this.processors = processors;
     this.sendBufferSize = sendBufferSize;
     this.recvBufferSize = recvBufferSize;
-    this.serverChannel = openServerSocket(port);
+    this.serverChannel = openServerSocket(port, reusePort);
     this.nioSelector = java.nio.channels.Selector.open();
     this.metrics = metrics;
+    this.nextProcessor = nextProcessor;
+  }
+
+  /**
+   * @return {@code true} if server sockets can be bound with SO_REUSEPORT on this platform.
+   */
+  static boolean isReusePortSupported() {
+    if (SO_REUSEPORT == null) {
+      return false;
+    }
+    try (ServerSocketChannel serverSocketChannel = ServerSocketChannel.open()) {
+      return serverSocketChannel.supportedOptions().contains(SO_REUSEPORT);
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static SocketOption<Boolean> lookUpReusePortOption() {
+    try {
+      return (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
   }
 
   /**
@@ -279,7 +388,6 @@ class Acceptor extends AbstractServerThread {
     try {
       serverChannel.register(nioSelector, SelectionKey.OP_ACCEPT);
       startupComplete();
-      int currentProcessor = 0;
       while (isRunning()) {
         int ready = nioSelector.select(selectTimeOutMs);
         if (ready > 0) {
@@ -291,13 +399,15 @@ class Acceptor extends AbstractServerThread {
               key = iter.next();
               iter.remove();
               if (key.isAcceptable()) {
-                accept(key, processors.get(currentProcessor));
+                long startTimeNs = time.nanoseconds();
+                // round robin to the next processor thread
+                accept(key, processors.get(Math.floorMod(nextProcessor.getAndIncrement(), processors.size())));
+                metrics.acceptConnectionRate.mark();
+                metrics.acceptConnectionTimeInUs.update(
+                    TimeUnit.NANOSECONDS.toMicros(time.nanoseconds() - startTimeNs));
               } else {
                 throw new IllegalStateException("Unrecognized key state for acceptor thread.");
               }
-
-              // round robin to the next processor thread
-              currentProcessor = (currentProcessor + 1) % processors.size();
             } catch (Exception e) {
               key.cancel();
               metrics.acceptConnectionErrorCount.inc();
@@ -320,10 +430,13 @@ class Acceptor extends AbstractServerThread {
   /*
    * Create a server socket to listen for connections on.
    */
-  private ServerSocketChannel openServerSocket(int port) throws IOException {
+  private ServerSocketChannel openServerSocket(int port, boolean reusePort) throws IOException {
     InetSocketAddress address = new InetSocketAddress(port);
     ServerSocketChannel serverChannel = ServerSocketChannel.open();
     serverChannel.configureBlocking(false);
+    if (reusePort) {
+      serverChannel.setOption(SO_REUSEPORT, true);
+    }
     serverChannel.socket().bind(address);
     logger.info("Awaiting socket connections on {}:{}", address.getHostName(), port);
     return serverChannel;
@@ -364,8 +477,8 @@ class Acceptor extends AbstractServerThread {
 class SSLAcceptor extends Acceptor {
 
   public SSLAcceptor(int port, ArrayList<Processor> processors, int sendBufferSize, int recvBufferSize,
-      ServerNetworkMetrics metrics) throws IOException {
-    super(port, processors, sendBufferSize, recvBufferSize, metrics);
+      ServerNetworkMetrics metrics, boolean reusePort, AtomicInteger nextProcessor) throws IOException {
+    super(port, processors, sendBufferSize, recvBufferSize, metrics, reusePort, nextProcessor);
   }
 
   /*
@@ -391,15 +504,20 @@ class Processor extends AbstractServerThread {
       new ConcurrentLinkedQueue<SocketChannelPortTypePair>();
   private final Selector selector;
   private final ServerNetworkMetrics metrics;
+  // set while the processor selects with a timeout. New responses only wake up the selector while it is set, so a
+  // burst of responses costs a single wakeup instead of one per response.
+  private final AtomicBoolean parked = new AtomicBoolean(false);
   private static final long pollTimeoutMs = 300;
 
   Processor(int id, int maxRequestSize, RequestResponseChannel channel, ServerNetworkMetrics metrics,
-      SSLFactory sslFactory) throws IOException {
+      SSLFactory sslFactory, ByteBufferPool receiveBufferPool, ByteBufferPool sslBufferPool, int sslWriteBatchRecords,
+      boolean sslCpuTimeMetricsEnabled) throws IOException {
     this.maxRequestSize = maxRequestSize;
     this.channel = (SocketRequestResponseChannel) channel;
     this.id = id;
     this.time = SystemTime.getInstance();
-    selector = new Selector(metrics, time, sslFactory);
+    selector = new Selector(metrics, time, sslFactory, receiveBufferPool, sslBufferPool, sslWriteBatchRecords,
+        sslCpuTimeMetricsEnabled);
     this.metrics = metrics;
   }
 
@@ -411,14 +529,17 @@ class Processor extends AbstractServerThread {
         configureNewConnections();
         // register any new responses for writing
         processNewResponses();
-        selector.poll(pollTimeoutMs);
+        selector.poll(park() ? pollTimeoutMs : 0);
+        parked.set(false);
 
         // handle completed receives
         List<NetworkReceive> completedReceives = selector.completedReceives();
         for (NetworkReceive networkReceive : completedReceives) {
           String connectionId = networkReceive.getConnectionId();
-          SocketServerRequest req = new SocketServerRequest(id, connectionId,
-              new ByteBufferInputStream(networkReceive.getReceivedBytes().getPayload()));
+          BoundedByteBufferReceive receivedBytes = networkReceive.getReceivedBytes();
+          SocketServerRequest req =
+              new SocketServerRequest(id, connectionId, new ByteBufferInputStream(receivedBytes.getPayload()),
+                  receivedBytes);
           channel.sendRequest(req);
         }
       }
@@ -452,9 +573,15 @@ class Processor extends AbstractServerThread {
         } else {
           logger.trace("Socket server received response to send, registering for write: {}", curr);
           NetworkSend networkSend = new NetworkSend(connectionId, curr.getPayload(), curr.getMetrics(), time);
-          selector.send(networkSend);
+          // clients can have several requests outstanding on a connection and the responses to them can be ready in
+          // any order, so a response may have to wait for the one being written before it.
+          selector.queueSend(networkSend);
         }
       } catch (IllegalStateException e) {
+        // the connection was closed before the response could be sent.
+        if (curr.getPayload() != null) {
+          curr.getPayload().release();
+        }
         metrics.processNewResponseErrorCount.inc();
         logger.debug("Error in processing new responses", e);
       } finally {
@@ -463,6 +590,33 @@ class Processor extends AbstractServerThread {
     }
   }
 
+  /**
+   * Marks the processor as parked before it selects. A response that is queued after the response queue was drained
+   * but before the processor was marked does not wake it up, so the response queue is checked again after marking.
+   * @return {@code true} if the processor can wait in the select. {@code false} if there are responses to send.
+   */
+  private boolean park() {
+    parked.set(true);
+    if (channel.hasResponses(id)) {
+      parked.set(false);
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Called when a response is queued for this processor. Wakes up the selector if the processor is parked in a select,
+   * and does nothing otherwise since the processor picks up the response before it selects again.
+   */
+  void onResponse() {
+    if (parked.compareAndSet(true, false)) {
+      metrics.processorWakeupCount.inc();
+      selector.wakeup();
+    } else {
+      metrics.processorWakeupCoalescedCount.inc();
+    }
+  }
+
   /**
    * Queue up a new connection for reading
    */
@@ -13,11 +13,14 @@
  */
 package com.github.ambry.network;
 
+import com.github.ambry.utils.ByteBufferPool;
 import com.github.ambry.utils.Time;
 import java.io.IOException;
 import java.net.SocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 
 /**
@@ -31,10 +34,14 @@ public abstract class Transmission {
   private String connectionId;
   protected NetworkSend networkSend = null;
   protected NetworkReceive networkReceive = null;
+  // sends waiting for the send in progress to complete
+  private final Deque<NetworkSend> queuedSends = new ArrayDeque<>();
   protected SocketChannel socketChannel = null;
   protected SelectionKey key = null;
   protected final Time time;
   protected final NetworkMetrics metrics;
+  // the pool that receive buffers are taken from. null if receives allocate their own buffers.
+  private ByteBufferPool receiveBufferPool = null;
 
   public Transmission(String connectionId, SocketChannel socketChannel, SelectionKey key, Time time,
       NetworkMetrics metrics) {
@@ -69,6 +76,31 @@ public abstract class Transmission {
     key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
   }
 
+  /**
+   * Sets {@code networkSend} to be written to the underlying channel if there is no send in progress. Otherwise, queues
+   * it to be written once the sends before it are complete.
+   * @param networkSend the {@link NetworkSend} to write.
+   */
+  public void queueNetworkSend(NetworkSend networkSend) {
+    if (hasSend()) {
+      queuedSends.add(networkSend);
+    } else {
+      setNetworkSend(networkSend);
+    }
+  }
+
+  /**
+   * Starts writing the next queued send, if there is one and no send is in progress.
+   * @return {@code true} if a queued send was started.
+   */
+  public boolean startQueuedSend() {
+    if (hasSend() || queuedSends.isEmpty()) {
+      return false;
+    }
+    setNetworkSend(queuedSends.poll());
+    return true;
+  }
+
   /**
    * Prepare the channel to accept read and write calls
    * @throws IOException
@@ -154,6 +186,48 @@ public abstract class Transmission {
     networkReceive = null;
   }
 
+  /**
+   * Sets the {@link ByteBufferPool} that the buffers of the requests or responses received on this transmission are
+   * taken from.
+   * @param receiveBufferPool the {@link ByteBufferPool} to use. {@code null} if every receive should allocate its own
+   *                          buffer.
+   */
+  public void setReceiveBufferPool(ByteBufferPool receiveBufferPool) {
+    this.receiveBufferPool = receiveBufferPool;
+  }
+
+  /**
+   * @return a new {@link NetworkReceive} that takes its buffer from the receive buffer pool, if there is one.
+   */
+  protected NetworkReceive createNetworkReceive() {
+    return new NetworkReceive(getConnectionId(), new BoundedByteBufferReceive(receiveBufferPool), time);
+  }
+
+  /**
+   * Drops the receive in progress, if any, and returns its buffer to the receive buffer pool. Completed receives are
+   * owned by whoever consumes them and are not released here.
+   */
+  protected void abortReceive() {
+    if (networkReceive != null && !networkReceive.getReceivedBytes().isReadComplete()) {
+      networkReceive.getReceivedBytes().release();
+    }
+    clearReceive();
+  }
+
+  /**
+   * Releases the send in progress, if any, and the queued sends. Called when the connection is closed, after which they
+   * will not be written.
+   */
+  protected void releaseSends() {
+    if (networkSend != null) {
+      networkSend.getPayload().release();
+    }
+    for (NetworkSend queuedSend : queuedSends) {
+      queuedSend.getPayload().release();
+    }
+    queuedSends.clear();
+  }
+
   public NetworkReceive getNetworkReceive() {
     return this.networkReceive;
   }
@@ -14,6 +14,7 @@
 package com.github.ambry.network;
 
 import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.util.Random;
@@ -45,4 +46,43 @@ public class BoundedByteBufferReceiveTest {
       Assert.assertEquals(buffer.array()[i], payload.get());
     }
   }
+
+  /**
+   * Test that {@link BoundedByteBufferReceive} takes its buffer from a pool and returns it on release.
+   * @throws Exception
+   */
+  @Test
+  public void testPooledBoundedByteBufferReceive() throws Exception {
+    int bufferSize = 2000;
+    ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+    buffer.putLong(bufferSize);
+    byte[] buf = new byte[bufferSize - Long.BYTES];
+    new Random().nextBytes(buf);
+    buffer.put(buf);
+    buffer.flip();
+    SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(4096, 4096, false);
+    BoundedByteBufferReceive set = new BoundedByteBufferReceive(pool);
+    Assert.assertEquals("Wrong number of bytes read", bufferSize,
+        set.readFrom(Channels.newChannel(new ByteBufferInputStream(buffer))));
+    Assert.assertTrue("Read should be complete", set.isReadComplete());
+    ByteBuffer payload = set.getPayload();
+    Assert.assertEquals("Payload size not as expected", bufferSize - Long.BYTES, payload.remaining());
+    for (int i = 8; i < bufferSize; i++) {
+      Assert.assertEquals(buffer.array()[i], payload.get());
+    }
+    Assert.assertEquals("Buffer should have come from the pool", 1, pool.getMissCount());
+    set.release();
+    Assert.assertNull("Payload should not be available after release", set.getPayload());
+    Assert.assertEquals("Buffer should have been returned to the pool", payload.capacity(), pool.getFreeBytes());
+    // releasing again has no effect
+    set.release();
+    Assert.assertEquals("Buffer should have been returned only once", payload.capacity(), pool.getFreeBytes());
+
+    // the next receive reuses the buffer
+    buffer.rewind();
+    set = new BoundedByteBufferReceive(pool);
+    set.readFrom(Channels.newChannel(new ByteBufferInputStream(buffer)));
+    Assert.assertSame("Buffer should have been reused", payload, set.getPayload());
+    Assert.assertEquals("Hit count not as expected", 1, pool.getHitCount());
+  }
 }
@@ -47,6 +47,14 @@ class ByteArraySend implements Send {
   public long sizeInBytes() {
     return bytesToSend.capacity();
   }
+
+  @Override
+  public boolean addPendingBuffers(List<ByteBuffer> buffers) {
+    if (bytesToSend.hasRemaining()) {
+      buffers.add(bytesToSend);
+    }
+    return true;
+  }
 }
 
 public class CompositeSendTest {
@@ -84,4 +92,81 @@ public class CompositeSendTest {
       Assert.assertEquals(buf3[i], bufferToWrite.get(1024 + 2048 + i));
     }
   }
+
+  /**
+   * Tests that a {@link CompositeSend} exposes the buffers of its sends up to the first send that cannot expose them
+   * and that it keeps track of the bytes written from the buffers, also if they are written partially.
+   */
+  @Test
+  public void testCompositeSendPendingBuffers() throws IOException {
+    byte[] buf1 = new byte[100];
+    byte[] buf2 = new byte[200];
+    byte[] buf3 = new byte[300];
+    byte[] buf4 = new byte[400];
+    Random random = new Random();
+    random.nextBytes(buf1);
+    random.nextBytes(buf2);
+    random.nextBytes(buf3);
+    random.nextBytes(buf4);
+    List<Send> listToSend = new ArrayList<>();
+    listToSend.add(new ByteArraySend(buf1));
+    listToSend.add(new ByteArraySend(buf2));
+    // ByteBufferSend does not expose its buffer, so it has to be written with writeTo()
+    listToSend.add(new ByteBufferSend(ByteBuffer.wrap(buf3)));
+    listToSend.add(new ByteArraySend(buf4));
+    CompositeSend compositeSend = new CompositeSend(listToSend);
+
+    List<ByteBuffer> buffers = new ArrayList<>();
+    Assert.assertFalse("Not all bytes should be pending in buffers", compositeSend.addPendingBuffers(buffers));
+    Assert.assertEquals("Unexpected number of pending buffers", 2, buffers.size());
+
+    ByteBuffer bufferToWrite = ByteBuffer.allocate(1000);
+    WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(bufferToWrite));
+    int writeCount = 0;
+    while (!compositeSend.isSendComplete()) {
+      buffers.clear();
+      compositeSend.addPendingBuffers(buffers);
+      if (buffers.isEmpty()) {
+        compositeSend.writeTo(channel);
+      } else {
+        // write at most 150 bytes from the buffers to simulate partial writes
+        compositeSend.onBuffersWritten(writeFromBuffers(buffers, channel, 150));
+      }
+      writeCount++;
+    }
+    // 100 + 200 bytes are written in two writes, then 300 bytes in one and 400 bytes in three
+    Assert.assertEquals("Unexpected number of writes", 6, writeCount);
+    buffers.clear();
+    Assert.assertTrue("No bytes should be pending", compositeSend.addPendingBuffers(buffers));
+    Assert.assertEquals("No buffers should be pending", 0, buffers.size());
+    bufferToWrite.flip();
+    int offset = 0;
+    for (byte[] buf : new byte[][]{buf1, buf2, buf3, buf4}) {
+      for (int i = 0; i < buf.length; i++) {
+        Assert.assertEquals(buf[i], bufferToWrite.get(offset + i));
+      }
+      offset += buf.length;
+    }
+  }
+
+  /**
+   * Writes bytes from {@code buffers}, in order, like a gathering write that is limited to {@code maxBytes}.
+   * @param buffers the buffers to write from.
+   * @param channel the channel to write to.
+   * @param maxBytes the maximum number of bytes to write.
+   * @return the number of bytes written.
+   * @throws IOException if the write fails.
+   */
+  private long writeFromBuffers(List<ByteBuffer> buffers, WritableByteChannel channel, int maxBytes)
+      throws IOException {
+    long written = 0;
+    for (ByteBuffer buffer : buffers) {
+      ByteBuffer slice = buffer.duplicate();
+      slice.limit(slice.position() + (int) Math.min(slice.remaining(), maxBytes - written));
+      int bytes = channel.write(slice);
+      buffer.position(buffer.position() + bytes);
+      written += bytes;
+    }
+    return written;
+  }
 }
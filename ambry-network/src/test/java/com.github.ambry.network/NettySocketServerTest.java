@@ -0,0 +1,216 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.network;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.commons.SSLFactory;
+import com.github.ambry.commons.TestSSLUtils;
+import com.github.ambry.config.NetworkConfig;
+import com.github.ambry.config.SSLConfig;
+import com.github.ambry.config.VerifiableProperties;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Random;
+import javax.net.ssl.SSLSocketFactory;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+
+/**
+ * Tests for {@link NettySocketServer}.
+ */
+public class NettySocketServerTest {
+  private static SSLSocketFactory clientSSLSocketFactory;
+  private static SSLConfig clientSSLConfig;
+  private static SSLConfig serverSSLConfig;
+  private final NettySocketServer server;
+
+  /**
+   * Run only once for all tests
+   */
+  @BeforeClass
+  public static void initializeTests() throws Exception {
+    File trustStoreFile = File.createTempFile("truststore", ".jks");
+    serverSSLConfig =
+        new SSLConfig(TestSSLUtils.createSslProps("DC1,DC2,DC3", SSLFactory.Mode.SERVER, trustStoreFile, "server"));
+    clientSSLConfig =
+        new SSLConfig(TestSSLUtils.createSslProps("DC1,DC2,DC3", SSLFactory.Mode.CLIENT, trustStoreFile, "client"));
+    clientSSLSocketFactory = SSLFactory.getNewInstance(clientSSLConfig).getSSLContext().getSocketFactory();
+  }
+
+  public NettySocketServerTest() throws Exception {
+    NetworkConfig config = new NetworkConfig(new VerifiableProperties(new Properties()));
+    ArrayList<Port> ports = new ArrayList<>();
+    ports.add(new Port(choosePort(), PortType.PLAINTEXT));
+    ports.add(new Port(choosePort(), PortType.SSL));
+    server = new NettySocketServer(config, serverSSLConfig, new MetricRegistry(), ports);
+    server.start();
+  }
+
+  @After
+  public void cleanup() {
+    server.shutdown();
+  }
+
+  /**
+   * Tests a request and a response on the plaintext port.
+   * @throws Exception
+   */
+  @Test
+  public void simpleRequest() throws Exception {
+    doRequestResponse(new Port(server.getPort(), PortType.PLAINTEXT), 1028, 2048);
+  }
+
+  /**
+   * Tests a request and a response on the SSL port.
+   * @throws Exception
+   */
+  @Test
+  public void simpleSSLRequest() throws Exception {
+    doRequestResponse(new Port(server.getSSLPort(), PortType.SSL), 1028, 2048);
+  }
+
+  /**
+   * Tests requests and responses that span several reads and several chunks.
+   * @throws Exception
+   */
+  @Test
+  public void largeRequestResponse() throws Exception {
+    int size = 3 * SendChunkedInput.CHUNK_SIZE + 17;
+    doRequestResponse(new Port(server.getPort(), PortType.PLAINTEXT), size, size);
+    doRequestResponse(new Port(server.getSSLPort(), PortType.SSL), size, size);
+  }
+
+  /**
+   * Tests that a connection stops reading instead of blocking its event loop when the request queue is full, and that
+   * the requests it holds back are handed over in order once the queue has room.
+   * @throws Exception
+   */
+  @Test
+  public void fullRequestQueueTest() throws Exception {
+    Properties props = new Properties();
+    props.setProperty("queued.max.requests", "1");
+    ArrayList<Port> ports = new ArrayList<>();
+    ports.add(new Port(choosePort(), PortType.PLAINTEXT));
+    NettySocketServer smallQueueServer =
+        new NettySocketServer(new NetworkConfig(new VerifiableProperties(props)), serverSSLConfig,
+            new MetricRegistry(), ports);
+    smallQueueServer.start();
+    BlockingChannel channel = new BlockingChannel("localhost", smallQueueServer.getPort(), 10000, 10000, 10000, 2000);
+    try {
+      NettyServerRequestResponseChannel requestResponseChannel =
+          (NettyServerRequestResponseChannel) smallQueueServer.getRequestResponseChannel();
+      channel.connect();
+      int requestSize = 100;
+      int requestCount = 4;
+      for (int i = 0; i < requestCount; i++) {
+        ByteBuffer buffer = ByteBuffer.allocate(requestSize);
+        buffer.putLong(requestSize);
+        buffer.putInt(i);
+        buffer.rewind();
+        channel.send(new BoundedByteBufferSend(buffer));
+      }
+      Request first = requestResponseChannel.receiveRequest();
+      Assert.assertEquals("Unexpected request", 0, new DataInputStream(first.getInputStream()).readInt());
+      // the second request fills the queue, so the third one has to be held back by the connection.
+      long deadline = System.currentTimeMillis() + 10000;
+      while (requestResponseChannel.getMetrics().requestQueueFullCount.getCount() == 0) {
+        Assert.assertTrue("Connection did not stop reading", System.currentTimeMillis() < deadline);
+        Thread.sleep(10);
+      }
+      // the event loop must still be able to write responses while the queue is full.
+      ByteBuffer response = ByteBuffer.allocate(requestSize);
+      response.putLong(0, requestSize);
+      requestResponseChannel.sendResponse(new BoundedByteBufferSend(response), first, null);
+      DataInputStream responseStream = new DataInputStream(channel.receive().getInputStream());
+      responseStream.readFully(new byte[requestSize - 8]);
+      first.release();
+      for (int i = 1; i < requestCount; i++) {
+        Request request = requestResponseChannel.receiveRequest();
+        Assert.assertEquals("Requests out of order", i, new DataInputStream(request.getInputStream()).readInt());
+        request.release();
+      }
+      Assert.assertEquals("There should be no queued requests", 0, requestResponseChannel.getRequestQueueSize());
+    } finally {
+      channel.disconnect();
+      smallQueueServer.shutdown();
+    }
+  }
+
+  /**
+   * Sends a request of {@code requestSize} bytes to {@code targetPort}, verifies that the server receives it, and
+   * verifies that the response of {@code responseSize} bytes reaches the client.
+   * @param targetPort the {@link Port} to send the request to.
+   * @param requestSize the size of the request, including the size header.
+   * @param responseSize the size of the response, including the size header.
+   * @throws Exception
+   */
+  private void doRequestResponse(Port targetPort, int requestSize, int responseSize) throws Exception {
+    Random random = new Random();
+    byte[] bytesToSend = new byte[requestSize];
+    random.nextBytes(bytesToSend);
+    ByteBuffer byteBufferToSend = ByteBuffer.wrap(bytesToSend);
+    byteBufferToSend.putLong(0, requestSize);
+    BlockingChannel channel;
+    if (targetPort.getPortType() == PortType.SSL) {
+      channel = new SSLBlockingChannel("localhost", targetPort.getPort(), new MetricRegistry(), 10000, 10000, 10000,
+          2000, clientSSLSocketFactory, clientSSLConfig);
+    } else {
+      channel = new BlockingChannel("localhost", targetPort.getPort(), 10000, 10000, 10000, 2000);
+    }
+    channel.connect();
+    channel.send(new BoundedByteBufferSend(byteBufferToSend));
+    RequestResponseChannel requestResponseChannel = server.getRequestResponseChannel();
+    Request request = requestResponseChannel.receiveRequest();
+    DataInputStream requestStream = new DataInputStream(request.getInputStream());
+    byte[] outputBytes = new byte[requestSize - 8];
+    requestStream.readFully(outputBytes);
+    Assert.assertEquals("There should be nothing left in the request", -1, requestStream.read());
+    for (int i = 0; i < outputBytes.length; i++) {
+      Assert.assertEquals(bytesToSend[8 + i], outputBytes[i]);
+    }
+    request.release();
+
+    // send response back and ensure response is received
+    byte[] responseBytes = new byte[responseSize];
+    random.nextBytes(responseBytes);
+    ByteBuffer byteBufferToSendResponse = ByteBuffer.wrap(responseBytes);
+    byteBufferToSendResponse.putLong(0, responseSize);
+    requestResponseChannel.sendResponse(new BoundedByteBufferSend(byteBufferToSendResponse), request, null);
+    DataInputStream streamResponse = new DataInputStream(channel.receive().getInputStream());
+    byte[] responseBytesReceived = new byte[responseSize - 8];
+    streamResponse.readFully(responseBytesReceived);
+    for (int i = 0; i < responseBytesReceived.length; i++) {
+      Assert.assertEquals(responseBytes[8 + i], responseBytesReceived[i]);
+    }
+    channel.disconnect();
+  }
+
+  /**
+   * @return a port that is currently free.
+   * @throws IOException
+   */
+  private static int choosePort() throws IOException {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
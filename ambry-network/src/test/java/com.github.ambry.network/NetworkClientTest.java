@@ -472,6 +472,68 @@ public class NetworkClientTest {
     Assert.assertTrue("Selector should have been woken up at this point", selector.getAndClearWokenUpStatus());
   }
 
+  /**
+   * Tests that requests with correlation ids share connections when multiplexing is enabled, that the responses are
+   * matched to the right requests and that all the requests in flight on a connection fail if it is disconnected.
+   * @throws IOException
+   */
+  @Test
+  public void testMultiplexedSendAndPoll() throws IOException {
+    int maxInFlightRequestsPerConnection = 4;
+    Properties props = new Properties();
+    props.setProperty("network.client.max.in.flight.requests.per.connection",
+        Integer.toString(maxInFlightRequestsPerConnection));
+    NetworkConfig networkConfig = new NetworkConfig(new VerifiableProperties(props));
+    MockSelector selector = new MockSelector();
+    NetworkMetrics networkMetrics = new NetworkMetrics(new MetricRegistry());
+    NetworkClient networkClient =
+        new NetworkClient(selector, networkConfig, networkMetrics, MAX_PORTS_PLAIN_TEXT, MAX_PORTS_SSL,
+            CHECKOUT_TIMEOUT_MS, time);
+    DataNodeId dataNodeId = localPlainTextDataNodes.get(0);
+    ReplicaId replicaId = sslDisabledClusterMap.getReplicaIds(dataNodeId).get(0);
+    int requestCount = 2 * maxInFlightRequestsPerConnection;
+    List<RequestInfo> requestInfoList = new ArrayList<>();
+    for (int i = 0; i < requestCount; i++) {
+      requestInfoList.add(
+          new RequestInfo(dataNodeId.getHostname(), dataNodeId.getPortToConnectTo(), new MockSend(i), replicaId, i));
+    }
+    Set<Integer> respondedCorrelationIds = new HashSet<>();
+    for (int i = 0; i < 5 * requestCount && respondedCorrelationIds.size() < requestCount; i++) {
+      for (ResponseInfo responseInfo : networkClient.sendAndPoll(requestInfoList, POLL_TIMEOUT_MS)) {
+        Assert.assertNull("Should not have encountered an error", responseInfo.getError());
+        int correlationIdInRequest = responseInfo.getRequestInfo().getCorrelationId();
+        Assert.assertEquals("Received response for the wrong request", correlationIdInRequest,
+            responseInfo.getResponse().getInt(4));
+        Assert.assertTrue("Received more than one response for a request",
+            respondedCorrelationIds.add(correlationIdInRequest));
+      }
+      requestInfoList.clear();
+    }
+    Assert.assertEquals("Should have received responses for all requests", requestCount,
+        respondedCorrelationIds.size());
+    Assert.assertEquals("Requests should have been sent on as few connections as possible", 2,
+        selector.getConnectionIdsWithSends().size());
+    Assert.assertEquals("Unexpected multiplexed request count", requestCount,
+        networkMetrics.multiplexedRequestCount.getCount());
+    Assert.assertEquals("There should have been no unexpected responses", 0,
+        networkMetrics.unexpectedMultiplexedResponseCount.getCount());
+
+    // a disconnection fails all the requests in flight on the connection
+    selector.setState(MockSelectorState.DisconnectOnSend);
+    for (int i = 0; i < maxInFlightRequestsPerConnection; i++) {
+      requestInfoList.add(
+          new RequestInfo(dataNodeId.getHostname(), dataNodeId.getPortToConnectTo(), new MockSend(i), replicaId, i));
+    }
+    List<ResponseInfo> responseInfoList = networkClient.sendAndPoll(requestInfoList, POLL_TIMEOUT_MS);
+    Assert.assertEquals("All requests on the connection should have failed", maxInFlightRequestsPerConnection,
+        responseInfoList.size());
+    for (ResponseInfo responseInfo : responseInfoList) {
+      Assert.assertEquals("Should have received a network error", NetworkClientErrorCode.NetworkError,
+          responseInfo.getError());
+    }
+    networkClient.close();
+  }
+
   /**
    * Test to ensure subsequent operations after a close throw an {@link IllegalStateException}.
    */
@@ -574,6 +636,8 @@ class MockBoundedByteBufferReceive extends BoundedByteBufferReceive {
   public MockBoundedByteBufferReceive(int correlationId) {
     buf = ByteBuffer.allocate(16);
     buf.putInt(0, correlationId);
+    // also at the offset of the correlation id in real responses, which is used to match multiplexed responses
+    buf.putInt(4, correlationId);
     buf.rewind();
   }
 
@@ -637,6 +701,7 @@ class MockSelector extends Selector {
   private final List<String> delayedFailPassedList = new ArrayList<>();
   private List<NetworkSend> sends = new ArrayList<>();
   private List<NetworkReceive> receives = new ArrayList<>();
+  private final Set<String> connectionIdsWithSends = new HashSet<>();
   private MockSelectorState state = MockSelectorState.Good;
   private boolean wakeUpCalled = false;
   private int connectCallCount = 0;
@@ -687,6 +752,13 @@ class MockSelector extends Selector {
     return hostPortString;
   }
 
+  /**
+   * @return the ids of all the connections that sends were made on.
+   */
+  Set<String> getConnectionIdsWithSends() {
+    return connectionIdsWithSends;
+  }
+
   /**
    * Return the number of times connect was called.
    */
@@ -723,6 +795,7 @@ class MockSelector extends Selector {
     this.sends = sends;
     if (sends != null) {
       for (NetworkSend send : sends) {
+        connectionIdsWithSends.add(send.getConnectionId());
         MockSend mockSend = (MockSend) send.getPayload();
         if (state == MockSelectorState.DisconnectOnSend) {
           disconnected.add(send.getConnectionId());
@@ -17,11 +17,13 @@ import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.commons.TestSSLUtils;
 import com.github.ambry.config.SSLConfig;
+import com.github.ambry.utils.SizeClassedByteBufferPool;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.TestUtils;
 import com.github.ambry.utils.Time;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.SocketChannel;
@@ -36,6 +38,7 @@ import org.junit.Test;
 
 import static java.util.Arrays.*;
 import static org.junit.Assert.*;
+import static org.junit.Assume.*;
 
 
 public class SSLSelectorTest {
@@ -278,6 +281,44 @@ public class SSLSelectorTest {
     assertEquals("Wrong echoed response", message, blockingRequest(connectionId, message));
   }
 
+  /**
+   * Tests that SSL connections can take their buffers from a pool, return them while they are idle, and batch records
+   * when writing.
+   */
+  @Test
+  public void testPooledBuffersAndBatchedRecords() throws Exception {
+    selector.close();
+    SizeClassedByteBufferPool pool = SSLTransmission.newBufferPool(4 * 1024 * 1024, 4);
+    NetworkMetrics metrics = new NetworkMetrics(new MetricRegistry());
+    selector = new Selector(metrics, SystemTime.getInstance(), clientSSLFactory, null, pool, 4, false);
+    String connectionId = blockingSSLConnect(DEFAULT_SOCKET_BUF_SIZE);
+    for (int i = 0; i < 3; i++) {
+      String message = SelectorTest.randomString(5 * applicationBufferSize + i, new Random());
+      assertEquals("Wrong echoed response", message, blockingRequest(connectionId, message));
+      assertTrue("The idle connection should have returned its buffers", pool.getFreeBytes() > 0);
+    }
+    assertTrue("Buffers should have been reused", pool.getHitCount() > 0);
+    assertTrue("Records should have been written", metrics.sslWrapSizeInBytes.getCount() > 0);
+    assertEquals("Small request", "hello", blockingRequest(connectionId, "hello"));
+    assertEquals("CPU time should not be measured", 0, metrics.sslSendBytesPerCpuSecond.getCount());
+  }
+
+  /**
+   * Tests that SSL connections report the bytes they send and receive per CPU second when asked to.
+   */
+  @Test
+  public void testCpuTimeMetrics() throws Exception {
+    assumeTrue(ManagementFactory.getThreadMXBean().isCurrentThreadCpuTimeSupported());
+    selector.close();
+    NetworkMetrics metrics = new NetworkMetrics(new MetricRegistry());
+    selector = new Selector(metrics, SystemTime.getInstance(), clientSSLFactory, null, null, 1, true);
+    String connectionId = blockingSSLConnect(DEFAULT_SOCKET_BUF_SIZE);
+    String message = SelectorTest.randomString(5 * applicationBufferSize, new Random());
+    assertEquals("Wrong echoed response", message, blockingRequest(connectionId, message));
+    assertTrue("CPU time should have been measured",
+        metrics.sslSendBytesPerCpuSecond.getCount() + metrics.sslReceiveBytesPerCpuSecond.getCount() > 0);
+  }
+
   /**
    * Make a request to the echo server and wait for the full response to come.
    * @param connectionId the ID of an established connection.
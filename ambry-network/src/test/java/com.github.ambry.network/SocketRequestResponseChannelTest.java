@@ -18,6 +18,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritableByteChannel;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
@@ -82,4 +85,47 @@ public class SocketRequestResponseChannelTest {
       Assert.assertEquals(true, false);
     }
   }
+
+  /**
+   * Tests that requests are queued by {@link RequestClass} and that the queues are served in proportion to their
+   * weights.
+   * @throws Exception
+   */
+  @Test
+  public void testWeightedRequestQueues() throws Exception {
+    Map<RequestClass, Integer> weights = new EnumMap<>(RequestClass.class);
+    weights.put(RequestClass.CLIENT_READ, 3);
+    weights.put(RequestClass.REPLICATION, 1);
+    Map<Request, RequestClass> requestClasses = new HashMap<>();
+    SocketRequestResponseChannel channel = new SocketRequestResponseChannel(1, 100, requestClasses::get, weights);
+    for (int i = 0; i < 35; i++) {
+      RequestClass requestClass = i < 20 ? RequestClass.REPLICATION : RequestClass.CLIENT_READ;
+      Request request =
+          new SocketServerRequest(0, "connection-" + i, new ByteBufferInputStream(ByteBuffer.allocate(0)));
+      requestClasses.put(request, requestClass);
+      channel.sendRequest(request);
+    }
+    Assert.assertEquals("Unexpected total queue size", 35, channel.getRequestQueueSize());
+    Assert.assertEquals("Unexpected replication queue size", 20,
+        channel.getRequestQueueSize(RequestClass.REPLICATION));
+    Assert.assertEquals("Unexpected client read queue size", 15,
+        channel.getRequestQueueSize(RequestClass.CLIENT_READ));
+    // while both queues have requests, 3 client reads are handed out for every replication request even though the
+    // replication requests arrived first.
+    for (int round = 0; round < 5; round++) {
+      int clientReads = 0;
+      for (int i = 0; i < 4; i++) {
+        if (requestClasses.get(channel.receiveRequest()) == RequestClass.CLIENT_READ) {
+          clientReads++;
+        }
+      }
+      Assert.assertEquals("Unexpected number of client reads in round " + round, 3, clientReads);
+    }
+    // only replication requests are left and they are not held back by the weights.
+    for (int i = 0; i < 15; i++) {
+      Assert.assertEquals("Unexpected request class", RequestClass.REPLICATION,
+          requestClasses.get(channel.receiveRequest()));
+    }
+    Assert.assertEquals("All requests should have been received", 0, channel.getRequestQueueSize());
+  }
 }
@@ -13,6 +13,7 @@
  */
 package com.github.ambry.network;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.commons.TestSSLUtils;
@@ -84,6 +85,36 @@ public class SocketServerTest {
     simpleRequest(new Port(server.getSSLPort(), PortType.SSL));
   }
 
+  /**
+   * Tests that requests are served when several acceptor threads accept connections on each port. The server falls
+   * back to a single acceptor per port if SO_REUSEPORT is not supported.
+   * @throws Exception
+   */
+  @Test
+  public void multipleAcceptorsPerPortTest() throws Exception {
+    server.shutdown();
+    Properties props = new Properties();
+    props.setProperty("network.acceptor.threads.per.port", "4");
+    NetworkConfig config = new NetworkConfig(new VerifiableProperties(props));
+    ArrayList<Port> ports = new ArrayList<Port>();
+    ports.add(new Port(config.port, PortType.PLAINTEXT));
+    ports.add(new Port(config.port + 1000, PortType.SSL));
+    MetricRegistry registry = new MetricRegistry();
+    server = new SocketServer(config, serverSSLConfig, registry, ports);
+    server.start();
+    for (int i = 0; i < 10; i++) {
+      simpleRequest(new Port(server.getPort(), PortType.PLAINTEXT));
+      simpleRequest(new Port(server.getSSLPort(), PortType.SSL));
+    }
+    // the acceptor marks the connection after handing it to a processor, which can be after the response was sent.
+    Meter acceptRate = registry.meter(MetricRegistry.name(SocketServer.class, "AcceptConnectionRate"));
+    long deadlineMs = System.currentTimeMillis() + 10000;
+    while (acceptRate.getCount() < 20 && System.currentTimeMillis() < deadlineMs) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals("Every connection should have been accepted once", 20, acceptRate.getCount());
+  }
+
   private void simpleRequest(Port targetPort) throws IOException, InterruptedException {
     byte[] bytesToSend = new byte[1028];
     new Random().nextBytes(bytesToSend);
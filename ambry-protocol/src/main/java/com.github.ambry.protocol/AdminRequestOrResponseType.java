@@ -20,5 +20,6 @@ package com.github.ambry.protocol;
  * requests/responses
  */
 public enum AdminRequestOrResponseType {
-  TriggerCompaction, RequestControl, ReplicationControl, CatchupStatus, BlobStoreControl
+  TriggerCompaction, RequestControl, ReplicationControl, CatchupStatus, BlobStoreControl, SealedStoreFiles,
+  SealedStoreFileChunk, KeyRangeDigests, ReplicationBandwidthBudget
 }
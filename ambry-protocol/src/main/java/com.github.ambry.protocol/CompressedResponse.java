@@ -0,0 +1,205 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.utils.ByteBufferOutputStream;
+import com.github.ambry.utils.Utils;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+
+/**
+ * A response that carries another response compressed with a {@link CompressionType}. It is sent instead of the
+ * response to a request that accepts a compressed response. The payload is the serialized response without its size,
+ * so {@link #decompress()} returns a stream that can be read by the {@code readFrom} method of the response.
+ */
+public class CompressedResponse extends Response {
+  private final CompressionType compressionType;
+  private final int uncompressedSize;
+  private final byte[] compressedPayload;
+
+  private static final int Compression_Type_Size_In_Bytes = 2;
+  private static final int Uncompressed_Size_In_Bytes = 4;
+  private static final int Compressed_Size_In_Bytes = 4;
+  private static final int Request_Response_Size_In_Bytes = 8;
+  private static final int Deflate_Chunk_Size_In_Bytes = 64 * 1024;
+  private static final short Compressed_Response_Version_V1 = 1;
+
+  public CompressedResponse(int correlationId, String clientId, ServerErrorCode error,
+      CompressionType compressionType, int uncompressedSize, byte[] compressedPayload) {
+    super(RequestOrResponseType.CompressedResponse, Compressed_Response_Version_V1, correlationId, clientId, error);
+    if (compressionType == CompressionType.None) {
+      throw new IllegalArgumentException("A compressed response needs a compression type");
+    }
+    this.compressionType = compressionType;
+    this.uncompressedSize = uncompressedSize;
+    this.compressedPayload = compressedPayload;
+  }
+
+  /**
+   * Serializes {@code response} and compresses it. This writes {@code response} out completely, so it cannot be sent
+   * afterwards.
+   * @param response the {@link Response} to compress.
+   * @param compressionType the {@link CompressionType} to compress with.
+   * @return the {@link CompressedResponse} that carries {@code response}.
+   * @throws IOException if {@code response} could not be serialized.
+   */
+  public static CompressedResponse compress(Response response, CompressionType compressionType) throws IOException {
+    long sizeInBytes = response.sizeInBytes();
+    if (sizeInBytes > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Response " + response + " is too large to be compressed");
+    }
+    ByteBuffer serialized = ByteBuffer.allocate((int) sizeInBytes);
+    WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(serialized));
+    // some responses report that they are complete before they are first written.
+    do {
+      response.writeTo(channel);
+    } while (!response.isSendComplete());
+    int uncompressedSize = serialized.position() - Request_Response_Size_In_Bytes;
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(serialized.array(), Request_Response_Size_In_Bytes, uncompressedSize);
+      deflater.finish();
+      ByteArrayOutputStream compressed = new ByteArrayOutputStream(uncompressedSize / 2 + 64);
+      byte[] chunk = new byte[Math.min(uncompressedSize + 64, Deflate_Chunk_Size_In_Bytes)];
+      while (!deflater.finished()) {
+        compressed.write(chunk, 0, deflater.deflate(chunk));
+      }
+      return new CompressedResponse(response.getCorrelationId(), response.getClientId(), response.getError(),
+          compressionType, uncompressedSize, compressed.toByteArray());
+    } finally {
+      deflater.end();
+    }
+  }
+
+  public static CompressedResponse readFrom(DataInputStream stream) throws IOException {
+    RequestOrResponseType type = RequestOrResponseType.values()[stream.readShort()];
+    if (type != RequestOrResponseType.CompressedResponse) {
+      throw new IllegalArgumentException("The type of request response is not compatible");
+    }
+    Short versionId = stream.readShort();
+    int correlationId = stream.readInt();
+    String clientId = Utils.readIntString(stream);
+    ServerErrorCode error = ServerErrorCode.values()[stream.readShort()];
+    CompressionType compressionType = CompressionType.values()[stream.readShort()];
+    int uncompressedSize = stream.readInt();
+    int compressedSize = stream.readInt();
+    if (uncompressedSize < 0 || compressedSize < 0) {
+      throw new IOException(
+          "Invalid sizes in compressed response. Uncompressed: " + uncompressedSize + " compressed: " + compressedSize);
+    }
+    byte[] compressedPayload = new byte[compressedSize];
+    stream.readFully(compressedPayload);
+    // ignore version for now
+    return new CompressedResponse(correlationId, clientId, error, compressionType, uncompressedSize,
+        compressedPayload);
+  }
+
+  /**
+   * @return the {@link CompressionType} that the payload is compressed with.
+   */
+  public CompressionType getCompressionType() {
+    return compressionType;
+  }
+
+  /**
+   * @return the size of the serialized response that was compressed, without its size.
+   */
+  public int getUncompressedSize() {
+    return uncompressedSize;
+  }
+
+  /**
+   * @return the size of the compressed payload.
+   */
+  public int getCompressedSize() {
+    return compressedPayload.length;
+  }
+
+  /**
+   * @return a stream of the serialized response that was compressed, starting at its type.
+   * @throws IOException if the payload is corrupt or does not decompress to {@link #getUncompressedSize()} bytes.
+   */
+  public InputStream decompress() throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressedPayload);
+      byte[] uncompressed = new byte[uncompressedSize];
+      int offset = 0;
+      while (offset < uncompressedSize && !inflater.finished()) {
+        int inflated = inflater.inflate(uncompressed, offset, uncompressedSize - offset);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        }
+        offset += inflated;
+      }
+      if (offset != uncompressedSize) {
+        throw new IOException("Compressed payload of " + this + " did not decompress to the expected size");
+      }
+      return new ByteArrayInputStream(uncompressed);
+    } catch (DataFormatException e) {
+      throw new IOException("Compressed payload of " + this + " is corrupt", e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    if (bufferToSend == null) {
+      bufferToSend = ByteBuffer.allocate((int) sizeInBytes());
+      writeHeader();
+      bufferToSend.putShort((short) compressionType.ordinal());
+      bufferToSend.putInt(uncompressedSize);
+      bufferToSend.putInt(compressedPayload.length);
+      bufferToSend.put(compressedPayload);
+      bufferToSend.flip();
+    }
+    return bufferToSend.remaining() > 0 ? channel.write(bufferToSend) : 0;
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return bufferToSend != null && bufferToSend.remaining() == 0;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return super.sizeInBytes() + Compression_Type_Size_In_Bytes + Uncompressed_Size_In_Bytes
+        + Compressed_Size_In_Bytes + compressedPayload.length;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("CompressedResponse[");
+    sb.append("ServerErrorCode=").append(getError());
+    sb.append(", ").append("CompressionType=").append(compressionType);
+    sb.append(", ").append("UncompressedSize=").append(uncompressedSize);
+    sb.append(", ").append("CompressedSize=").append(compressedPayload.length);
+    sb.append(", ").append("CorrelationId=").append(correlationId);
+    sb.append("]");
+    return sb.toString();
+  }
+}
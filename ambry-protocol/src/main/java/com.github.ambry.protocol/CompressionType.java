@@ -0,0 +1,30 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+/**
+ * The compression that a request accepts for its response and that a {@link CompressedResponse} is compressed with.
+ * Do not change this order. Add new entries to the end of the list.
+ */
+public enum CompressionType {
+  /**
+   * The response is not compressed.
+   */
+  None,
+
+  /**
+   * The response is compressed with {@link java.util.zip.Deflater} at {@link java.util.zip.Deflater#BEST_SPEED}.
+   */
+  Deflate
+}
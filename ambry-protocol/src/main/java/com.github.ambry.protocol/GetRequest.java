@@ -31,6 +31,7 @@ public class GetRequest extends RequestOrResponse {
 
   private MessageFormatFlags flags;
   private GetOption getOption;
+  private CompressionType acceptedCompression;
   private List<PartitionRequestInfo> partitionRequestInfoList;
   private int sizeSent;
   private int totalPartitionRequestInfoListSize;
@@ -38,16 +39,32 @@ public class GetRequest extends RequestOrResponse {
   private static final int MessageFormat_Size_In_Bytes = 2;
   private static final int GetOption_Size_In_Bytes = 2;
   private static final int Partition_Request_Info_List_Size = 4;
+  private static final int Accepted_Compression_Size_In_Bytes = 2;
   private static final short Get_Request_Version_V2 = 2;
+  private static final short Get_Request_Version_V3 = 3;
   public static final String Replication_Client_Id_Prefix = "replication-fetch-";
   public static final String Cloud_Replica_Keyword = "vcr";
 
   public GetRequest(int correlationId, String clientId, MessageFormatFlags flags,
       List<PartitionRequestInfo> partitionRequestInfoList, GetOption getOption) {
-    super(RequestOrResponseType.GetRequest, Get_Request_Version_V2, correlationId, clientId);
+    this(correlationId, clientId, flags, partitionRequestInfoList, getOption, CompressionType.None);
+  }
+
+  /**
+   * Creates a get request whose response may be a {@link CompressedResponse}. Requests that accept a compressed
+   * response are serialized in a version that nodes that do not know about compression cannot read, so
+   * {@code acceptedCompression} should only be set for nodes that are known to support it.
+   * @param acceptedCompression the {@link CompressionType} that the response may be compressed with.
+   */
+  public GetRequest(int correlationId, String clientId, MessageFormatFlags flags,
+      List<PartitionRequestInfo> partitionRequestInfoList, GetOption getOption, CompressionType acceptedCompression) {
+    super(RequestOrResponseType.GetRequest,
+        acceptedCompression == CompressionType.None ? Get_Request_Version_V2 : Get_Request_Version_V3, correlationId,
+        clientId);
 
     this.flags = flags;
     this.getOption = getOption;
+    this.acceptedCompression = acceptedCompression;
     if (partitionRequestInfoList == null) {
       throw new IllegalArgumentException("No partition info specified in GetRequest");
     }
@@ -70,6 +87,13 @@ public class GetRequest extends RequestOrResponse {
     return getOption;
   }
 
+  /**
+   * @return the {@link CompressionType} that the response to this request may be compressed with.
+   */
+  public CompressionType getAcceptedCompression() {
+    return acceptedCompression;
+  }
+
   public static GetRequest readFrom(DataInputStream stream, ClusterMap clusterMap) throws IOException {
     RequestOrResponseType type = RequestOrResponseType.GetRequest;
     Short versionId = stream.readShort();
@@ -84,11 +108,15 @@ public class GetRequest extends RequestOrResponse {
       partitionRequestInfoList.add(partitionRequestInfo);
     }
     GetOption getOption = GetOption.None;
-    if (versionId == Get_Request_Version_V2) {
+    if (versionId == Get_Request_Version_V2 || versionId == Get_Request_Version_V3) {
       getOption = GetOption.values()[stream.readShort()];
     }
-    // ignore version for now
-    return new GetRequest(correlationId, clientId, messageType, partitionRequestInfoList, getOption);
+    CompressionType acceptedCompression = CompressionType.None;
+    if (versionId == Get_Request_Version_V3) {
+      acceptedCompression = CompressionType.values()[stream.readShort()];
+    }
+    return new GetRequest(correlationId, clientId, messageType, partitionRequestInfoList, getOption,
+        acceptedCompression);
   }
 
   @Override
@@ -103,6 +131,9 @@ public class GetRequest extends RequestOrResponse {
         partitionRequestInfo.writeTo(bufferToSend);
       }
       bufferToSend.putShort((short) getOption.ordinal());
+      if (versionId == Get_Request_Version_V3) {
+        bufferToSend.putShort((short) acceptedCompression.ordinal());
+      }
       bufferToSend.flip();
     }
     if (bufferToSend.remaining() > 0) {
@@ -119,9 +150,11 @@ public class GetRequest extends RequestOrResponse {
 
   @Override
   public long sizeInBytes() {
-    // header + message format size + partition request info size + total partition request info list size
+    // header + message format size + partition request info size + total partition request info list size + get option
+    // size + accepted compression size
     return super.sizeInBytes() + MessageFormat_Size_In_Bytes + Partition_Request_Info_List_Size
-        + totalPartitionRequestInfoListSize + GetOption_Size_In_Bytes;
+        + totalPartitionRequestInfoListSize + GetOption_Size_In_Bytes + (versionId == Get_Request_Version_V3
+        ? Accepted_Compression_Size_In_Bytes : 0);
   }
 
   @Override
@@ -135,6 +168,7 @@ public class GetRequest extends RequestOrResponse {
     sb.append(", ").append("CorrelationId=").append(correlationId);
     sb.append(", ").append("MessageFormatFlags=").append(flags);
     sb.append(", ").append("GetOption=").append(getOption);
+    sb.append(", ").append("AcceptedCompression=").append(acceptedCompression);
     sb.append("]");
     return sb.toString();
   }
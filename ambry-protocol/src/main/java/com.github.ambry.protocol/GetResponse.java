@@ -32,6 +32,7 @@ import java.util.List;
 public class GetResponse extends Response {
 
   private Send toSend = null;
+  private long pendingHeaderBytes = 0;
   private InputStream stream = null;
   private final List<PartitionResponseInfo> partitionResponseInfoList;
   private int partitionResponseInfoSize;
@@ -107,9 +108,10 @@ public class GetResponse extends Response {
     }
   }
 
-  @Override
-  public long writeTo(WritableByteChannel channel) throws IOException {
-    long written = 0;
+  /**
+   * Serializes the header and the partition response infos into {@link #bufferToSend} if that was not done yet.
+   */
+  private void prepareBuffer() {
     if (bufferToSend == null) {
       bufferToSend = ByteBuffer.allocate(
           (int) super.sizeInBytes() + (Partition_Response_Info_List_Size + partitionResponseInfoSize));
@@ -122,6 +124,12 @@ public class GetResponse extends Response {
       }
       bufferToSend.flip();
     }
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    long written = 0;
+    prepareBuffer();
     if (bufferToSend.remaining() > 0) {
       written = channel.write(bufferToSend);
     }
@@ -131,6 +139,23 @@ public class GetResponse extends Response {
     return written;
   }
 
+  @Override
+  public boolean addPendingBuffers(List<ByteBuffer> buffers) {
+    prepareBuffer();
+    pendingHeaderBytes = bufferToSend.remaining();
+    if (pendingHeaderBytes > 0) {
+      buffers.add(bufferToSend);
+    }
+    return toSend == null || toSend.isSendComplete() || toSend.addPendingBuffers(buffers);
+  }
+
+  @Override
+  public void onBuffersWritten(long bytesWritten) {
+    if (bytesWritten > pendingHeaderBytes && toSend != null) {
+      toSend.onBuffersWritten(bytesWritten - pendingHeaderBytes);
+    }
+  }
+
   @Override
   public boolean isSendComplete() {
     return (super.isSendComplete()) && (toSend == null || toSend.isSendComplete());
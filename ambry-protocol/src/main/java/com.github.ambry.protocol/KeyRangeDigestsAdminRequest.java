@@ -0,0 +1,134 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * An admin request for the digests of some buckets of the key range digest tree of the store of a partition, used by
+ * a peer to find the keys that the two replicas disagree on. The buckets are all on the same level of the tree. On
+ * the leaf level, the keys in the buckets can be requested as well.
+ */
+public class KeyRangeDigestsAdminRequest extends AdminRequest {
+  private static final short VERSION_V1 = 1;
+
+  private final long referenceTimeMs;
+  private final short level;
+  private final List<Integer> buckets;
+  private final boolean includeKeys;
+  private final long sizeInBytes;
+
+  /**
+   * Reads from a stream and constructs a {@link KeyRangeDigestsAdminRequest}.
+   * @param stream the stream to read from
+   * @param adminRequest the {@link AdminRequest} that contains some necessary headers.
+   * @return the {@link KeyRangeDigestsAdminRequest} constructed from the {@code stream}.
+   * @throws IOException if there is any problem reading from the stream
+   */
+  public static KeyRangeDigestsAdminRequest readFrom(DataInputStream stream, AdminRequest adminRequest)
+      throws IOException {
+    Short versionId = stream.readShort();
+    if (!versionId.equals(VERSION_V1)) {
+      throw new IllegalStateException("Unrecognized version for KeyRangeDigestsAdminRequest: " + versionId);
+    }
+    long referenceTimeMs = stream.readLong();
+    short level = stream.readShort();
+    int bucketCount = stream.readInt();
+    List<Integer> buckets = new ArrayList<>(bucketCount);
+    for (int i = 0; i < bucketCount; i++) {
+      buckets.add(stream.readInt());
+    }
+    boolean includeKeys = stream.readByte() == 1;
+    return new KeyRangeDigestsAdminRequest(referenceTimeMs, level, buckets, includeKeys, adminRequest);
+  }
+
+  /**
+   * Construct a KeyRangeDigestsAdminRequest
+   * @param referenceTimeMs the time as of which the state of the keys is taken. Operations after it are left
+   *                        out. Both replicas have to use the same reference time.
+   * @param level the level of the tree that the buckets are on.
+   * @param buckets the buckets whose digests are needed.
+   * @param includeKeys {@code true} if the keys in the buckets are needed as well. Only valid on the leaf level.
+   * @param adminRequest the {@link AdminRequest} that contains common admin request related information.
+   */
+  public KeyRangeDigestsAdminRequest(long referenceTimeMs, short level, List<Integer> buckets, boolean includeKeys,
+      AdminRequest adminRequest) {
+    super(AdminRequestOrResponseType.KeyRangeDigests, adminRequest.getPartitionId(), adminRequest.getCorrelationId(),
+        adminRequest.getClientId());
+    this.referenceTimeMs = referenceTimeMs;
+    this.level = level;
+    this.buckets = buckets;
+    this.includeKeys = includeKeys;
+    // parent size + version size + reference time size + level size + bucket count size + buckets + include keys size
+    sizeInBytes = super.sizeInBytes() + Short.BYTES + Long.BYTES + Short.BYTES + Integer.BYTES
+        + buckets.size() * Integer.BYTES + Byte.BYTES;
+  }
+
+  /**
+   * @return the time as of which the state of the keys is taken. Operations after it are left out.
+   */
+  public long getReferenceTimeMs() {
+    return referenceTimeMs;
+  }
+
+  /**
+   * @return the level of the tree that the buckets are on.
+   */
+  public short getLevel() {
+    return level;
+  }
+
+  /**
+   * @return the buckets whose digests are needed.
+   */
+  public List<Integer> getBuckets() {
+    return buckets;
+  }
+
+  /**
+   * @return {@code true} if the keys in the buckets are needed as well.
+   */
+  public boolean shouldIncludeKeys() {
+    return includeKeys;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return sizeInBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "KeyRangeDigestsAdminRequest[ClientId=" + clientId + ", CorrelationId=" + correlationId + ", PartitionId="
+        + getPartitionId() + ", ReferenceTimeMs=" + referenceTimeMs + ", Level=" + level + ", BucketCount="
+        + buckets.size() + ", IncludeKeys=" + includeKeys + "]";
+  }
+
+  @Override
+  protected void serializeIntoBuffer() {
+    super.serializeIntoBuffer();
+    bufferToSend.putShort(VERSION_V1);
+    bufferToSend.putLong(referenceTimeMs);
+    bufferToSend.putShort(level);
+    bufferToSend.putInt(buckets.size());
+    for (int bucket : buckets) {
+      bufferToSend.putInt(bucket);
+    }
+    bufferToSend.put(includeKeys ? (byte) 1 : 0);
+  }
+}
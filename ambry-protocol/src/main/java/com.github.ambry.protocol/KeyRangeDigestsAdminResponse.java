@@ -0,0 +1,131 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.store.MessageInfo;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ * {@link AdminResponse} for {@link KeyRangeDigestsAdminRequest} that carries the digests and key counts of the
+ * requested buckets, in the order in which they were requested, and the keys in them if they were requested.
+ */
+public class KeyRangeDigestsAdminResponse extends AdminResponse {
+  private static final short VERSION_V1 = 1;
+
+  private final List<Long> digests;
+  private final List<Integer> keyCounts;
+  private final MessageInfoAndMetadataListSerde messageInfoAndMetadataListSerde;
+  private final long sizeInBytes;
+
+  /**
+   * Reads from a stream and constructs a {@link KeyRangeDigestsAdminResponse}.
+   * @param stream the stream to read from
+   * @param clusterMap the {@link ClusterMap} to deserialize the keys with.
+   * @return the {@link KeyRangeDigestsAdminResponse} constructed from the {@code stream}.
+   * @throws IOException if there is any problem reading from the stream
+   */
+  public static KeyRangeDigestsAdminResponse readFrom(DataInputStream stream, ClusterMap clusterMap)
+      throws IOException {
+    AdminResponse adminResponse = AdminResponse.readFrom(stream);
+    Short versionId = stream.readShort();
+    if (!versionId.equals(VERSION_V1)) {
+      throw new IllegalStateException("Unrecognized version for KeyRangeDigestsAdminResponse: " + versionId);
+    }
+    int bucketCount = stream.readInt();
+    List<Long> digests = new ArrayList<>(bucketCount);
+    List<Integer> keyCounts = new ArrayList<>(bucketCount);
+    for (int i = 0; i < bucketCount; i++) {
+      digests.add(stream.readLong());
+      keyCounts.add(stream.readInt());
+    }
+    List<MessageInfo> messageInfos =
+        MessageInfoAndMetadataListSerde.deserializeMessageInfoAndMetadataList(stream, clusterMap,
+            MessageInfoAndMetadataListSerde.AUTO_VERSION).getMessageInfoList();
+    return new KeyRangeDigestsAdminResponse(digests, keyCounts, messageInfos, adminResponse);
+  }
+
+  /**
+   * Construct a KeyRangeDigestsAdminResponse
+   * @param digests the digests of the requested buckets.
+   * @param keyCounts the number of keys in the requested buckets.
+   * @param messageInfos the {@link MessageInfo}s of the keys in the requested buckets, if they were requested.
+   * @param adminResponse the {@link AdminResponse} that contains common admin response related information.
+   */
+  public KeyRangeDigestsAdminResponse(List<Long> digests, List<Integer> keyCounts, List<MessageInfo> messageInfos,
+      AdminResponse adminResponse) {
+    super(adminResponse.getCorrelationId(), adminResponse.getClientId(), adminResponse.getError());
+    if (digests.size() != keyCounts.size()) {
+      throw new IllegalArgumentException(
+          "Mismatch in the number of digests: " + digests.size() + " and key counts: " + keyCounts.size());
+    }
+    this.digests = digests;
+    this.keyCounts = keyCounts;
+    messageInfoAndMetadataListSerde = new MessageInfoAndMetadataListSerde(messageInfos,
+        MessageInfoAndMetadataListSerde.AUTO_VERSION);
+    // parent size + version size + bucket count size + digests and key counts + keys
+    sizeInBytes = super.sizeInBytes() + Short.BYTES + Integer.BYTES + digests.size() * (Long.BYTES + Integer.BYTES)
+        + messageInfoAndMetadataListSerde.getMessageInfoAndMetadataListSize();
+  }
+
+  /**
+   * @return the digests of the requested buckets, in the order in which they were requested.
+   */
+  public List<Long> getDigests() {
+    return digests;
+  }
+
+  /**
+   * @return the number of keys in the requested buckets, in the order in which they were requested.
+   */
+  public List<Integer> getKeyCounts() {
+    return keyCounts;
+  }
+
+  /**
+   * @return the {@link MessageInfo}s of the keys in the requested buckets. Empty if they were not requested.
+   */
+  public List<MessageInfo> getMessageInfos() {
+    List<MessageInfo> messageInfos = messageInfoAndMetadataListSerde.getMessageInfoList();
+    return messageInfos == null ? Collections.emptyList() : messageInfos;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return sizeInBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "KeyRangeDigestsAdminResponse[ClientId=" + clientId + ", CorrelationId=" + correlationId + ", ServerError="
+        + getError() + ", BucketCount=" + digests.size() + ", KeyCount=" + getMessageInfos().size() + "]";
+  }
+
+  @Override
+  protected void serializeIntoBuffer() {
+    super.serializeIntoBuffer();
+    bufferToSend.putShort(VERSION_V1);
+    bufferToSend.putInt(digests.size());
+    for (int i = 0; i < digests.size(); i++) {
+      bufferToSend.putLong(digests.get(i));
+      bufferToSend.putInt(keyCounts.get(i));
+    }
+    messageInfoAndMetadataListSerde.serializeMessageInfoAndMetadataList(bufferToSend);
+  }
+}
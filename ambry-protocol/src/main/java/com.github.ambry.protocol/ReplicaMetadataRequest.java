@@ -31,25 +31,83 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
   private List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList;
   private long maxTotalSizeOfEntriesInBytes;
   private long replicaMetadataRequestInfoListSizeInBytes;
+  private CompressionType acceptedCompression;
+  private long maxWaitTimeMs;
 
   private static final int Max_Entries_Size_In_Bytes = 8;
   private static final int Replica_Metadata_Request_Info_List_Size_In_Bytes = 4;
+  private static final int Accepted_Compression_Size_In_Bytes = 2;
+  private static final int Max_Entries_Size_Per_Replica_In_Bytes = 8;
+  private static final int Max_Wait_Time_Size_In_Bytes = 8;
   private static final short Replica_Metadata_Request_Version_V1 = 1;
+  private static final short Replica_Metadata_Request_Version_V2 = 2;
+  private static final short Replica_Metadata_Request_Version_V3 = 3;
+  private static final short Replica_Metadata_Request_Version_V4 = 4;
 
   public ReplicaMetadataRequest(int correlationId, String clientId,
       List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList, long maxTotalSizeOfEntriesInBytes) {
-    super(RequestOrResponseType.ReplicaMetadataRequest, Replica_Metadata_Request_Version_V1, correlationId, clientId);
-    if (replicaMetadataRequestInfoList == null) {
-      throw new IllegalArgumentException("replicaMetadataRequestInfoList cannot be null");
-    }
+    this(correlationId, clientId, replicaMetadataRequestInfoList, maxTotalSizeOfEntriesInBytes, CompressionType.None);
+  }
+
+  /**
+   * Creates a replica metadata request whose response may be a {@link CompressedResponse}. Requests that accept a
+   * compressed response are serialized in a newer version, so {@code acceptedCompression} should only be set for
+   * nodes that are known to support it. The same goes for {@link ReplicaMetadataRequestInfo}s that limit the entries
+   * of their partition on their own.
+   * @param acceptedCompression the {@link CompressionType} that the response may be compressed with.
+   */
+  public ReplicaMetadataRequest(int correlationId, String clientId,
+      List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList, long maxTotalSizeOfEntriesInBytes,
+      CompressionType acceptedCompression) {
+    this(correlationId, clientId, replicaMetadataRequestInfoList, maxTotalSizeOfEntriesInBytes, acceptedCompression, 0);
+  }
+
+  /**
+   * Creates a replica metadata request that the remote node may hold for up to {@code maxWaitTimeMs} if none of the
+   * replicas have new entries, and answer as soon as one of them does. Requests with a wait are serialized in a newer
+   * version, so {@code maxWaitTimeMs} should only be set for nodes that are known to support it.
+   * @param acceptedCompression the {@link CompressionType} that the response may be compressed with.
+   * @param maxWaitTimeMs the longest time the remote node may wait for new entries before answering. 0 to answer
+   *                      right away.
+   */
+  public ReplicaMetadataRequest(int correlationId, String clientId,
+      List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList, long maxTotalSizeOfEntriesInBytes,
+      CompressionType acceptedCompression, long maxWaitTimeMs) {
+    super(RequestOrResponseType.ReplicaMetadataRequest,
+        getVersion(replicaMetadataRequestInfoList, acceptedCompression, maxWaitTimeMs), correlationId, clientId);
     this.replicaMetadataRequestInfoList = replicaMetadataRequestInfoList;
     this.maxTotalSizeOfEntriesInBytes = maxTotalSizeOfEntriesInBytes;
+    this.acceptedCompression = acceptedCompression;
+    this.maxWaitTimeMs = maxWaitTimeMs;
     this.replicaMetadataRequestInfoListSizeInBytes = 0;
     for (ReplicaMetadataRequestInfo replicaMetadataRequestInfo : replicaMetadataRequestInfoList) {
       this.replicaMetadataRequestInfoListSizeInBytes += replicaMetadataRequestInfo.sizeInBytes();
     }
   }
 
+  /**
+   * @param replicaMetadataRequestInfoList the {@link ReplicaMetadataRequestInfo}s of the request.
+   * @param acceptedCompression the {@link CompressionType} that the response may be compressed with.
+   * @param maxWaitTimeMs the longest time the remote node may wait for new entries before answering.
+   * @return the oldest version that can carry the request.
+   */
+  private static short getVersion(List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList,
+      CompressionType acceptedCompression, long maxWaitTimeMs) {
+    if (replicaMetadataRequestInfoList == null) {
+      throw new IllegalArgumentException("replicaMetadataRequestInfoList cannot be null");
+    }
+    if (maxWaitTimeMs > 0) {
+      return Replica_Metadata_Request_Version_V4;
+    }
+    for (ReplicaMetadataRequestInfo replicaMetadataRequestInfo : replicaMetadataRequestInfoList) {
+      if (replicaMetadataRequestInfo.getMaxTotalSizeOfEntriesInBytes() != -1) {
+        return Replica_Metadata_Request_Version_V3;
+      }
+    }
+    return acceptedCompression == CompressionType.None ? Replica_Metadata_Request_Version_V1
+        : Replica_Metadata_Request_Version_V2;
+  }
+
   public static ReplicaMetadataRequest readFrom(DataInputStream stream, ClusterMap clusterMap, FindTokenFactory factory)
       throws IOException {
     RequestOrResponseType type = RequestOrResponseType.ReplicaMetadataRequest;
@@ -65,8 +123,24 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
       replicaMetadataRequestInfoList.add(replicaMetadataRequestInfo);
     }
     long maxTotalSizeOfEntries = stream.readLong();
-    // ignore version for now
-    return new ReplicaMetadataRequest(correlationId, clientId, replicaMetadataRequestInfoList, maxTotalSizeOfEntries);
+    CompressionType acceptedCompression = CompressionType.None;
+    if (versionId >= Replica_Metadata_Request_Version_V2) {
+      acceptedCompression = CompressionType.values()[stream.readShort()];
+    }
+    if (versionId >= Replica_Metadata_Request_Version_V3) {
+      for (int i = 0; i < replicaMetadataRequestInfoListCount; i++) {
+        ReplicaMetadataRequestInfo info = replicaMetadataRequestInfoList.get(i);
+        replicaMetadataRequestInfoList.set(i,
+            new ReplicaMetadataRequestInfo(info.getPartitionId(), info.getToken(), info.getHostName(),
+                info.getReplicaPath(), stream.readLong()));
+      }
+    }
+    long maxWaitTimeMs = 0;
+    if (versionId >= Replica_Metadata_Request_Version_V4) {
+      maxWaitTimeMs = stream.readLong();
+    }
+    return new ReplicaMetadataRequest(correlationId, clientId, replicaMetadataRequestInfoList, maxTotalSizeOfEntries,
+        acceptedCompression, maxWaitTimeMs);
   }
 
   public List<ReplicaMetadataRequestInfo> getReplicaMetadataRequestInfoList() {
@@ -77,6 +151,31 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
     return maxTotalSizeOfEntriesInBytes;
   }
 
+  /**
+   * @param replicaMetadataRequestInfo a {@link ReplicaMetadataRequestInfo} of this request.
+   * @return the most bytes of entries to return for the partition of {@code replicaMetadataRequestInfo}. This is the
+   * limit of {@code replicaMetadataRequestInfo} if it has one and the limit of the request otherwise.
+   */
+  public long getMaxTotalSizeOfEntriesInBytes(ReplicaMetadataRequestInfo replicaMetadataRequestInfo) {
+    long maxTotalSizeOfEntriesForReplica = replicaMetadataRequestInfo.getMaxTotalSizeOfEntriesInBytes();
+    return maxTotalSizeOfEntriesForReplica == -1 ? maxTotalSizeOfEntriesInBytes : maxTotalSizeOfEntriesForReplica;
+  }
+
+  /**
+   * @return the {@link CompressionType} that the response to this request may be compressed with.
+   */
+  public CompressionType getAcceptedCompression() {
+    return acceptedCompression;
+  }
+
+  /**
+   * @return the longest time the remote node may wait for new entries before answering. 0 if it should answer right
+   * away.
+   */
+  public long getMaxWaitTimeMs() {
+    return maxWaitTimeMs;
+  }
+
   @Override
   public long writeTo(WritableByteChannel channel) throws IOException {
     if (bufferToSend == null) {
@@ -87,6 +186,17 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
         replicaMetadataRequestInfo.writeTo(bufferToSend);
       }
       bufferToSend.putLong(maxTotalSizeOfEntriesInBytes);
+      if (versionId >= Replica_Metadata_Request_Version_V2) {
+        bufferToSend.putShort((short) acceptedCompression.ordinal());
+      }
+      if (versionId >= Replica_Metadata_Request_Version_V3) {
+        for (ReplicaMetadataRequestInfo replicaMetadataRequestInfo : replicaMetadataRequestInfoList) {
+          bufferToSend.putLong(replicaMetadataRequestInfo.getMaxTotalSizeOfEntriesInBytes());
+        }
+      }
+      if (versionId >= Replica_Metadata_Request_Version_V4) {
+        bufferToSend.putLong(maxWaitTimeMs);
+      }
       bufferToSend.flip();
     }
     return bufferToSend.remaining() > 0 ? channel.write(bufferToSend) : 0;
@@ -100,7 +210,11 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
   @Override
   public long sizeInBytes() {
     return super.sizeInBytes() + Replica_Metadata_Request_Info_List_Size_In_Bytes
-        + replicaMetadataRequestInfoListSizeInBytes + Max_Entries_Size_In_Bytes;
+        + replicaMetadataRequestInfoListSizeInBytes + Max_Entries_Size_In_Bytes + (
+        versionId >= Replica_Metadata_Request_Version_V2 ? Accepted_Compression_Size_In_Bytes : 0) + (
+        versionId >= Replica_Metadata_Request_Version_V3 ? Max_Entries_Size_Per_Replica_In_Bytes
+            * replicaMetadataRequestInfoList.size() : 0) + (
+        versionId >= Replica_Metadata_Request_Version_V4 ? Max_Wait_Time_Size_In_Bytes : 0);
   }
 
   @Override
@@ -111,6 +225,8 @@ public class ReplicaMetadataRequest extends RequestOrResponse {
       sb.append(replicaMetadataRequestInfo.toString());
     }
     sb.append(", ").append("maxTotalSizeOfEntriesInBytes=").append(maxTotalSizeOfEntriesInBytes);
+    sb.append(", ").append("acceptedCompression=").append(acceptedCompression);
+    sb.append(", ").append("maxWaitTimeMs=").append(maxWaitTimeMs);
     sb.append(", ").append("ClientId=").append(clientId);
     sb.append(", ").append("CorrelationId=").append(correlationId);
     sb.append("]");
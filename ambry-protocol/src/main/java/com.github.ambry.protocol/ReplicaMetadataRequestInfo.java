@@ -35,6 +35,7 @@ public class ReplicaMetadataRequestInfo {
   private String hostName;
   private String replicaPath;
   private PartitionId partitionId;
+  private long maxTotalSizeOfEntriesInBytes;
 
   private static final int ReplicaPath_Field_Size_In_Bytes = 4;
   private static final int HostName_Field_Size_In_Bytes = 4;
@@ -42,6 +43,16 @@ public class ReplicaMetadataRequestInfo {
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   public ReplicaMetadataRequestInfo(PartitionId partitionId, FindToken token, String hostName, String replicaPath) {
+    this(partitionId, token, hostName, replicaPath, -1);
+  }
+
+  /**
+   * Creates the info of a partition that limits the entries returned for the partition on its own.
+   * @param maxTotalSizeOfEntriesInBytes the most bytes of entries to return for the partition, or -1 if the limit of the
+   *                                     {@link ReplicaMetadataRequest} applies.
+   */
+  public ReplicaMetadataRequestInfo(PartitionId partitionId, FindToken token, String hostName, String replicaPath,
+      long maxTotalSizeOfEntriesInBytes) {
     if (partitionId == null || token == null || hostName == null || replicaPath == null) {
       throw new IllegalArgumentException(
           "A parameter in the replica metadata request is null: " + "[Partition: " + partitionId + ", token: " + token
@@ -51,6 +62,7 @@ public class ReplicaMetadataRequestInfo {
     this.token = token;
     this.hostName = hostName;
     this.replicaPath = replicaPath;
+    this.maxTotalSizeOfEntriesInBytes = maxTotalSizeOfEntriesInBytes;
   }
 
   public static ReplicaMetadataRequestInfo readFrom(DataInputStream stream, ClusterMap clusterMap,
@@ -79,7 +91,11 @@ public class ReplicaMetadataRequestInfo {
     sb.append("[Token=").append(token);
     sb.append(", ").append(" PartitionId=").append(partitionId);
     sb.append(", ").append(" HostName=").append(hostName);
-    sb.append(", ").append(" ReplicaPath=").append(replicaPath).append("]");
+    sb.append(", ").append(" ReplicaPath=").append(replicaPath);
+    if (maxTotalSizeOfEntriesInBytes != -1) {
+      sb.append(", ").append(" MaxTotalSizeOfEntriesInBytes=").append(maxTotalSizeOfEntriesInBytes);
+    }
+    sb.append("]");
     return sb.toString();
   }
 
@@ -98,4 +114,12 @@ public class ReplicaMetadataRequestInfo {
   public PartitionId getPartitionId() {
     return partitionId;
   }
+
+  /**
+   * @return the most bytes of entries to return for the partition, or -1 if the limit of the
+   * {@link ReplicaMetadataRequest} applies.
+   */
+  public long getMaxTotalSizeOfEntriesInBytes() {
+    return maxTotalSizeOfEntriesInBytes;
+  }
 }
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ * An admin request used to change the bandwidth that a storage node can use to replicate from a datacenter.
+ * <p/>
+ * The budget is shared by all the replica threads of the node that replicate from the datacenter and is not valid
+ * across restarts. The partition of the request is ignored.
+ */
+public class ReplicationBandwidthBudgetAdminRequest extends AdminRequest {
+  private static final short VERSION_V1 = 1;
+
+  private final String origin;
+  private final long bytesPerSec;
+  private final long sizeInBytes;
+
+  /**
+   * Reads from a stream and constructs a {@link ReplicationBandwidthBudgetAdminRequest}.
+   * @param stream the stream to read from
+   * @param adminRequest the {@link AdminRequest} that contains some necessary headers.
+   * @return the {@link ReplicationBandwidthBudgetAdminRequest} constructed from the {@code stream}.
+   * @throws IOException if there is any problem reading from the stream
+   */
+  public static ReplicationBandwidthBudgetAdminRequest readFrom(DataInputStream stream, AdminRequest adminRequest)
+      throws IOException {
+    Short versionId = stream.readShort();
+    if (!versionId.equals(VERSION_V1)) {
+      throw new IllegalStateException("Unrecognized version for ReplicationBandwidthBudgetAdminRequest: " + versionId);
+    }
+    String origin = Utils.readIntString(stream, StandardCharsets.UTF_8);
+    long bytesPerSec = stream.readLong();
+    return new ReplicationBandwidthBudgetAdminRequest(origin, bytesPerSec, adminRequest);
+  }
+
+  /**
+   * Construct a ReplicationBandwidthBudgetAdminRequest
+   * @param origin the datacenter whose replication bandwidth budget should be changed.
+   * @param bytesPerSec the new budget in bytes per second. 0 removes the limit.
+   * @param adminRequest the {@link AdminRequest} that contains common admin request related information.
+   */
+  public ReplicationBandwidthBudgetAdminRequest(String origin, long bytesPerSec, AdminRequest adminRequest) {
+    super(AdminRequestOrResponseType.ReplicationBandwidthBudget, adminRequest.getPartitionId(),
+        adminRequest.getCorrelationId(), adminRequest.getClientId());
+    this.origin = origin;
+    this.bytesPerSec = bytesPerSec;
+    sizeInBytes = computeSizeInBytes();
+  }
+
+  /**
+   * @return the datacenter whose replication bandwidth budget should be changed.
+   */
+  public String getOrigin() {
+    return origin;
+  }
+
+  /**
+   * @return the new budget in bytes per second. 0 removes the limit.
+   */
+  public long getBytesPerSec() {
+    return bytesPerSec;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return sizeInBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "ReplicationBandwidthBudgetAdminRequest[ClientId=" + clientId + ", CorrelationId=" + correlationId
+        + ", Origin=" + origin + ", BytesPerSec=" + bytesPerSec + "]";
+  }
+
+  @Override
+  protected void serializeIntoBuffer() {
+    super.serializeIntoBuffer();
+    bufferToSend.putShort(VERSION_V1);
+    Utils.serializeString(bufferToSend, origin, StandardCharsets.UTF_8);
+    bufferToSend.putLong(bytesPerSec);
+  }
+
+  private long computeSizeInBytes() {
+    // parent size + version size + origin length size + origin size + budget size
+    return super.sizeInBytes() + Short.BYTES + Integer.BYTES + origin.getBytes(StandardCharsets.UTF_8).length
+        + Long.BYTES;
+  }
+}
@@ -29,5 +29,6 @@ public enum RequestOrResponseType {
   ReplicaMetadataRequest,
   ReplicaMetadataResponse,
   AdminRequest,
-  AdminResponse
+  AdminResponse,
+  CompressedResponse
 }
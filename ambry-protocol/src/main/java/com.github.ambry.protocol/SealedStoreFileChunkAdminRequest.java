@@ -0,0 +1,113 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+
+/**
+ * An admin request for a chunk of one of the sealed files of the store of a partition. The sealed files are listed with
+ * an {@link AdminRequest} of type {@link AdminRequestOrResponseType#SealedStoreFiles}.
+ */
+public class SealedStoreFileChunkAdminRequest extends AdminRequest {
+  private static final short VERSION_V1 = 1;
+
+  private final String fileName;
+  private final long offset;
+  private final long chunkSizeInBytes;
+  private final long sizeInBytes;
+
+  /**
+   * Reads from a stream and constructs a {@link SealedStoreFileChunkAdminRequest}.
+   * @param stream the stream to read from
+   * @param adminRequest the {@link AdminRequest} that contains some necessary headers.
+   * @return the {@link SealedStoreFileChunkAdminRequest} constructed from the {@code stream}.
+   * @throws IOException if there is any problem reading from the stream
+   */
+  public static SealedStoreFileChunkAdminRequest readFrom(DataInputStream stream, AdminRequest adminRequest)
+      throws IOException {
+    Short versionId = stream.readShort();
+    if (!versionId.equals(VERSION_V1)) {
+      throw new IllegalStateException("Unrecognized version for SealedStoreFileChunkAdminRequest: " + versionId);
+    }
+    String fileName = Utils.readIntString(stream);
+    long offset = stream.readLong();
+    long chunkSizeInBytes = stream.readLong();
+    return new SealedStoreFileChunkAdminRequest(fileName, offset, chunkSizeInBytes, adminRequest);
+  }
+
+  /**
+   * Construct a SealedStoreFileChunkAdminRequest
+   * @param fileName the name of the sealed file to read from.
+   * @param offset the offset in the file at which the chunk starts.
+   * @param chunkSizeInBytes the size of the chunk.
+   * @param adminRequest the {@link AdminRequest} that contains common admin request related information.
+   */
+  public SealedStoreFileChunkAdminRequest(String fileName, long offset, long chunkSizeInBytes,
+      AdminRequest adminRequest) {
+    super(AdminRequestOrResponseType.SealedStoreFileChunk, adminRequest.getPartitionId(),
+        adminRequest.getCorrelationId(), adminRequest.getClientId());
+    this.fileName = fileName;
+    this.offset = offset;
+    this.chunkSizeInBytes = chunkSizeInBytes;
+    // parent size + version size + file name size + offset size + chunk size size
+    sizeInBytes =
+        super.sizeInBytes() + Short.BYTES + Integer.BYTES + fileName.getBytes().length + Long.BYTES + Long.BYTES;
+  }
+
+  /**
+   * @return the name of the sealed file to read from.
+   */
+  public String getFileName() {
+    return fileName;
+  }
+
+  /**
+   * @return the offset in the file at which the chunk starts.
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * @return the size of the chunk.
+   */
+  public long getChunkSizeInBytes() {
+    return chunkSizeInBytes;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return sizeInBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "SealedStoreFileChunkAdminRequest[ClientId=" + clientId + ", CorrelationId=" + correlationId
+        + ", PartitionId=" + getPartitionId() + ", FileName=" + fileName + ", Offset=" + offset + ", ChunkSize="
+        + chunkSizeInBytes + "]";
+  }
+
+  @Override
+  protected void serializeIntoBuffer() {
+    super.serializeIntoBuffer();
+    bufferToSend.putShort(VERSION_V1);
+    Utils.serializeString(bufferToSend, fileName, Charset.defaultCharset());
+    bufferToSend.putLong(offset);
+    bufferToSend.putLong(chunkSizeInBytes);
+  }
+}
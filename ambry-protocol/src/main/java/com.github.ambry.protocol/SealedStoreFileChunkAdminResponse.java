@@ -0,0 +1,127 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.network.Send;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * {@link AdminResponse} for {@link SealedStoreFileChunkAdminRequest} that carries the chunk of the sealed file. On the
+ * server, the chunk is written from a {@link Send} after the headers. On the client, the chunk is left in the stream
+ * that the response was read from, so that it can be copied out of it without being buffered.
+ */
+public class SealedStoreFileChunkAdminResponse extends AdminResponse {
+  private static final short VERSION_V1 = 1;
+
+  private final Send chunk;
+  private final InputStream chunkStream;
+  private final long chunkSizeInBytes;
+
+  /**
+   * Reads the headers from a stream and constructs a {@link SealedStoreFileChunkAdminResponse}. The chunk is not read.
+   * @param stream the stream to read from
+   * @return the {@link SealedStoreFileChunkAdminResponse} constructed from the {@code stream}. The next
+   * {@link #getChunkSizeInBytes()} bytes of {@link #getChunkStream()} are the chunk.
+   * @throws IOException if there is any problem reading from the stream
+   */
+  public static SealedStoreFileChunkAdminResponse readFrom(DataInputStream stream) throws IOException {
+    AdminResponse adminResponse = AdminResponse.readFrom(stream);
+    Short versionId = stream.readShort();
+    if (!versionId.equals(VERSION_V1)) {
+      throw new IllegalStateException("Unrecognized version for SealedStoreFileChunkAdminResponse: " + versionId);
+    }
+    long chunkSizeInBytes = stream.readLong();
+    return new SealedStoreFileChunkAdminResponse(stream, chunkSizeInBytes, adminResponse);
+  }
+
+  /**
+   * Construct a SealedStoreFileChunkAdminResponse to send.
+   * @param chunk the {@link Send} of the chunk. {@code null} if the chunk could not be read.
+   * @param adminResponse the {@link AdminResponse} that contains common admin response related information.
+   */
+  public SealedStoreFileChunkAdminResponse(Send chunk, AdminResponse adminResponse) {
+    super(adminResponse.getCorrelationId(), adminResponse.getClientId(), adminResponse.getError());
+    this.chunk = chunk;
+    chunkStream = null;
+    chunkSizeInBytes = chunk == null ? 0 : chunk.sizeInBytes();
+  }
+
+  private SealedStoreFileChunkAdminResponse(InputStream chunkStream, long chunkSizeInBytes,
+      AdminResponse adminResponse) {
+    super(adminResponse.getCorrelationId(), adminResponse.getClientId(), adminResponse.getError());
+    chunk = null;
+    this.chunkStream = chunkStream;
+    this.chunkSizeInBytes = chunkSizeInBytes;
+  }
+
+  /**
+   * @return the size of the chunk.
+   */
+  public long getChunkSizeInBytes() {
+    return chunkSizeInBytes;
+  }
+
+  /**
+   * @return the stream that the chunk can be read from, if this response was read from a stream.
+   */
+  public InputStream getChunkStream() {
+    return chunkStream;
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    long written = super.writeTo(channel);
+    if (super.isSendComplete() && chunk != null && !chunk.isSendComplete()) {
+      written += chunk.writeTo(channel);
+    }
+    return written;
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return super.isSendComplete() && (chunk == null || chunk.isSendComplete());
+  }
+
+  @Override
+  public long sizeInBytes() {
+    // parent size + version size + chunk size size + chunk
+    return super.sizeInBytes() + Short.BYTES + Long.BYTES + chunkSizeInBytes;
+  }
+
+  @Override
+  public void release() {
+    if (chunk != null) {
+      chunk.release();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SealedStoreFileChunkAdminResponse[ClientId=" + clientId + ", CorrelationId=" + correlationId
+        + ", ServerError=" + getError() + ", ChunkSize=" + chunkSizeInBytes + "]";
+  }
+
+  @Override
+  protected void serializeIntoBuffer() {
+    bufferToSend = ByteBuffer.allocate((int) (sizeInBytes() - chunkSizeInBytes));
+    writeHeader();
+    bufferToSend.putShort(VERSION_V1);
+    bufferToSend.putLong(chunkSizeInBytes);
+  }
+}
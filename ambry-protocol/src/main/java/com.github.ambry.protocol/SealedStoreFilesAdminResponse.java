@@ -0,0 +1,125 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.protocol;
+
+import com.github.ambry.store.FindToken;
+import com.github.ambry.store.FindTokenFactory;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * {@link AdminResponse} for an {@link AdminRequest} of type {@link AdminRequestOrResponseType#SealedStoreFiles} that
+ * lists the sealed files of the store of a partition, in the order in which they should be copied, and the token from
+ * which the entries that were written after them can be replicated.
+ */
+public class SealedStoreFilesAdminResponse extends AdminResponse {
+  private static final short VERSION_V1 = 1;
+
+  private final Map<String, Long> fileSizes;
+  private final FindToken endToken;
+  private final long sizeInBytes;
+
+  /**
+   * Reads from a stream and constructs a {@link SealedStoreFilesAdminResponse}.
+   * @param stream the stream to read from
+   * @param factory the {@link FindTokenFactory} to deserialize the end token with.
+   * @return the {@link SealedStoreFilesAdminResponse} constructed from the {@code stream}.
+   * @throws IOException if there is any problem reading from the stream
+   */
+  public static SealedStoreFilesAdminResponse readFrom(DataInputStream stream, FindTokenFactory factory)
+      throws IOException {
+    AdminResponse adminResponse = AdminResponse.readFrom(stream);
+    Short versionId = stream.readShort();
+    if (!versionId.equals(VERSION_V1)) {
+      throw new IllegalStateException("Unrecognized version for SealedStoreFilesAdminResponse: " + versionId);
+    }
+    int fileCount = stream.readInt();
+    Map<String, Long> fileSizes = new LinkedHashMap<>();
+    for (int i = 0; i < fileCount; i++) {
+      String fileName = Utils.readIntString(stream);
+      fileSizes.put(fileName, stream.readLong());
+    }
+    FindToken endToken = stream.readByte() == 1 ? factory.getFindToken(stream) : null;
+    return new SealedStoreFilesAdminResponse(fileSizes, endToken, adminResponse);
+  }
+
+  /**
+   * Construct a SealedStoreFilesAdminResponse
+   * @param fileSizes the names of the sealed files mapped to their sizes, in the order in which they should be copied.
+   * @param endToken the token from which the entries that were written after the sealed files can be replicated.
+   *                 {@code null} if there are no sealed files.
+   * @param adminResponse the {@link AdminResponse} that contains common admin response related information.
+   */
+  public SealedStoreFilesAdminResponse(Map<String, Long> fileSizes, FindToken endToken, AdminResponse adminResponse) {
+    super(adminResponse.getCorrelationId(), adminResponse.getClientId(), adminResponse.getError());
+    this.fileSizes = Collections.unmodifiableMap(new LinkedHashMap<>(fileSizes));
+    this.endToken = endToken;
+    // parent size + version size + file count size + file names and sizes + token present flag size + token size
+    long size = super.sizeInBytes() + Short.BYTES + Integer.BYTES + Byte.BYTES;
+    for (String fileName : fileSizes.keySet()) {
+      size += Integer.BYTES + fileName.getBytes().length + Long.BYTES;
+    }
+    if (endToken != null) {
+      size += endToken.toBytes().length;
+    }
+    sizeInBytes = size;
+  }
+
+  /**
+   * @return the names of the sealed files mapped to their sizes, in the order in which they should be copied.
+   */
+  public Map<String, Long> getFileSizes() {
+    return fileSizes;
+  }
+
+  /**
+   * @return the token from which the entries that were written after the sealed files can be replicated, or
+   * {@code null} if there are no sealed files.
+   */
+  public FindToken getEndToken() {
+    return endToken;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return sizeInBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "SealedStoreFilesAdminResponse[ClientId=" + clientId + ", CorrelationId=" + correlationId + ", FileCount="
+        + fileSizes.size() + ", EndToken=" + endToken + "]";
+  }
+
+  @Override
+  protected void serializeIntoBuffer() {
+    super.serializeIntoBuffer();
+    bufferToSend.putShort(VERSION_V1);
+    bufferToSend.putInt(fileSizes.size());
+    for (Map.Entry<String, Long> entry : fileSizes.entrySet()) {
+      Utils.serializeString(bufferToSend, entry.getKey(), Charset.defaultCharset());
+      bufferToSend.putLong(entry.getValue());
+    }
+    bufferToSend.put(endToken == null ? (byte) 0 : 1);
+    if (endToken != null) {
+      bufferToSend.put(endToken.toBytes());
+    }
+  }
+}
@@ -25,6 +25,7 @@ import com.github.ambry.messageformat.BlobProperties;
 import com.github.ambry.messageformat.BlobType;
 import com.github.ambry.messageformat.MessageFormatFlags;
 import com.github.ambry.messageformat.MessageMetadata;
+import com.github.ambry.network.BoundedByteBufferSend;
 import com.github.ambry.store.FindToken;
 import com.github.ambry.store.FindTokenFactory;
 import com.github.ambry.store.MessageInfo;
@@ -39,8 +40,11 @@ import java.io.DataInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.junit.After;
 import org.junit.Assert;
 import org.junit.BeforeClass;
@@ -413,6 +417,36 @@ public class RequestResponseTest {
     Assert.assertEquals(replicaMetadataRequestFromBytes.getMaxTotalSizeOfEntriesInBytes(), 1000);
     Assert.assertEquals(replicaMetadataRequestFromBytes.getReplicaMetadataRequestInfoList().size(), 1);
 
+    // a request in which one partition limits its entries on its own
+    replicaMetadataRequestInfoList.add(
+        new ReplicaMetadataRequestInfo(new MockPartitionId(), new MockFindToken(0, 1000), "localhost", "path", 5000));
+    for (CompressionType compressionType : CompressionType.values()) {
+      request = new ReplicaMetadataRequest(1, "id", replicaMetadataRequestInfoList, 1000, compressionType);
+      replicaMetadataRequestFromBytes =
+          ReplicaMetadataRequest.readFrom(serAndPrepForRead(request, -1, true), new MockClusterMap(),
+              new MockFindTokenFactory());
+      List<ReplicaMetadataRequestInfo> infosFromBytes =
+          replicaMetadataRequestFromBytes.getReplicaMetadataRequestInfoList();
+      Assert.assertEquals("Unexpected number of infos", 2, infosFromBytes.size());
+      Assert.assertEquals("Request limit should apply to the first partition", 1000,
+          replicaMetadataRequestFromBytes.getMaxTotalSizeOfEntriesInBytes(infosFromBytes.get(0)));
+      Assert.assertEquals("Own limit should apply to the second partition", 5000,
+          replicaMetadataRequestFromBytes.getMaxTotalSizeOfEntriesInBytes(infosFromBytes.get(1)));
+      Assert.assertEquals("Accepted compression mismatch", compressionType,
+          replicaMetadataRequestFromBytes.getAcceptedCompression());
+      Assert.assertEquals("There should be no wait", 0, replicaMetadataRequestFromBytes.getMaxWaitTimeMs());
+    }
+
+    // a request that the remote node may hold until there are new entries
+    request = new ReplicaMetadataRequest(1, "id", replicaMetadataRequestInfoList, 1000, CompressionType.None, 2500);
+    replicaMetadataRequestFromBytes =
+        ReplicaMetadataRequest.readFrom(serAndPrepForRead(request, -1, true), new MockClusterMap(),
+            new MockFindTokenFactory());
+    Assert.assertEquals("Max wait time mismatch", 2500, replicaMetadataRequestFromBytes.getMaxWaitTimeMs());
+    Assert.assertEquals("Own limit should apply to the second partition", 5000,
+        replicaMetadataRequestFromBytes.getMaxTotalSizeOfEntriesInBytes(
+            replicaMetadataRequestFromBytes.getReplicaMetadataRequestInfoList().get(1)));
+
     try {
       new ReplicaMetadataRequest(1, "id", null, 12);
       Assert.fail("Serializing should have failed");
@@ -504,6 +538,93 @@ public class RequestResponseTest {
     Assert.assertTrue("Length of toString() should be > 0", response.toString().length() > 0);
   }
 
+  /**
+   * Tests the ser/de of the accepted compression of {@link GetRequest} and {@link ReplicaMetadataRequest} and that a
+   * {@link CompressedResponse} carries the response it was created from.
+   * @throws IOException
+   */
+  @Test
+  public void compressedResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    PartitionId partitionId = clusterMap.getWritablePartitionIds(MockClusterMap.DEFAULT_PARTITION_CLASS).get(0);
+    short accountId = Utils.getRandomShort(TestUtils.RANDOM);
+    short containerId = Utils.getRandomShort(TestUtils.RANDOM);
+    BlobId id = new BlobId(CommonTestUtils.getCurrentBlobIdVersion(), BlobId.BlobIdType.NATIVE,
+        ClusterMapUtils.UNKNOWN_DATACENTER_ID, accountId, containerId, partitionId, false,
+        BlobId.BlobDataType.DATACHUNK);
+    List<PartitionRequestInfo> partitionRequestInfoList =
+        Collections.singletonList(new PartitionRequestInfo(partitionId, Collections.singletonList(id)));
+    for (CompressionType compressionType : CompressionType.values()) {
+      GetRequest getRequest =
+          new GetRequest(1234, "clientId", MessageFormatFlags.All, partitionRequestInfoList, GetOption.Include_All,
+              compressionType);
+      GetRequest deserializedGetRequest = GetRequest.readFrom(serAndPrepForRead(getRequest, -1, true), clusterMap);
+      Assert.assertEquals("GetOption mismatch", GetOption.Include_All, deserializedGetRequest.getGetOption());
+      Assert.assertEquals("Accepted compression mismatch", compressionType,
+          deserializedGetRequest.getAcceptedCompression());
+
+      ReplicaMetadataRequest replicaMetadataRequest = new ReplicaMetadataRequest(1234, "clientId",
+          Collections.singletonList(
+              new ReplicaMetadataRequestInfo(partitionId, new MockFindToken(0, 1000), "localhost", "path")), 1000,
+          compressionType);
+      ReplicaMetadataRequest deserializedReplicaMetadataRequest =
+          ReplicaMetadataRequest.readFrom(serAndPrepForRead(replicaMetadataRequest, -1, true), clusterMap,
+              new MockFindTokenFactory());
+      Assert.assertEquals("Max total size mismatch", 1000,
+          deserializedReplicaMetadataRequest.getMaxTotalSizeOfEntriesInBytes());
+      Assert.assertEquals("Accepted compression mismatch", compressionType,
+          deserializedReplicaMetadataRequest.getAcceptedCompression());
+    }
+
+    // a get response with a compressible blob
+    byte[] blob = new byte[10000];
+    Arrays.fill(blob, (byte) 'a');
+    MessageInfo messageInfo = new MessageInfo(id, blob.length, accountId, containerId, 1000);
+    PartitionResponseInfo partitionResponseInfo =
+        new PartitionResponseInfo(partitionId, Collections.singletonList(messageInfo),
+            Collections.singletonList(null));
+    GetResponse getResponse =
+        new GetResponse(1234, "clientId", Collections.singletonList(partitionResponseInfo),
+            new BoundedByteBufferSend(ByteBuffer.wrap(blob)), ServerErrorCode.No_Error);
+    long uncompressedSize = getResponse.sizeInBytes();
+    CompressedResponse compressedResponse = CompressedResponse.compress(getResponse, CompressionType.Deflate);
+    Assert.assertEquals("Uncompressed size mismatch", uncompressedSize - 8, compressedResponse.getUncompressedSize());
+    Assert.assertTrue("Response should have been compressed",
+        compressedResponse.getCompressedSize() < compressedResponse.getUncompressedSize() / 10);
+    CompressedResponse deserializedCompressedResponse =
+        CompressedResponse.readFrom(serAndPrepForRead(compressedResponse, -1, false));
+    Assert.assertEquals("Correlation id mismatch", 1234, deserializedCompressedResponse.getCorrelationId());
+    Assert.assertEquals("Compression type mismatch", CompressionType.Deflate,
+        deserializedCompressedResponse.getCompressionType());
+    GetResponse deserializedGetResponse =
+        GetResponse.readFrom(new DataInputStream(deserializedCompressedResponse.decompress()), clusterMap);
+    Assert.assertEquals("Error mismatch", ServerErrorCode.No_Error, deserializedGetResponse.getError());
+    Assert.assertEquals("Key mismatch", id,
+        deserializedGetResponse.getPartitionResponseInfoList().get(0).getMessageInfoList().get(0).getStoreKey());
+    byte[] deserializedBlob = new byte[blob.length];
+    new DataInputStream(deserializedGetResponse.getInputStream()).readFully(deserializedBlob);
+    Assert.assertArrayEquals("Blob mismatch", blob, deserializedBlob);
+
+    // a replica metadata response with an error
+    ReplicaMetadataResponse replicaMetadataResponse =
+        new ReplicaMetadataResponse(1234, "clientId", ServerErrorCode.Unknown_Error);
+    deserializedCompressedResponse = CompressedResponse.readFrom(
+        serAndPrepForRead(CompressedResponse.compress(replicaMetadataResponse, CompressionType.Deflate), -1, false));
+    Assert.assertEquals("Error mismatch", ServerErrorCode.Unknown_Error, deserializedCompressedResponse.getError());
+    ReplicaMetadataResponse deserializedReplicaMetadataResponse =
+        ReplicaMetadataResponse.readFrom(new DataInputStream(deserializedCompressedResponse.decompress()),
+            new MockFindTokenFactory(), clusterMap);
+    Assert.assertEquals("Error mismatch", ServerErrorCode.Unknown_Error,
+        deserializedReplicaMetadataResponse.getError());
+
+    try {
+      new CompressedResponse(1234, "clientId", ServerErrorCode.No_Error, CompressionType.None, 0, new byte[0]);
+      Assert.fail("Construction should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do
+    }
+  }
+
   /**
    * Tests the ser/de of {@link AdminRequest} and {@link AdminResponse} and checks for equality of fields with
    * reference data.
@@ -616,6 +737,179 @@ public class RequestResponseTest {
     doReplicationControlAdminRequestTest(Collections.EMPTY_LIST, true);
   }
 
+  /**
+   * Tests the ser/de of {@link ReplicationBandwidthBudgetAdminRequest} and checks for equality of fields with reference
+   * data.
+   * @throws IOException
+   */
+  @Test
+  public void replicationBandwidthBudgetAdminRequestTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    int correlationId = 1234;
+    String clientId = "client";
+    String origin = UtilsTest.getRandomString(TestUtils.RANDOM.nextInt(8) + 2);
+    long bytesPerSec = Utils.getRandomLong(TestUtils.RANDOM, Long.MAX_VALUE);
+    AdminRequest adminRequest =
+        new AdminRequest(AdminRequestOrResponseType.ReplicationBandwidthBudget, null, correlationId, clientId);
+    ReplicationBandwidthBudgetAdminRequest budgetRequest =
+        new ReplicationBandwidthBudgetAdminRequest(origin, bytesPerSec, adminRequest);
+    DataInputStream requestStream = serAndPrepForRead(budgetRequest, -1, true);
+    AdminRequest deserializedAdminRequest =
+        deserAdminRequestAndVerify(requestStream, clusterMap, correlationId, clientId,
+            AdminRequestOrResponseType.ReplicationBandwidthBudget, null);
+    ReplicationBandwidthBudgetAdminRequest deserializedBudgetRequest =
+        ReplicationBandwidthBudgetAdminRequest.readFrom(requestStream, deserializedAdminRequest);
+    Assert.assertEquals("Origin mismatch", origin, deserializedBudgetRequest.getOrigin());
+    Assert.assertEquals("Budget mismatch", bytesPerSec, deserializedBudgetRequest.getBytesPerSec());
+  }
+
+  /**
+   * Tests the ser/de of the admin requests and responses that list and fetch the sealed files of a store.
+   * @throws IOException
+   */
+  @Test
+  public void sealedStoreFilesAdminRequestResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    PartitionId id = clusterMap.getWritablePartitionIds(MockClusterMap.DEFAULT_PARTITION_CLASS).get(0);
+    int correlationId = 1234;
+    String clientId = "client";
+    // sealed files response
+    Map<String, Long> fileSizes = new LinkedHashMap<>();
+    fileSizes.put("0_0_log", Utils.getRandomLong(TestUtils.RANDOM, Long.MAX_VALUE));
+    fileSizes.put("0_0_index", Utils.getRandomLong(TestUtils.RANDOM, Long.MAX_VALUE));
+    fileSizes.put("0_0_bloom", Utils.getRandomLong(TestUtils.RANDOM, Long.MAX_VALUE));
+    AdminResponse adminResponse = new AdminResponse(correlationId, clientId, ServerErrorCode.No_Error);
+    SealedStoreFilesAdminResponse filesResponse =
+        new SealedStoreFilesAdminResponse(fileSizes, new MockFindToken(2, 1000), adminResponse);
+    DataInputStream responseStream = serAndPrepForRead(filesResponse, -1, false);
+    SealedStoreFilesAdminResponse deserializedFilesResponse =
+        SealedStoreFilesAdminResponse.readFrom(responseStream, new MockFindTokenFactory());
+    Assert.assertEquals("Correlation ID mismatch", correlationId, deserializedFilesResponse.getCorrelationId());
+    Assert.assertEquals("Client ID mismatch", clientId, deserializedFilesResponse.getClientId());
+    Assert.assertEquals("File sizes mismatch", new ArrayList<>(fileSizes.entrySet()),
+        new ArrayList<>(deserializedFilesResponse.getFileSizes().entrySet()));
+    MockFindToken endToken = (MockFindToken) deserializedFilesResponse.getEndToken();
+    Assert.assertEquals("Token index mismatch", 2, endToken.getIndex());
+    Assert.assertEquals("Token bytes read mismatch", 1000, endToken.getBytesRead());
+    // no sealed files
+    adminResponse = new AdminResponse(correlationId, clientId, ServerErrorCode.Replica_Unavailable);
+    filesResponse = new SealedStoreFilesAdminResponse(Collections.emptyMap(), null, adminResponse);
+    responseStream = serAndPrepForRead(filesResponse, -1, false);
+    deserializedFilesResponse = SealedStoreFilesAdminResponse.readFrom(responseStream, new MockFindTokenFactory());
+    Assert.assertEquals("Error mismatch", ServerErrorCode.Replica_Unavailable, deserializedFilesResponse.getError());
+    Assert.assertTrue("There should be no files", deserializedFilesResponse.getFileSizes().isEmpty());
+    Assert.assertNull("There should be no token", deserializedFilesResponse.getEndToken());
+
+    // chunk request
+    long offset = Utils.getRandomLong(TestUtils.RANDOM, Long.MAX_VALUE);
+    long chunkSize = Utils.getRandomLong(TestUtils.RANDOM, Long.MAX_VALUE);
+    AdminRequest adminRequest =
+        new AdminRequest(AdminRequestOrResponseType.SealedStoreFileChunk, id, correlationId, clientId);
+    SealedStoreFileChunkAdminRequest chunkRequest =
+        new SealedStoreFileChunkAdminRequest("0_0_log", offset, chunkSize, adminRequest);
+    DataInputStream requestStream = serAndPrepForRead(chunkRequest, -1, true);
+    AdminRequest deserializedAdminRequest =
+        deserAdminRequestAndVerify(requestStream, clusterMap, correlationId, clientId,
+            AdminRequestOrResponseType.SealedStoreFileChunk, id);
+    SealedStoreFileChunkAdminRequest deserializedChunkRequest =
+        SealedStoreFileChunkAdminRequest.readFrom(requestStream, deserializedAdminRequest);
+    Assert.assertEquals("File name mismatch", "0_0_log", deserializedChunkRequest.getFileName());
+    Assert.assertEquals("Offset mismatch", offset, deserializedChunkRequest.getOffset());
+    Assert.assertEquals("Chunk size mismatch", chunkSize, deserializedChunkRequest.getChunkSizeInBytes());
+
+    // chunk response
+    byte[] chunk = TestUtils.getRandomBytes(1000);
+    adminResponse = new AdminResponse(correlationId, clientId, ServerErrorCode.No_Error);
+    SealedStoreFileChunkAdminResponse chunkResponse =
+        new SealedStoreFileChunkAdminResponse(new BoundedByteBufferSend(ByteBuffer.wrap(chunk)), adminResponse);
+    responseStream = serAndPrepForRead(chunkResponse, -1, false);
+    SealedStoreFileChunkAdminResponse deserializedChunkResponse =
+        SealedStoreFileChunkAdminResponse.readFrom(responseStream);
+    Assert.assertEquals("Correlation ID mismatch", correlationId, deserializedChunkResponse.getCorrelationId());
+    Assert.assertEquals("Error mismatch", ServerErrorCode.No_Error, deserializedChunkResponse.getError());
+    Assert.assertEquals("Chunk size mismatch", chunk.length, deserializedChunkResponse.getChunkSizeInBytes());
+    byte[] deserializedChunk = new byte[chunk.length];
+    new DataInputStream(deserializedChunkResponse.getChunkStream()).readFully(deserializedChunk);
+    Assert.assertArrayEquals("Chunk mismatch", chunk, deserializedChunk);
+    // chunk could not be read
+    adminResponse = new AdminResponse(correlationId, clientId, ServerErrorCode.Unknown_Error);
+    responseStream = serAndPrepForRead(new SealedStoreFileChunkAdminResponse(null, adminResponse), -1, false);
+    deserializedChunkResponse = SealedStoreFileChunkAdminResponse.readFrom(responseStream);
+    Assert.assertEquals("Error mismatch", ServerErrorCode.Unknown_Error, deserializedChunkResponse.getError());
+    Assert.assertEquals("Chunk size mismatch", 0, deserializedChunkResponse.getChunkSizeInBytes());
+  }
+
+  /**
+   * Tests the ser/de of {@link KeyRangeDigestsAdminRequest} and {@link KeyRangeDigestsAdminResponse}.
+   * @throws IOException
+   */
+  @Test
+  public void keyRangeDigestsAdminRequestResponseTest() throws IOException {
+    MockClusterMap clusterMap = new MockClusterMap();
+    PartitionId id = clusterMap.getWritablePartitionIds(MockClusterMap.DEFAULT_PARTITION_CLASS).get(0);
+    int correlationId = 1234;
+    String clientId = "client";
+    // request
+    long referenceTimeMs = Utils.getRandomLong(TestUtils.RANDOM, Long.MAX_VALUE);
+    List<Integer> buckets = Arrays.asList(3, 17, 4095);
+    AdminRequest adminRequest =
+        new AdminRequest(AdminRequestOrResponseType.KeyRangeDigests, id, correlationId, clientId);
+    KeyRangeDigestsAdminRequest digestsRequest =
+        new KeyRangeDigestsAdminRequest(referenceTimeMs, (short) 12, buckets, true, adminRequest);
+    DataInputStream requestStream = serAndPrepForRead(digestsRequest, -1, true);
+    AdminRequest deserializedAdminRequest =
+        deserAdminRequestAndVerify(requestStream, clusterMap, correlationId, clientId,
+            AdminRequestOrResponseType.KeyRangeDigests, id);
+    KeyRangeDigestsAdminRequest deserializedDigestsRequest =
+        KeyRangeDigestsAdminRequest.readFrom(requestStream, deserializedAdminRequest);
+    Assert.assertEquals("Reference time mismatch", referenceTimeMs, deserializedDigestsRequest.getReferenceTimeMs());
+    Assert.assertEquals("Level mismatch", 12, deserializedDigestsRequest.getLevel());
+    Assert.assertEquals("Buckets mismatch", buckets, deserializedDigestsRequest.getBuckets());
+    Assert.assertTrue("Keys should be requested", deserializedDigestsRequest.shouldIncludeKeys());
+
+    // response with keys
+    List<Long> digests = Arrays.asList(TestUtils.RANDOM.nextLong(), TestUtils.RANDOM.nextLong(), 0L);
+    List<Integer> keyCounts = Arrays.asList(1, 1, 0);
+    List<MessageInfo> messageInfos = new ArrayList<>();
+    for (int i = 0; i < 2; i++) {
+      BlobId blobId = new BlobId(CommonTestUtils.getCurrentBlobIdVersion(), BlobId.BlobIdType.NATIVE,
+          ClusterMapUtils.UNKNOWN_DATACENTER_ID, Utils.getRandomShort(TestUtils.RANDOM),
+          Utils.getRandomShort(TestUtils.RANDOM), id, false, BlobId.BlobDataType.DATACHUNK);
+      messageInfos.add(new MessageInfo(blobId, 1000, i == 0, i == 1, Utils.Infinite_Time, blobId.getAccountId(),
+          blobId.getContainerId(), SystemTime.getInstance().milliseconds()));
+    }
+    AdminResponse adminResponse = new AdminResponse(correlationId, clientId, ServerErrorCode.No_Error);
+    KeyRangeDigestsAdminResponse digestsResponse =
+        new KeyRangeDigestsAdminResponse(digests, keyCounts, messageInfos, adminResponse);
+    DataInputStream responseStream = serAndPrepForRead(digestsResponse, -1, false);
+    KeyRangeDigestsAdminResponse deserializedDigestsResponse =
+        KeyRangeDigestsAdminResponse.readFrom(responseStream, clusterMap);
+    Assert.assertEquals("Correlation ID mismatch", correlationId, deserializedDigestsResponse.getCorrelationId());
+    Assert.assertEquals("Error mismatch", ServerErrorCode.No_Error, deserializedDigestsResponse.getError());
+    Assert.assertEquals("Digests mismatch", digests, deserializedDigestsResponse.getDigests());
+    Assert.assertEquals("Key counts mismatch", keyCounts, deserializedDigestsResponse.getKeyCounts());
+    Assert.assertEquals("Key count mismatch", messageInfos.size(),
+        deserializedDigestsResponse.getMessageInfos().size());
+    for (int i = 0; i < messageInfos.size(); i++) {
+      MessageInfo expected = messageInfos.get(i);
+      MessageInfo actual = deserializedDigestsResponse.getMessageInfos().get(i);
+      Assert.assertEquals("Key mismatch", expected.getStoreKey(), actual.getStoreKey());
+      Assert.assertEquals("Deleted state mismatch", expected.isDeleted(), actual.isDeleted());
+      Assert.assertEquals("TTL update state mismatch", expected.isTtlUpdated(), actual.isTtlUpdated());
+      Assert.assertEquals("Operation time mismatch", expected.getOperationTimeMs(), actual.getOperationTimeMs());
+    }
+
+    // response without keys
+    adminResponse = new AdminResponse(correlationId, clientId, ServerErrorCode.Bad_Request);
+    digestsResponse =
+        new KeyRangeDigestsAdminResponse(Collections.emptyList(), Collections.emptyList(), null, adminResponse);
+    responseStream = serAndPrepForRead(digestsResponse, -1, false);
+    deserializedDigestsResponse = KeyRangeDigestsAdminResponse.readFrom(responseStream, clusterMap);
+    Assert.assertEquals("Error mismatch", ServerErrorCode.Bad_Request, deserializedDigestsResponse.getError());
+    Assert.assertTrue("There should be no digests", deserializedDigestsResponse.getDigests().isEmpty());
+    Assert.assertTrue("There should be no keys", deserializedDigestsResponse.getMessageInfos().isEmpty());
+  }
+
   /**
    * Tests for {@link TtlUpdateRequest} and {@link TtlUpdateResponse}.
    * @throws IOException
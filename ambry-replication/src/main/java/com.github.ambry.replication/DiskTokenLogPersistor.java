@@ -0,0 +1,210 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.store.FindTokenFactory;
+import com.github.ambry.utils.Crc32;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static com.github.ambry.replication.RemoteReplicaInfo.*;
+
+
+/**
+ * {@link DiskTokenLogPersistor} persists replication tokens to disk by appending the tokens that changed since the
+ * last flush to a token log next to the replica token file of every mount path, instead of rewriting the whole file.
+ * <p/>
+ * Every append is a batch of tokens serialized by {@link ReplicaTokenSerde}, preceded by its size. Once the log grows
+ * past the compaction threshold, all the tokens are written to the replica token file as {@link DiskTokenPersistor}
+ * does and the log is deleted. The first flush of every mount path is a compaction as well, which gets rid of a batch
+ * that was only partially appended before a crash. Tokens are retrieved by reading the replica token file and then
+ * replaying the batches of the log over it, stopping at the first batch that is incomplete or corrupt. A batch that is
+ * lost that way, or a log that outlives the compaction that should have deleted it, can only take a token back to an
+ * older value, which is safe.
+ */
+public class DiskTokenLogPersistor extends DiskTokenPersistor {
+  private static final Logger logger = LoggerFactory.getLogger(DiskTokenLogPersistor.class);
+  static final String TOKEN_LOG_FILE_NAME_SUFFIX = ".log";
+  private static final int CRC_SIZE = 8;
+
+  private final String tokenLogFileName;
+  private final long compactionThresholdBytes;
+  private final ConcurrentMap<String, TokenLog> tokenLogByMountPath = new ConcurrentHashMap<>();
+
+  /**
+   * Constructor for {@link DiskTokenLogPersistor}.
+   * @param replicaTokenFileName the token's file name. The token log is named after it.
+   * @param partitionGroupedByMountPath A map between mount path and list of partitions under this mount path.
+   * @param replicationMetrics metrics including token persist time.
+   * @param clusterMap the {@link ClusterMap} to deserialize tokens.
+   * @param tokenfactory the {@link FindTokenFactory} to deserialize tokens.
+   * @param compactionThresholdBytes the size of the token log beyond which it is compacted into the token file.
+   */
+  public DiskTokenLogPersistor(String replicaTokenFileName,
+      Map<String, List<PartitionInfo>> partitionGroupedByMountPath, ReplicationMetrics replicationMetrics,
+      ClusterMap clusterMap, FindTokenFactory tokenfactory, long compactionThresholdBytes) {
+    super(replicaTokenFileName, partitionGroupedByMountPath, replicationMetrics, clusterMap, tokenfactory);
+    this.tokenLogFileName = replicaTokenFileName + TOKEN_LOG_FILE_NAME_SUFFIX;
+    this.compactionThresholdBytes = compactionThresholdBytes;
+  }
+
+  @Override
+  protected void persist(String mountPath, List<ReplicaTokenInfo> tokenInfoList) throws IOException {
+    TokenLog tokenLog = tokenLogByMountPath.computeIfAbsent(mountPath, path -> new TokenLog());
+    File tokenLogFile = new File(mountPath, tokenLogFileName);
+    synchronized (tokenLog) {
+      if (tokenLog.compactionNeeded || tokenLogFile.length() >= compactionThresholdBytes) {
+        super.persist(mountPath, tokenInfoList);
+        Files.deleteIfExists(tokenLogFile.toPath());
+        tokenLog.persistedTokens.clear();
+        tokenInfoList.forEach(tokenInfo -> tokenLog.persistedTokens.put(getKey(tokenInfo), tokenInfo));
+        tokenLog.compactionNeeded = false;
+        replicationMetrics.replicaTokenLogCompactionCount.inc();
+        logger.debug("Compacted replica token log into the token file at mount path {}", mountPath);
+        return;
+      }
+      List<ReplicaTokenInfo> changedTokens = new ArrayList<>();
+      for (ReplicaTokenInfo tokenInfo : tokenInfoList) {
+        ReplicaTokenInfo persistedToken = tokenLog.persistedTokens.get(getKey(tokenInfo));
+        if (persistedToken == null
+            || persistedToken.getTotalBytesReadFromLocalStore() != tokenInfo.getTotalBytesReadFromLocalStore()
+            || !Arrays.equals(persistedToken.getReplicaToken().toBytes(), tokenInfo.getReplicaToken().toBytes())) {
+          changedTokens.add(tokenInfo);
+        }
+      }
+      if (changedTokens.isEmpty()) {
+        return;
+      }
+      ByteArrayOutputStream batch = new ByteArrayOutputStream();
+      replicaTokenSerde.serializeTokens(changedTokens, batch);
+      ByteBuffer record = ByteBuffer.allocate(Integer.BYTES + batch.size());
+      record.putInt(batch.size());
+      record.put(batch.toByteArray());
+      record.flip();
+      try (FileChannel channel = FileChannel.open(tokenLogFile.toPath(), StandardOpenOption.CREATE,
+          StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+        while (record.hasRemaining()) {
+          channel.write(record);
+        }
+        channel.force(true);
+      } catch (IOException e) {
+        // the batch may have been partially appended, so the next flush rewrites the token file and the log.
+        tokenLog.compactionNeeded = true;
+        logger.error("IO error while appending tokens to the replica token log {}", tokenLogFile.getAbsoluteFile());
+        throw e;
+      }
+      changedTokens.forEach(tokenInfo -> tokenLog.persistedTokens.put(getKey(tokenInfo), tokenInfo));
+      replicationMetrics.replicaTokenLogAppendedTokenCount.inc(changedTokens.size());
+    }
+  }
+
+  @Override
+  public List<ReplicaTokenInfo> retrieve(String mountPath) throws ReplicationException {
+    List<ReplicaTokenInfo> tokenInfoList = super.retrieve(mountPath);
+    File tokenLogFile = new File(mountPath, tokenLogFileName);
+    if (!tokenLogFile.exists()) {
+      return tokenInfoList;
+    }
+    Map<String, ReplicaTokenInfo> tokens = new LinkedHashMap<>();
+    tokenInfoList.forEach(tokenInfo -> tokens.put(getKey(tokenInfo), tokenInfo));
+    int batchCount = 0;
+    try (DataInputStream stream = new DataInputStream(new BufferedInputStream(new FileInputStream(tokenLogFile)))) {
+      byte[] batch;
+      while ((batch = readBatch(stream, tokenLogFile.length())) != null) {
+        for (ReplicaTokenInfo tokenInfo : replicaTokenSerde.deserializeTokens(new ByteArrayInputStream(batch))) {
+          tokens.put(getKey(tokenInfo), tokenInfo);
+        }
+        batchCount++;
+      }
+    } catch (IOException e) {
+      throw new ReplicationException("IO error while reading from replica token log at mount path " + mountPath, e);
+    }
+    logger.info("Replayed {} batches of the replica token log at mount path {}", batchCount, mountPath);
+    return new ArrayList<>(tokens.values());
+  }
+
+  /**
+   * Reads the next batch of tokens from the token log.
+   * @param stream the stream of the token log.
+   * @param tokenLogSize the size of the token log.
+   * @return the serialized batch, or {@code null} if the log has no more batches or the next one is incomplete or
+   *         corrupt.
+   * @throws IOException if the log could not be read.
+   */
+  private byte[] readBatch(DataInputStream stream, long tokenLogSize) throws IOException {
+    int batchSize;
+    try {
+      batchSize = stream.readInt();
+    } catch (EOFException e) {
+      return null;
+    }
+    if (batchSize < Short.BYTES + CRC_SIZE || batchSize > tokenLogSize) {
+      logger.warn("Ignoring the rest of the replica token log after a batch of invalid size {}", batchSize);
+      return null;
+    }
+    byte[] batch = new byte[batchSize];
+    try {
+      stream.readFully(batch);
+    } catch (EOFException e) {
+      logger.warn("Ignoring an incomplete batch of size {} at the end of the replica token log", batchSize);
+      return null;
+    }
+    Crc32 crc = new Crc32();
+    crc.update(batch, 0, batchSize - CRC_SIZE);
+    if (crc.getValue() != ByteBuffer.wrap(batch, batchSize - CRC_SIZE, CRC_SIZE).getLong()) {
+      logger.warn("Ignoring the rest of the replica token log after a corrupt batch of size {}", batchSize);
+      return null;
+    }
+    return batch;
+  }
+
+  /**
+   * @param tokenInfo the {@link ReplicaTokenInfo} of a remote replica.
+   * @return the key that identifies the remote replica in the token log.
+   */
+  private static String getKey(ReplicaTokenInfo tokenInfo) {
+    return tokenInfo.getPartitionId().toPathString() + ":" + tokenInfo.getHostname() + ":" + tokenInfo.getPort() + ":"
+        + tokenInfo.getReplicaPath();
+  }
+
+  /**
+   * The state of the token log of a mount path.
+   */
+  private static class TokenLog {
+    // the last persisted token of every remote replica on the mount path
+    final Map<String, ReplicaTokenInfo> persistedTokens = new HashMap<>();
+    boolean compactionNeeded = true;
+  }
+}
@@ -0,0 +1,107 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.DataNodeId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Decides which remote replicas a {@link ReplicaThread} replicates from in a cycle, and in which order, based on how far
+ * the local replicas lag behind them.
+ * <p/>
+ * The lag of a replica is the number of bytes that the remote replica had beyond the token of the last exchange with
+ * it. Replicas that have not been exchanged with yet are treated as lagging the most. In every cycle:
+ * <ul>
+ *   <li>every lagging replica is replicated from, and the replicas of a node are ordered by decreasing lag.</li>
+ *   <li>a replica that has caught up is only replicated from once every {@code caughtUpReplicaIntervalCycles}
+ *   cycles, so that it cannot starve but does not take time away from the lagging replicas either.</li>
+ *   <li>the nodes are ordered by the decreasing total lag of their replicas, so that the node with the most to catch
+ *   up on is talked to first.</li>
+ * </ul>
+ */
+class LagPrioritizedReplicaScheduler {
+  private final int caughtUpReplicaIntervalCycles;
+  private final ReplicationMetrics replicationMetrics;
+  // the number of cycles for which a caught up replica has been skipped. RemoteReplicaInfo does not implement
+  // hashCode(), so the replicas are tracked by identity.
+  private Map<RemoteReplicaInfo, Integer> skippedCyclesByReplica = new IdentityHashMap<>();
+
+  /**
+   * @param caughtUpReplicaIntervalCycles the number of cycles in which a caught up replica is replicated from once.
+   * @param replicationMetrics the {@link ReplicationMetrics} to record the skipped replicas in.
+   */
+  LagPrioritizedReplicaScheduler(int caughtUpReplicaIntervalCycles, ReplicationMetrics replicationMetrics) {
+    this.caughtUpReplicaIntervalCycles = caughtUpReplicaIntervalCycles;
+    this.replicationMetrics = replicationMetrics;
+  }
+
+  /**
+   * Schedules the next replication cycle.
+   * @param replicasByNode the remote replicas to replicate from, grouped by remote node.
+   * @return the remote replicas to replicate from in this cycle, grouped by remote node, in the order in which they
+   * should be replicated from. Nodes without a replica to replicate from are left out.
+   */
+  Map<DataNodeId, List<RemoteReplicaInfo>> schedule(Map<DataNodeId, List<RemoteReplicaInfo>> replicasByNode) {
+    Map<RemoteReplicaInfo, Integer> nextSkippedCyclesByReplica = new IdentityHashMap<>();
+    Map<DataNodeId, Long> totalLagByNode = new IdentityHashMap<>();
+    Map<DataNodeId, List<RemoteReplicaInfo>> scheduledReplicasByNode = new IdentityHashMap<>();
+    for (Map.Entry<DataNodeId, List<RemoteReplicaInfo>> entry : replicasByNode.entrySet()) {
+      List<RemoteReplicaInfo> scheduledReplicas = new ArrayList<>();
+      long totalLag = 0;
+      for (RemoteReplicaInfo remoteReplicaInfo : entry.getValue()) {
+        long lag = getLag(remoteReplicaInfo);
+        if (lag == 0) {
+          int skippedCycles = skippedCyclesByReplica.getOrDefault(remoteReplicaInfo, 0);
+          if (skippedCycles + 1 < caughtUpReplicaIntervalCycles) {
+            nextSkippedCyclesByReplica.put(remoteReplicaInfo, skippedCycles + 1);
+            replicationMetrics.lagPrioritizedSchedulerSkippedReplicaCount.inc();
+            continue;
+          }
+        }
+        scheduledReplicas.add(remoteReplicaInfo);
+        totalLag = totalLag > Long.MAX_VALUE - lag ? Long.MAX_VALUE : totalLag + lag;
+      }
+      if (!scheduledReplicas.isEmpty()) {
+        scheduledReplicas.sort(Comparator.comparingLong(LagPrioritizedReplicaScheduler::getLag).reversed());
+        scheduledReplicasByNode.put(entry.getKey(), scheduledReplicas);
+        totalLagByNode.put(entry.getKey(), totalLag);
+      }
+    }
+    skippedCyclesByReplica = nextSkippedCyclesByReplica;
+
+    List<DataNodeId> nodes = new ArrayList<>(scheduledReplicasByNode.keySet());
+    nodes.sort(Comparator.comparingLong((DataNodeId node) -> totalLagByNode.get(node)).reversed());
+    Map<DataNodeId, List<RemoteReplicaInfo>> schedule = new LinkedHashMap<>();
+    for (DataNodeId node : nodes) {
+      schedule.put(node, scheduledReplicasByNode.get(node));
+    }
+    return schedule;
+  }
+
+  /**
+   * @param remoteReplicaInfo a remote replica.
+   * @return the bytes that the local replica lags behind {@code remoteReplicaInfo}, or {@link Long#MAX_VALUE} if that
+   * is not known yet.
+   */
+  private static long getLag(RemoteReplicaInfo remoteReplicaInfo) {
+    long lag = remoteReplicaInfo.getLocalLagFromRemoteInBytes();
+    return lag < 0 ? Long.MAX_VALUE : lag;
+  }
+}
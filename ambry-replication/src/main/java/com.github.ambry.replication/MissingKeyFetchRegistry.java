@@ -0,0 +1,76 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.store.StoreKey;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+
+/**
+ * Keeps track of the keys that the {@link ReplicaThread}s are fetching from remote replicas, for every local
+ * partition. The same new blob usually shows up in the metadata of several remote replicas of a partition around the
+ * same time, so a replica thread claims the keys it is about to fetch and skips the keys that are already claimed by
+ * another one. The claims are released once the fetched messages have been written to the local store, or once the
+ * fetch has failed.
+ * <p/>
+ * A thread that skipped keys must not advance its token past them until they are in the local store, since the fetch
+ * that it relied on may fail.
+ */
+class MissingKeyFetchRegistry {
+  private final ConcurrentMap<PartitionId, Set<StoreKey>> keysBeingFetchedByPartition = new ConcurrentHashMap<>();
+
+  /**
+   * Claims the keys in {@code keys} that are not being fetched already.
+   * @param partitionId the local partition the keys belong to.
+   * @param keys the keys that are about to be fetched.
+   * @return the keys that were claimed. The rest of {@code keys} are being fetched by someone else.
+   */
+  Set<StoreKey> claim(PartitionId partitionId, Collection<StoreKey> keys) {
+    Set<StoreKey> keysBeingFetched =
+        keysBeingFetchedByPartition.computeIfAbsent(partitionId, id -> ConcurrentHashMap.newKeySet());
+    Set<StoreKey> claimedKeys = new HashSet<>();
+    for (StoreKey key : keys) {
+      if (keysBeingFetched.add(key)) {
+        claimedKeys.add(key);
+      }
+    }
+    return claimedKeys;
+  }
+
+  /**
+   * Releases keys claimed through {@link #claim(PartitionId, Collection)}.
+   * @param partitionId the local partition the keys belong to.
+   * @param claimedKeys the keys to release.
+   */
+  void release(PartitionId partitionId, Collection<StoreKey> claimedKeys) {
+    Set<StoreKey> keysBeingFetched = keysBeingFetchedByPartition.get(partitionId);
+    if (keysBeingFetched != null) {
+      keysBeingFetched.removeAll(claimedKeys);
+    }
+  }
+
+  /**
+   * @param partitionId the local partition.
+   * @return the number of keys of {@code partitionId} that are being fetched.
+   */
+  int getKeysBeingFetchedCount(PartitionId partitionId) {
+    Set<StoreKey> keysBeingFetched = keysBeingFetchedByPartition.get(partitionId);
+    return keysBeingFetched == null ? 0 : keysBeingFetched.size();
+  }
+}
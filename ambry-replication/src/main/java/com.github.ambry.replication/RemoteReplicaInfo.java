@@ -18,7 +18,10 @@ import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.network.Port;
 import com.github.ambry.store.FindToken;
 import com.github.ambry.store.Store;
+import com.github.ambry.store.StoreKey;
 import com.github.ambry.utils.Time;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 
 /*
@@ -61,6 +64,17 @@ public class RemoteReplicaInfo {
   private long totalBytesReadFromLocalStore;
   private long localLagFromRemoteStore = -1;
   private long reEnableReplicationTime = 0;
+  // the most bytes of entries to fetch from the remote replica in a metadata request when fetches are sized
+  // adaptively. 0 until the first fetch has been sized.
+  private volatile long fetchSizeInBytes = 0;
+  // the rate at which the last fetch from the remote replica moved its token forward.
+  private volatile long fetchBytesPerSec = 0;
+  private long lastFetchBytesRead = -1;
+  // the number of consecutive cycles in which the token was held back for keys fetched by another replica thread.
+  private int tokenAdvanceDeferrals = 0;
+  // the local keys left for another replica thread to fetch that have not been found in the local store yet, with the
+  // size of their message.
+  private final Map<StoreKey, Long> keysLeftToOtherThreads = new HashMap<>();
   private ReplicaThread replicaThread;
 
   public RemoteReplicaInfo(ReplicaId replicaId, ReplicaId localReplicaId, Store localStore, FindToken token,
@@ -119,6 +133,65 @@ public class RemoteReplicaInfo {
     return localLagFromRemoteStore;
   }
 
+  /**
+   * @return the most bytes of entries to fetch from the remote replica in a metadata request, or 0 if the fetches from
+   * the remote replica are not sized adaptively.
+   */
+  long getFetchSizeInBytes() {
+    return fetchSizeInBytes;
+  }
+
+  /**
+   * @param fetchSizeInBytes the most bytes of entries to fetch from the remote replica in a metadata request.
+   */
+  void setFetchSizeInBytes(long fetchSizeInBytes) {
+    this.fetchSizeInBytes = fetchSizeInBytes;
+  }
+
+  /**
+   * @return the rate in bytes per second at which the last fetch from the remote replica moved its token forward.
+   */
+  long getFetchBytesPerSec() {
+    return fetchBytesPerSec;
+  }
+
+  /**
+   * Records a fetch from the remote replica that moved its token to {@code bytesRead} in {@code fetchTimeInMs}.
+   * @param bytesRead the bytes read by the token that the remote replica returned.
+   * @param fetchTimeInMs the time taken by the fetch.
+   */
+  void recordFetch(long bytesRead, long fetchTimeInMs) {
+    // the rate is only known from the second fetch on, and not when the remote reset the token.
+    if (lastFetchBytesRead >= 0 && bytesRead >= lastFetchBytesRead) {
+      fetchBytesPerSec = (bytesRead - lastFetchBytesRead) * 1000 / Math.max(fetchTimeInMs, 1);
+    }
+    lastFetchBytesRead = bytesRead;
+  }
+
+  /**
+   * @return the number of consecutive replication cycles in which the token was not advanced because keys that another
+   * replica thread was fetching were still missing.
+   */
+  int getTokenAdvanceDeferrals() {
+    return tokenAdvanceDeferrals;
+  }
+
+  /**
+   * @param tokenAdvanceDeferrals the number of consecutive replication cycles in which the token was not advanced
+   *                              because keys that another replica thread was fetching were still missing.
+   */
+  void setTokenAdvanceDeferrals(int tokenAdvanceDeferrals) {
+    this.tokenAdvanceDeferrals = tokenAdvanceDeferrals;
+  }
+
+  /**
+   * @return the local keys that were left for another replica thread to fetch and have not been found in the local
+   * store yet, with the size of their message. Only used by the replica thread that replicates from this replica.
+   */
+  Map<StoreKey, Long> getKeysLeftToOtherThreads() {
+    return keysLeftToOtherThreads;
+  }
+
   synchronized FindToken getToken() {
     return currentToken;
   }
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.network.ConnectedChannel;
+import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.protocol.AdminRequest;
+import com.github.ambry.protocol.AdminRequestOrResponseType;
+import com.github.ambry.protocol.SealedStoreFileChunkAdminRequest;
+import com.github.ambry.protocol.SealedStoreFileChunkAdminResponse;
+import com.github.ambry.protocol.SealedStoreFilesAdminResponse;
+import com.github.ambry.store.FindTokenFactory;
+import com.github.ambry.store.StorageManager;
+import com.github.ambry.utils.Throttler;
+import com.github.ambry.utils.Time;
+import com.github.ambry.utils.Utils;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Bootstraps an empty store by copying the sealed log segments and index files of a peer replica of its partition,
+ * instead of replicating every blob of the partition one by one.
+ * <p/>
+ * The store is shut down while the files are copied into a staging directory in the replica directory. Once all of
+ * them are copied, the store is started from them and the token of the peer is set to the position right after the
+ * copied files, so that normal replication picks up from there. If the peer compacted any of the files while they were
+ * being copied or anything else fails, the store is started empty again and is filled by normal replication.
+ */
+class ReplicaBootstrapper {
+  static final String BOOTSTRAP_DIR_NAME = "bootstrap";
+  private static final long THROTTLE_CHECK_INTERVAL_MS = 100;
+
+  private final ReplicationConfig replicationConfig;
+  private final StorageManager storageManager;
+  private final ConnectionPool connectionPool;
+  private final FindTokenFactory factory;
+  private final DataNodeId dataNodeId;
+  private final ReplicationMetrics replicationMetrics;
+  private final Time time;
+  private final Throttler throttler;
+  private final AtomicInteger correlationIdGenerator = new AtomicInteger(0);
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private volatile boolean running = true;
+
+  /**
+   * @param replicationConfig the {@link ReplicationConfig} with the bootstrap settings.
+   * @param storageManager the {@link StorageManager} of the stores to bootstrap.
+   * @param connectionPool the {@link ConnectionPool} to connect to the peers with.
+   * @param factory the {@link FindTokenFactory} to deserialize the tokens of the peers with.
+   * @param dataNodeId the {@link DataNodeId} of this node.
+   * @param replicationMetrics the {@link ReplicationMetrics} to record the bootstraps in.
+   * @param time the {@link Time} instance to use.
+   */
+  ReplicaBootstrapper(ReplicationConfig replicationConfig, StorageManager storageManager,
+      ConnectionPool connectionPool, FindTokenFactory factory, DataNodeId dataNodeId,
+      ReplicationMetrics replicationMetrics, Time time) {
+    this.replicationConfig = replicationConfig;
+    this.storageManager = storageManager;
+    this.connectionPool = connectionPool;
+    this.factory = factory;
+    this.dataNodeId = dataNodeId;
+    this.replicationMetrics = replicationMetrics;
+    this.time = time;
+    throttler =
+        new Throttler(replicationConfig.replicationBootstrapBytesPerSec, THROTTLE_CHECK_INTERVAL_MS, true, time);
+  }
+
+  /**
+   * Bootstraps the store of {@code partitionInfo} from the sealed files of one of its peers. Replication of the
+   * partition should be disabled while this runs.
+   * @param partitionInfo the {@link PartitionInfo} of the partition whose store should be bootstrapped.
+   * @return {@code true} if the store was started from the sealed files of a peer. {@code false} if not, in which case
+   * the store is started with the files it had before.
+   */
+  boolean bootstrap(PartitionInfo partitionInfo) {
+    PartitionId partitionId = partitionInfo.getPartitionId();
+    RemoteReplicaInfo source = selectSource(partitionInfo);
+    if (source == null) {
+      logger.info("Not bootstrapping {} because none of its peers are up", partitionId);
+      return false;
+    }
+    String hostname = source.getReplicaId().getDataNodeId().getHostname();
+    File stagingDir = new File(partitionInfo.getLocalReplicaId().getReplicaPath(), BOOTSTRAP_DIR_NAME);
+    long startTimeMs = time.milliseconds();
+    boolean storeShutdown = false;
+    boolean bootstrapped = false;
+    ConnectedChannel connectedChannel = null;
+    try {
+      connectedChannel = connectionPool.checkOutConnection(hostname, source.getPort(),
+          replicationConfig.replicationConnectionPoolCheckoutTimeoutMs);
+      SealedStoreFilesAdminResponse sealedFiles = getSealedStoreFiles(connectedChannel, partitionId);
+      if (sealedFiles.getFileSizes().isEmpty() || !partitionInfo.getStore().isEmpty()) {
+        logger.info("Not bootstrapping {} from {} because there is nothing to copy or the store is not empty",
+            partitionId, hostname);
+        return false;
+      }
+      storeShutdown = storageManager.shutdownBlobStore(partitionId);
+      // a write may have made it to the store before it was shut down
+      if (!storeShutdown || !partitionInfo.getStore().isEmpty()) {
+        return false;
+      }
+      logger.info("Bootstrapping {} from {} with {}", partitionId, hostname, sealedFiles);
+      Utils.deleteFileOrDirectory(stagingDir);
+      if (!stagingDir.mkdirs()) {
+        throw new IOException("Could not create bootstrap directory " + stagingDir);
+      }
+      for (Map.Entry<String, Long> entry : sealedFiles.getFileSizes().entrySet()) {
+        copySealedFile(connectedChannel, partitionId, stagingDir, entry.getKey(), entry.getValue());
+      }
+      // the files are only usable if the peer did not compact any of them away while they were copied
+      SealedStoreFilesAdminResponse sealedFilesAfterCopy = getSealedStoreFiles(connectedChannel, partitionId);
+      if (!sealedFilesAfterCopy.getFileSizes().entrySet().containsAll(sealedFiles.getFileSizes().entrySet())) {
+        logger.warn("Sealed files of {} on {} changed while bootstrapping from them", partitionId, hostname);
+        return false;
+      }
+      bootstrapped = storageManager.startBlobStoreFromSealedFiles(partitionId, stagingDir);
+      if (bootstrapped) {
+        source.initializeTokens(sealedFiles.getEndToken());
+        logger.info("Bootstrapped {} from {} in {} ms", partitionId, hostname, time.milliseconds() - startTimeMs);
+      }
+    } catch (Exception e) {
+      logger.error("Error while bootstrapping {} from {}", partitionId, hostname, e);
+      if (connectedChannel != null) {
+        connectionPool.destroyConnection(connectedChannel);
+        connectedChannel = null;
+      }
+    } finally {
+      if (connectedChannel != null) {
+        connectionPool.checkInConnection(connectedChannel);
+      }
+      try {
+        Utils.deleteFileOrDirectory(stagingDir);
+      } catch (IOException e) {
+        logger.error("Could not delete bootstrap directory {}", stagingDir, e);
+      }
+      if (storeShutdown && !bootstrapped && !storageManager.startBlobStore(partitionId)) {
+        logger.error("Could not start store of {} after failing to bootstrap it", partitionId);
+      }
+      if (storeShutdown) {
+        if (bootstrapped) {
+          replicationMetrics.replicaBootstrapSuccessCount.inc();
+        } else {
+          replicationMetrics.replicaBootstrapFailureCount.inc();
+        }
+        replicationMetrics.replicaBootstrapTimeInMs.update(time.milliseconds() - startTimeMs);
+      }
+    }
+    return bootstrapped;
+  }
+
+  /**
+   * Stops any bootstrap that is in progress. The store of the partition that was being bootstrapped is started with the
+   * files it had before.
+   */
+  void shutdown() {
+    running = false;
+    throttler.disable();
+  }
+
+  /**
+   * @param partitionInfo the {@link PartitionInfo} of the partition to find a peer for.
+   * @return a peer that is up, preferring the ones in the local datacenter. {@code null} if none of them are up.
+   */
+  private RemoteReplicaInfo selectSource(PartitionInfo partitionInfo) {
+    RemoteReplicaInfo source = null;
+    for (RemoteReplicaInfo remoteReplicaInfo : partitionInfo.getRemoteReplicaInfos()) {
+      if (remoteReplicaInfo.getReplicaId().isDown()) {
+        continue;
+      }
+      if (remoteReplicaInfo.getReplicaId()
+          .getDataNodeId()
+          .getDatacenterName()
+          .equals(dataNodeId.getDatacenterName())) {
+        return remoteReplicaInfo;
+      }
+      if (source == null) {
+        source = remoteReplicaInfo;
+      }
+    }
+    return source;
+  }
+
+  /**
+   * Lists the sealed files of the store of {@code partitionId} on the peer.
+   * @param connectedChannel the {@link ConnectedChannel} to the peer.
+   * @param partitionId the {@link PartitionId} whose sealed files are needed.
+   * @return the {@link SealedStoreFilesAdminResponse} of the peer.
+   * @throws IOException if there is any problem talking to the peer or the peer returned an error.
+   */
+  private SealedStoreFilesAdminResponse getSealedStoreFiles(ConnectedChannel connectedChannel,
+      PartitionId partitionId) throws IOException {
+    AdminRequest adminRequest = new AdminRequest(AdminRequestOrResponseType.SealedStoreFiles, partitionId,
+        correlationIdGenerator.incrementAndGet(), getClientId());
+    connectedChannel.send(adminRequest);
+    SealedStoreFilesAdminResponse response =
+        SealedStoreFilesAdminResponse.readFrom(new DataInputStream(connectedChannel.receive().getInputStream()),
+            factory);
+    if (response.getError() != ServerErrorCode.No_Error) {
+      throw new IOException("Listing sealed files of " + partitionId + " failed with " + response.getError());
+    }
+    return response;
+  }
+
+  /**
+   * Copies one of the sealed files of the store of {@code partitionId} on the peer into {@code stagingDir}, chunk by
+   * chunk.
+   * @param connectedChannel the {@link ConnectedChannel} to the peer.
+   * @param partitionId the {@link PartitionId} whose sealed file should be copied.
+   * @param stagingDir the directory to copy the file into.
+   * @param fileName the name of the sealed file.
+   * @param fileSize the size of the sealed file.
+   * @throws IOException if there is any problem talking to the peer, the peer returned an error or the file could not
+   * be written.
+   * @throws InterruptedException if the copy was interrupted while being throttled.
+   */
+  private void copySealedFile(ConnectedChannel connectedChannel, PartitionId partitionId, File stagingDir,
+      String fileName, long fileSize) throws IOException, InterruptedException {
+    if (fileName.contains(File.separator) || fileName.contains("..")) {
+      throw new IOException("Invalid sealed file name " + fileName + " for " + partitionId);
+    }
+    File file = new File(stagingDir, fileName);
+    try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.WRITE)) {
+      long offset = 0;
+      while (offset < fileSize) {
+        if (!running) {
+          throw new IOException("Bootstrapper is shut down");
+        }
+        long chunkSizeInBytes = Math.min(replicationConfig.replicationBootstrapChunkSizeInBytes, fileSize - offset);
+        AdminRequest adminRequest = new AdminRequest(AdminRequestOrResponseType.SealedStoreFileChunk, partitionId,
+            correlationIdGenerator.incrementAndGet(), getClientId());
+        connectedChannel.send(new SealedStoreFileChunkAdminRequest(fileName, offset, chunkSizeInBytes, adminRequest));
+        SealedStoreFileChunkAdminResponse response = SealedStoreFileChunkAdminResponse.readFrom(
+            new DataInputStream(connectedChannel.receive().getInputStream()));
+        if (response.getError() != ServerErrorCode.No_Error || response.getChunkSizeInBytes() != chunkSizeInBytes) {
+          throw new IOException(
+              "Fetching chunk at " + offset + " of " + fileName + " of " + partitionId + " failed with " + response);
+        }
+        ReadableByteChannel chunkChannel = Channels.newChannel(response.getChunkStream());
+        long chunkEndOffset = offset + chunkSizeInBytes;
+        while (offset < chunkEndOffset) {
+          long transferred = fileChannel.transferFrom(chunkChannel, offset, chunkEndOffset - offset);
+          if (transferred <= 0) {
+            throw new IOException("Chunk at " + offset + " of " + fileName + " of " + partitionId + " ended early");
+          }
+          offset += transferred;
+        }
+        replicationMetrics.replicaBootstrapBytesRate.mark(chunkSizeInBytes);
+        throttler.maybeThrottle(chunkSizeInBytes);
+      }
+      fileChannel.force(true);
+    }
+  }
+
+  /**
+   * @return the client id of the admin requests sent by this bootstrapper.
+   */
+  private String getClientId() {
+    return "replication-bootstrap-" + dataNodeId.getHostname();
+  }
+}
@@ -0,0 +1,258 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.clustermap.ClusterMap;
+import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.network.ConnectedChannel;
+import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.ConnectionPoolTimeoutException;
+import com.github.ambry.protocol.AdminRequest;
+import com.github.ambry.protocol.AdminRequestOrResponseType;
+import com.github.ambry.protocol.KeyRangeDigestsAdminRequest;
+import com.github.ambry.protocol.KeyRangeDigestsAdminResponse;
+import com.github.ambry.store.KeyRangeDigests;
+import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.StorageManager;
+import com.github.ambry.store.StoreException;
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.Time;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Finds the keys on which a local replica and a peer replica of a partition disagree by comparing the
+ * {@link KeyRangeDigests} of the two, so that the cost of the comparison depends on how much the replicas differ
+ * rather than on how much data they have.
+ * <p/>
+ * The comparison starts at the root of the digest tree and only descends into the buckets whose digests differ,
+ * {@link #LEVELS_PER_REQUEST} levels per request. The keys of the leaf buckets that still differ are then compared
+ * one by one. Both sides compare the state of the keys as of the start of the grace period, since replication may not
+ * have caught up on the operations after it yet.
+ */
+class ReplicaDivergenceDetector {
+  static final int LEVELS_PER_REQUEST = 4;
+  private static final int MAX_KEYS_TO_LOG = 10;
+
+  private final ReplicationConfig replicationConfig;
+  private final StorageManager storageManager;
+  private final ConnectionPool connectionPool;
+  private final ClusterMap clusterMap;
+  private final DataNodeId dataNodeId;
+  private final ReplicationMetrics replicationMetrics;
+  private final Time time;
+  private final AtomicInteger correlationIdGenerator = new AtomicInteger(0);
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param replicationConfig the {@link ReplicationConfig} with the divergence check settings.
+   * @param storageManager the {@link StorageManager} of the local replicas.
+   * @param connectionPool the {@link ConnectionPool} to connect to the peers with.
+   * @param clusterMap the {@link ClusterMap} to deserialize the keys of the peers with.
+   * @param dataNodeId the {@link DataNodeId} of this node.
+   * @param replicationMetrics the {@link ReplicationMetrics} to record the checks in.
+   * @param time the {@link Time} instance to use.
+   */
+  ReplicaDivergenceDetector(ReplicationConfig replicationConfig, StorageManager storageManager,
+      ConnectionPool connectionPool, ClusterMap clusterMap, DataNodeId dataNodeId,
+      ReplicationMetrics replicationMetrics, Time time) {
+    this.replicationConfig = replicationConfig;
+    this.storageManager = storageManager;
+    this.connectionPool = connectionPool;
+    this.clusterMap = clusterMap;
+    this.dataNodeId = dataNodeId;
+    this.replicationMetrics = replicationMetrics;
+    this.time = time;
+  }
+
+  /**
+   * Compares each of the given partitions with a random peer that is up and reports the keys they disagree on.
+   * Partitions whose stores are not started are skipped.
+   * @param partitionInfos the {@link PartitionInfo}s of the partitions to check.
+   */
+  void checkPartitions(Collection<PartitionInfo> partitionInfos) {
+    for (PartitionInfo partitionInfo : partitionInfos) {
+      PartitionId partitionId = partitionInfo.getPartitionId();
+      List<RemoteReplicaInfo> peers = new ArrayList<>();
+      for (RemoteReplicaInfo remoteReplicaInfo : partitionInfo.getRemoteReplicaInfos()) {
+        if (!remoteReplicaInfo.getReplicaId().isDown()) {
+          peers.add(remoteReplicaInfo);
+        }
+      }
+      if (peers.isEmpty() || storageManager.getStore(partitionId) == null) {
+        continue;
+      }
+      RemoteReplicaInfo peer = peers.get(ThreadLocalRandom.current().nextInt(peers.size()));
+      long startTimeMs = time.milliseconds();
+      try {
+        Set<StoreKey> divergentKeys = findDivergentKeys(partitionInfo, peer);
+        replicationMetrics.replicaDivergenceCheckCount.inc();
+        if (!divergentKeys.isEmpty()) {
+          replicationMetrics.replicaDivergentKeyCount.inc(divergentKeys.size());
+          List<StoreKey> keysToLog = new ArrayList<>(divergentKeys);
+          logger.warn("{} keys of {} differ from the replica on {}, including {}", divergentKeys.size(), partitionId,
+              peer.getReplicaId().getDataNodeId(), keysToLog.subList(0, Math.min(MAX_KEYS_TO_LOG, keysToLog.size())));
+        }
+      } catch (Exception e) {
+        replicationMetrics.replicaDivergenceCheckErrorCount.inc();
+        logger.error("Error while comparing {} with the replica on {}", partitionId,
+            peer.getReplicaId().getDataNodeId(), e);
+      } finally {
+        replicationMetrics.replicaDivergenceCheckTimeInMs.update(time.milliseconds() - startTimeMs);
+      }
+    }
+  }
+
+  /**
+   * Finds the keys on which the local replica of a partition and a peer replica disagree. A key differs if only one
+   * of the replicas has it or if they disagree on whether it is deleted, on its expiry time or on its account or
+   * container.
+   * @param partitionInfo the {@link PartitionInfo} of the partition to compare.
+   * @param peer the {@link RemoteReplicaInfo} of the peer to compare with.
+   * @return the keys on which the two replicas disagree.
+   * @throws IOException if there is any problem talking to the peer or the peer returned an error.
+   * @throws StoreException if the local store could not be read.
+   * @throws InterruptedException if interrupted while checking out a connection to the peer.
+   * @throws ConnectionPoolTimeoutException if a connection to the peer could not be checked out in time.
+   */
+  Set<StoreKey> findDivergentKeys(PartitionInfo partitionInfo, RemoteReplicaInfo peer)
+      throws IOException, StoreException, InterruptedException, ConnectionPoolTimeoutException {
+    PartitionId partitionId = partitionInfo.getPartitionId();
+    long referenceTimeMs =
+        time.milliseconds() - replicationConfig.replicationDivergenceCheckGracePeriodSeconds * Time.MsPerSec;
+    KeyRangeDigests localDigests = storageManager.getKeyRangeDigests(partitionId, referenceTimeMs);
+    ConnectedChannel connectedChannel =
+        connectionPool.checkOutConnection(peer.getReplicaId().getDataNodeId().getHostname(), peer.getPort(),
+            replicationConfig.replicationConnectionPoolCheckoutTimeoutMs);
+    try {
+      int level = 0;
+      List<Integer> divergentBuckets =
+          getDivergentBuckets(connectedChannel, partitionId, localDigests, level, Collections.singletonList(0));
+      while (!divergentBuckets.isEmpty() && level < KeyRangeDigests.LEAF_LEVEL) {
+        int childLevel = Math.min(level + LEVELS_PER_REQUEST, KeyRangeDigests.LEAF_LEVEL);
+        List<Integer> children = getChildren(level, childLevel, divergentBuckets);
+        level = childLevel;
+        divergentBuckets = getDivergentBuckets(connectedChannel, partitionId, localDigests, level, children);
+      }
+      Set<StoreKey> divergentKeys = new HashSet<>();
+      if (!divergentBuckets.isEmpty()) {
+        KeyRangeDigestsAdminResponse response =
+            getRemoteDigests(connectedChannel, partitionId, referenceTimeMs, KeyRangeDigests.LEAF_LEVEL,
+                divergentBuckets, true);
+        Map<StoreKey, Long> remoteKeyDigests = new HashMap<>();
+        for (MessageInfo info : response.getMessageInfos()) {
+          remoteKeyDigests.put(info.getStoreKey(), KeyRangeDigests.getDigest(info));
+        }
+        for (MessageInfo info : storageManager.getKeysInLeafBuckets(partitionId, new HashSet<>(divergentBuckets),
+            referenceTimeMs)) {
+          Long remoteKeyDigest = remoteKeyDigests.remove(info.getStoreKey());
+          if (remoteKeyDigest == null || remoteKeyDigest != KeyRangeDigests.getDigest(info)) {
+            divergentKeys.add(info.getStoreKey());
+          }
+        }
+        divergentKeys.addAll(remoteKeyDigests.keySet());
+      }
+      connectionPool.checkInConnection(connectedChannel);
+      return divergentKeys;
+    } catch (IOException | StoreException | RuntimeException e) {
+      connectionPool.destroyConnection(connectedChannel);
+      throw e;
+    }
+  }
+
+  /**
+   * Compares the digests of some buckets of the local replica with those of the peer.
+   * @param connectedChannel the {@link ConnectedChannel} to the peer.
+   * @param partitionId the {@link PartitionId} to compare.
+   * @param localDigests the {@link KeyRangeDigests} of the local replica.
+   * @param level the level of the tree that the buckets are on.
+   * @param buckets the buckets to compare.
+   * @return the buckets whose digests or key counts differ.
+   * @throws IOException if there is any problem talking to the peer or the peer returned an error.
+   */
+  private List<Integer> getDivergentBuckets(ConnectedChannel connectedChannel, PartitionId partitionId,
+      KeyRangeDigests localDigests, int level, List<Integer> buckets) throws IOException {
+    KeyRangeDigestsAdminResponse response =
+        getRemoteDigests(connectedChannel, partitionId, localDigests.getReferenceTimeMs(), level, buckets, false);
+    List<Integer> divergentBuckets = new ArrayList<>();
+    for (int i = 0; i < buckets.size(); i++) {
+      int bucket = buckets.get(i);
+      if (localDigests.getDigest(level, bucket) != response.getDigests().get(i)
+          || localDigests.getKeyCount(level, bucket) != response.getKeyCounts().get(i)) {
+        divergentBuckets.add(bucket);
+      }
+    }
+    return divergentBuckets;
+  }
+
+  /**
+   * Gets the digests of some buckets of the peer replica.
+   * @param connectedChannel the {@link ConnectedChannel} to the peer.
+   * @param partitionId the {@link PartitionId} whose digests are needed.
+   * @param referenceTimeMs the time as of which the state of the keys is taken. Operations after it are left
+   *                        out.
+   * @param level the level of the tree that the buckets are on.
+   * @param buckets the buckets whose digests are needed.
+   * @param includeKeys {@code true} if the keys in the buckets are needed as well.
+   * @return the {@link KeyRangeDigestsAdminResponse} of the peer.
+   * @throws IOException if there is any problem talking to the peer or the peer returned an error.
+   */
+  private KeyRangeDigestsAdminResponse getRemoteDigests(ConnectedChannel connectedChannel, PartitionId partitionId,
+      long referenceTimeMs, int level, List<Integer> buckets, boolean includeKeys) throws IOException {
+    AdminRequest adminRequest = new AdminRequest(AdminRequestOrResponseType.KeyRangeDigests, partitionId,
+        correlationIdGenerator.incrementAndGet(), "replication-divergence-check-" + dataNodeId.getHostname());
+    connectedChannel.send(
+        new KeyRangeDigestsAdminRequest(referenceTimeMs, (short) level, buckets, includeKeys, adminRequest));
+    KeyRangeDigestsAdminResponse response =
+        KeyRangeDigestsAdminResponse.readFrom(new DataInputStream(connectedChannel.receive().getInputStream()),
+            clusterMap);
+    if (response.getError() != ServerErrorCode.No_Error || response.getDigests().size() != buckets.size()) {
+      throw new IOException("Getting key range digests of " + partitionId + " failed with " + response);
+    }
+    return response;
+  }
+
+  /**
+   * @param level the level of the buckets.
+   * @param childLevel the level of the children, below {@code level}.
+   * @param buckets the buckets on {@code level}.
+   * @return the buckets on {@code childLevel} that are covered by {@code buckets}.
+   */
+  private static List<Integer> getChildren(int level, int childLevel, List<Integer> buckets) {
+    int childrenPerBucket = 1 << (childLevel - level);
+    List<Integer> children = new ArrayList<>(buckets.size() * childrenPerBucket);
+    for (int bucket : buckets) {
+      for (int i = 0; i < childrenPerBucket; i++) {
+        children.add(bucket * childrenPerBucket + i);
+      }
+    }
+    return children;
+  }
+}
@@ -34,9 +34,15 @@ import com.github.ambry.messageformat.TtlUpdateMessageFormatInputStream;
 import com.github.ambry.network.ChannelOutput;
 import com.github.ambry.network.ConnectedChannel;
 import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.NetworkClient;
+import com.github.ambry.network.NetworkClientErrorCode;
+import com.github.ambry.network.RequestInfo;
+import com.github.ambry.network.ResponseInfo;
 import com.github.ambry.notification.BlobReplicaSourceType;
 import com.github.ambry.notification.NotificationSystem;
 import com.github.ambry.notification.UpdateType;
+import com.github.ambry.protocol.CompressedResponse;
+import com.github.ambry.protocol.CompressionType;
 import com.github.ambry.protocol.GetOption;
 import com.github.ambry.protocol.GetRequest;
 import com.github.ambry.protocol.GetResponse;
@@ -46,6 +52,8 @@ import com.github.ambry.protocol.ReplicaMetadataRequest;
 import com.github.ambry.protocol.ReplicaMetadataRequestInfo;
 import com.github.ambry.protocol.ReplicaMetadataResponse;
 import com.github.ambry.protocol.ReplicaMetadataResponseInfo;
+import com.github.ambry.protocol.RequestOrResponse;
+import com.github.ambry.protocol.RequestOrResponseType;
 import com.github.ambry.store.FindToken;
 import com.github.ambry.store.FindTokenFactory;
 import com.github.ambry.store.MessageInfo;
@@ -57,17 +65,23 @@ import com.github.ambry.store.Transformer;
 import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Time;
+import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.ReentrantLock;
@@ -77,9 +91,26 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * A replica thread is responsible for handling replication for a set of partitions assigned to it
+ * A replica thread is responsible for handling replication for a set of partitions assigned to it.
+ * <p/>
+ * Without a {@link NetworkClient}, the thread talks to one remote node at a time over a connection from the
+ * {@link ConnectionPool} and waits for every response. With a {@link NetworkClient}, the requests to all the remote
+ * nodes are in flight at the same time and the responses are processed as they arrive.
+ * <p/>
+ * With the connection pool, the messages fetched from a remote node can be written to the local stores by a
+ * {@link StoreWritePipeline} while the thread moves on to the next remote node. The tokens of the replicas of a node are
+ * advanced by the pipeline once their messages are written, and a replication cycle only ends once every write is
+ * done, so the next cycle asks the remote nodes for metadata from the advanced tokens.
+ * <p/>
+ * A {@link LagPrioritizedReplicaScheduler} can decide which remote replicas are replicated from in a cycle and in
+ * which order, so that the replicas that lag behind the most catch up first.
+ * <p/>
+ * Replica threads that share a {@link MissingKeyFetchRegistry} do not fetch a missing key from a remote replica while
+ * another one of them is fetching it from another remote replica of the partition.
  */
 public class ReplicaThread implements Runnable {
+  // the time to wait for responses in a single poll of the network client.
+  private static final int NETWORK_CLIENT_POLL_TIMEOUT_MS = 100;
 
   private final Map<DataNodeId, Set<RemoteReplicaInfo>> replicasToReplicateGroupedByNode = new HashMap<>();
   private final Set<PartitionId> replicationDisabledPartitions = new HashSet<>();
@@ -93,6 +124,11 @@ public class ReplicaThread implements Runnable {
   private final AtomicInteger correlationIdGenerator;
   private final DataNodeId dataNodeId;
   private final ConnectionPool connectionPool;
+  private final NetworkClient networkClient;
+  private final StoreWritePipeline storeWritePipeline;
+  private final MissingKeyFetchRegistry missingKeyFetchRegistry;
+  private final ReplicationBandwidthBudget bandwidthBudget;
+  private final LagPrioritizedReplicaScheduler replicaScheduler;
   private final ReplicationConfig replicationConfig;
   private final ReplicationMetrics replicationMetrics;
   private final String threadName;
@@ -100,6 +136,7 @@ public class ReplicaThread implements Runnable {
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final StoreKeyConverter storeKeyConverter;
   private final Transformer transformer;
+  private final Transformer pipelineTransformer;
   private final MetricRegistry metricRegistry;
   private final ResponseHandler responseHandler;
   private final boolean replicatingFromRemoteColo;
@@ -114,12 +151,34 @@ public class ReplicaThread implements Runnable {
   private final Condition pauseCondition = lock.newCondition();
 
   private volatile boolean allDisabled = false;
+  // whether none of the replicas had new entries in the last replication cycle
+  private boolean replicasCaughtUp = false;
 
   public ReplicaThread(String threadName, FindTokenFactory findTokenFactory, ClusterMap clusterMap,
       AtomicInteger correlationIdGenerator, DataNodeId dataNodeId, ConnectionPool connectionPool,
       ReplicationConfig replicationConfig, ReplicationMetrics replicationMetrics, NotificationSystem notification,
       StoreKeyConverter storeKeyConverter, Transformer transformer, MetricRegistry metricRegistry,
       boolean replicatingOverSsl, String datacenterName, ResponseHandler responseHandler, Time time) {
+    this(threadName, findTokenFactory, clusterMap, correlationIdGenerator, dataNodeId, connectionPool, null, null, null,
+        replicationConfig, replicationMetrics, notification, storeKeyConverter, transformer, null, metricRegistry,
+        replicatingOverSsl, datacenterName, responseHandler, time);
+  }
+
+  /**
+   * Creates a replica thread that replicates using {@code networkClient} if it is not {@code null} and using
+   * {@code connectionPool} otherwise. If {@code missingKeyFetchRegistry} is not {@code null}, the thread does not fetch
+   * the keys that other replica threads sharing the registry are fetching. If {@code bandwidthBudget} is not
+   * {@code null}, the bytes that the thread fetches are limited by it. If the writes to the local stores are pipelined,
+   * they are transformed with {@code pipelineTransformer}, which must not share its {@link StoreKeyConverter} with
+   * {@code transformer} since the two are used on different threads.
+   */
+  public ReplicaThread(String threadName, FindTokenFactory findTokenFactory, ClusterMap clusterMap,
+      AtomicInteger correlationIdGenerator, DataNodeId dataNodeId, ConnectionPool connectionPool,
+      NetworkClient networkClient, MissingKeyFetchRegistry missingKeyFetchRegistry,
+      ReplicationBandwidthBudget bandwidthBudget, ReplicationConfig replicationConfig,
+      ReplicationMetrics replicationMetrics, NotificationSystem notification, StoreKeyConverter storeKeyConverter,
+      Transformer transformer, Transformer pipelineTransformer, MetricRegistry metricRegistry,
+      boolean replicatingOverSsl, String datacenterName, ResponseHandler responseHandler, Time time) {
     this.threadName = threadName;
     this.running = true;
     this.findTokenFactory = findTokenFactory;
@@ -127,6 +186,22 @@ public class ReplicaThread implements Runnable {
     this.correlationIdGenerator = correlationIdGenerator;
     this.dataNodeId = dataNodeId;
     this.connectionPool = connectionPool;
+    this.networkClient = networkClient;
+    if (networkClient == null && replicationConfig.replicationPipelinedStoreWritesEnabled) {
+      if (pipelineTransformer == null) {
+        throw new IllegalArgumentException("A pipeline transformer is needed to pipeline the store writes");
+      }
+      this.storeWritePipeline =
+          new StoreWritePipeline(threadName, replicationConfig.replicationPipelineMaxPendingBytes, replicationMetrics);
+    } else {
+      this.storeWritePipeline = null;
+    }
+    this.pipelineTransformer = pipelineTransformer;
+    this.missingKeyFetchRegistry = missingKeyFetchRegistry;
+    this.bandwidthBudget = bandwidthBudget;
+    this.replicaScheduler = replicationConfig.replicationLagPrioritizedSchedulingEnabled
+        ? new LagPrioritizedReplicaScheduler(replicationConfig.replicationCaughtUpReplicaIntervalCycles,
+            replicationMetrics) : null;
     this.replicationConfig = replicationConfig;
     this.replicationMetrics = replicationMetrics;
     this.notification = notification;
@@ -214,6 +289,12 @@ public class ReplicaThread implements Runnable {
       }
     } finally {
       running = false;
+      if (networkClient != null) {
+        networkClient.close();
+      }
+      if (storeWritePipeline != null) {
+        storeWritePipeline.shutdown();
+      }
       shutdownLatch.countDown();
     }
   }
@@ -282,51 +363,59 @@ public class ReplicaThread implements Runnable {
    * Do replication for replicas grouped by {@link DataNodeId}
    */
   public void replicate() {
-    boolean allCaughtUp = true;
     Map<DataNodeId, List<RemoteReplicaInfo>> dateNodeToRemoteReplicaInfo = getRemoteReplicaInfos();
+    if (replicaScheduler != null) {
+      dateNodeToRemoteReplicaInfo = replicaScheduler.schedule(dateNodeToRemoteReplicaInfo);
+    }
 
     logger.trace("Replicating from {} DataNodes.", replicasToReplicateGroupedByNode.size());
+    boolean allCaughtUp = networkClient == null ? replicateOverConnectionPool(dateNodeToRemoteReplicaInfo)
+        : replicateOverNetworkClient(dateNodeToRemoteReplicaInfo);
+    long sleepDurationMs = 0;
+    if (allCaughtUp && replicationConfig.replicationReplicaThreadIdleSleepDurationMs > 0) {
+      sleepDurationMs = replicationConfig.replicationReplicaThreadIdleSleepDurationMs;
+      idleCount.inc();
+    } else if (threadThrottleDurationMs > 0) {
+      sleepDurationMs = threadThrottleDurationMs;
+      throttleCount.inc();
+    }
+
+    if (sleepDurationMs > 0) {
+      try {
+        long currentTime = time.milliseconds();
+        time.sleep(sleepDurationMs);
+        logger.trace("Replica thread: {} slept for {} ms", threadName, time.milliseconds() - currentTime);
+      } catch (InterruptedException e) {
+        logger.error("Received interrupted exception during throttling", e);
+      }
+    }
+  }
+
+  /**
+   * Replicates from the remote nodes one after the other over connections checked out from the
+   * {@link ConnectionPool}.
+   * @param dateNodeToRemoteReplicaInfo the remote replicas to replicate from, grouped by {@link DataNodeId}.
+   * @return {@code true} if none of the remote replicas was active.
+   */
+  private boolean replicateOverConnectionPool(Map<DataNodeId, List<RemoteReplicaInfo>> dateNodeToRemoteReplicaInfo) {
+    boolean allCaughtUp = true;
     for (Map.Entry<DataNodeId, List<RemoteReplicaInfo>> entry : dateNodeToRemoteReplicaInfo.entrySet()) {
       DataNodeId remoteNode = entry.getKey();
       if (!running) {
         break;
       }
       List<RemoteReplicaInfo> replicasToReplicatePerNode = entry.getValue();
-      Timer.Context context = null;
-      Timer.Context portTypeBasedContext = null;
-      if (replicatingFromRemoteColo) {
-        context = replicationMetrics.interColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
-        if (replicatingOverSsl) {
-          portTypeBasedContext =
-              replicationMetrics.sslInterColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
-        } else {
-          portTypeBasedContext =
-              replicationMetrics.plainTextInterColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
-        }
-      } else {
-        context = replicationMetrics.intraColoReplicationLatency.time();
-        if (replicatingOverSsl) {
-          portTypeBasedContext = replicationMetrics.sslIntraColoReplicationLatency.time();
-        } else {
-          portTypeBasedContext = replicationMetrics.plainTextIntraColoReplicationLatency.time();
-        }
-      }
+      Timer.Context context = startReplicationLatencyTimer(remoteNode);
+      Timer.Context portTypeBasedContext = startPortTypeBasedReplicationLatencyTimer(remoteNode);
       ConnectedChannel connectedChannel = null;
+      List<ExchangeMetadataResponse> exchangeMetadataResponseList = null;
       long checkoutConnectionTimeInMs = -1;
       long exchangeMetadataTimeInMs = -1;
       long fixMissingStoreKeysTimeInMs = -1;
       long replicationStartTimeInMs = SystemTime.getInstance().milliseconds();
       long startTimeInMs = replicationStartTimeInMs;
 
-      List<RemoteReplicaInfo> activeReplicasPerNode = new ArrayList<RemoteReplicaInfo>();
-      for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
-        ReplicaId replicaId = remoteReplicaInfo.getReplicaId();
-        boolean inBackoff = time.milliseconds() < remoteReplicaInfo.getReEnableReplicationTime();
-        if (replicationDisabledPartitions.contains(replicaId.getPartitionId()) || replicaId.isDown() || inBackoff) {
-          continue;
-        }
-        activeReplicasPerNode.add(remoteReplicaInfo);
-      }
+      List<RemoteReplicaInfo> activeReplicasPerNode = getActiveReplicas(replicasToReplicatePerNode);
       logger.trace("Replicating from {} RemoteReplicaInfos.", activeReplicasPerNode.size());
       if (activeReplicasPerNode.size() > 0) {
         allCaughtUp = false;
@@ -336,13 +425,18 @@ public class ReplicaThread implements Runnable {
                   replicationConfig.replicationConnectionPoolCheckoutTimeoutMs);
           checkoutConnectionTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
           startTimeInMs = SystemTime.getInstance().milliseconds();
-          List<ExchangeMetadataResponse> exchangeMetadataResponseList =
-              exchangeMetadata(connectedChannel, activeReplicasPerNode);
+          exchangeMetadataResponseList = exchangeMetadata(connectedChannel, activeReplicasPerNode);
           exchangeMetadataTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
 
           startTimeInMs = SystemTime.getInstance().milliseconds();
-          fixMissingStoreKeys(connectedChannel, activeReplicasPerNode, exchangeMetadataResponseList);
+          if (storeWritePipeline != null) {
+            fetchMissingKeysAndSubmitWrite(connectedChannel, activeReplicasPerNode, exchangeMetadataResponseList);
+          } else {
+            fixMissingStoreKeys(connectedChannel, activeReplicasPerNode, exchangeMetadataResponseList);
+          }
           fixMissingStoreKeysTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+          updateFetchSizes(activeReplicasPerNode, exchangeMetadataResponseList,
+              exchangeMetadataTimeInMs + fixMissingStoreKeysTimeInMs);
         } catch (Throwable e) {
           if (checkoutConnectionTimeInMs == -1) {
             // throwable happened in checkout connection phase
@@ -360,6 +454,7 @@ public class ReplicaThread implements Runnable {
                   + "time {}", remoteNode, threadName, replicasToReplicatePerNode, activeReplicasPerNode,
               checkoutConnectionTimeInMs, exchangeMetadataTimeInMs, fixMissingStoreKeysTimeInMs, e);
           replicationMetrics.incrementReplicationErrors(replicatingOverSsl);
+          releaseClaimedStoreKeys(exchangeMetadataResponseList, activeReplicasPerNode);
           if (connectedChannel != null) {
             connectionPool.destroyConnection(connectedChannel);
             connectedChannel = null;
@@ -376,22 +471,176 @@ public class ReplicaThread implements Runnable {
         }
       }
     }
-    long sleepDurationMs = 0;
-    if (allCaughtUp && replicationConfig.replicationReplicaThreadIdleSleepDurationMs > 0) {
-      sleepDurationMs = replicationConfig.replicationReplicaThreadIdleSleepDurationMs;
-      idleCount.inc();
-    } else if (threadThrottleDurationMs > 0) {
-      sleepDurationMs = threadThrottleDurationMs;
-      throttleCount.inc();
-    }
-
-    if (sleepDurationMs > 0) {
+    if (storeWritePipeline != null) {
       try {
-        long currentTime = time.milliseconds();
-        time.sleep(sleepDurationMs);
-        logger.trace("Replica thread: {} slept for {} ms", threadName, time.milliseconds() - currentTime);
+        storeWritePipeline.awaitPendingWrites();
       } catch (InterruptedException e) {
-        logger.error("Received interrupted exception during throttling", e);
+        logger.error("Thread name: {} interrupted while waiting for store writes", threadName, e);
+        Thread.currentThread().interrupt();
+      }
+    }
+    return allCaughtUp;
+  }
+
+  /**
+   * Replicates from all the remote nodes at the same time using the {@link NetworkClient}. The active replicas of
+   * every remote node are split into at most {@link ReplicationConfig#replicationMaxInFlightRequestsPerNode} groups.
+   * Every group exchanges metadata and fetches its missing keys independently of the other groups, so a slow remote
+   * node does not hold up the others. The responses are processed on this thread as they arrive. While the bandwidth
+   * budget of the datacenter is exceeded, the next requests of the groups are held back, but the responses to the
+   * requests in flight are still processed. When the metadata requests may wait for new entries, a group that had new
+   * entries asks its remote node for more as soon as it is done instead of waiting for the groups whose requests are
+   * still waiting, until the longest wait of the cycle is over.
+   * @param dateNodeToRemoteReplicaInfo the remote replicas to replicate from, grouped by {@link DataNodeId}.
+   * @return {@code true} if none of the remote replicas was active.
+   */
+  private boolean replicateOverNetworkClient(Map<DataNodeId, List<RemoteReplicaInfo>> dateNodeToRemoteReplicaInfo) {
+    // replicas that had no new entries in the last cycle are likely to have none now, so ask the remote nodes to
+    // hold the metadata requests until they do instead of polling them again right away
+    long metadataWaitTimeMs =
+        replicasCaughtUp && !replicatingFromRemoteColo ? replicationConfig.replicationMetadataRequestMaxWaitTimeMs : 0;
+    replicasCaughtUp = true;
+    long restartDeadlineMs = replicatingFromRemoteColo ? 0
+        : time.milliseconds() + replicationConfig.replicationMetadataRequestMaxWaitTimeMs;
+    Map<Integer, ReplicaGroupExchange> exchangesByCorrelationId = new HashMap<>();
+    // the next requests of the exchanges, which are held back while the bandwidth budget is exceeded.
+    Map<ReplicaGroupExchange, RequestInfo> pendingRequests = new LinkedHashMap<>();
+    for (Map.Entry<DataNodeId, List<RemoteReplicaInfo>> entry : dateNodeToRemoteReplicaInfo.entrySet()) {
+      List<RemoteReplicaInfo> activeReplicasPerNode = getActiveReplicas(entry.getValue());
+      logger.trace("Replicating from {} RemoteReplicaInfos.", activeReplicasPerNode.size());
+      int groupCount = Math.min(activeReplicasPerNode.size(), replicationConfig.replicationMaxInFlightRequestsPerNode);
+      for (int i = 0; i < groupCount; i++) {
+        List<RemoteReplicaInfo> group = new ArrayList<>();
+        for (int j = i; j < activeReplicasPerNode.size(); j += groupCount) {
+          group.add(activeReplicasPerNode.get(j));
+        }
+        ReplicaGroupExchange exchange = new ReplicaGroupExchange(entry.getKey(), group, metadataWaitTimeMs);
+        pendingRequests.put(exchange, exchange.start());
+      }
+    }
+    boolean allCaughtUp = pendingRequests.isEmpty();
+    long pendingSinceMs = time.milliseconds();
+    while (running && (!exchangesByCorrelationId.isEmpty() || !pendingRequests.isEmpty())) {
+      List<RequestInfo> requestsToSend = new ArrayList<>();
+      long budgetWaitTimeMs = pendingRequests.isEmpty() ? 0 : getBandwidthBudgetWaitTimeMs();
+      if (!pendingRequests.isEmpty() && budgetWaitTimeMs == 0) {
+        long throttledTimeInMs = time.milliseconds() - pendingSinceMs;
+        if (throttledTimeInMs > 0) {
+          replicationMetrics.updateBandwidthBudgetUsage(datacenterName, 0, throttledTimeInMs);
+        }
+        for (Map.Entry<ReplicaGroupExchange, RequestInfo> pendingRequest : pendingRequests.entrySet()) {
+          pendingRequest.getKey().onSend();
+          exchangesByCorrelationId.put(pendingRequest.getValue().getCorrelationId(), pendingRequest.getKey());
+          requestsToSend.add(pendingRequest.getValue());
+        }
+        pendingRequests.clear();
+      } else if (exchangesByCorrelationId.isEmpty()) {
+        // there are no responses to wait for, so nothing is held up by waiting for the budget here.
+        try {
+          time.sleep(budgetWaitTimeMs);
+        } catch (InterruptedException e) {
+          logger.error("Thread name: {} interrupted while waiting for the bandwidth budget", threadName, e);
+          Thread.currentThread().interrupt();
+          break;
+        }
+        continue;
+      }
+      replicationMetrics.networkClientRequestsInFlight.update(exchangesByCorrelationId.size());
+      // wake up in time to send the requests that are held back once the budget allows it
+      int pollTimeoutMs = budgetWaitTimeMs > 0 ? (int) Math.min(budgetWaitTimeMs, NETWORK_CLIENT_POLL_TIMEOUT_MS)
+          : NETWORK_CLIENT_POLL_TIMEOUT_MS;
+      List<ResponseInfo> responseInfos = networkClient.sendAndPoll(requestsToSend, pollTimeoutMs);
+      for (ResponseInfo responseInfo : responseInfos) {
+        ReplicaGroupExchange exchange =
+            exchangesByCorrelationId.remove(responseInfo.getRequestInfo().getCorrelationId());
+        if (exchange == null) {
+          // the response to a request that timed out earlier.
+          replicationMetrics.networkClientUnexpectedResponseCount.inc();
+          responseInfo.release();
+          continue;
+        }
+        RequestInfo requestInfo = exchange.onResponse(responseInfo);
+        long remainingWaitTimeMs = restartDeadlineMs - time.milliseconds();
+        if (requestInfo == null && exchange.hadNewEntries() && remainingWaitTimeMs > 0 && (
+            !exchangesByCorrelationId.isEmpty() || !pendingRequests.isEmpty())) {
+          // the remote node answers right away if it has more entries and holds the request until it does otherwise
+          List<RemoteReplicaInfo> activeReplicas = getActiveReplicas(exchange.replicas);
+          if (!activeReplicas.isEmpty()) {
+            exchange = new ReplicaGroupExchange(exchange.remoteNode, activeReplicas, remainingWaitTimeMs);
+            requestInfo = exchange.start();
+            replicationMetrics.replicaGroupExchangeRestartCount.inc();
+          }
+        }
+        if (requestInfo != null) {
+          if (pendingRequests.isEmpty()) {
+            pendingSinceMs = time.milliseconds();
+          }
+          pendingRequests.put(exchange, requestInfo);
+        }
+      }
+      Iterator<ReplicaGroupExchange> iterator = exchangesByCorrelationId.values().iterator();
+      while (iterator.hasNext()) {
+        ReplicaGroupExchange exchange = iterator.next();
+        if (exchange.hasTimedOut()) {
+          iterator.remove();
+          exchange.onTimeout();
+        }
+      }
+    }
+    // only left over if the thread is shutting down.
+    for (ReplicaGroupExchange exchange : exchangesByCorrelationId.values()) {
+      exchange.finish();
+    }
+    for (ReplicaGroupExchange exchange : pendingRequests.keySet()) {
+      exchange.finish();
+    }
+    return allCaughtUp;
+  }
+
+  /**
+   * @param replicasToReplicatePerNode the remote replicas of a remote node.
+   * @return the replicas in {@code replicasToReplicatePerNode} whose partition is not disabled, that are not down and
+   * that are not backing off.
+   */
+  private List<RemoteReplicaInfo> getActiveReplicas(List<RemoteReplicaInfo> replicasToReplicatePerNode) {
+    List<RemoteReplicaInfo> activeReplicasPerNode = new ArrayList<RemoteReplicaInfo>();
+    for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
+      ReplicaId replicaId = remoteReplicaInfo.getReplicaId();
+      boolean inBackoff = time.milliseconds() < remoteReplicaInfo.getReEnableReplicationTime();
+      if (replicationDisabledPartitions.contains(replicaId.getPartitionId()) || replicaId.isDown() || inBackoff) {
+        continue;
+      }
+      activeReplicasPerNode.add(remoteReplicaInfo);
+    }
+    return activeReplicasPerNode;
+  }
+
+  /**
+   * @param remoteNode the remote node that is being replicated from.
+   * @return a started {@link Timer.Context} of the replication latency from {@code remoteNode}.
+   */
+  private Timer.Context startReplicationLatencyTimer(DataNodeId remoteNode) {
+    return replicatingFromRemoteColo ? replicationMetrics.interColoReplicationLatency.get(
+        remoteNode.getDatacenterName()).time() : replicationMetrics.intraColoReplicationLatency.time();
+  }
+
+  /**
+   * @param remoteNode the remote node that is being replicated from.
+   * @return a started {@link Timer.Context} of the replication latency from {@code remoteNode} for the port type
+   * (plaintext or SSL) that is used.
+   */
+  private Timer.Context startPortTypeBasedReplicationLatencyTimer(DataNodeId remoteNode) {
+    if (replicatingFromRemoteColo) {
+      if (replicatingOverSsl) {
+        return replicationMetrics.sslInterColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
+      } else {
+        return replicationMetrics.plainTextInterColoReplicationLatency.get(remoteNode.getDatacenterName()).time();
+      }
+    } else {
+      if (replicatingOverSsl) {
+        return replicationMetrics.sslIntraColoReplicationLatency.time();
+      } else {
+        return replicationMetrics.plainTextIntraColoReplicationLatency.time();
       }
     }
   }
@@ -416,56 +665,77 @@ public class ReplicaThread implements Runnable {
         DataNodeId remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
         ReplicaMetadataResponse response =
             getReplicaMetadataResponse(replicasToReplicatePerNode, connectedChannel, remoteNode);
-        long startTimeInMs = SystemTime.getInstance().milliseconds();
+        exchangeMetadataResponseList = processReplicaMetadataResponse(response, replicasToReplicatePerNode, remoteNode);
+      } finally {
+        long exchangeMetadataTime = SystemTime.getInstance().milliseconds() - exchangeMetadataStartTimeInMs;
+        replicationMetrics.updateExchangeMetadataTime(exchangeMetadataTime, replicatingFromRemoteColo,
+            replicatingOverSsl, datacenterName);
+      }
+    }
+    return exchangeMetadataResponseList;
+  }
+
+  /**
+   * Checks the messages in a {@link ReplicaMetadataResponse} with the local stores and finds the messages that are
+   * missing. For the messages that are not missing, updates the delete and ttl state.
+   * @param response the {@link ReplicaMetadataResponse} from the remote node.
+   * @param replicasToReplicatePerNode The information about the replicas that is being replicated
+   * @param remoteNode The remote node from which replication needs to happen
+   * @return - List of ExchangeMetadataResponse that contains the set of store keys that are missing from the local
+   *           store and are present in the remote replicas and also the new token from the remote replicas
+   * @throws IOException
+   */
+  private List<ExchangeMetadataResponse> processReplicaMetadataResponse(ReplicaMetadataResponse response,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode) throws IOException {
+    List<ExchangeMetadataResponse> exchangeMetadataResponseList = new ArrayList<>();
+    long startTimeInMs = SystemTime.getInstance().milliseconds();
 
-        Map<StoreKey, StoreKey> remoteKeyToLocalKeyMap = batchConvertReplicaMetadataResponseKeys(response);
+    Map<StoreKey, StoreKey> remoteKeyToLocalKeyMap = batchConvertReplicaMetadataResponseKeys(response);
 
-        for (int i = 0; i < response.getReplicaMetadataResponseInfoList().size(); i++) {
-          RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
-          ReplicaMetadataResponseInfo replicaMetadataResponseInfo =
-              response.getReplicaMetadataResponseInfoList().get(i);
-          responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
-          if (replicaMetadataResponseInfo.getError() == ServerErrorCode.No_Error) {
-            try {
-              logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token from remote: {} Replica lag: {} ",
-                  remoteNode, threadName, remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getFindToken(),
-                  replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
-              Set<StoreKey> missingStoreKeys =
-                  getMissingStoreKeys(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
-              processReplicaMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo, remoteReplicaInfo,
-                  remoteNode, remoteKeyToLocalKeyMap);
-              ExchangeMetadataResponse exchangeMetadataResponse =
-                  new ExchangeMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo.getFindToken(),
-                      replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
-              exchangeMetadataResponseList.add(exchangeMetadataResponse);
-            } catch (Exception e) {
-              logger.error(
-                  "Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replica: " + remoteReplicaInfo
-                      .getReplicaId(), e);
-              replicationMetrics.updateLocalStoreError(remoteReplicaInfo.getReplicaId());
-              responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), e);
-              ExchangeMetadataResponse exchangeMetadataResponse =
-                  new ExchangeMetadataResponse(ServerErrorCode.Unknown_Error);
-              exchangeMetadataResponseList.add(exchangeMetadataResponse);
-            }
+    for (int i = 0; i < response.getReplicaMetadataResponseInfoList().size(); i++) {
+      RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
+      ReplicaMetadataResponseInfo replicaMetadataResponseInfo = response.getReplicaMetadataResponseInfoList().get(i);
+      responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
+      if (replicaMetadataResponseInfo.getError() == ServerErrorCode.No_Error) {
+        try {
+          logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token from remote: {} Replica lag: {} ",
+              remoteNode, threadName, remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getFindToken(),
+              replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
+          Set<StoreKey> missingStoreKeys =
+              getMissingStoreKeys(replicaMetadataResponseInfo, remoteNode, remoteReplicaInfo);
+          processReplicaMetadataResponse(missingStoreKeys, replicaMetadataResponseInfo, remoteReplicaInfo, remoteNode,
+              remoteKeyToLocalKeyMap);
+          ExchangeMetadataResponse exchangeMetadataResponse;
+          if (missingKeyFetchRegistry != null) {
+            exchangeMetadataResponse = claimMissingStoreKeys(missingStoreKeys, replicaMetadataResponseInfo,
+                remoteReplicaInfo, remoteKeyToLocalKeyMap);
           } else {
-            replicationMetrics.updateMetadataRequestError(remoteReplicaInfo.getReplicaId());
-            logger.error("Remote node: {} Thread name: {} Remote replica: {} Server error: {}", remoteNode, threadName,
-                remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
-            ExchangeMetadataResponse exchangeMetadataResponse =
-                new ExchangeMetadataResponse(replicaMetadataResponseInfo.getError());
-            exchangeMetadataResponseList.add(exchangeMetadataResponse);
+            exchangeMetadataResponse = new ExchangeMetadataResponse(missingStoreKeys,
+                replicaMetadataResponseInfo.getFindToken(), replicaMetadataResponseInfo.getRemoteReplicaLagInBytes());
           }
+          exchangeMetadataResponseList.add(exchangeMetadataResponse);
+        } catch (Exception e) {
+          logger.error(
+              "Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replica: " + remoteReplicaInfo
+                  .getReplicaId(), e);
+          replicationMetrics.updateLocalStoreError(remoteReplicaInfo.getReplicaId());
+          responseHandler.onEvent(remoteReplicaInfo.getReplicaId(), e);
+          ExchangeMetadataResponse exchangeMetadataResponse =
+              new ExchangeMetadataResponse(ServerErrorCode.Unknown_Error);
+          exchangeMetadataResponseList.add(exchangeMetadataResponse);
         }
-        long processMetadataResponseTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
-        logger.trace("Remote node: {} Thread name: {} processMetadataResponseTime: {}", remoteNode, threadName,
-            processMetadataResponseTimeInMs);
-      } finally {
-        long exchangeMetadataTime = SystemTime.getInstance().milliseconds() - exchangeMetadataStartTimeInMs;
-        replicationMetrics.updateExchangeMetadataTime(exchangeMetadataTime, replicatingFromRemoteColo,
-            replicatingOverSsl, datacenterName);
+      } else {
+        replicationMetrics.updateMetadataRequestError(remoteReplicaInfo.getReplicaId());
+        logger.error("Remote node: {} Thread name: {} Remote replica: {} Server error: {}", remoteNode, threadName,
+            remoteReplicaInfo.getReplicaId(), replicaMetadataResponseInfo.getError());
+        ExchangeMetadataResponse exchangeMetadataResponse =
+            new ExchangeMetadataResponse(replicaMetadataResponseInfo.getError());
+        exchangeMetadataResponseList.add(exchangeMetadataResponse);
       }
     }
+    long processMetadataResponseTimeInMs = SystemTime.getInstance().milliseconds() - startTimeInMs;
+    logger.trace("Remote node: {} Thread name: {} processMetadataResponseTime: {}", remoteNode, threadName,
+        processMetadataResponseTimeInMs);
     return exchangeMetadataResponseList;
   }
 
@@ -495,14 +765,90 @@ public class ReplicaThread implements Runnable {
           getMessagesForMissingKeys(connectedChannel, exchangeMetadataResponseList, replicasToReplicatePerNode,
               remoteNode);
       writeMessagesToLocalStoreAndAdvanceTokens(exchangeMetadataResponseList, getResponse, replicasToReplicatePerNode,
-          remoteNode);
+          remoteNode, transformer);
     } finally {
+      releaseClaimedStoreKeys(exchangeMetadataResponseList, replicasToReplicatePerNode);
       long fixMissingStoreKeysTime = SystemTime.getInstance().milliseconds() - fixMissingStoreKeysStartTimeInMs;
       replicationMetrics.updateFixMissingStoreKeysTime(fixMissingStoreKeysTime, replicatingFromRemoteColo,
           replicatingOverSsl, datacenterName);
     }
   }
 
+  /**
+   * Gets the missing messages from the remote node like {@link #fixMissingStoreKeys} does, but reads them into memory
+   * and has the {@link StoreWritePipeline} write them to the local stores and advance the tokens, so that the
+   * connection can be used for the next remote node while they are written.
+   * @param connectedChannel The connected channel that represents a connection to the remote replica
+   * @param replicasToReplicatePerNode The information about the replicas that is being replicated
+   * @param exchangeMetadataResponseList The missing keys in the local stores whose message needs to be retrieved
+   *                                     from the remote stores
+   * @throws IOException
+   * @throws ReplicationException
+   * @throws InterruptedException
+   */
+  private void fetchMissingKeysAndSubmitWrite(ConnectedChannel connectedChannel,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode, List<ExchangeMetadataResponse> exchangeMetadataResponseList)
+      throws IOException, ReplicationException, InterruptedException {
+    if (exchangeMetadataResponseList.size() != replicasToReplicatePerNode.size()
+        || replicasToReplicatePerNode.size() == 0) {
+      throw new IllegalArgumentException("ExchangeMetadataResponseList size " + exchangeMetadataResponseList.size()
+          + " and replicasToReplicatePerNode size " + replicasToReplicatePerNode.size()
+          + " should be the same and greater than zero");
+    }
+    DataNodeId remoteNode = replicasToReplicatePerNode.get(0).getReplicaId().getDataNodeId();
+    GetRequest getRequest = createGetRequest(exchangeMetadataResponseList, replicasToReplicatePerNode, remoteNode);
+    GetResponse getResponse = null;
+    long bufferedBytes = 0;
+    if (getRequest != null) {
+      long startTime = SystemTime.getInstance().milliseconds();
+      try {
+        connectedChannel.send(getRequest);
+        ChannelOutput channelOutput = connectedChannel.receive();
+        bufferedBytes = channelOutput.getStreamSize();
+        consumeBandwidthBudget(bufferedBytes);
+        // the bytes are reserved before they are read so that the responses waiting to be written are bounded.
+        storeWritePipeline.reserve(bufferedBytes);
+        try {
+          byte[] response = new byte[(int) bufferedBytes];
+          new DataInputStream(channelOutput.getInputStream()).readFully(response);
+          getResponse = GetResponse.readFrom(getResponseStream(new ByteArrayInputStream(response)), clusterMap);
+          checkGetResponse(getResponse, startTime, replicasToReplicatePerNode, remoteNode);
+        } catch (Exception e) {
+          storeWritePipeline.release(bufferedBytes);
+          throw e;
+        }
+      } catch (IOException e) {
+        responseHandler.onEvent(replicasToReplicatePerNode.get(0).getReplicaId(), e);
+        throw e;
+      } finally {
+        replicationMetrics.updateFixMissingStoreKeysTime(SystemTime.getInstance().milliseconds() - startTime,
+            replicatingFromRemoteColo, replicatingOverSsl, datacenterName);
+      }
+    }
+    GetResponse responseToWrite = getResponse;
+    storeWritePipeline.submit(bufferedBytes, () -> {
+      try {
+        if (responseToWrite != null) {
+          // the keys are converted again with the pipeline's own converter because the replica thread keeps using its
+          // converter for the metadata exchanges with the next remote nodes while this write is pending.
+          List<MessageInfo> messageInfos = new ArrayList<>();
+          for (PartitionResponseInfo partitionResponseInfo : responseToWrite.getPartitionResponseInfoList()) {
+            messageInfos.addAll(partitionResponseInfo.getMessageInfoList());
+          }
+          pipelineTransformer.warmup(messageInfos);
+        }
+        writeMessagesToLocalStoreAndAdvanceTokens(exchangeMetadataResponseList, responseToWrite,
+            replicasToReplicatePerNode, remoteNode, pipelineTransformer);
+      } catch (Exception e) {
+        logger.error("Error while writing messages from peer: Remote node: {}, Thread name: {}, Remote replicas: {}",
+            remoteNode, threadName, replicasToReplicatePerNode, e);
+        replicationMetrics.incrementReplicationErrors(replicatingOverSsl);
+      } finally {
+        releaseClaimedStoreKeys(exchangeMetadataResponseList, replicasToReplicatePerNode);
+      }
+    });
+  }
+
   /**
    * Gets the replica metadata response for a list of remote replicas on a given remote data node
    * @param replicasToReplicatePerNode The list of remote replicas for a node
@@ -515,44 +861,18 @@ public class ReplicaThread implements Runnable {
   private ReplicaMetadataResponse getReplicaMetadataResponse(List<RemoteReplicaInfo> replicasToReplicatePerNode,
       ConnectedChannel connectedChannel, DataNodeId remoteNode) throws ReplicationException, IOException {
     long replicaMetadataRequestStartTime = SystemTime.getInstance().milliseconds();
-    List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList = new ArrayList<ReplicaMetadataRequestInfo>();
-    for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
-      ReplicaMetadataRequestInfo replicaMetadataRequestInfo =
-          new ReplicaMetadataRequestInfo(remoteReplicaInfo.getReplicaId().getPartitionId(),
-              remoteReplicaInfo.getToken(), dataNodeId.getHostname(),
-              remoteReplicaInfo.getLocalReplicaId().getReplicaPath());
-      replicaMetadataRequestInfoList.add(replicaMetadataRequestInfo);
-      logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token going to be sent to remote: {} ",
-          remoteNode, threadName, remoteReplicaInfo.getReplicaId(), remoteReplicaInfo.getToken());
-    }
-
     try {
-      ReplicaMetadataRequest request = new ReplicaMetadataRequest(correlationIdGenerator.incrementAndGet(),
-          "replication-metadata-" + dataNodeId.getHostname(), replicaMetadataRequestInfoList,
-          replicationConfig.replicationFetchSizeInBytes);
+      ReplicaMetadataRequest request = createReplicaMetadataRequest(replicasToReplicatePerNode, remoteNode);
       connectedChannel.send(request);
       ChannelOutput channelOutput = connectedChannel.receive();
+      consumeBandwidthBudget(channelOutput.getStreamSize());
       ByteBufferInputStream byteBufferInputStream =
           new ByteBufferInputStream(channelOutput.getInputStream(), (int) channelOutput.getStreamSize());
       logger.trace("Remote node: {} Thread name: {} Remote replicas: {} ByteBuffer size after deserialization: {} ",
           remoteNode, threadName, replicasToReplicatePerNode, byteBufferInputStream.available());
       ReplicaMetadataResponse response =
-          ReplicaMetadataResponse.readFrom(new DataInputStream(byteBufferInputStream), findTokenFactory, clusterMap);
-
-      long metadataRequestTime = SystemTime.getInstance().milliseconds() - replicaMetadataRequestStartTime;
-      replicationMetrics.updateMetadataRequestTime(metadataRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
-          datacenterName);
-
-      if (response.getError() != ServerErrorCode.No_Error
-          || response.getReplicaMetadataResponseInfoList().size() != replicasToReplicatePerNode.size()) {
-        int replicaMetadataResponseInfoListSize = response.getReplicaMetadataResponseInfoList() == null ? 0
-            : response.getReplicaMetadataResponseInfoList().size();
-        logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
-            + replicasToReplicatePerNode + " Replica metadata response error: " + response.getError()
-            + " ReplicaMetadataResponseInfoListSize: " + replicaMetadataResponseInfoListSize
-            + " ReplicasToReplicatePerNodeSize: " + replicasToReplicatePerNode.size());
-        throw new ReplicationException("Replica Metadata Response Error " + response.getError());
-      }
+          ReplicaMetadataResponse.readFrom(getResponseStream(byteBufferInputStream), findTokenFactory, clusterMap);
+      checkReplicaMetadataResponse(response, replicaMetadataRequestStartTime, replicasToReplicatePerNode, remoteNode);
       return response;
     } catch (IOException e) {
       responseHandler.onEvent(replicasToReplicatePerNode.get(0).getReplicaId(), e);
@@ -560,6 +880,195 @@ public class ReplicaThread implements Runnable {
     }
   }
 
+  /**
+   * Creates the {@link ReplicaMetadataRequest} for a list of remote replicas on a given remote data node
+   * @param replicasToReplicatePerNode The list of remote replicas for a node
+   * @param remoteNode The remote node from which replication needs to happen
+   * @return the {@link ReplicaMetadataRequest} that asks for the messages after the tokens of the remote replicas.
+   */
+  private ReplicaMetadataRequest createReplicaMetadataRequest(List<RemoteReplicaInfo> replicasToReplicatePerNode,
+      DataNodeId remoteNode) {
+    return createReplicaMetadataRequest(replicasToReplicatePerNode, remoteNode, 0);
+  }
+
+  /**
+   * Creates the {@link ReplicaMetadataRequest} for a list of remote replicas on a given remote data node
+   * @param replicasToReplicatePerNode The list of remote replicas for a node
+   * @param remoteNode The remote node from which replication needs to happen
+   * @param maxWaitTimeMs the longest time the remote node should wait for new entries if none of the remote replicas
+   *                      have any. 0 if the remote node should answer right away.
+   * @return the {@link ReplicaMetadataRequest} that asks for the messages after the tokens of the remote replicas.
+   */
+  private ReplicaMetadataRequest createReplicaMetadataRequest(List<RemoteReplicaInfo> replicasToReplicatePerNode,
+      DataNodeId remoteNode, long maxWaitTimeMs) {
+    List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList = new ArrayList<ReplicaMetadataRequestInfo>();
+    for (RemoteReplicaInfo remoteReplicaInfo : replicasToReplicatePerNode) {
+      ReplicaMetadataRequestInfo replicaMetadataRequestInfo =
+          new ReplicaMetadataRequestInfo(remoteReplicaInfo.getReplicaId().getPartitionId(),
+              remoteReplicaInfo.getToken(), dataNodeId.getHostname(),
+              remoteReplicaInfo.getLocalReplicaId().getReplicaPath(),
+              replicationConfig.replicationAdaptiveFetchSizeEnabled ? getFetchSizeInBytes(remoteReplicaInfo) : -1);
+      replicaMetadataRequestInfoList.add(replicaMetadataRequestInfo);
+      logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token going to be sent to remote: {} ",
+          remoteNode, threadName, remoteReplicaInfo.getReplicaId(), remoteReplicaInfo.getToken());
+    }
+    return new ReplicaMetadataRequest(correlationIdGenerator.incrementAndGet(),
+        "replication-metadata-" + dataNodeId.getHostname(), replicaMetadataRequestInfoList,
+        replicationConfig.replicationFetchSizeInBytes, getAcceptedCompression(remoteNode), maxWaitTimeMs);
+  }
+
+  /**
+   * @param remoteReplicaInfo the remote replica to fetch from.
+   * @return the adaptive fetch size of {@code remoteReplicaInfo}, or {@link ReplicationConfig#replicationFetchSizeInBytes}
+   * within the adaptive bounds if it has not been sized yet.
+   */
+  private long getFetchSizeInBytes(RemoteReplicaInfo remoteReplicaInfo) {
+    long fetchSizeInBytes = remoteReplicaInfo.getFetchSizeInBytes();
+    if (fetchSizeInBytes == 0) {
+      fetchSizeInBytes = Math.max(replicationConfig.replicationAdaptiveFetchMinSizeInBytes,
+          Math.min(replicationConfig.replicationAdaptiveFetchMaxSizeInBytes,
+              replicationConfig.replicationFetchSizeInBytes));
+    }
+    return fetchSizeInBytes;
+  }
+
+  /**
+   * Sizes the next fetches from the replicas of a remote node after a metadata exchange with and a fetch from it, if
+   * {@link ReplicationConfig#replicationAdaptiveFetchSizeEnabled} is true. The fetch size of a replica that is still
+   * lagging behind is doubled if the node answered within
+   * {@link ReplicationConfig#replicationAdaptiveFetchLatencyTargetMs}, and the fetch size of a replica is halved if it
+   * has caught up or if the node took longer than that.
+   * @param replicasToReplicatePerNode The list of remote replicas for the remote node
+   * @param exchangeMetadataResponseList The list of metadata response from the remote node
+   * @param replicationTimeInMs the time taken by the metadata exchange and the fetch.
+   */
+  private void updateFetchSizes(List<RemoteReplicaInfo> replicasToReplicatePerNode,
+      List<ExchangeMetadataResponse> exchangeMetadataResponseList, long replicationTimeInMs) {
+    if (!replicationConfig.replicationAdaptiveFetchSizeEnabled) {
+      return;
+    }
+    boolean withinLatencyTarget = replicationTimeInMs <= replicationConfig.replicationAdaptiveFetchLatencyTargetMs;
+    long minFetchSizeInBytes = replicationConfig.replicationAdaptiveFetchMinSizeInBytes;
+    long maxFetchSizeInBytes = replicationConfig.replicationAdaptiveFetchMaxSizeInBytes;
+    for (int i = 0; i < exchangeMetadataResponseList.size(); i++) {
+      ExchangeMetadataResponse exchangeMetadataResponse = exchangeMetadataResponseList.get(i);
+      RemoteReplicaInfo remoteReplicaInfo = replicasToReplicatePerNode.get(i);
+      if (exchangeMetadataResponse.serverErrorCode != ServerErrorCode.No_Error) {
+        continue;
+      }
+      long fetchSizeInBytes = getFetchSizeInBytes(remoteReplicaInfo);
+      if (exchangeMetadataResponse.localLagFromRemoteInBytes > 0 && withinLatencyTarget) {
+        fetchSizeInBytes = fetchSizeInBytes > maxFetchSizeInBytes / 2 ? maxFetchSizeInBytes : fetchSizeInBytes * 2;
+      } else {
+        fetchSizeInBytes = Math.max(minFetchSizeInBytes, fetchSizeInBytes / 2);
+      }
+      remoteReplicaInfo.setFetchSizeInBytes(fetchSizeInBytes);
+      remoteReplicaInfo.recordFetch(exchangeMetadataResponse.remoteToken.getBytesRead(), replicationTimeInMs);
+      logger.trace("Thread name: {} Remote replica: {} Next fetch size: {}", threadName,
+          remoteReplicaInfo.getReplicaId(), fetchSizeInBytes);
+    }
+  }
+
+  /**
+   * Consumes the bytes of a response received from the datacenter of this thread from its bandwidth budget. If the
+   * budget is exceeded, this sleeps until it is not, which delays the next request of the thread.
+   * @param bytes the size of the response as received from the remote node.
+   */
+  private void consumeBandwidthBudget(long bytes) {
+    if (bandwidthBudget != null && bytes > 0) {
+      try {
+        long throttledTimeInMs = bandwidthBudget.consume(bytes);
+        replicationMetrics.updateBandwidthBudgetUsage(datacenterName, bytes, throttledTimeInMs);
+      } catch (InterruptedException e) {
+        logger.error("Thread name: {} interrupted while waiting for the bandwidth budget", threadName, e);
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Takes the bytes of a response received from the datacenter of this thread out of its bandwidth budget without
+   * waiting for the budget to allow it. Used when several requests are multiplexed, where the next requests are held
+   * back instead (see {@link #getBandwidthBudgetWaitTimeMs()}).
+   * @param bytes the size of the response as received from the remote node.
+   */
+  private void reserveBandwidthBudget(long bytes) {
+    if (bandwidthBudget != null && bytes > 0) {
+      bandwidthBudget.reserve(bytes);
+      replicationMetrics.updateBandwidthBudgetUsage(datacenterName, bytes, 0);
+    }
+  }
+
+  /**
+   * @return the time in ms until the bandwidth budget of the datacenter of this thread allows the next request. 0 if it
+   * does already or if there is no budget.
+   */
+  private long getBandwidthBudgetWaitTimeMs() {
+    return bandwidthBudget == null ? 0 : bandwidthBudget.getWaitTimeMs();
+  }
+
+  /**
+   * @param remoteNode the remote node that a request is sent to.
+   * @return the {@link CompressionType} that the response of {@code remoteNode} may be compressed with. Responses are
+   * only compressed if the datacenter of {@code remoteNode} is in
+   * {@link ReplicationConfig#replicationCompressionEnabledDatacenters}.
+   */
+  private CompressionType getAcceptedCompression(DataNodeId remoteNode) {
+    return replicationConfig.replicationCompressionEnabledDatacenters.contains(remoteNode.getDatacenterName())
+        ? CompressionType.Deflate : CompressionType.None;
+  }
+
+  /**
+   * Returns a stream of the response in {@code inputStream}, decompressing it if the remote node sent a
+   * {@link CompressedResponse}.
+   * @param inputStream the stream of the response as received from the remote node.
+   * @return a {@link DataInputStream} of the response, starting at its type.
+   * @throws IOException if the response could not be read or decompressed.
+   */
+  private DataInputStream getResponseStream(InputStream inputStream) throws IOException {
+    PushbackInputStream pushbackStream = new PushbackInputStream(inputStream, Short.BYTES);
+    DataInputStream stream = new DataInputStream(pushbackStream);
+    byte[] type = new byte[Short.BYTES];
+    stream.readFully(type);
+    pushbackStream.unread(type);
+    if (((type[0] & 0xff) << 8 | (type[1] & 0xff)) != RequestOrResponseType.CompressedResponse.ordinal()) {
+      return stream;
+    }
+    CompressedResponse compressedResponse = CompressedResponse.readFrom(stream);
+    long startTimeNs = time.nanoseconds();
+    InputStream decompressedStream = compressedResponse.decompress();
+    replicationMetrics.updateResponseDecompression(compressedResponse.getCompressedSize(),
+        compressedResponse.getUncompressedSize(), TimeUnit.NANOSECONDS.toMicros(time.nanoseconds() - startTimeNs));
+    return new DataInputStream(decompressedStream);
+  }
+
+  /**
+   * Updates the metadata request time and checks that the {@link ReplicaMetadataResponse} has no error and a response
+   * for every remote replica.
+   * @param response the {@link ReplicaMetadataResponse} from the remote node.
+   * @param replicaMetadataRequestStartTime the time at which the request was sent.
+   * @param replicasToReplicatePerNode The list of remote replicas for a node
+   * @param remoteNode The remote node from which replication needs to happen
+   * @throws ReplicationException if the response has an error.
+   */
+  private void checkReplicaMetadataResponse(ReplicaMetadataResponse response, long replicaMetadataRequestStartTime,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode) throws ReplicationException {
+    long metadataRequestTime = SystemTime.getInstance().milliseconds() - replicaMetadataRequestStartTime;
+    replicationMetrics.updateMetadataRequestTime(metadataRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
+        datacenterName);
+
+    if (response.getError() != ServerErrorCode.No_Error
+        || response.getReplicaMetadataResponseInfoList().size() != replicasToReplicatePerNode.size()) {
+      int replicaMetadataResponseInfoListSize = response.getReplicaMetadataResponseInfoList() == null ? 0
+          : response.getReplicaMetadataResponseInfoList().size();
+      logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
+          + replicasToReplicatePerNode + " Replica metadata response error: " + response.getError()
+          + " ReplicaMetadataResponseInfoListSize: " + replicaMetadataResponseInfoListSize
+          + " ReplicasToReplicatePerNodeSize: " + replicasToReplicatePerNode.size());
+      throw new ReplicationException("Replica Metadata Response Error " + response.getError());
+    }
+  }
+
   /**
    * Gets the missing store keys by comparing the messages from the remote node
    * @param replicaMetadataResponseInfo The response that contains the messages from the remote node
@@ -753,6 +1262,33 @@ public class ReplicaThread implements Runnable {
   private GetResponse getMessagesForMissingKeys(ConnectedChannel connectedChannel,
       List<ExchangeMetadataResponse> exchangeMetadataResponseList, List<RemoteReplicaInfo> replicasToReplicatePerNode,
       DataNodeId remoteNode) throws ReplicationException, IOException {
+    GetRequest getRequest = createGetRequest(exchangeMetadataResponseList, replicasToReplicatePerNode, remoteNode);
+    GetResponse getResponse = null;
+    if (getRequest != null) {
+      long startTime = SystemTime.getInstance().milliseconds();
+      try {
+        connectedChannel.send(getRequest);
+        ChannelOutput channelOutput = connectedChannel.receive();
+        consumeBandwidthBudget(channelOutput.getStreamSize());
+        getResponse = GetResponse.readFrom(getResponseStream(channelOutput.getInputStream()), clusterMap);
+        checkGetResponse(getResponse, startTime, replicasToReplicatePerNode, remoteNode);
+      } catch (IOException e) {
+        responseHandler.onEvent(replicasToReplicatePerNode.get(0).getReplicaId(), e);
+        throw e;
+      }
+    }
+    return getResponse;
+  }
+
+  /**
+   * Creates the {@link GetRequest} for the keys that are missing from the local store.
+   * @param exchangeMetadataResponseList The list of metadata response from the remote node
+   * @param replicasToReplicatePerNode The list of remote replicas for the remote node
+   * @param remoteNode The remote node from which replication needs to happen
+   * @return the {@link GetRequest} for the missing keys; or null if there are no keys missing.
+   */
+  private GetRequest createGetRequest(List<ExchangeMetadataResponse> exchangeMetadataResponseList,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode) {
     List<PartitionRequestInfo> partitionRequestInfoList = new ArrayList<PartitionRequestInfo>();
     for (int i = 0; i < exchangeMetadataResponseList.size(); i++) {
       ExchangeMetadataResponse exchangeMetadataResponse = exchangeMetadataResponseList.get(i);
@@ -770,31 +1306,34 @@ public class ReplicaThread implements Runnable {
         }
       }
     }
-    GetResponse getResponse = null;
-    if (!partitionRequestInfoList.isEmpty()) {
-      GetRequest getRequest = new GetRequest(correlationIdGenerator.incrementAndGet(),
-          GetRequest.Replication_Client_Id_Prefix + dataNodeId.getHostname(), MessageFormatFlags.All,
-          partitionRequestInfoList, replicationConfig.replicationIncludeAll ? GetOption.Include_All : GetOption.None);
-      long startTime = SystemTime.getInstance().milliseconds();
-      try {
-        connectedChannel.send(getRequest);
-        ChannelOutput channelOutput = connectedChannel.receive();
-        getResponse = GetResponse.readFrom(new DataInputStream(channelOutput.getInputStream()), clusterMap);
-        long getRequestTime = SystemTime.getInstance().milliseconds() - startTime;
-        replicationMetrics.updateGetRequestTime(getRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
-            datacenterName);
-        if (getResponse.getError() != ServerErrorCode.No_Error) {
-          logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
-              + replicasToReplicatePerNode + " GetResponse from replication: " + getResponse.getError());
-          throw new ReplicationException(
-              " Get Request returned error when trying to get missing keys " + getResponse.getError());
-        }
-      } catch (IOException e) {
-        responseHandler.onEvent(replicasToReplicatePerNode.get(0).getReplicaId(), e);
-        throw e;
-      }
+    if (partitionRequestInfoList.isEmpty()) {
+      return null;
+    }
+    return new GetRequest(correlationIdGenerator.incrementAndGet(),
+        GetRequest.Replication_Client_Id_Prefix + dataNodeId.getHostname(), MessageFormatFlags.All,
+        partitionRequestInfoList, replicationConfig.replicationIncludeAll ? GetOption.Include_All : GetOption.None,
+        getAcceptedCompression(remoteNode));
+  }
+
+  /**
+   * Updates the get request time and checks that the {@link GetResponse} has no error.
+   * @param getResponse the {@link GetResponse} from the remote node.
+   * @param startTime the time at which the request was sent.
+   * @param replicasToReplicatePerNode The list of remote replicas for the remote node
+   * @param remoteNode The remote node from which replication needs to happen
+   * @throws ReplicationException if the response has an error.
+   */
+  private void checkGetResponse(GetResponse getResponse, long startTime,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode) throws ReplicationException {
+    long getRequestTime = SystemTime.getInstance().milliseconds() - startTime;
+    replicationMetrics.updateGetRequestTime(getRequestTime, replicatingFromRemoteColo, replicatingOverSsl,
+        datacenterName);
+    if (getResponse.getError() != ServerErrorCode.No_Error) {
+      logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replicas: "
+          + replicasToReplicatePerNode + " GetResponse from replication: " + getResponse.getError());
+      throw new ReplicationException(
+          " Get Request returned error when trying to get missing keys " + getResponse.getError());
     }
-    return getResponse;
   }
 
   /**
@@ -805,12 +1344,13 @@ public class ReplicaThread implements Runnable {
    *                    simply advance the tokens for every store.
    * @param replicasToReplicatePerNode The list of remote replicas for the remote node
    * @param remoteNode The remote node from which replication needs to happen
+   * @param messageTransformer The {@link Transformer} to transform the messages with before they are written
    * @throws IOException
    * @throws MessageFormatException
    */
   private void writeMessagesToLocalStoreAndAdvanceTokens(List<ExchangeMetadataResponse> exchangeMetadataResponseList,
-      GetResponse getResponse, List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode)
-      throws IOException, MessageFormatException {
+      GetResponse getResponse, List<RemoteReplicaInfo> replicasToReplicatePerNode, DataNodeId remoteNode,
+      Transformer messageTransformer) throws IOException, MessageFormatException {
     int partitionResponseInfoIndex = 0;
     long totalBytesFixed = 0;
     long totalBlobsFixed = 0;
@@ -823,6 +1363,8 @@ public class ReplicaThread implements Runnable {
           remoteReplicaInfo.setReEnableReplicationTime(
               time.milliseconds() + replicationConfig.replicationSyncedReplicaBackoffDurationMs);
           syncedBackOffCount.inc();
+        } else {
+          replicasCaughtUp = false;
         }
         if (exchangeMetadataResponse.missingStoreKeys.size() > 0) {
           PartitionResponseInfo partitionResponseInfo =
@@ -846,7 +1388,7 @@ public class ReplicaThread implements Runnable {
               MessageFormatWriteSet writeset;
               MessageSievingInputStream validMessageDetectionInputStream =
                   new MessageSievingInputStream(getResponse.getInputStream(), messageInfoList,
-                      Collections.singletonList(transformer), metricRegistry);
+                      Collections.singletonList(messageTransformer), metricRegistry);
               if (validMessageDetectionInputStream.hasInvalidMessages()) {
                 replicationMetrics.incrementInvalidMessageError(partitionResponseInfo.getPartition());
                 logger.error("Out of " + (messageInfoList.size()) + " messages, " + (messageInfoList.size()
@@ -877,12 +1419,15 @@ public class ReplicaThread implements Runnable {
                 }
               }
               totalBlobsFixed += messageInfoList.size();
-              remoteReplicaInfo.setToken(exchangeMetadataResponse.remoteToken);
-              remoteReplicaInfo.setLocalLagFromRemoteInBytes(exchangeMetadataResponse.localLagFromRemoteInBytes);
-              replicationMetrics.updateLagMetricForRemoteReplica(remoteReplicaInfo,
-                  exchangeMetadataResponse.localLagFromRemoteInBytes);
-              logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token after speaking to remote node: {}",
-                  remoteNode, threadName, remoteReplicaInfo.getReplicaId(), exchangeMetadataResponse.remoteToken);
+              if (canAdvanceToken(exchangeMetadataResponse, remoteReplicaInfo, remoteNode)) {
+                remoteReplicaInfo.setToken(exchangeMetadataResponse.remoteToken);
+                remoteReplicaInfo.setLocalLagFromRemoteInBytes(exchangeMetadataResponse.localLagFromRemoteInBytes);
+                replicationMetrics.updateLagMetricForRemoteReplica(remoteReplicaInfo,
+                    exchangeMetadataResponse.localLagFromRemoteInBytes);
+                logger.trace(
+                    "Remote node: {} Thread name: {} Remote replica: {} Token after speaking to remote node: {}",
+                    remoteNode, threadName, remoteReplicaInfo.getReplicaId(), exchangeMetadataResponse.remoteToken);
+              }
             } catch (StoreException e) {
               if (e.getErrorCode() != StoreErrorCodes.Already_Exist) {
                 replicationMetrics.updateLocalStoreError(remoteReplicaInfo.getReplicaId());
@@ -904,7 +1449,7 @@ public class ReplicaThread implements Runnable {
             logger.error("Remote node: {} Thread name: {} Remote replica: {} Server error: {}", remoteNode, threadName,
                 remoteReplicaInfo.getReplicaId(), partitionResponseInfo.getErrorCode());
           }
-        } else {
+        } else if (canAdvanceToken(exchangeMetadataResponse, remoteReplicaInfo, remoteNode)) {
           // There are no missing keys. We just advance the token
           remoteReplicaInfo.setToken(exchangeMetadataResponse.remoteToken);
           remoteReplicaInfo.setLocalLagFromRemoteInBytes(exchangeMetadataResponse.localLagFromRemoteInBytes);
@@ -918,6 +1463,136 @@ public class ReplicaThread implements Runnable {
         replicatingFromRemoteColo, replicatingOverSsl, datacenterName);
   }
 
+  /**
+   * Claims the missing keys in the {@link MissingKeyFetchRegistry} and leaves the keys that another replica thread is
+   * already fetching out of the keys to fetch from the remote replica. If the token of the remote replica has been held
+   * back for such keys for {@link ReplicationConfig#replicationMissingKeyFetchMaxTokenDeferrals} cycles in a row, all
+   * the missing keys are fetched instead so that the token can move on. The keys that are left out are remembered in
+   * the {@link RemoteReplicaInfo} until {@link #canAdvanceToken} finds them written, and are forgotten if this thread
+   * ends up fetching them.
+   * @param missingStoreKeys The keys missing from the local store
+   * @param replicaMetadataResponseInfo The replica metadata response from the remote store
+   * @param remoteReplicaInfo The remote replica that is being replicated from
+   * @param remoteKeyToLocalKeyMap map mapping remote keys to local key equivalents
+   * @return the {@link ExchangeMetadataResponse} with the claimed keys as the keys to fetch.
+   */
+  private ExchangeMetadataResponse claimMissingStoreKeys(Set<StoreKey> missingStoreKeys,
+      ReplicaMetadataResponseInfo replicaMetadataResponseInfo, RemoteReplicaInfo remoteReplicaInfo,
+      Map<StoreKey, StoreKey> remoteKeyToLocalKeyMap) {
+    Set<StoreKey> claimedStoreKeys =
+        missingKeyFetchRegistry.claim(remoteReplicaInfo.getLocalReplicaId().getPartitionId(), missingStoreKeys);
+    Map<StoreKey, Long> keysLeftToOtherThreads = remoteReplicaInfo.getKeysLeftToOtherThreads();
+    if (remoteReplicaInfo.getTokenAdvanceDeferrals() >= replicationConfig.replicationMissingKeyFetchMaxTokenDeferrals
+        && claimedStoreKeys.size() < missingStoreKeys.size()) {
+      for (StoreKey storeKey : missingStoreKeys) {
+        keysLeftToOtherThreads.remove(remoteKeyToLocalKeyMap.get(storeKey));
+      }
+      replicationMetrics.missingKeyFetchDeferralLimitReachedCount.inc();
+      logger.trace("Remote node: {} Thread name: {} Remote replica: {} Fetching keys claimed by other threads",
+          remoteReplicaInfo.getReplicaId().getDataNodeId(), threadName, remoteReplicaInfo.getReplicaId());
+      return new ExchangeMetadataResponse(missingStoreKeys, claimedStoreKeys,
+          replicaMetadataResponseInfo.getFindToken(), replicaMetadataResponseInfo.getRemoteReplicaLagInBytes(),
+          Collections.emptySet());
+    }
+    for (StoreKey storeKey : claimedStoreKeys) {
+      keysLeftToOtherThreads.remove(remoteKeyToLocalKeyMap.get(storeKey));
+    }
+    Set<StoreKey> localKeysFetchedElsewhere = new HashSet<>();
+    for (MessageInfo messageInfo : replicaMetadataResponseInfo.getMessageInfoList()) {
+      StoreKey storeKey = messageInfo.getStoreKey();
+      if (missingStoreKeys.contains(storeKey) && !claimedStoreKeys.contains(storeKey)) {
+        StoreKey localKey = remoteKeyToLocalKeyMap.get(storeKey);
+        localKeysFetchedElsewhere.add(localKey);
+        keysLeftToOtherThreads.putIfAbsent(localKey, messageInfo.getSize());
+      }
+    }
+    return new ExchangeMetadataResponse(claimedStoreKeys, claimedStoreKeys, replicaMetadataResponseInfo.getFindToken(),
+        replicaMetadataResponseInfo.getRemoteReplicaLagInBytes(), localKeysFetchedElsewhere);
+  }
+
+  /**
+   * Releases the keys that were claimed in the {@link MissingKeyFetchRegistry} for the exchanges with the remote
+   * replicas of a node. Keys that were released already are not released again.
+   * @param exchangeMetadataResponseList The list of metadata response from the remote node. May be {@code null}.
+   * @param replicasToReplicatePerNode The list of remote replicas for the remote node
+   */
+  private void releaseClaimedStoreKeys(List<ExchangeMetadataResponse> exchangeMetadataResponseList,
+      List<RemoteReplicaInfo> replicasToReplicatePerNode) {
+    if (missingKeyFetchRegistry == null || exchangeMetadataResponseList == null) {
+      return;
+    }
+    for (int i = 0; i < exchangeMetadataResponseList.size(); i++) {
+      Set<StoreKey> claimedStoreKeys = exchangeMetadataResponseList.get(i).takeClaimedStoreKeys();
+      if (claimedStoreKeys != null) {
+        missingKeyFetchRegistry.release(replicasToReplicatePerNode.get(i).getLocalReplicaId().getPartitionId(),
+            claimedStoreKeys);
+      }
+    }
+  }
+
+  /**
+   * Checks whether the token of a remote replica can be advanced past the keys in its metadata. This is not the case
+   * if keys that were left for another replica thread to fetch are still missing from the local store, because that
+   * fetch may have failed or may not be done yet. The metadata is then exchanged again from the old token in the next
+   * cycle, until the number of deferrals reaches {@link ReplicationConfig#replicationMissingKeyFetchMaxTokenDeferrals}
+   * and the keys are fetched from the remote replica instead.
+   * <p/>
+   * The keys left for other replica threads that are found in the local store are counted as avoided fetches here, once
+   * each, rather than when they are left out. Keys whose metadata is exchanged again after a deferral or that this
+   * thread ends up fetching itself are therefore not counted.
+   * @param exchangeMetadataResponse The metadata response from the remote replica
+   * @param remoteReplicaInfo The remote replica that is being replicated from
+   * @param remoteNode The remote node from which replication needs to happen
+   * @return {@code true} if the token can be advanced to the one in {@code exchangeMetadataResponse}.
+   */
+  private boolean canAdvanceToken(ExchangeMetadataResponse exchangeMetadataResponse,
+      RemoteReplicaInfo remoteReplicaInfo, DataNodeId remoteNode) {
+    Map<StoreKey, Long> keysLeftToOtherThreads = remoteReplicaInfo.getKeysLeftToOtherThreads();
+    if (keysLeftToOtherThreads.isEmpty() && exchangeMetadataResponse.localKeysFetchedElsewhere.isEmpty()) {
+      remoteReplicaInfo.setTokenAdvanceDeferrals(0);
+      return true;
+    }
+    try {
+      Set<StoreKey> keysToCheck = new HashSet<>(keysLeftToOtherThreads.keySet());
+      keysToCheck.addAll(exchangeMetadataResponse.localKeysFetchedElsewhere);
+      Set<StoreKey> keysStillMissing = remoteReplicaInfo.getLocalStore().findMissingKeys(new ArrayList<>(keysToCheck));
+      Iterator<Map.Entry<StoreKey, Long>> iterator = keysLeftToOtherThreads.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<StoreKey, Long> entry = iterator.next();
+        if (!keysStillMissing.contains(entry.getKey())) {
+          if (replicatingFromRemoteColo) {
+            replicationMetrics.interColoMissingKeyFetchAvoidedCount.inc();
+            replicationMetrics.interColoMissingKeyFetchAvoidedBytes.inc(entry.getValue());
+          } else {
+            replicationMetrics.intraColoMissingKeyFetchAvoidedCount.inc();
+          }
+          iterator.remove();
+        }
+      }
+      Set<StoreKey> keysWaitedFor = exchangeMetadataResponse.localKeysFetchedElsewhere.stream()
+          .filter(keysStillMissing::contains)
+          .collect(Collectors.toSet());
+      if (keysWaitedFor.isEmpty()) {
+        remoteReplicaInfo.setTokenAdvanceDeferrals(0);
+        return true;
+      }
+      remoteReplicaInfo.setTokenAdvanceDeferrals(remoteReplicaInfo.getTokenAdvanceDeferrals() + 1);
+      replicationMetrics.missingKeyFetchTokenAdvanceDeferredCount.inc();
+      logger.trace("Remote node: {} Thread name: {} Remote replica: {} Token not advanced, keys still missing: {}",
+          remoteNode, threadName, remoteReplicaInfo.getReplicaId(), keysWaitedFor);
+    } catch (StoreException e) {
+      replicationMetrics.updateLocalStoreError(remoteReplicaInfo.getReplicaId());
+      logger.error("Remote node: " + remoteNode + " Thread name: " + threadName + " Remote replica: "
+          + remoteReplicaInfo.getReplicaId(), e);
+      if (exchangeMetadataResponse.localKeysFetchedElsewhere.isEmpty()) {
+        // nothing in this exchange waits for another thread. Only the counting of earlier keys failed.
+        remoteReplicaInfo.setTokenAdvanceDeferrals(0);
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * Applies a TTL update to the blob described by {@code messageInfo}.
    * @param messageInfo the {@link MessageInfo} that will be transformed into a TTL update
@@ -971,17 +1646,215 @@ public class ReplicaThread implements Runnable {
     return replicationMetrics;
   }
 
+  /**
+   * The replication of a group of remote replicas on the same remote node over the {@link NetworkClient}. The exchange
+   * sends a {@link ReplicaMetadataRequest}, then a {@link GetRequest} for the keys that are missing locally (if there
+   * are any) and writes the messages that it gets to the local stores.
+   */
+  private class ReplicaGroupExchange {
+    private final DataNodeId remoteNode;
+    private final List<RemoteReplicaInfo> replicas;
+    private final Timer.Context context;
+    private final Timer.Context portTypeBasedContext;
+    private final long replicationStartTimeInMs;
+    private List<ExchangeMetadataResponse> exchangeMetadataResponseList = null;
+    private boolean fetchingMissingKeys = false;
+    private boolean hadNewEntries = false;
+    private long phaseStartTimeInMs;
+    private long requestStartTimeInMs;
+    private long requestDeadlineMs;
+    private long metadataWaitTimeMs;
+
+    /**
+     * @param remoteNode the remote node to replicate from.
+     * @param replicas the remote replicas on {@code remoteNode} to replicate from.
+     * @param metadataWaitTimeMs the longest time the remote node should wait for new entries before answering the
+     *                           metadata request if none of {@code replicas} have any.
+     */
+    ReplicaGroupExchange(DataNodeId remoteNode, List<RemoteReplicaInfo> replicas, long metadataWaitTimeMs) {
+      this.remoteNode = remoteNode;
+      this.replicas = replicas;
+      this.metadataWaitTimeMs = metadataWaitTimeMs;
+      context = startReplicationLatencyTimer(remoteNode);
+      portTypeBasedContext = startPortTypeBasedReplicationLatencyTimer(remoteNode);
+      replicationStartTimeInMs = SystemTime.getInstance().milliseconds();
+      phaseStartTimeInMs = replicationStartTimeInMs;
+    }
+
+    /**
+     * @return the {@link RequestInfo} of the {@link ReplicaMetadataRequest} that starts the exchange.
+     */
+    RequestInfo start() {
+      return createRequestInfo(createReplicaMetadataRequest(replicas, remoteNode, metadataWaitTimeMs));
+    }
+
+    /**
+     * Handles the response to the request of the exchange that is in flight and releases it.
+     * @param responseInfo the {@link ResponseInfo} of the response.
+     * @return the {@link RequestInfo} of the next request of the exchange, or {@code null} if the exchange is done.
+     */
+    RequestInfo onResponse(ResponseInfo responseInfo) {
+      try {
+        if (responseInfo.getError() != null) {
+          responseHandler.onEvent(replicas.get(0).getReplicaId(), responseInfo.getError());
+          throw new IOException("Network client error " + responseInfo.getError());
+        }
+        reserveBandwidthBudget(responseInfo.getResponse().remaining());
+        DataInputStream stream = getResponseStream(new ByteBufferInputStream(responseInfo.getResponse()));
+        if (!fetchingMissingKeys) {
+          ReplicaMetadataResponse response = ReplicaMetadataResponse.readFrom(stream, findTokenFactory, clusterMap);
+          checkReplicaMetadataResponse(response, requestStartTimeInMs, replicas, remoteNode);
+          exchangeMetadataResponseList = processReplicaMetadataResponse(response, replicas, remoteNode);
+          for (int i = 0; i < exchangeMetadataResponseList.size(); i++) {
+            ExchangeMetadataResponse exchangeMetadataResponse = exchangeMetadataResponseList.get(i);
+            if (exchangeMetadataResponse.serverErrorCode == ServerErrorCode.No_Error
+                && !replicas.get(i).getToken().equals(exchangeMetadataResponse.remoteToken)) {
+              hadNewEntries = true;
+            }
+          }
+          endPhase();
+          metadataWaitTimeMs = 0;
+          GetRequest getRequest = createGetRequest(exchangeMetadataResponseList, replicas, remoteNode);
+          if (getRequest != null) {
+            return createRequestInfo(getRequest);
+          }
+          writeMessagesToLocalStoreAndAdvanceTokens(exchangeMetadataResponseList, null, replicas, remoteNode,
+              transformer);
+        } else {
+          GetResponse getResponse = GetResponse.readFrom(stream, clusterMap);
+          checkGetResponse(getResponse, requestStartTimeInMs, replicas, remoteNode);
+          writeMessagesToLocalStoreAndAdvanceTokens(exchangeMetadataResponseList, getResponse, replicas, remoteNode,
+              transformer);
+        }
+        updateFetchSizes(replicas, exchangeMetadataResponseList,
+            SystemTime.getInstance().milliseconds() - replicationStartTimeInMs);
+        endPhase();
+        finish();
+      } catch (Exception e) {
+        hadNewEntries = false;
+        fail(e);
+      } finally {
+        responseInfo.release();
+      }
+      return null;
+    }
+
+    /**
+     * @return {@code true} if the remote node had new entries for at least one of the replicas of the exchange.
+     */
+    boolean hadNewEntries() {
+      return hadNewEntries;
+    }
+
+    /**
+     * Records that the next request of the exchange is handed to the {@link NetworkClient}. The request timeout starts
+     * from here.
+     */
+    void onSend() {
+      requestStartTimeInMs = SystemTime.getInstance().milliseconds();
+      // the remote node may hold a metadata request for up to the wait time before it starts working on it
+      requestDeadlineMs = time.milliseconds() + replicationConfig.replicationRequestTimeoutMs + metadataWaitTimeMs;
+    }
+
+    /**
+     * @return {@code true} if the request of the exchange that is in flight has not received a response within
+     * {@link ReplicationConfig#replicationRequestTimeoutMs}.
+     */
+    boolean hasTimedOut() {
+      return time.milliseconds() > requestDeadlineMs;
+    }
+
+    /**
+     * Fails the exchange because its request timed out. A response that arrives later is dropped.
+     */
+    void onTimeout() {
+      replicationMetrics.networkClientRequestTimeoutCount.inc();
+      responseHandler.onEvent(replicas.get(0).getReplicaId(), NetworkClientErrorCode.NetworkError);
+      fail(new ReplicationException(
+          "Request to " + remoteNode + " timed out after " + replicationConfig.replicationRequestTimeoutMs + " ms"));
+    }
+
+    /**
+     * Records the end of the replication of the group.
+     */
+    void finish() {
+      releaseClaimedStoreKeys(exchangeMetadataResponseList, replicas);
+      long totalReplicationTime = SystemTime.getInstance().milliseconds() - replicationStartTimeInMs;
+      replicationMetrics.updateTotalReplicationTime(totalReplicationTime, replicatingFromRemoteColo,
+          replicatingOverSsl, datacenterName);
+      context.stop();
+      portTypeBasedContext.stop();
+    }
+
+    /**
+     * @param request the next request of the exchange.
+     * @return the {@link RequestInfo} to send {@code request} to the remote node with.
+     */
+    private RequestInfo createRequestInfo(RequestOrResponse request) {
+      RemoteReplicaInfo remoteReplicaInfo = replicas.get(0);
+      return new RequestInfo(remoteNode.getHostname(), remoteReplicaInfo.getPort(), request,
+          remoteReplicaInfo.getReplicaId(), request.getCorrelationId());
+    }
+
+    /**
+     * Records the time taken by the metadata exchange or by fixing the missing keys, whichever is in progress.
+     */
+    private void endPhase() {
+      long now = SystemTime.getInstance().milliseconds();
+      if (fetchingMissingKeys) {
+        replicationMetrics.updateFixMissingStoreKeysTime(now - phaseStartTimeInMs, replicatingFromRemoteColo,
+            replicatingOverSsl, datacenterName);
+      } else {
+        replicationMetrics.updateExchangeMetadataTime(now - phaseStartTimeInMs, replicatingFromRemoteColo,
+            replicatingOverSsl, datacenterName);
+        fetchingMissingKeys = true;
+      }
+      phaseStartTimeInMs = now;
+    }
+
+    /**
+     * Ends the exchange because of {@code e}.
+     * @param e the cause of the failure.
+     */
+    private void fail(Exception e) {
+      endPhase();
+      logger.error("Error while talking to peer: Remote node: {}, Thread name: {}, Remote replicas: {}", remoteNode,
+          threadName, replicas, e);
+      replicationMetrics.incrementReplicationErrors(replicatingOverSsl);
+      finish();
+    }
+  }
+
   static class ExchangeMetadataResponse {
     final Set<StoreKey> missingStoreKeys;
     final FindToken remoteToken;
     final long localLagFromRemoteInBytes;
     final ServerErrorCode serverErrorCode;
+    // the local keys that are missing but are being fetched by another replica thread.
+    final Set<StoreKey> localKeysFetchedElsewhere;
+    // the keys claimed in the MissingKeyFetchRegistry that have not been released yet.
+    private Set<StoreKey> claimedStoreKeys;
 
     ExchangeMetadataResponse(Set<StoreKey> missingStoreKeys, FindToken remoteToken, long localLagFromRemoteInBytes) {
       this.missingStoreKeys = missingStoreKeys;
       this.remoteToken = remoteToken;
       this.localLagFromRemoteInBytes = localLagFromRemoteInBytes;
       this.serverErrorCode = ServerErrorCode.No_Error;
+      localKeysFetchedElsewhere = Collections.emptySet();
+      claimedStoreKeys = null;
+    }
+
+    /**
+     * Creates a response whose {@code claimedStoreKeys} were claimed in the {@link MissingKeyFetchRegistry}.
+     */
+    ExchangeMetadataResponse(Set<StoreKey> missingStoreKeys, Set<StoreKey> claimedStoreKeys, FindToken remoteToken,
+        long localLagFromRemoteInBytes, Set<StoreKey> localKeysFetchedElsewhere) {
+      this.missingStoreKeys = missingStoreKeys;
+      this.remoteToken = remoteToken;
+      this.localLagFromRemoteInBytes = localLagFromRemoteInBytes;
+      this.serverErrorCode = ServerErrorCode.No_Error;
+      this.localKeysFetchedElsewhere = localKeysFetchedElsewhere;
+      this.claimedStoreKeys = claimedStoreKeys;
     }
 
     ExchangeMetadataResponse(ServerErrorCode errorCode) {
@@ -989,6 +1862,18 @@ public class ReplicaThread implements Runnable {
       remoteToken = null;
       localLagFromRemoteInBytes = -1;
       this.serverErrorCode = errorCode;
+      localKeysFetchedElsewhere = Collections.emptySet();
+      claimedStoreKeys = null;
+    }
+
+    /**
+     * @return the keys claimed in the {@link MissingKeyFetchRegistry} for this response, or {@code null} if there are
+     * none or they were taken already.
+     */
+    synchronized Set<StoreKey> takeClaimedStoreKeys() {
+      Set<StoreKey> keys = claimedStoreKeys;
+      claimedStoreKeys = null;
+      return keys;
     }
   }
 
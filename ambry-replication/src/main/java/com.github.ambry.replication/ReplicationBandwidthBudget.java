@@ -0,0 +1,110 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.utils.Time;
+
+
+/**
+ * A token bucket that limits the bytes per second that the {@link ReplicaThread}s of a node fetch from a datacenter.
+ * All the replica threads that replicate from the datacenter share the bucket.
+ * <p/>
+ * The bucket holds up to one second worth of bytes. The size of a response is only known once it has been received,
+ * so a thread consumes the bytes of every response it receives and the bucket may go into debt. The thread then
+ * sleeps until the debt is paid back, which delays its next request. Since a thread that consumes while the bucket is
+ * in debt adds to it, the threads together do not fetch more than the budget over time. Threads that multiplex several
+ * requests must not sleep while other responses are due, so they {@link #reserve(long)} the bytes instead and hold
+ * back their next requests for {@link #getWaitTimeMs()}.
+ */
+class ReplicationBandwidthBudget {
+  private final Time time;
+  private long bytesPerSec;
+  private double availableBytes;
+  private long lastRefillTimeNs;
+
+  /**
+   * @param bytesPerSec the bytes per second that can be fetched. 0 if fetches are not limited.
+   * @param time the {@link Time} instance to use.
+   */
+  ReplicationBandwidthBudget(long bytesPerSec, Time time) {
+    this.time = time;
+    this.bytesPerSec = bytesPerSec;
+    availableBytes = bytesPerSec;
+    lastRefillTimeNs = time.nanoseconds();
+  }
+
+  /**
+   * Consumes bytes that have been fetched and sleeps until the bucket is out of debt if it is in debt.
+   * @param bytes the number of bytes fetched.
+   * @return the time slept in ms.
+   * @throws InterruptedException if the sleep is interrupted.
+   */
+  long consume(long bytes) throws InterruptedException {
+    long waitTimeMs = reserve(bytes);
+    if (waitTimeMs > 0) {
+      time.sleep(waitTimeMs);
+    }
+    return waitTimeMs;
+  }
+
+  /**
+   * Takes bytes out of the bucket.
+   * @param bytes the number of bytes to take out.
+   * @return the time in ms until the bucket is out of debt. 0 if it is not in debt.
+   */
+  synchronized long reserve(long bytes) {
+    if (bytesPerSec <= 0) {
+      return 0;
+    }
+    refill();
+    availableBytes -= bytes;
+    return availableBytes >= 0 ? 0 : (long) Math.ceil(-availableBytes * Time.MsPerSec / bytesPerSec);
+  }
+
+  /**
+   * @return the time in ms until the bucket is out of debt. 0 if it is not in debt.
+   */
+  synchronized long getWaitTimeMs() {
+    return reserve(0);
+  }
+
+  /**
+   * @return the bytes per second that can be fetched. 0 if fetches are not limited.
+   */
+  synchronized long getBytesPerSec() {
+    return bytesPerSec;
+  }
+
+  /**
+   * Changes the bytes per second that can be fetched. The bucket is filled up if fetches were not limited before.
+   * @param bytesPerSec the bytes per second that can be fetched. 0 if fetches should not be limited.
+   */
+  synchronized void setBytesPerSec(long bytesPerSec) {
+    refill();
+    availableBytes = this.bytesPerSec <= 0 ? bytesPerSec : Math.min(availableBytes, bytesPerSec);
+    this.bytesPerSec = bytesPerSec;
+  }
+
+  /**
+   * Adds the bytes that have accrued since the last refill to the bucket.
+   */
+  private void refill() {
+    long nowNs = time.nanoseconds();
+    if (bytesPerSec > 0) {
+      availableBytes =
+          Math.min(bytesPerSec, availableBytes + (double) (nowNs - lastRefillTimeNs) * bytesPerSec / Time.NsPerSec);
+    }
+    lastRefillTimeNs = nowNs;
+  }
+}
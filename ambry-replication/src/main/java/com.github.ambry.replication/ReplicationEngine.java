@@ -22,6 +22,8 @@ import com.github.ambry.commons.ResponseHandler;
 import com.github.ambry.config.ClusterMapConfig;
 import com.github.ambry.config.ReplicationConfig;
 import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.NetworkClient;
+import com.github.ambry.network.NetworkClientFactory;
 import com.github.ambry.notification.NotificationSystem;
 import com.github.ambry.protocol.GetRequest;
 import com.github.ambry.store.FindToken;
@@ -58,6 +60,11 @@ public abstract class ReplicationEngine {
   protected final ScheduledExecutorService scheduler;
   private final AtomicInteger correlationIdGenerator;
   private final ConnectionPool connectionPool;
+  private final NetworkClientFactory networkClientFactory;
+  // shared by all the replica threads so that a missing key is only fetched from one remote replica at a time.
+  private final MissingKeyFetchRegistry missingKeyFetchRegistry;
+  // shared by all the replica threads that replicate from a datacenter.
+  private final Map<String, ReplicationBandwidthBudget> bandwidthBudgetByDc = new ConcurrentHashMap<>();
   private final NotificationSystem notification;
   // RemoteReplicaInfo are managed by replicaThread.
   protected final Map<String, List<ReplicaThread>> replicaThreadPoolByDc;
@@ -82,9 +89,9 @@ public abstract class ReplicationEngine {
 
   public ReplicationEngine(ReplicationConfig replicationConfig, ClusterMapConfig clusterMapConfig,
       StoreKeyFactory storeKeyFactory, ClusterMap clusterMap, ScheduledExecutorService scheduler, DataNodeId dataNode,
-      List<? extends ReplicaId> replicaIds, ConnectionPool connectionPool, MetricRegistry metricRegistry,
-      NotificationSystem requestNotification, StoreKeyConverterFactory storeKeyConverterFactory,
-      String transformerClassName) throws ReplicationException {
+      List<? extends ReplicaId> replicaIds, ConnectionPool connectionPool, NetworkClientFactory networkClientFactory,
+      MetricRegistry metricRegistry, NotificationSystem requestNotification,
+      StoreKeyConverterFactory storeKeyConverterFactory, String transformerClassName) throws ReplicationException {
     this.replicationConfig = replicationConfig;
     this.storeKeyFactory = storeKeyFactory;
     try {
@@ -102,6 +109,9 @@ public abstract class ReplicationEngine {
     this.correlationIdGenerator = new AtomicInteger(0);
     this.dataNodeId = dataNode;
     this.connectionPool = connectionPool;
+    this.networkClientFactory = networkClientFactory;
+    this.missingKeyFetchRegistry =
+        replicationConfig.replicationMissingKeyFetchDedupEnabled ? new MissingKeyFetchRegistry() : null;
     this.notification = requestNotification;
     this.metricRegistry = metricRegistry;
     this.dataNodeIdToReplicaThread = new ConcurrentHashMap<>();
@@ -138,6 +148,24 @@ public abstract class ReplicationEngine {
     return true;
   }
 
+  /**
+   * Changes the bytes per second that the replica threads can fetch from {@code origin}. The change is in-memory and
+   * therefore is not valid across restarts.
+   * @param origin the datacenter whose budget should be changed.
+   * @param bytesPerSec the new budget. 0 removes the limit.
+   * @return {@code true} if the budget was changed, {@code false} if there are no replica threads for {@code origin}.
+   */
+  public boolean setBandwidthBudget(String origin, long bytesPerSec) {
+    ReplicationBandwidthBudget bandwidthBudget = bandwidthBudgetByDc.get(origin);
+    if (bandwidthBudget == null || bytesPerSec < 0) {
+      return false;
+    }
+    logger.info("Changing the replication bandwidth budget of {} from {} to {} bytes per second", origin,
+        bandwidthBudget.getBytesPerSec(), bytesPerSec);
+    bandwidthBudget.setBytesPerSec(bytesPerSec);
+    return true;
+  }
+
   /**
    * Updates the total bytes read by a remote replica from local store
    * @param partitionId PartitionId to which the replica belongs to
@@ -296,6 +324,10 @@ public abstract class ReplicationEngine {
     List<ReplicaThread> replicaThreads = new ArrayList<>();
     logger.info("Number of replica threads to replicate from {}: {}", datacenter, numberOfThreads);
     ResponseHandler responseHandler = new ResponseHandler(clusterMap);
+    long bandwidthBudgetBytesPerSec =
+        replicationConfig.replicationDatacenterBandwidthBudgets.getOrDefault(datacenter, 0L);
+    ReplicationBandwidthBudget bandwidthBudget =
+        new ReplicationBandwidthBudget(bandwidthBudgetBytesPerSec, SystemTime.getInstance());
     for (int i = 0; i < numberOfThreads; i++) {
       boolean replicatingOverSsl = sslEnabledDatacenters.contains(datacenter);
       String threadIdentity =
@@ -305,11 +337,15 @@ public abstract class ReplicationEngine {
         StoreKeyConverter threadSpecificKeyConverter = storeKeyConverterFactory.getStoreKeyConverter();
         Transformer threadSpecificTransformer =
             Utils.getObj(transformerClassName, storeKeyFactory, threadSpecificKeyConverter);
+        NetworkClient networkClient = networkClientFactory == null ? null : networkClientFactory.getNetworkClient();
+        Transformer pipelineTransformer =
+            networkClient == null && replicationConfig.replicationPipelinedStoreWritesEnabled ? Utils.getObj(
+                transformerClassName, storeKeyFactory, storeKeyConverterFactory.getStoreKeyConverter()) : null;
         ReplicaThread replicaThread =
             new ReplicaThread(threadIdentity, factory, clusterMap, correlationIdGenerator, dataNodeId, connectionPool,
-                replicationConfig, replicationMetrics, notification, threadSpecificKeyConverter,
-                threadSpecificTransformer, metricRegistry, replicatingOverSsl, datacenter, responseHandler,
-                SystemTime.getInstance());
+                networkClient, missingKeyFetchRegistry, bandwidthBudget, replicationConfig, replicationMetrics,
+                notification, threadSpecificKeyConverter, threadSpecificTransformer, pipelineTransformer,
+                metricRegistry, replicatingOverSsl, datacenter, responseHandler, SystemTime.getInstance());
         replicaThreads.add(replicaThread);
         if (startThread) {
           Thread thread = Utils.newThread(replicaThread.getName(), replicaThread, false);
@@ -321,6 +357,8 @@ public abstract class ReplicationEngine {
       }
     }
     replicationMetrics.trackLiveThreadsCount(replicaThreads, datacenter);
+    replicationMetrics.trackBandwidthBudget(bandwidthBudget, datacenter);
+    bandwidthBudgetByDc.put(datacenter, bandwidthBudget);
     replicationMetrics.populateSingleColoMetrics(datacenter);
     return replicaThreads;
   }
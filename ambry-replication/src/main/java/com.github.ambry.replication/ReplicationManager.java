@@ -22,6 +22,7 @@ import com.github.ambry.config.ClusterMapConfig;
 import com.github.ambry.config.ReplicationConfig;
 import com.github.ambry.config.StoreConfig;
 import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.NetworkClientFactory;
 import com.github.ambry.notification.NotificationSystem;
 import com.github.ambry.store.StorageManager;
 import com.github.ambry.store.Store;
@@ -31,6 +32,7 @@ import com.github.ambry.utils.SystemTime;
 import com.github.ambry.utils.Utils;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -40,14 +42,17 @@ import java.util.concurrent.TimeUnit;
  * Set up replicas based on {@link ReplicationEngine} and do replication across all colos.
  */
 public class ReplicationManager extends ReplicationEngine {
+  private final ReplicaBootstrapper replicaBootstrapper;
+  private final ReplicaDivergenceDetector replicaDivergenceDetector;
+  private Thread replicaBootstrapperThread = null;
 
   public ReplicationManager(ReplicationConfig replicationConfig, ClusterMapConfig clusterMapConfig,
       StoreConfig storeConfig, StorageManager storageManager, StoreKeyFactory storeKeyFactory, ClusterMap clusterMap,
       ScheduledExecutorService scheduler, DataNodeId dataNode, ConnectionPool connectionPool,
-      MetricRegistry metricRegistry, NotificationSystem requestNotification,
+      NetworkClientFactory networkClientFactory, MetricRegistry metricRegistry, NotificationSystem requestNotification,
       StoreKeyConverterFactory storeKeyConverterFactory, String transformerClassName) throws ReplicationException {
     super(replicationConfig, clusterMapConfig, storeKeyFactory, clusterMap, scheduler, dataNode,
-        clusterMap.getReplicaIds(dataNode), connectionPool, metricRegistry, requestNotification,
+        clusterMap.getReplicaIds(dataNode), connectionPool, networkClientFactory, metricRegistry, requestNotification,
         storeKeyConverterFactory, transformerClassName);
     List<? extends ReplicaId> replicaIds = clusterMap.getReplicaIds(dataNode);
     // initialize all partitions
@@ -82,8 +87,16 @@ public class ReplicationManager extends ReplicationEngine {
         logger.error("Not replicating to partition " + partition + " because an initialized store could not be found");
       }
     }
-    persistor = new DiskTokenPersistor(replicaTokenFileName, mountPathToPartitionInfos, replicationMetrics, clusterMap,
-        factory);
+    persistor = replicationConfig.replicationTokenLogEnabled ? new DiskTokenLogPersistor(replicaTokenFileName,
+        mountPathToPartitionInfos, replicationMetrics, clusterMap, factory,
+        replicationConfig.replicationTokenLogCompactionThresholdBytes)
+        : new DiskTokenPersistor(replicaTokenFileName, mountPathToPartitionInfos, replicationMetrics, clusterMap,
+            factory);
+    replicaBootstrapper = replicationConfig.replicationBootstrapEnabled ? new ReplicaBootstrapper(replicationConfig,
+        storageManager, connectionPool, factory, dataNode, replicationMetrics, SystemTime.getInstance()) : null;
+    replicaDivergenceDetector = replicationConfig.replicationDivergenceCheckIntervalSeconds > 0
+        ? new ReplicaDivergenceDetector(replicationConfig, storageManager, connectionPool, clusterMap, dataNode,
+        replicationMetrics, SystemTime.getInstance()) : null;
   }
 
   @Override
@@ -101,6 +114,10 @@ public class ReplicationManager extends ReplicationEngine {
       // valid for replication manager.
       replicationMetrics.trackReplicationDisabledPartitions(replicaThreadPoolByDc);
 
+      if (replicaBootstrapper != null) {
+        startReplicaBootstrapper();
+      }
+
       // start all replica threads
       for (List<ReplicaThread> replicaThreads : replicaThreadPoolByDc.values()) {
         for (ReplicaThread thread : replicaThreads) {
@@ -113,11 +130,69 @@ public class ReplicationManager extends ReplicationEngine {
       // start background persistent thread
       // start scheduler thread to persist replica token in the background
       if (persistor != null) {
-        this.scheduler.scheduleAtFixedRate(persistor, replicationConfig.replicationTokenFlushDelaySeconds,
-            replicationConfig.replicationTokenFlushIntervalSeconds, TimeUnit.SECONDS);
+        if (replicationConfig.replicationTokenLogEnabled) {
+          this.scheduler.scheduleAtFixedRate(persistor,
+              TimeUnit.SECONDS.toMillis(replicationConfig.replicationTokenFlushDelaySeconds),
+              replicationConfig.replicationTokenLogFlushIntervalMs, TimeUnit.MILLISECONDS);
+        } else {
+          this.scheduler.scheduleAtFixedRate(persistor, replicationConfig.replicationTokenFlushDelaySeconds,
+              replicationConfig.replicationTokenFlushIntervalSeconds, TimeUnit.SECONDS);
+        }
+      }
+
+      // start scheduler thread to compare the replicas with their peers in the background
+      if (replicaDivergenceDetector != null) {
+        this.scheduler.scheduleWithFixedDelay(
+            () -> replicaDivergenceDetector.checkPartitions(partitionToPartitionInfo.values()),
+            replicationConfig.replicationDivergenceCheckIntervalSeconds,
+            replicationConfig.replicationDivergenceCheckIntervalSeconds, TimeUnit.SECONDS);
       }
     } catch (IOException e) {
       logger.error("IO error while starting replication", e);
     }
   }
+
+  @Override
+  public void shutdown() throws ReplicationException {
+    if (replicaBootstrapper != null) {
+      replicaBootstrapper.shutdown();
+      if (replicaBootstrapperThread != null) {
+        try {
+          replicaBootstrapperThread.join();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ReplicationException("Interrupted while waiting for the replica bootstrapper to stop");
+        }
+      }
+    }
+    super.shutdown();
+  }
+
+  /**
+   * Bootstraps the empty stores from the sealed files of their peers in the background. Replication of each of them is
+   * disabled until it is bootstrapped, so that the replica threads do not replicate the blobs that are being copied.
+   */
+  private void startReplicaBootstrapper() {
+    List<PartitionInfo> emptyPartitionInfos = new ArrayList<>();
+    for (PartitionInfo partitionInfo : partitionToPartitionInfo.values()) {
+      if (partitionInfo.getStore().isEmpty()) {
+        emptyPartitionInfos.add(partitionInfo);
+      }
+    }
+    if (emptyPartitionInfos.isEmpty()) {
+      return;
+    }
+    List<PartitionId> emptyPartitionIds = new ArrayList<>();
+    emptyPartitionInfos.forEach(partitionInfo -> emptyPartitionIds.add(partitionInfo.getPartitionId()));
+    controlReplicationForPartitions(emptyPartitionIds, Collections.emptyList(), false);
+    logger.info("Bootstrapping {} empty stores from their peers", emptyPartitionIds.size());
+    replicaBootstrapperThread = Utils.newThread("replica-bootstrapper", () -> {
+      for (PartitionInfo partitionInfo : emptyPartitionInfos) {
+        replicaBootstrapper.bootstrap(partitionInfo);
+        controlReplicationForPartitions(Collections.singletonList(partitionInfo.getPartitionId()),
+            Collections.emptyList(), true);
+      }
+    }, true);
+    replicaBootstrapperThread.start();
+  }
 }
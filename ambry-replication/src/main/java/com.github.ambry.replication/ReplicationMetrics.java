@@ -38,6 +38,8 @@ import java.util.concurrent.ConcurrentHashMap;
 public class ReplicationMetrics {
 
   public final Map<String, Meter> interColoReplicationBytesRate = new HashMap<String, Meter>();
+  public final Map<String, Meter> bandwidthBudgetConsumedBytesRate = new ConcurrentHashMap<>();
+  public final Map<String, Counter> bandwidthBudgetThrottledTimeInMs = new ConcurrentHashMap<>();
   public final Meter intraColoReplicationBytesRate;
   public final Map<String, Meter> plainTextInterColoReplicationBytesRate = new HashMap<String, Meter>();
   public final Meter plainTextIntraColoReplicationBytesRate;
@@ -124,6 +126,32 @@ public class ReplicationMetrics {
   public final Counter remoteReplicaInfoRemoveError;
   public final Counter remoteReplicaInfoAddError;
   public final Counter allResponsedKeysExist;
+  public final Counter networkClientRequestTimeoutCount;
+  public final Counter networkClientUnexpectedResponseCount;
+  public final Counter replicaGroupExchangeRestartCount;
+  public final Histogram networkClientRequestsInFlight;
+  public final Histogram responseDecompressionTimeInUs;
+  public final Histogram compressedResponseSizePercent;
+  public final Counter compressedResponseBytes;
+  public final Counter decompressedResponseBytes;
+  public final Histogram storeWritePipelineWaitTimeInMs;
+  public final Histogram storeWritePipelinePendingBytes;
+  public final Counter lagPrioritizedSchedulerSkippedReplicaCount;
+  public final Counter replicaBootstrapSuccessCount;
+  public final Counter replicaBootstrapFailureCount;
+  public final Meter replicaBootstrapBytesRate;
+  public final Histogram replicaBootstrapTimeInMs;
+  public final Counter replicaDivergenceCheckCount;
+  public final Counter replicaDivergenceCheckErrorCount;
+  public final Counter replicaDivergentKeyCount;
+  public final Histogram replicaDivergenceCheckTimeInMs;
+  public final Counter intraColoMissingKeyFetchAvoidedCount;
+  public final Counter interColoMissingKeyFetchAvoidedCount;
+  public final Counter interColoMissingKeyFetchAvoidedBytes;
+  public final Counter missingKeyFetchTokenAdvanceDeferredCount;
+  public final Counter missingKeyFetchDeferralLimitReachedCount;
+  public final Counter replicaTokenLogAppendedTokenCount;
+  public final Counter replicaTokenLogCompactionCount;
 
   private MetricRegistry registry;
   private Map<String, Counter> metadataRequestErrorMap;
@@ -239,6 +267,57 @@ public class ReplicationMetrics {
         registry.counter(MetricRegistry.name(ReplicaThread.class, "RemoteReplicaInfoRemoveError"));
     remoteReplicaInfoAddError = registry.counter(MetricRegistry.name(ReplicaThread.class, "RemoteReplicaInfoAddError"));
     allResponsedKeysExist = registry.counter(MetricRegistry.name(ReplicaThread.class, "AllResponsedKeysExist"));
+    networkClientRequestTimeoutCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "NetworkClientRequestTimeoutCount"));
+    networkClientUnexpectedResponseCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "NetworkClientUnexpectedResponseCount"));
+    replicaGroupExchangeRestartCount =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "ReplicaGroupExchangeRestartCount"));
+    networkClientRequestsInFlight =
+        registry.histogram(MetricRegistry.name(ReplicaThread.class, "NetworkClientRequestsInFlight"));
+    responseDecompressionTimeInUs =
+        registry.histogram(MetricRegistry.name(ReplicaThread.class, "ResponseDecompressionTimeInUs"));
+    compressedResponseSizePercent =
+        registry.histogram(MetricRegistry.name(ReplicaThread.class, "CompressedResponseSizePercent"));
+    compressedResponseBytes = registry.counter(MetricRegistry.name(ReplicaThread.class, "CompressedResponseBytes"));
+    decompressedResponseBytes =
+        registry.counter(MetricRegistry.name(ReplicaThread.class, "DecompressedResponseBytes"));
+    storeWritePipelineWaitTimeInMs =
+        registry.histogram(MetricRegistry.name(StoreWritePipeline.class, "StoreWritePipelineWaitTimeInMs"));
+    storeWritePipelinePendingBytes =
+        registry.histogram(MetricRegistry.name(StoreWritePipeline.class, "StoreWritePipelinePendingBytes"));
+    lagPrioritizedSchedulerSkippedReplicaCount = registry.counter(
+        MetricRegistry.name(LagPrioritizedReplicaScheduler.class, "LagPrioritizedSchedulerSkippedReplicaCount"));
+    replicaBootstrapSuccessCount =
+        registry.counter(MetricRegistry.name(ReplicaBootstrapper.class, "ReplicaBootstrapSuccessCount"));
+    replicaBootstrapFailureCount =
+        registry.counter(MetricRegistry.name(ReplicaBootstrapper.class, "ReplicaBootstrapFailureCount"));
+    replicaBootstrapBytesRate =
+        registry.meter(MetricRegistry.name(ReplicaBootstrapper.class, "ReplicaBootstrapBytesRate"));
+    replicaBootstrapTimeInMs =
+        registry.histogram(MetricRegistry.name(ReplicaBootstrapper.class, "ReplicaBootstrapTimeInMs"));
+    replicaDivergenceCheckCount =
+        registry.counter(MetricRegistry.name(ReplicaDivergenceDetector.class, "ReplicaDivergenceCheckCount"));
+    replicaDivergenceCheckErrorCount =
+        registry.counter(MetricRegistry.name(ReplicaDivergenceDetector.class, "ReplicaDivergenceCheckErrorCount"));
+    replicaDivergentKeyCount =
+        registry.counter(MetricRegistry.name(ReplicaDivergenceDetector.class, "ReplicaDivergentKeyCount"));
+    replicaDivergenceCheckTimeInMs =
+        registry.histogram(MetricRegistry.name(ReplicaDivergenceDetector.class, "ReplicaDivergenceCheckTimeInMs"));
+    intraColoMissingKeyFetchAvoidedCount =
+        registry.counter(MetricRegistry.name(MissingKeyFetchRegistry.class, "IntraColoMissingKeyFetchAvoidedCount"));
+    interColoMissingKeyFetchAvoidedCount =
+        registry.counter(MetricRegistry.name(MissingKeyFetchRegistry.class, "InterColoMissingKeyFetchAvoidedCount"));
+    interColoMissingKeyFetchAvoidedBytes =
+        registry.counter(MetricRegistry.name(MissingKeyFetchRegistry.class, "InterColoMissingKeyFetchAvoidedBytes"));
+    missingKeyFetchTokenAdvanceDeferredCount = registry.counter(
+        MetricRegistry.name(MissingKeyFetchRegistry.class, "MissingKeyFetchTokenAdvanceDeferredCount"));
+    missingKeyFetchDeferralLimitReachedCount = registry.counter(
+        MetricRegistry.name(MissingKeyFetchRegistry.class, "MissingKeyFetchDeferralLimitReachedCount"));
+    replicaTokenLogAppendedTokenCount =
+        registry.counter(MetricRegistry.name(DiskTokenLogPersistor.class, "ReplicaTokenLogAppendedTokenCount"));
+    replicaTokenLogCompactionCount =
+        registry.counter(MetricRegistry.name(DiskTokenLogPersistor.class, "ReplicaTokenLogCompactionCount"));
     this.registry = registry;
     populateInvalidMessageMetricForReplicas(replicaIds);
   }
@@ -350,6 +429,36 @@ public class ReplicationMetrics {
     sslInterColoTotalReplicationTime.put(datacenter, sslInterColoTotalReplicationTimePerDC);
   }
 
+  /**
+   * Registers the metrics that compare the bandwidth consumed by replication from a datacenter with its budget.
+   * @param bandwidthBudget the {@link ReplicationBandwidthBudget} of {@code datacenter}.
+   * @param datacenter the datacenter that is replicated from.
+   */
+  void trackBandwidthBudget(ReplicationBandwidthBudget bandwidthBudget, String datacenter) {
+    Gauge<Long> allowedBytesPerSec = bandwidthBudget::getBytesPerSec;
+    registry.register(MetricRegistry.name(ReplicaThread.class, datacenter + "-ReplicationBandwidthAllowedBytesPerSec"),
+        allowedBytesPerSec);
+    Meter consumedBytesRate =
+        registry.meter(MetricRegistry.name(ReplicaThread.class, datacenter + "-ReplicationBandwidthConsumedBytesRate"));
+    bandwidthBudgetConsumedBytesRate.put(datacenter, consumedBytesRate);
+    bandwidthBudgetThrottledTimeInMs.put(datacenter,
+        registry.counter(MetricRegistry.name(ReplicaThread.class, datacenter + "-ReplicationBandwidthThrottledTime")));
+  }
+
+  /**
+   * Records bytes consumed from the bandwidth budget of a datacenter.
+   * @param datacenter the datacenter that is replicated from.
+   * @param bytes the bytes consumed.
+   * @param throttledTimeInMs the time that the replica thread waited for the budget.
+   */
+  void updateBandwidthBudgetUsage(String datacenter, long bytes, long throttledTimeInMs) {
+    Meter consumedBytesRate = bandwidthBudgetConsumedBytesRate.get(datacenter);
+    if (consumedBytesRate != null) {
+      consumedBytesRate.mark(bytes);
+      bandwidthBudgetThrottledTimeInMs.get(datacenter).inc(throttledTimeInMs);
+    }
+  }
+
   /**
    * Register metrics for measuring the number of active replica threads.
    *
@@ -452,6 +561,13 @@ public class ReplicationMetrics {
     Gauge<Long> replicaLag = remoteReplicaInfo::getRemoteLagFromLocalInBytes;
     registry.register(MetricRegistry.name(ReplicationMetrics.class, metricNamePrefix + "-remoteLagInBytes"),
         replicaLag);
+
+    Gauge<Long> fetchSize = remoteReplicaInfo::getFetchSizeInBytes;
+    registry.register(MetricRegistry.name(ReplicationMetrics.class, metricNamePrefix + "-fetchSizeInBytes"), fetchSize);
+
+    Gauge<Long> fetchBytesPerSec = remoteReplicaInfo::getFetchBytesPerSec;
+    registry.register(MetricRegistry.name(ReplicationMetrics.class, metricNamePrefix + "-fetchBytesPerSec"),
+        fetchBytesPerSec);
   }
 
   public void updateMetadataRequestError(ReplicaId remoteReplica) {
@@ -625,6 +741,21 @@ public class ReplicationMetrics {
     }
   }
 
+  /**
+   * Updates the metrics of a compressed response that was received and decompressed.
+   * @param compressedSize the size of the compressed payload of the response.
+   * @param uncompressedSize the size of the response after decompression.
+   * @param decompressionTimeInUs the time taken to decompress the response.
+   */
+  public void updateResponseDecompression(int compressedSize, int uncompressedSize, long decompressionTimeInUs) {
+    compressedResponseBytes.inc(compressedSize);
+    decompressedResponseBytes.inc(uncompressedSize);
+    if (uncompressedSize > 0) {
+      compressedResponseSizePercent.update(compressedSize * 100L / uncompressedSize);
+    }
+    responseDecompressionTimeInUs.update(decompressionTimeInUs);
+  }
+
   /**
    * Update the lag between local and {@link RemoteReplicaInfo}.
    * @param remoteReplicaInfo the remote replica
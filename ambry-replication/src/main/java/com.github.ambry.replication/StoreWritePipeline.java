@@ -0,0 +1,128 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.Utils;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Writes the messages that a {@link ReplicaThread} fetched from remote nodes to the local stores on a separate thread,
+ * so that the replica thread can talk to the next remote node while the messages from the previous one are written.
+ * <p/>
+ * The writes run one at a time in the order in which they were submitted. The replica thread reserves the bytes of a
+ * response before reading it into memory, and the bytes are released once the write of that response is done, so the
+ * bytes held by the pipeline never go above the configured maximum unless a single response is larger than it.
+ */
+class StoreWritePipeline {
+  private final String name;
+  private final long maxPendingBytes;
+  private final ReplicationMetrics replicationMetrics;
+  private final ExecutorService writer;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+  private long pendingBytes = 0;
+  private int pendingWrites = 0;
+
+  /**
+   * @param name the name of the pipeline. The writer thread is named after it.
+   * @param maxPendingBytes the most bytes that can be reserved at the same time.
+   * @param replicationMetrics the {@link ReplicationMetrics} to record the pipeline's metrics in.
+   */
+  StoreWritePipeline(String name, long maxPendingBytes, ReplicationMetrics replicationMetrics) {
+    this.name = name;
+    this.maxPendingBytes = maxPendingBytes;
+    this.replicationMetrics = replicationMetrics;
+    writer = Executors.newSingleThreadExecutor(runnable -> Utils.newThread(name + "-store-writer", runnable, true));
+  }
+
+  /**
+   * Reserves {@code sizeInBytes}, waiting for earlier writes to finish if the reservation would take the pipeline
+   * above its maximum. A reservation larger than the maximum is granted once nothing else is reserved.
+   * @param sizeInBytes the number of bytes to reserve.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   */
+  synchronized void reserve(long sizeInBytes) throws InterruptedException {
+    long startTimeInMs = SystemTime.getInstance().milliseconds();
+    while (pendingBytes > 0 && pendingBytes + sizeInBytes > maxPendingBytes) {
+      wait();
+    }
+    pendingBytes += sizeInBytes;
+    replicationMetrics.storeWritePipelineWaitTimeInMs.update(SystemTime.getInstance().milliseconds() - startTimeInMs);
+    replicationMetrics.storeWritePipelinePendingBytes.update(pendingBytes);
+  }
+
+  /**
+   * Releases bytes that were reserved with {@link #reserve(long)}.
+   * @param sizeInBytes the number of bytes to release.
+   */
+  synchronized void release(long sizeInBytes) {
+    pendingBytes -= sizeInBytes;
+    notifyAll();
+  }
+
+  /**
+   * Runs {@code write} on the writer thread after every write that was submitted before it, and then releases
+   * {@code sizeInBytes}. {@code write} has to handle its own errors.
+   * @param sizeInBytes the number of bytes that were reserved for the messages that {@code write} writes.
+   * @param write the write to run.
+   */
+  void submit(long sizeInBytes, Runnable write) {
+    synchronized (this) {
+      pendingWrites++;
+    }
+    writer.execute(() -> {
+      try {
+        write.run();
+      } catch (Throwable e) {
+        logger.error("Unexpected error in store write of {}", name, e);
+      } finally {
+        synchronized (this) {
+          pendingWrites--;
+          release(sizeInBytes);
+        }
+      }
+    });
+  }
+
+  /**
+   * Waits for every write that has been submitted to finish.
+   * @throws InterruptedException if the thread is interrupted while waiting.
+   */
+  synchronized void awaitPendingWrites() throws InterruptedException {
+    long startTimeInMs = SystemTime.getInstance().milliseconds();
+    while (pendingWrites > 0) {
+      wait();
+    }
+    replicationMetrics.storeWritePipelineWaitTimeInMs.update(SystemTime.getInstance().milliseconds() - startTimeInMs);
+  }
+
+  /**
+   * Lets the writes that have been submitted finish and stops the writer thread.
+   */
+  void shutdown() {
+    writer.shutdown();
+    try {
+      if (!writer.awaitTermination(1, TimeUnit.MINUTES)) {
+        logger.error("Store writes of {} did not finish on shutdown", name);
+      }
+    } catch (InterruptedException e) {
+      logger.error("Interrupted while waiting for store writes of {} to finish", name, e);
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.network.Port;
+import com.github.ambry.network.PortType;
+import com.github.ambry.store.FindToken;
+import com.github.ambry.utils.MockTime;
+import com.github.ambry.utils.Utils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Test;
+
+import static com.github.ambry.replication.RemoteReplicaInfo.*;
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link DiskTokenLogPersistor}.
+ */
+public class DiskTokenLogPersistorTest {
+  private static final String TOKEN_FILE_NAME = "replicaTokens";
+  private final MockClusterMap clusterMap;
+  private final MockTime time = new MockTime();
+  private final List<RemoteReplicaInfo> remoteReplicaInfos = new ArrayList<>();
+  private final Map<String, List<PartitionInfo>> partitionGroupedByMountPath;
+  private final File mountDir;
+  private final File tokenLogFile;
+
+  public DiskTokenLogPersistorTest() throws IOException {
+    clusterMap = new MockClusterMap();
+    PartitionId partitionId = clusterMap.getWritablePartitionIds(null).get(0);
+    List<? extends ReplicaId> replicaIds = partitionId.getReplicaIds();
+    ReplicaId localReplica = replicaIds.get(0);
+    for (ReplicaId replicaId : replicaIds.subList(1, replicaIds.size())) {
+      remoteReplicaInfos.add(new RemoteReplicaInfo(replicaId, localReplica, null, new MockFindToken(0, 0), 0, time,
+          new Port(replicaId.getDataNodeId().getPort(), PortType.PLAINTEXT)));
+    }
+    mountDir = Files.createTempDirectory("DiskTokenLogPersistorTest").toFile();
+    tokenLogFile = new File(mountDir, TOKEN_FILE_NAME + DiskTokenLogPersistor.TOKEN_LOG_FILE_NAME_SUFFIX);
+    partitionGroupedByMountPath = Collections.singletonMap(mountDir.getAbsolutePath(),
+        Collections.singletonList(new PartitionInfo(remoteReplicaInfos, partitionId, null, localReplica)));
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    Utils.deleteFileOrDirectory(mountDir);
+    clusterMap.cleanup();
+  }
+
+  /**
+   * Tests that only changed tokens are appended to the log, that the tokens are retrieved from the token file and the
+   * log, and that a batch that was partially appended is ignored.
+   * @throws Exception
+   */
+  @Test
+  public void persistAndRetrieveTest() throws Exception {
+    ReplicationMetrics metrics = new ReplicationMetrics(new MetricRegistry(), Collections.emptyList());
+    DiskTokenLogPersistor persistor = createPersistor(metrics, 1024 * 1024);
+    String mountPath = mountDir.getAbsolutePath();
+    persistor.write(mountPath, false);
+    assertEquals("First flush should compact", 1, metrics.replicaTokenLogCompactionCount.getCount());
+    assertFalse("Token log should not exist after compaction", tokenLogFile.exists());
+    persistor.write(mountPath, false);
+    assertFalse("Unchanged tokens should not be appended", tokenLogFile.exists());
+
+    FindToken newToken = new MockFindToken(1, 100);
+    advanceAndPersist(persistor, remoteReplicaInfos.get(0), newToken);
+    assertEquals("Only the changed token should be appended", 1,
+        metrics.replicaTokenLogAppendedTokenCount.getCount());
+    assertTrue("Token log should exist", tokenLogFile.exists());
+    Map<RemoteReplicaInfo, FindToken> expectedTokens = new HashMap<>();
+    remoteReplicaInfos.forEach(remoteReplicaInfo -> expectedTokens.put(remoteReplicaInfo, new MockFindToken(0, 0)));
+    expectedTokens.put(remoteReplicaInfos.get(0), newToken);
+    verifyTokens(persistor.retrieve(mountPath), expectedTokens);
+
+    // a batch that was only partially appended should be ignored
+    Files.write(tokenLogFile.toPath(), new byte[]{0, 0, 0, 100, 0, 0}, StandardOpenOption.APPEND);
+    verifyTokens(persistor.retrieve(mountPath), expectedTokens);
+    verifyTokens(createPersistor(metrics, 1024 * 1024).retrieve(mountPath), expectedTokens);
+
+    // a persistor that is created after a restart compacts on its first flush
+    persistor = createPersistor(metrics, 1024 * 1024);
+    persistor.write(mountPath, false);
+    assertFalse("Token log should not exist after compaction", tokenLogFile.exists());
+    verifyTokens(persistor.retrieve(mountPath), expectedTokens);
+
+    // a log that is larger than the threshold is compacted
+    persistor = createPersistor(metrics, 1);
+    persistor.write(mountPath, false);
+    newToken = new MockFindToken(2, 200);
+    advanceAndPersist(persistor, remoteReplicaInfos.get(1), newToken);
+    assertTrue("Token log should exist", tokenLogFile.exists());
+    long compactionCount = metrics.replicaTokenLogCompactionCount.getCount();
+    persistor.write(mountPath, false);
+    assertEquals("Log should have been compacted", compactionCount + 1,
+        metrics.replicaTokenLogCompactionCount.getCount());
+    assertFalse("Token log should not exist after compaction", tokenLogFile.exists());
+    expectedTokens.put(remoteReplicaInfos.get(1), newToken);
+    verifyTokens(persistor.retrieve(mountPath), expectedTokens);
+  }
+
+  /**
+   * @param metrics the {@link ReplicationMetrics} to use.
+   * @param compactionThresholdBytes the compaction threshold of the token log.
+   * @return a {@link DiskTokenLogPersistor} for the remote replicas of the test.
+   */
+  private DiskTokenLogPersistor createPersistor(ReplicationMetrics metrics, long compactionThresholdBytes) {
+    return new DiskTokenLogPersistor(TOKEN_FILE_NAME, partitionGroupedByMountPath, metrics, clusterMap,
+        new MockFindToken.MockFindTokenFactory(), compactionThresholdBytes);
+  }
+
+  /**
+   * Sets a new token on a remote replica and flushes until it has been persisted.
+   * @param persistor the {@link DiskTokenLogPersistor} to flush.
+   * @param remoteReplicaInfo the remote replica whose token changes.
+   * @param token the new token.
+   * @throws Exception
+   */
+  private void advanceAndPersist(DiskTokenLogPersistor persistor, RemoteReplicaInfo remoteReplicaInfo,
+      FindToken token) throws Exception {
+    remoteReplicaInfo.setToken(token);
+    // the token can only be persisted once it has been the candidate token for longer than the persist interval
+    persistor.write(false);
+    time.sleep(1);
+    persistor.write(false);
+    assertEquals("Token should have been persisted", token, remoteReplicaInfo.getTokenToPersist());
+  }
+
+  /**
+   * Verifies that the retrieved tokens are the expected ones.
+   * @param tokenInfoList the retrieved tokens.
+   * @param expectedTokens the expected token of every remote replica.
+   */
+  private void verifyTokens(List<ReplicaTokenInfo> tokenInfoList, Map<RemoteReplicaInfo, FindToken> expectedTokens) {
+    assertEquals("Unexpected number of tokens", expectedTokens.size(), tokenInfoList.size());
+    for (ReplicaTokenInfo tokenInfo : tokenInfoList) {
+      RemoteReplicaInfo remoteReplicaInfo = remoteReplicaInfos.stream().filter(info -> {
+        ReplicaId replicaId = info.getReplicaId();
+        return replicaId.getDataNodeId().getHostname().equals(tokenInfo.getHostname())
+            && replicaId.getDataNodeId().getPort() == tokenInfo.getPort() && replicaId.getReplicaPath()
+            .equals(tokenInfo.getReplicaPath());
+      }).findFirst().get();
+      assertEquals("Unexpected partition", remoteReplicaInfo.getReplicaId().getPartitionId(),
+          tokenInfo.getPartitionId());
+      assertEquals("Unexpected token", expectedTokens.get(remoteReplicaInfo), tokenInfo.getReplicaToken());
+    }
+  }
+}
@@ -23,6 +23,8 @@ import com.github.ambry.network.ConnectedChannel;
 import com.github.ambry.network.ConnectionPool;
 import com.github.ambry.network.Port;
 import com.github.ambry.network.Send;
+import com.github.ambry.protocol.CompressedResponse;
+import com.github.ambry.protocol.CompressionType;
 import com.github.ambry.protocol.GetOption;
 import com.github.ambry.protocol.GetRequest;
 import com.github.ambry.protocol.GetResponse;
@@ -141,6 +143,7 @@ public class MockConnectionPool implements ConnectionPool {
     private Map<StoreKey, StoreKey> conversionMap;
     private ReplicaMetadataRequest metadataRequest;
     private GetRequest getRequest;
+    private CompressionType acceptedCompression;
 
     MockConnection(MockHost host, int maxSizeToReturn) {
       this(host, maxSizeToReturn, null);
@@ -156,8 +159,10 @@ public class MockConnectionPool implements ConnectionPool {
     public void send(Send request) {
       if (request instanceof ReplicaMetadataRequest) {
         metadataRequest = (ReplicaMetadataRequest) request;
+        acceptedCompression = metadataRequest.getAcceptedCompression();
       } else if (request instanceof GetRequest) {
         getRequest = (GetRequest) request;
+        acceptedCompression = getRequest.getAcceptedCompression();
         buffersToReturn = new ArrayList<>();
         infosToReturn = new HashMap<>();
         messageMetadatasToReturn = new HashMap<>();
@@ -253,6 +258,9 @@ public class MockConnectionPool implements ConnectionPool {
             ServerErrorCode.No_Error);
         getRequest = null;
       }
+      if (acceptedCompression != CompressionType.None) {
+        response = CompressedResponse.compress(response, acceptedCompression);
+      }
       ByteBuffer buffer = ByteBuffer.allocate((int) response.sizeInBytes());
       ByteBufferOutputStream stream = new ByteBufferOutputStream(buffer);
       WritableByteChannel channel = Channels.newChannel(stream);
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.config.NetworkConfig;
+import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.network.ChannelOutput;
+import com.github.ambry.network.NetworkClient;
+import com.github.ambry.network.NetworkMetrics;
+import com.github.ambry.network.RequestInfo;
+import com.github.ambry.network.ResponseInfo;
+import com.github.ambry.utils.Pair;
+import com.github.ambry.utils.Time;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+
+/**
+ * A {@link NetworkClient} that answers the requests sent to it from {@link MockHost}s using
+ * {@link MockConnectionPool.MockConnection}s. The responses to the requests of a call to
+ * {@link #sendAndPoll(List, int)} are returned by the same call unless responses are being dropped, in which case the
+ * call just moves the time forward by the poll timeout, or the responses of the remote node are delayed, in which case
+ * they are returned by the first call after the delay.
+ */
+class MockNetworkClient extends NetworkClient {
+  private final Map<DataNodeId, MockHost> hosts;
+  private final int maxEntriesToReturn;
+  private final Time time;
+  private final Map<DataNodeId, Long> responseDelaysMs = new HashMap<>();
+  private final List<Pair<Long, ResponseInfo>> delayedResponses = new ArrayList<>();
+  private boolean dropResponses = false;
+  private int maxRequestsPerPoll = 0;
+
+  MockNetworkClient(Map<DataNodeId, MockHost> hosts, int maxEntriesToReturn, Time time) {
+    super(null, new NetworkConfig(new VerifiableProperties(new Properties())),
+        new NetworkMetrics(new MetricRegistry()), 0, 0, 0, time);
+    this.hosts = hosts;
+    this.maxEntriesToReturn = maxEntriesToReturn;
+    this.time = time;
+  }
+
+  /**
+   * @param dropResponses {@code true} if the requests sent from now on should never be answered.
+   */
+  void setDropResponses(boolean dropResponses) {
+    this.dropResponses = dropResponses;
+  }
+
+  /**
+   * @param dataNodeId the remote node whose responses should be delayed.
+   * @param delayMs the time after which the responses to the requests sent to {@code dataNodeId} from now on are
+   *                returned.
+   */
+  void setResponseDelayMs(DataNodeId dataNodeId, long delayMs) {
+    responseDelaysMs.put(dataNodeId, delayMs);
+  }
+
+  /**
+   * @return the largest number of requests that were passed to a single {@link #sendAndPoll(List, int)} call.
+   */
+  int getMaxRequestsPerPoll() {
+    return maxRequestsPerPoll;
+  }
+
+  @Override
+  public List<ResponseInfo> sendAndPoll(List<RequestInfo> requestInfos, int pollTimeoutMs) {
+    maxRequestsPerPoll = Math.max(maxRequestsPerPoll, requestInfos.size());
+    List<ResponseInfo> responseInfos = new ArrayList<>();
+    if (dropResponses) {
+      try {
+        time.sleep(pollTimeoutMs);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return responseInfos;
+    }
+    for (RequestInfo requestInfo : requestInfos) {
+      MockConnectionPool.MockConnection connection =
+          new MockConnectionPool.MockConnection(hosts.get(requestInfo.getReplicaId().getDataNodeId()),
+              maxEntriesToReturn);
+      try {
+        connection.send(requestInfo.getRequest());
+        ChannelOutput channelOutput = connection.receive();
+        byte[] bytes = new byte[(int) channelOutput.getStreamSize()];
+        new DataInputStream(channelOutput.getInputStream()).readFully(bytes);
+        ResponseInfo responseInfo = new ResponseInfo(requestInfo, null, ByteBuffer.wrap(bytes));
+        Long delayMs = responseDelaysMs.get(requestInfo.getReplicaId().getDataNodeId());
+        if (delayMs != null) {
+          delayedResponses.add(new Pair<>(time.milliseconds() + delayMs, responseInfo));
+        } else {
+          responseInfos.add(responseInfo);
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+    if (responseInfos.isEmpty() && !delayedResponses.isEmpty()) {
+      long waitTimeMs = delayedResponses.stream().mapToLong(Pair::getFirst).min().getAsLong() - time.milliseconds();
+      try {
+        time.sleep(Math.max(0, Math.min(waitTimeMs, pollTimeoutMs)));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    Iterator<Pair<Long, ResponseInfo>> iterator = delayedResponses.iterator();
+    while (iterator.hasNext()) {
+      Pair<Long, ResponseInfo> delayedResponse = iterator.next();
+      if (delayedResponse.getFirst() <= time.milliseconds()) {
+        responseInfos.add(delayedResponse.getSecond());
+        iterator.remove();
+      }
+    }
+    return responseInfos;
+  }
+
+  @Override
+  public void close() {
+    // there is no selector to close.
+  }
+}
@@ -0,0 +1,341 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.network.ChannelOutput;
+import com.github.ambry.network.ConnectedChannel;
+import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.Port;
+import com.github.ambry.network.PortType;
+import com.github.ambry.network.Send;
+import com.github.ambry.protocol.AdminRequest;
+import com.github.ambry.protocol.AdminRequestOrResponseType;
+import com.github.ambry.protocol.AdminResponse;
+import com.github.ambry.protocol.SealedStoreFileChunkAdminRequest;
+import com.github.ambry.protocol.SealedStoreFileChunkAdminResponse;
+import com.github.ambry.protocol.SealedStoreFilesAdminResponse;
+import com.github.ambry.store.FindToken;
+import com.github.ambry.store.StorageManager;
+import com.github.ambry.store.Store;
+import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.ByteBufferOutputStream;
+import com.github.ambry.utils.MockTime;
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.TestUtils;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+
+/**
+ * Tests for {@link ReplicaBootstrapper}.
+ */
+public class ReplicaBootstrapperTest {
+  private static final int CHUNK_SIZE = 100;
+
+  private final MockClusterMap clusterMap;
+  private final PartitionId partitionId;
+  private final ReplicaId localReplica;
+  private final ReplicaId peerReplica;
+  private final File stagingDir;
+  private final FindToken endToken = new MockFindToken(3, 1000);
+  private final Map<String, byte[]> peerFiles = new LinkedHashMap<>();
+  private final Map<String, byte[]> installedFiles = new HashMap<>();
+  private final List<SealedStoreFileChunkAdminRequest> chunkRequests = new ArrayList<>();
+  private final MockTime time = new MockTime(SystemTime.getInstance().milliseconds());
+  private final Store store = mock(Store.class);
+  private final StorageManager storageManager = mock(StorageManager.class);
+  private final ReplicationMetrics replicationMetrics =
+      new ReplicationMetrics(new MetricRegistry(), Collections.emptyList());
+  private final ReplicaBootstrapper bootstrapper;
+  private int fileListings = 0;
+  private String fileToCompactAfterFirstListing = null;
+  private String fileToFailChunksOf = null;
+
+  /**
+   * Sets up a peer replica with some sealed files and an empty local store.
+   * @throws Exception
+   */
+  public ReplicaBootstrapperTest() throws Exception {
+    clusterMap = new MockClusterMap();
+    partitionId = clusterMap.getWritablePartitionIds(MockClusterMap.DEFAULT_PARTITION_CLASS).get(0);
+    localReplica = partitionId.getReplicaIds().get(0);
+    peerReplica = partitionId.getReplicaIds().get(1);
+    stagingDir = new File(localReplica.getReplicaPath(), ReplicaBootstrapper.BOOTSTRAP_DIR_NAME);
+    peerFiles.put("0_0_log", TestUtils.getRandomBytes(2 * CHUNK_SIZE + CHUNK_SIZE / 2));
+    peerFiles.put("0_0_18_index", TestUtils.getRandomBytes(CHUNK_SIZE));
+    peerFiles.put("0_0_18_bloom", TestUtils.getRandomBytes(CHUNK_SIZE / 3));
+
+    when(store.isEmpty()).thenReturn(true);
+    when(storageManager.shutdownBlobStore(partitionId)).thenReturn(true);
+    when(storageManager.startBlobStore(partitionId)).thenReturn(true);
+    when(storageManager.startBlobStoreFromSealedFiles(eq(partitionId), any())).thenAnswer(invocation -> {
+      File[] files = ((File) invocation.getArgument(1)).listFiles();
+      for (File file : files) {
+        installedFiles.put(file.getName(), Files.readAllBytes(file.toPath()));
+      }
+      return true;
+    });
+    Properties properties = new Properties();
+    properties.setProperty("replication.bootstrap.chunk.size.in.bytes", Integer.toString(CHUNK_SIZE));
+    bootstrapper = new ReplicaBootstrapper(new ReplicationConfig(new VerifiableProperties(properties)),
+        storageManager, new PeerConnectionPool(), new MockFindToken.MockFindTokenFactory(),
+        localReplica.getDataNodeId(), replicationMetrics, time);
+  }
+
+  /**
+   * Cleans up the mount paths of the cluster map.
+   * @throws IOException
+   */
+  @After
+  public void cleanup() throws IOException {
+    clusterMap.cleanup();
+  }
+
+  /**
+   * Tests that the sealed files of the peer are copied chunk by chunk, that the store is started from them and that
+   * replication from the peer picks up right after them.
+   */
+  @Test
+  public void bootstrapTest() {
+    RemoteReplicaInfo peer = getPeer();
+    assertTrue("Bootstrap should have succeeded", bootstrapper.bootstrap(getPartitionInfo(peer)));
+    assertEquals("Unexpected files installed", peerFiles.keySet(), installedFiles.keySet());
+    for (Map.Entry<String, byte[]> entry : peerFiles.entrySet()) {
+      assertArrayEquals("Unexpected content of " + entry.getKey(), entry.getValue(),
+          installedFiles.get(entry.getKey()));
+    }
+    assertEquals("Unexpected number of chunks fetched", getChunkCount(), chunkRequests.size());
+    for (SealedStoreFileChunkAdminRequest request : chunkRequests) {
+      assertTrue("Chunk should not be larger than configured", request.getChunkSizeInBytes() <= CHUNK_SIZE);
+    }
+    assertEquals("Token of the peer should be the end token of the sealed files", endToken, peer.getToken());
+    assertFalse("Staging directory should have been deleted", stagingDir.exists());
+    verify(storageManager, never()).startBlobStore(partitionId);
+    assertEquals("Unexpected success count", 1, replicationMetrics.replicaBootstrapSuccessCount.getCount());
+    assertEquals("Unexpected failure count", 0, replicationMetrics.replicaBootstrapFailureCount.getCount());
+  }
+
+  /**
+   * Tests that the store is started with the files it had before if the peer compacted any of the sealed files while
+   * they were being copied.
+   */
+  @Test
+  public void filesChangedWhileCopyingTest() {
+    fileToCompactAfterFirstListing = "0_0_18_index";
+    verifyBootstrapFailure(true);
+    assertEquals("Every file should have been copied", getChunkCount(), chunkRequests.size());
+    assertEquals("Files should have been listed before and after copying them", 2, fileListings);
+  }
+
+  /**
+   * Tests that the store is started with the files it had before if the peer fails to send a chunk.
+   */
+  @Test
+  public void chunkErrorTest() {
+    fileToFailChunksOf = "0_0_18_index";
+    verifyBootstrapFailure(true);
+  }
+
+  /**
+   * Tests that a store that is not empty is not bootstrapped.
+   */
+  @Test
+  public void nonEmptyStoreTest() {
+    when(store.isEmpty()).thenReturn(false);
+    verifyBootstrapFailure(false);
+    assertEquals("No chunks should have been fetched", 0, chunkRequests.size());
+  }
+
+  /**
+   * Verifies that a bootstrap fails, that the token of the peer is untouched and that no files are left behind.
+   * @param storeShutdown {@code true} if the store is expected to have been shut down and started again.
+   */
+  private void verifyBootstrapFailure(boolean storeShutdown) {
+    RemoteReplicaInfo peer = getPeer();
+    FindToken tokenBeforeBootstrap = peer.getToken();
+    assertFalse("Bootstrap should have failed", bootstrapper.bootstrap(getPartitionInfo(peer)));
+    assertEquals("Token of the peer should not have changed", tokenBeforeBootstrap, peer.getToken());
+    assertFalse("Staging directory should have been deleted", stagingDir.exists());
+    verify(storageManager, never()).startBlobStoreFromSealedFiles(eq(partitionId), any());
+    verify(storageManager, times(storeShutdown ? 1 : 0)).shutdownBlobStore(partitionId);
+    verify(storageManager, times(storeShutdown ? 1 : 0)).startBlobStore(partitionId);
+    assertEquals("Unexpected success count", 0, replicationMetrics.replicaBootstrapSuccessCount.getCount());
+    assertEquals("Unexpected failure count", storeShutdown ? 1 : 0,
+        replicationMetrics.replicaBootstrapFailureCount.getCount());
+  }
+
+  /**
+   * @return the number of chunks that the sealed files of the peer are copied in.
+   */
+  private int getChunkCount() {
+    int chunkCount = 0;
+    for (byte[] content : peerFiles.values()) {
+      chunkCount += (content.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+    return chunkCount;
+  }
+
+  /**
+   * @param peer the {@link RemoteReplicaInfo} of the peer replica.
+   * @return the {@link PartitionInfo} of the local replica.
+   */
+  private PartitionInfo getPartitionInfo(RemoteReplicaInfo peer) {
+    return new PartitionInfo(Collections.singletonList(peer), partitionId, store, localReplica);
+  }
+
+  /**
+   * @return the {@link RemoteReplicaInfo} of the peer replica.
+   */
+  private RemoteReplicaInfo getPeer() {
+    return new RemoteReplicaInfo(peerReplica, localReplica, store, new MockFindToken(0, 0), Long.MAX_VALUE, time,
+        new Port(peerReplica.getDataNodeId().getPort(), PortType.PLAINTEXT));
+  }
+
+  /**
+   * A {@link ConnectionPool} whose connections answer the bootstrap requests from the sealed files of the peer.
+   */
+  private class PeerConnectionPool implements ConnectionPool {
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public ConnectedChannel checkOutConnection(String host, Port port, long timeout) {
+      return new PeerConnection();
+    }
+
+    @Override
+    public void checkInConnection(ConnectedChannel connectedChannel) {
+    }
+
+    @Override
+    public void destroyConnection(ConnectedChannel connectedChannel) {
+    }
+  }
+
+  /**
+   * A {@link ConnectedChannel} that answers the bootstrap requests from the sealed files of the peer.
+   */
+  private class PeerConnection implements ConnectedChannel {
+    private AdminRequest request;
+
+    @Override
+    public void send(Send request) {
+      this.request = (AdminRequest) request;
+    }
+
+    @Override
+    public ChannelOutput receive() throws IOException {
+      AdminResponse adminResponse =
+          new AdminResponse(request.getCorrelationId(), request.getClientId(), ServerErrorCode.No_Error);
+      Send response;
+      if (request.getType() == AdminRequestOrResponseType.SealedStoreFiles) {
+        Map<String, Long> fileSizes = new LinkedHashMap<>();
+        for (Map.Entry<String, byte[]> entry : peerFiles.entrySet()) {
+          if (fileListings == 0 || !entry.getKey().equals(fileToCompactAfterFirstListing)) {
+            fileSizes.put(entry.getKey(), (long) entry.getValue().length);
+          }
+        }
+        fileListings++;
+        response = new SealedStoreFilesAdminResponse(fileSizes, endToken, adminResponse);
+      } else {
+        SealedStoreFileChunkAdminRequest chunkRequest = (SealedStoreFileChunkAdminRequest) request;
+        chunkRequests.add(chunkRequest);
+        if (chunkRequest.getFileName().equals(fileToFailChunksOf)) {
+          response = new SealedStoreFileChunkAdminResponse(null,
+              new AdminResponse(request.getCorrelationId(), request.getClientId(), ServerErrorCode.Unknown_Error));
+        } else {
+          ByteBuffer chunk = ByteBuffer.wrap(peerFiles.get(chunkRequest.getFileName()), (int) chunkRequest.getOffset(),
+              (int) chunkRequest.getChunkSizeInBytes());
+          response = new SealedStoreFileChunkAdminResponse(new ChunkSend(chunk), adminResponse);
+        }
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int) response.sizeInBytes());
+      WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(buffer));
+      while (!response.isSendComplete()) {
+        response.writeTo(channel);
+      }
+      buffer.flip();
+      // the size is read by the network layer
+      buffer.getLong();
+      return new ChannelOutput(new ByteBufferInputStream(buffer), buffer.remaining());
+    }
+
+    @Override
+    public String getRemoteHost() {
+      return peerReplica.getDataNodeId().getHostname();
+    }
+
+    @Override
+    public int getRemotePort() {
+      return peerReplica.getDataNodeId().getPort();
+    }
+  }
+
+  /**
+   * A {@link Send} of a chunk of a sealed file of the peer.
+   */
+  private static class ChunkSend implements Send {
+    private final ByteBuffer chunk;
+    private final long sizeInBytes;
+
+    ChunkSend(ByteBuffer chunk) {
+      this.chunk = chunk;
+      sizeInBytes = chunk.remaining();
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+      return channel.write(chunk);
+    }
+
+    @Override
+    public boolean isSendComplete() {
+      return !chunk.hasRemaining();
+    }
+
+    @Override
+    public long sizeInBytes() {
+      return sizeInBytes;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.clustermap.ClusterMapUtils;
+import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.clustermap.PartitionId;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.commons.BlobId;
+import com.github.ambry.commons.CommonTestUtils;
+import com.github.ambry.commons.ServerErrorCode;
+import com.github.ambry.config.ReplicationConfig;
+import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.network.ChannelOutput;
+import com.github.ambry.network.ConnectedChannel;
+import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.Port;
+import com.github.ambry.network.PortType;
+import com.github.ambry.network.Send;
+import com.github.ambry.protocol.AdminResponse;
+import com.github.ambry.protocol.KeyRangeDigestsAdminRequest;
+import com.github.ambry.protocol.KeyRangeDigestsAdminResponse;
+import com.github.ambry.store.KeyRangeDigests;
+import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.StorageManager;
+import com.github.ambry.store.Store;
+import com.github.ambry.store.StoreKey;
+import com.github.ambry.utils.ByteBufferInputStream;
+import com.github.ambry.utils.ByteBufferOutputStream;
+import com.github.ambry.utils.MockTime;
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.TestUtils;
+import com.github.ambry.utils.Time;
+import com.github.ambry.utils.Utils;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+
+/**
+ * Tests for {@link ReplicaDivergenceDetector}.
+ */
+public class ReplicaDivergenceDetectorTest {
+  private static final int KEY_COUNT = 1000;
+
+  private final MockClusterMap clusterMap;
+  private final PartitionId partitionId;
+  private final ReplicaId localReplica;
+  private final ReplicaId peerReplica;
+  private final List<MessageInfo> localInfos = new ArrayList<>();
+  private final List<MessageInfo> peerInfos = new ArrayList<>();
+  private final List<KeyRangeDigestsAdminRequest> peerRequests = new ArrayList<>();
+  private final ReplicationConfig config = new ReplicationConfig(new VerifiableProperties(new Properties()));
+  private final MockTime time = new MockTime(SystemTime.getInstance().milliseconds());
+  private final ReplicationMetrics replicationMetrics;
+  private final ReplicaDivergenceDetector detector;
+
+  /**
+   * Sets up a local replica and a peer replica with the same keys.
+   * @throws Exception
+   */
+  public ReplicaDivergenceDetectorTest() throws Exception {
+    clusterMap = new MockClusterMap();
+    partitionId = clusterMap.getWritablePartitionIds(MockClusterMap.DEFAULT_PARTITION_CLASS).get(0);
+    localReplica = partitionId.getReplicaIds().get(0);
+    peerReplica = partitionId.getReplicaIds().get(1);
+    for (int i = 0; i < KEY_COUNT; i++) {
+      MessageInfo info = createPut();
+      localInfos.add(info);
+      peerInfos.add(info);
+    }
+
+    StorageManager storageManager = mock(StorageManager.class);
+    when(storageManager.getStore(partitionId)).thenReturn(mock(Store.class));
+    when(storageManager.getKeyRangeDigests(eq(partitionId), anyLong())).thenAnswer(
+        invocation -> getDigests(localInfos, invocation.getArgument(1)));
+    when(storageManager.getKeysInLeafBuckets(eq(partitionId), any(), anyLong())).thenAnswer(
+        invocation -> getKeysInLeafBuckets(localInfos, invocation.getArgument(1)));
+    replicationMetrics = new ReplicationMetrics(new MetricRegistry(), Collections.emptyList());
+    detector =
+        new ReplicaDivergenceDetector(config, storageManager, new PeerConnectionPool(), clusterMap,
+            localReplica.getDataNodeId(), replicationMetrics, time);
+  }
+
+  /**
+   * Tests that replicas with the same keys are found to agree after comparing the root of the digest trees only.
+   * @throws Exception
+   */
+  @Test
+  public void sameKeysTest() throws Exception {
+    assertEquals("Replicas should agree", Collections.emptySet(),
+        detector.findDivergentKeys(getPartitionInfo(), getPeer()));
+    assertEquals("Only the root should have been compared", 1, peerRequests.size());
+  }
+
+  /**
+   * Tests that keys that are missing on either replica or whose state differs are found, and that only the buckets
+   * that differ are compared.
+   * @throws Exception
+   */
+  @Test
+  public void divergentKeysTest() throws Exception {
+    Set<StoreKey> expectedKeys = new HashSet<>();
+    // missing on the peer
+    expectedKeys.add(peerInfos.remove(0).getStoreKey());
+    // missing locally
+    MessageInfo peerOnlyInfo = createPut();
+    peerInfos.add(peerOnlyInfo);
+    expectedKeys.add(peerOnlyInfo.getStoreKey());
+    // deleted on the peer
+    MessageInfo info = peerInfos.get(0);
+    peerInfos.set(0, new MessageInfo(info.getStoreKey(), info.getSize(), true, false, info.getExpirationTimeInMs(),
+        info.getAccountId(), info.getContainerId(), info.getOperationTimeMs()));
+    expectedKeys.add(info.getStoreKey());
+    // TTL updated on the peer
+    info = peerInfos.get(1);
+    peerInfos.set(1, new MessageInfo(info.getStoreKey(), info.getSize(), false, true, Utils.Infinite_Time,
+        info.getAccountId(), info.getContainerId(), info.getOperationTimeMs()));
+    expectedKeys.add(info.getStoreKey());
+
+    assertEquals("Unexpected divergent keys", expectedKeys, detector.findDivergentKeys(getPartitionInfo(), getPeer()));
+    // the root, three levels of LEVELS_PER_REQUEST levels each down to the leaves and the keys of the leaves
+    assertEquals("Unexpected number of requests",
+        2 + KeyRangeDigests.LEAF_LEVEL / ReplicaDivergenceDetector.LEVELS_PER_REQUEST, peerRequests.size());
+    for (KeyRangeDigestsAdminRequest request : peerRequests) {
+      assertTrue("Only the children of divergent buckets should have been requested",
+          request.getBuckets().size() <= expectedKeys.size() << ReplicaDivergenceDetector.LEVELS_PER_REQUEST);
+    }
+    KeyRangeDigestsAdminRequest keysRequest = peerRequests.get(peerRequests.size() - 1);
+    assertTrue("Keys should have been requested for the leaves", keysRequest.shouldIncludeKeys());
+    assertEquals("Keys should have been requested for the divergent leaves only",
+        expectedKeys.stream().map(KeyRangeDigests::getLeafBucket).collect(Collectors.toSet()),
+        new HashSet<>(keysRequest.getBuckets()));
+
+    detector.checkPartitions(Collections.singletonList(getPartitionInfo()));
+    assertEquals("Check should have been counted", 1, replicationMetrics.replicaDivergenceCheckCount.getCount());
+    assertEquals("Divergent keys should have been counted", expectedKeys.size(),
+        replicationMetrics.replicaDivergentKeyCount.getCount());
+    assertEquals("There should be no errors", 0, replicationMetrics.replicaDivergenceCheckErrorCount.getCount());
+  }
+
+  /**
+   * Tests that both replicas are compared as of the same reference time, which is the grace period before the check,
+   * so that the keys that were written after it are not reported while they are still being replicated.
+   * @throws Exception
+   */
+  @Test
+  public void changesAfterReferenceTimeTest() throws Exception {
+    MessageInfo info = createPut();
+    peerInfos.add(new MessageInfo(info.getStoreKey(), info.getSize(), false, false, info.getExpirationTimeInMs(),
+        info.getAccountId(), info.getContainerId(), time.milliseconds()));
+
+    assertEquals("Keys written after the reference time should be left out", Collections.emptySet(),
+        detector.findDivergentKeys(getPartitionInfo(), getPeer()));
+    long expectedReferenceTimeMs =
+        time.milliseconds() - config.replicationDivergenceCheckGracePeriodSeconds * Time.MsPerSec;
+    for (KeyRangeDigestsAdminRequest request : peerRequests) {
+      assertEquals("Unexpected reference time", expectedReferenceTimeMs, request.getReferenceTimeMs());
+    }
+  }
+
+  // helpers
+
+  /**
+   * @return the {@link MessageInfo} of a put of a new key of the partition that never expires, written long before the
+   * reference time.
+   */
+  private MessageInfo createPut() {
+    short accountId = Utils.getRandomShort(TestUtils.RANDOM);
+    short containerId = Utils.getRandomShort(TestUtils.RANDOM);
+    BlobId id = new BlobId(CommonTestUtils.getCurrentBlobIdVersion(), BlobId.BlobIdType.NATIVE,
+        ClusterMapUtils.UNKNOWN_DATACENTER_ID, accountId, containerId, partitionId, false,
+        BlobId.BlobDataType.DATACHUNK);
+    return new MessageInfo(id, 1000, false, false, Utils.Infinite_Time, accountId, containerId, 0);
+  }
+
+  /**
+   * Gets the state of some keys as of a reference time, the way a store keeps it. The operation time of a key in this
+   * test is the time of its last operation, so a key that changed after the reference time is taken to be absent.
+   * @param infos the {@link MessageInfo}s of the keys.
+   * @param referenceTimeMs the time as of which the state is needed.
+   * @return the {@link MessageInfo}s of the keys that existed at {@code referenceTimeMs}.
+   */
+  private static List<MessageInfo> getInfosAsOf(List<MessageInfo> infos, long referenceTimeMs) {
+    return infos.stream().filter(info -> info.getOperationTimeMs() <= referenceTimeMs).collect(Collectors.toList());
+  }
+
+  /**
+   * @param infos the {@link MessageInfo}s of the keys of a replica.
+   * @param referenceTimeMs the reference time of the digests.
+   * @return the {@link KeyRangeDigests} of the keys.
+   */
+  private static KeyRangeDigests getDigests(List<MessageInfo> infos, long referenceTimeMs) {
+    KeyRangeDigests digests = new KeyRangeDigests(referenceTimeMs);
+    getInfosAsOf(infos, referenceTimeMs).forEach(digests::add);
+    return digests;
+  }
+
+  /**
+   * @param infos the {@link MessageInfo}s of the keys of a replica.
+   * @param leafBuckets the leaf buckets to get the keys of.
+   * @return the {@link MessageInfo}s of the keys in {@code leafBuckets}.
+   */
+  private static List<MessageInfo> getKeysInLeafBuckets(List<MessageInfo> infos, Set<Integer> leafBuckets) {
+    return infos.stream()
+        .filter(info -> leafBuckets.contains(KeyRangeDigests.getLeafBucket(info.getStoreKey())))
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * @return the {@link PartitionInfo} of the local replica.
+   */
+  private PartitionInfo getPartitionInfo() {
+    return new PartitionInfo(Collections.singletonList(getPeer()), partitionId, null, localReplica);
+  }
+
+  /**
+   * @return the {@link RemoteReplicaInfo} of the peer replica.
+   */
+  private RemoteReplicaInfo getPeer() {
+    return new RemoteReplicaInfo(peerReplica, localReplica, null, null, Long.MAX_VALUE, time,
+        new Port(peerReplica.getDataNodeId().getPort(), PortType.PLAINTEXT));
+  }
+
+  /**
+   * A {@link ConnectionPool} whose connections answer {@link KeyRangeDigestsAdminRequest}s from the keys of the peer.
+   */
+  private class PeerConnectionPool implements ConnectionPool {
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public ConnectedChannel checkOutConnection(String host, Port port, long timeout) {
+      return new PeerConnection();
+    }
+
+    @Override
+    public void checkInConnection(ConnectedChannel connectedChannel) {
+    }
+
+    @Override
+    public void destroyConnection(ConnectedChannel connectedChannel) {
+    }
+  }
+
+  /**
+   * A {@link ConnectedChannel} that answers {@link KeyRangeDigestsAdminRequest}s from the keys of the peer.
+   */
+  private class PeerConnection implements ConnectedChannel {
+    private KeyRangeDigestsAdminRequest request;
+
+    @Override
+    public void send(Send request) {
+      this.request = (KeyRangeDigestsAdminRequest) request;
+      peerRequests.add(this.request);
+    }
+
+    @Override
+    public ChannelOutput receive() throws IOException {
+      KeyRangeDigests digests = getDigests(peerInfos, request.getReferenceTimeMs());
+      List<Long> bucketDigests = new ArrayList<>();
+      List<Integer> keyCounts = new ArrayList<>();
+      for (int bucket : request.getBuckets()) {
+        bucketDigests.add(digests.getDigest(request.getLevel(), bucket));
+        keyCounts.add(digests.getKeyCount(request.getLevel(), bucket));
+      }
+      List<MessageInfo> infos = request.shouldIncludeKeys() ? getKeysInLeafBuckets(
+          getInfosAsOf(peerInfos, request.getReferenceTimeMs()), new HashSet<>(request.getBuckets())) : null;
+      KeyRangeDigestsAdminResponse response = new KeyRangeDigestsAdminResponse(bucketDigests, keyCounts, infos,
+          new AdminResponse(request.getCorrelationId(), request.getClientId(), ServerErrorCode.No_Error));
+      ByteBuffer buffer = ByteBuffer.allocate((int) response.sizeInBytes());
+      WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(buffer));
+      while (!response.isSendComplete()) {
+        response.writeTo(channel);
+      }
+      buffer.flip();
+      // the size is read by the network layer
+      buffer.getLong();
+      return new ChannelOutput(new ByteBufferInputStream(buffer), buffer.remaining());
+    }
+
+    @Override
+    public String getRemoteHost() {
+      return peerReplica.getDataNodeId().getHostname();
+    }
+
+    @Override
+    public int getRemotePort() {
+      return peerReplica.getDataNodeId().getPort();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.replication;
+
+import com.github.ambry.utils.MockTime;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link ReplicationBandwidthBudget}.
+ */
+public class ReplicationBandwidthBudgetTest {
+
+  /**
+   * Tests that bytes are consumed without waiting within the budget, that going over it waits until the debt is paid
+   * back and that the bucket refills over time up to one second worth of bytes.
+   * @throws InterruptedException
+   */
+  @Test
+  public void consumeTest() throws InterruptedException {
+    MockTime time = new MockTime();
+    ReplicationBandwidthBudget budget = new ReplicationBandwidthBudget(1000, time);
+    assertEquals("Should not wait within the budget", 0, budget.consume(600));
+    assertEquals("Should not have slept", 0, time.milliseconds());
+    // 400 bytes are left, so 1000 more put the bucket 600 bytes in debt
+    assertEquals("Should wait until the debt is paid back", 600, budget.consume(1000));
+    assertEquals("Should have slept", 600, time.milliseconds());
+    // debts add up when the bucket has not been refilled
+    assertEquals("Should wait for the combined debt", 500, budget.reserve(500));
+    assertEquals("Should wait for the combined debt", 1000, budget.reserve(500));
+    assertEquals("Checking the wait time should not add to the debt", 1000, budget.getWaitTimeMs());
+    time.sleep(400);
+    assertEquals("Debt should be paid back over time", 600, budget.getWaitTimeMs());
+    time.sleep(10000);
+    assertEquals("Bucket should only hold one second worth of bytes", 0, budget.reserve(1000));
+    assertEquals("Bucket should only hold one second worth of bytes", 1, budget.reserve(1));
+  }
+
+  /**
+   * Tests that changing the budget takes effect right away and that a budget of 0 does not limit fetches.
+   */
+  @Test
+  public void setBytesPerSecTest() {
+    MockTime time = new MockTime();
+    ReplicationBandwidthBudget budget = new ReplicationBandwidthBudget(0, time);
+    assertEquals("Should not wait without a budget", 0, budget.reserve(Long.MAX_VALUE / 2));
+    budget.setBytesPerSec(1000);
+    assertEquals("Unexpected budget", 1000, budget.getBytesPerSec());
+    assertEquals("Bucket should be full once a budget is set", 0, budget.reserve(1000));
+    assertEquals("Should wait for the debt", 1000, budget.reserve(1000));
+    budget.setBytesPerSec(2000);
+    assertEquals("Debt should be paid back at the new rate", 1000, budget.reserve(1000));
+    budget.setBytesPerSec(0);
+    assertEquals("Should not wait once the budget is removed", 0, budget.reserve(1000));
+  }
+}
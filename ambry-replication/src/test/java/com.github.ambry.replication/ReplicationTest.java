@@ -33,7 +33,10 @@ import com.github.ambry.messageformat.MessageFormatInputStream;
 import com.github.ambry.messageformat.PutMessageFormatInputStream;
 import com.github.ambry.messageformat.TtlUpdateMessageFormatInputStream;
 import com.github.ambry.messageformat.ValidatingTransformer;
+import com.github.ambry.network.ChannelOutput;
 import com.github.ambry.network.ConnectedChannel;
+import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.NetworkClient;
 import com.github.ambry.network.Port;
 import com.github.ambry.network.PortType;
 import com.github.ambry.store.Message;
@@ -1192,6 +1195,612 @@ public class ReplicationTest {
         currentTimeMs, time.milliseconds());
   }
 
+  /**
+   * Tests that {@link ReplicaThread} replicates over a {@link NetworkClient} with several requests in flight to a
+   * remote node and that requests that are not answered in time fail without holding up the thread.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadNetworkClientTest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("replication.network.client.enabled", "true");
+    properties.setProperty("replication.max.in.flight.requests.per.node", "2");
+    properties.setProperty("replication.request.timeout.ms", "1000");
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    int batchSize = 4;
+    ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+    List<RemoteReplicaInfo> remoteReplicaInfoList = localHost.getRemoteReplicaInfos(remoteHost, null);
+    MockNetworkClient networkClient =
+        new MockNetworkClient(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), batchSize, time);
+    ReplicaThread replicaThread =
+        createReplicaThread(clusterMap, localHost, remoteReplicaInfoList, null, networkClient, null, null,
+            replicationMetrics);
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), batchSize + 2);
+    }
+
+    // every cycle fetches a batch from every replica, so two cycles are needed to catch up.
+    replicaThread.replicate();
+    assertFalse("Local host should not have caught up after one cycle",
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).isEmpty());
+    replicaThread.replicate();
+    assertEquals("Local host should have caught up", 0,
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+    assertEquals("Unexpected number of requests in flight to the remote node",
+        Math.min(2, remoteReplicaInfoList.size()), networkClient.getMaxRequestsPerPoll());
+    for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+      assertEquals("Token should have advanced past all the messages", batchSize + 1,
+          ((MockFindToken) remoteReplicaInfo.getToken()).getIndex());
+    }
+
+    // requests that are never answered time out and the replicas catch up in the next cycle.
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), 1);
+    }
+    networkClient.setDropResponses(true);
+    long startTimeMs = time.milliseconds();
+    replicaThread.replicate();
+    assertTrue("Requests should have been given up on after the request timeout",
+        time.milliseconds() - startTimeMs >= config.replicationRequestTimeoutMs);
+    assertEquals("Unexpected number of timed out requests", Math.min(2, remoteReplicaInfoList.size()),
+        replicationMetrics.networkClientRequestTimeoutCount.getCount());
+    assertFalse("Nothing should have been replicated",
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).isEmpty());
+    networkClient.setDropResponses(false);
+    replicaThread.replicate();
+    assertEquals("Local host should have caught up", 0,
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+  }
+
+  /**
+   * Tests that a {@link ReplicaThread} that replicates over a {@link NetworkClient} holds back its requests while the
+   * bandwidth budget of its datacenter is exceeded, and that a thread whose budget is not exceeded is not delayed.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadNetworkClientBandwidthBudgetTest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("replication.network.client.enabled", "true");
+    properties.setProperty("replication.max.in.flight.requests.per.node", "2");
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost limitedHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    PartitionId specialPartitionId = clusterMap.getWritablePartitionIds(MockClusterMap.SPECIAL_PARTITION_CLASS).get(0);
+    MockHost unlimitedHost = new MockHost(specialPartitionId.getReplicaIds().get(2).getDataNodeId(), clusterMap);
+    int batchSize = 4;
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), batchSize);
+    }
+
+    // the budget of the limited thread is 2 seconds in debt already.
+    long bytesPerSec = 1000;
+    ReplicationBandwidthBudget limitedBudget = new ReplicationBandwidthBudget(bytesPerSec, time);
+    limitedBudget.reserve(3 * bytesPerSec);
+    ReplicationBandwidthBudget unlimitedBudget = new ReplicationBandwidthBudget(1024 * 1024 * 1024, time);
+    List<ReplicaThread> replicaThreads = new ArrayList<>();
+    for (Pair<MockHost, ReplicationBandwidthBudget> hostAndBudget : Arrays.asList(
+        new Pair<>(unlimitedHost, unlimitedBudget), new Pair<>(limitedHost, limitedBudget))) {
+      MockHost localHost = hostAndBudget.getFirst();
+      MockNetworkClient networkClient =
+          new MockNetworkClient(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), batchSize, time);
+      ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+      replicaThreads.add(
+          createReplicaThread(clusterMap, localHost, localHost.getRemoteReplicaInfos(remoteHost, null), null,
+              networkClient, null, hostAndBudget.getSecond(), replicationMetrics));
+    }
+
+    long startTimeMs = time.milliseconds();
+    replicaThreads.get(0).replicate();
+    assertEquals("Thread within its budget should not have been delayed", startTimeMs, time.milliseconds());
+    assertEquals("Host within its budget should have caught up", 0,
+        remoteHost.getMissingBuffers(unlimitedHost.buffersByPartition).size());
+
+    replicaThreads.get(1).replicate();
+    assertTrue("Thread over its budget should have waited until the debt was paid back",
+        time.milliseconds() - startTimeMs >= 2 * Time.MsPerSec);
+    assertEquals("Host over its budget should have caught up", 0,
+        remoteHost.getMissingBuffers(limitedHost.buffersByPartition).size());
+  }
+
+  /**
+   * Tests that a {@link ReplicaThread} that replicates over a {@link NetworkClient} asks a remote node that had new
+   * entries for more right away instead of waiting for the metadata request to a node that has none to be answered.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadNetworkClientRestartExchangeTest() throws Exception {
+    long metadataWaitTimeMs = 5000;
+    Properties properties = new Properties();
+    properties.setProperty("replication.network.client.enabled", "true");
+    properties.setProperty("replication.metadata.request.max.wait.time.ms", Long.toString(metadataWaitTimeMs));
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    PartitionId specialPartitionId = clusterMap.getWritablePartitionIds(MockClusterMap.SPECIAL_PARTITION_CLASS).get(0);
+    MockHost caughtUpHost = new MockHost(specialPartitionId.getReplicaIds().get(2).getDataNodeId(), clusterMap);
+    int batchSize = 4;
+    ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+    Map<DataNodeId, MockHost> hosts = new HashMap<>();
+    hosts.put(remoteHost.dataNodeId, remoteHost);
+    hosts.put(caughtUpHost.dataNodeId, caughtUpHost);
+    MockNetworkClient networkClient = new MockNetworkClient(hosts, batchSize, time);
+    // the node without new entries holds the metadata requests for as long as it is asked to.
+    networkClient.setResponseDelayMs(caughtUpHost.dataNodeId, metadataWaitTimeMs);
+    List<RemoteReplicaInfo> remoteReplicaInfoList = new ArrayList<>();
+    for (MockHost host : hosts.values()) {
+      remoteReplicaInfoList.addAll(localHost.getRemoteReplicaInfos(host, null));
+    }
+    ReplicaThread replicaThread =
+        createReplicaThread(clusterMap, localHost, remoteReplicaInfoList, null, networkClient, null, null,
+            replicationMetrics);
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), 3 * batchSize);
+    }
+
+    long startTimeMs = time.milliseconds();
+    replicaThread.replicate();
+    assertEquals("Local host should have caught up in a single cycle", 0,
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+    assertTrue("Exchanges with the node that had new entries should have been restarted",
+        replicationMetrics.replicaGroupExchangeRestartCount.getCount() >= 3);
+    assertEquals("The cycle should have ended when the node without new entries answered",
+        startTimeMs + metadataWaitTimeMs, time.milliseconds());
+  }
+
+  /**
+   * Tests that {@link ReplicaThread} asks for compressed responses from the datacenters that compression is enabled
+   * for and replicates from the decompressed responses.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadCompressionTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    Properties properties = new Properties();
+    properties.setProperty("replication.compression.enabled.datacenters",
+        "unknown-dc," + remoteHost.dataNodeId.getDatacenterName());
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    int batchSize = 4;
+    ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+    MockConnectionPool connectionPool =
+        new MockConnectionPool(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), clusterMap, batchSize);
+    ReplicaThread replicaThread =
+        createReplicaThread(clusterMap, localHost, localHost.getRemoteReplicaInfos(remoteHost, null), connectionPool,
+            null, null, null, replicationMetrics);
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), batchSize);
+    }
+
+    replicaThread.replicate();
+    assertEquals("Local host should have caught up", 0,
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+    // a metadata response and a get response from the remote node.
+    assertEquals("Unexpected number of decompressed responses", 2,
+        replicationMetrics.responseDecompressionTimeInUs.getCount());
+    assertTrue("Decompressed bytes should have been recorded",
+        replicationMetrics.decompressedResponseBytes.getCount() > 0);
+  }
+
+  /**
+   * Tests that a {@link ReplicaThread} with pipelined store writes has written the messages it fetched and advanced the
+   * tokens by the time a replication cycle ends, even when every response is larger than the most pending bytes.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadPipelinedStoreWritesTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    Properties properties = new Properties();
+    properties.setProperty("replication.pipelined.store.writes.enabled", "true");
+    properties.setProperty("replication.pipeline.max.pending.bytes", "1");
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    int batchSize = 4;
+    ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+    List<RemoteReplicaInfo> remoteReplicaInfoList = localHost.getRemoteReplicaInfos(remoteHost, null);
+    MockConnectionPool connectionPool =
+        new MockConnectionPool(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), clusterMap, batchSize);
+    ReplicaThread replicaThread =
+        createReplicaThread(clusterMap, localHost, remoteReplicaInfoList, connectionPool, null, null, null,
+            replicationMetrics);
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      // two batches of messages so that two cycles of replication are needed.
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), 2 * batchSize);
+    }
+
+    replicaThread.replicate();
+    Map<PartitionId, List<ByteBuffer>> missingBuffers = remoteHost.getMissingBuffers(localHost.buffersByPartition);
+    assertEquals("Every partition should be missing messages", clusterMap.getAllPartitionIds(null).size(),
+        missingBuffers.size());
+    for (List<ByteBuffer> buffers : missingBuffers.values()) {
+      assertEquals("The first batch should have been written when the cycle ended", batchSize, buffers.size());
+    }
+    for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+      assertEquals("Token should have been advanced past the first batch", batchSize - 1,
+          ((MockFindToken) remoteReplicaInfo.getToken()).getIndex());
+    }
+
+    replicaThread.replicate();
+    assertEquals("Local host should have caught up", 0,
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+    assertEquals("Unexpected number of reservations", 2,
+        replicationMetrics.storeWritePipelinePendingBytes.getCount());
+  }
+
+  /**
+   * Tests that a {@link ReplicaThread} with pipelined store writes transforms the messages that it fetched from a
+   * remote node with the keys converted for that node, even when the write is still pending while the keys of the next
+   * remote node are converted on the replica thread.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadPipelinedStoreWritesConversionTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    PartitionId specialPartitionId = clusterMap.getWritablePartitionIds(MockClusterMap.SPECIAL_PARTITION_CLASS).get(0);
+    MockHost otherRemoteHost = new MockHost(specialPartitionId.getReplicaIds().get(2).getDataNodeId(), clusterMap);
+    Properties properties = new Properties();
+    properties.setProperty("replication.pipelined.store.writes.enabled", "true");
+    properties.setProperty("replication.pipeline.max.pending.bytes", Long.toString(100 * 1024 * 1024));
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    StoreKeyConverter storeKeyConverter = getStoreKeyConverter();
+    CountDownLatch nextNodeConverted = new CountDownLatch(1);
+    AtomicInteger conversionCount = new AtomicInteger(0);
+    StoreKeyConverter replicaThreadKeyConverter = new StoreKeyConverter() {
+      @Override
+      public Map<StoreKey, StoreKey> convert(Collection<? extends StoreKey> input) throws Exception {
+        Map<StoreKey, StoreKey> output = storeKeyConverter.convert(input);
+        if (conversionCount.incrementAndGet() == 2) {
+          nextNodeConverted.countDown();
+        }
+        return output;
+      }
+
+      @Override
+      public StoreKey getConverted(StoreKey storeKey) {
+        return storeKeyConverter.getConverted(storeKey);
+      }
+
+      @Override
+      public void dropCache() {
+        storeKeyConverter.dropCache();
+      }
+    };
+    Transformer pipelineTransformer = new BlobIdTransformer(new BlobIdFactory(clusterMap), getStoreKeyConverter()) {
+      @Override
+      public void warmup(List<MessageInfo> messageInfos) throws Exception {
+        // the first write is held back until the replica thread has converted the keys of the next remote node.
+        assertTrue("Keys of the next remote node should have been converted",
+            nextNodeConverted.await(10, TimeUnit.SECONDS));
+        super.warmup(messageInfos);
+      }
+    };
+    int batchSize = 4;
+    ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+    Map<DataNodeId, MockHost> hosts = new HashMap<>();
+    hosts.put(remoteHost.dataNodeId, remoteHost);
+    hosts.put(otherRemoteHost.dataNodeId, otherRemoteHost);
+    MockConnectionPool connectionPool = new MockConnectionPool(hosts, clusterMap, batchSize);
+    List<RemoteReplicaInfo> remoteReplicaInfoList = new ArrayList<>();
+    for (MockHost host : hosts.values()) {
+      for (RemoteReplicaInfo remoteReplicaInfo : localHost.getRemoteReplicaInfos(host, null)) {
+        remoteReplicaInfoList.add(remoteReplicaInfo);
+        // each remote node has messages of its own so that the keys converted for the two nodes differ.
+        addPutMessagesToReplicasOfPartition(remoteReplicaInfo.getReplicaId().getPartitionId(),
+            Collections.singletonList(host), batchSize);
+      }
+    }
+    ReplicaThread replicaThread =
+        createReplicaThread(clusterMap, localHost, remoteReplicaInfoList, connectionPool, null, null, null,
+            replicationMetrics, replicaThreadKeyConverter, pipelineTransformer);
+
+    replicaThread.replicate();
+    assertTrue("Keys should have been converted for both remote nodes", conversionCount.get() >= 2);
+    for (MockHost host : hosts.values()) {
+      assertEquals("Local host should have caught up with " + host.dataNodeId, 0,
+          host.getMissingBuffers(localHost.buffersByPartition).size());
+    }
+    assertEquals("There should have been no replication errors", 0, replicationMetrics.replicationErrors.getCount());
+  }
+
+  /**
+   * Tests that a {@link ReplicaThread} does not fetch the keys that are being fetched by another replica thread that
+   * shares its {@link MissingKeyFetchRegistry}, and that it does not advance its tokens past them until they have been
+   * written.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadMissingKeyFetchDedupTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    int batchSize = 4;
+    ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+    List<RemoteReplicaInfo> remoteReplicaInfoList = localHost.getRemoteReplicaInfos(remoteHost, null);
+    MockConnectionPool connectionPool =
+        new MockConnectionPool(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), clusterMap, batchSize);
+    MissingKeyFetchRegistry missingKeyFetchRegistry = new MissingKeyFetchRegistry();
+    ReplicaThread replicaThread =
+        createReplicaThread(clusterMap, localHost, remoteReplicaInfoList, connectionPool, null,
+            missingKeyFetchRegistry, null, replicationMetrics);
+    List<PartitionId> partitionIds = clusterMap.getAllPartitionIds(null);
+    Map<PartitionId, List<StoreKey>> keysClaimedElsewhere = new HashMap<>();
+    for (PartitionId partitionId : partitionIds) {
+      List<StoreKey> ids = addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost),
+          batchSize);
+      // another replica thread is fetching the first key of every partition.
+      List<StoreKey> claimedKeys = Collections.singletonList(ids.get(0));
+      assertEquals("Key should have been claimed", new HashSet<>(claimedKeys),
+          missingKeyFetchRegistry.claim(partitionId, claimedKeys));
+      keysClaimedElsewhere.put(partitionId, claimedKeys);
+    }
+
+    replicaThread.replicate();
+    Map<PartitionId, List<ByteBuffer>> missingBuffers = remoteHost.getMissingBuffers(localHost.buffersByPartition);
+    assertEquals("Every partition should be missing a message", partitionIds.size(), missingBuffers.size());
+    for (Map.Entry<PartitionId, List<ByteBuffer>> entry : missingBuffers.entrySet()) {
+      assertEquals("Only the key claimed elsewhere should be missing", 1, entry.getValue().size());
+      assertEquals("Only the key claimed elsewhere should still be claimed", 1,
+          missingKeyFetchRegistry.getKeysBeingFetchedCount(entry.getKey()));
+    }
+    for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+      assertEquals("Token should not have been advanced", 0, ((MockFindToken) remoteReplicaInfo.getToken()).getIndex());
+    }
+    assertEquals("Fetches should not be counted as avoided before the keys are written", 0,
+        replicationMetrics.intraColoMissingKeyFetchAvoidedCount.getCount());
+    assertEquals("Unexpected number of deferred token advances", partitionIds.size(),
+        replicationMetrics.missingKeyFetchTokenAdvanceDeferredCount.getCount());
+
+    // the other fetch of the key of the first partition succeeded. The other fetches failed, so those keys are fetched
+    // from the remote replica in the next cycle.
+    PartitionId partitionFetchedElsewhere = partitionIds.get(0);
+    StoreKey keyFetchedElsewhere = keysClaimedElsewhere.get(partitionFetchedElsewhere).get(0);
+    List<MessageInfo> remoteInfos = remoteHost.infosByPartition.get(partitionFetchedElsewhere);
+    for (int i = 0; i < remoteInfos.size(); i++) {
+      if (remoteInfos.get(i).getStoreKey().equals(keyFetchedElsewhere)) {
+        localHost.addMessage(partitionFetchedElsewhere, remoteInfos.get(i),
+            remoteHost.buffersByPartition.get(partitionFetchedElsewhere).get(i));
+      }
+    }
+    keysClaimedElsewhere.forEach(missingKeyFetchRegistry::release);
+    replicaThread.replicate();
+    assertEquals("Local host should have caught up", 0,
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+    for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+      assertEquals("Token should have been advanced", batchSize - 1,
+          ((MockFindToken) remoteReplicaInfo.getToken()).getIndex());
+    }
+    for (PartitionId partitionId : partitionIds) {
+      assertEquals("No key should be claimed", 0, missingKeyFetchRegistry.getKeysBeingFetchedCount(partitionId));
+    }
+    assertEquals("Only the key written by the other thread should be counted as an avoided fetch", 1,
+        replicationMetrics.intraColoMissingKeyFetchAvoidedCount.getCount());
+  }
+
+  /**
+   * Tests that a {@link ReplicaThread} fetches the keys claimed by another replica thread itself once it has held back
+   * its tokens for them for {@link ReplicationConfig#replicationMissingKeyFetchMaxTokenDeferrals} cycles.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadMissingKeyFetchDeferralLimitTest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("replication.missing.key.fetch.max.token.deferrals", "2");
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    int batchSize = 4;
+    ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+    List<RemoteReplicaInfo> remoteReplicaInfoList = localHost.getRemoteReplicaInfos(remoteHost, null);
+    MockConnectionPool connectionPool =
+        new MockConnectionPool(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), clusterMap, batchSize);
+    MissingKeyFetchRegistry missingKeyFetchRegistry = new MissingKeyFetchRegistry();
+    ReplicaThread replicaThread =
+        createReplicaThread(clusterMap, localHost, remoteReplicaInfoList, connectionPool, null,
+            missingKeyFetchRegistry, null, replicationMetrics);
+    List<PartitionId> partitionIds = clusterMap.getAllPartitionIds(null);
+    for (PartitionId partitionId : partitionIds) {
+      List<StoreKey> ids = addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost),
+          batchSize);
+      // another replica thread claims the first key of every partition and never finishes fetching it.
+      missingKeyFetchRegistry.claim(partitionId, Collections.singletonList(ids.get(0)));
+    }
+
+    for (int i = 1; i <= config.replicationMissingKeyFetchMaxTokenDeferrals; i++) {
+      replicaThread.replicate();
+      assertEquals("Every partition should be missing the key claimed elsewhere", partitionIds.size(),
+          remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+      for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+        assertEquals("Token should not have been advanced", 0,
+            ((MockFindToken) remoteReplicaInfo.getToken()).getIndex());
+        assertEquals("Unexpected number of deferrals", i, remoteReplicaInfo.getTokenAdvanceDeferrals());
+      }
+    }
+    assertEquals("The limit should not have been reached yet", 0,
+        replicationMetrics.missingKeyFetchDeferralLimitReachedCount.getCount());
+
+    // the limit is reached, so the keys claimed elsewhere are fetched from the remote replica.
+    replicaThread.replicate();
+    assertEquals("Local host should have caught up", 0,
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+    for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+      assertEquals("Token should have been advanced", batchSize - 1,
+          ((MockFindToken) remoteReplicaInfo.getToken()).getIndex());
+      assertEquals("Deferrals should have been reset", 0, remoteReplicaInfo.getTokenAdvanceDeferrals());
+    }
+    assertEquals("Unexpected number of times the limit was reached", partitionIds.size(),
+        replicationMetrics.missingKeyFetchDeferralLimitReachedCount.getCount());
+    for (PartitionId partitionId : partitionIds) {
+      assertEquals("Only the claims of the other thread should be left", 1,
+          missingKeyFetchRegistry.getKeysBeingFetchedCount(partitionId));
+    }
+    assertEquals("Keys fetched by this thread should not be counted as avoided fetches", 0,
+        replicationMetrics.intraColoMissingKeyFetchAvoidedCount.getCount());
+  }
+
+  /**
+   * Tests that the fetch size of a replica grows while the replica lags behind and shrinks once it has caught up or
+   * when the remote node takes longer than the latency target.
+   * @throws Exception
+   */
+  @Test
+  public void replicaThreadAdaptiveFetchSizeTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    Properties properties = new Properties();
+    properties.setProperty("replication.fetch.size.in.bytes", "1000");
+    properties.setProperty("replication.adaptive.fetch.size.enabled", "true");
+    properties.setProperty("replication.adaptive.fetch.min.size.in.bytes", "500");
+    properties.setProperty("replication.adaptive.fetch.max.size.in.bytes", "3000");
+    properties.setProperty("replication.adaptive.fetch.latency.target.ms", Long.toString(Long.MAX_VALUE));
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    int batchSize = 4;
+    ReplicationMetrics replicationMetrics = createReplicationMetrics(clusterMap, localHost, remoteHost);
+    List<RemoteReplicaInfo> remoteReplicaInfoList = localHost.getRemoteReplicaInfos(remoteHost, null);
+    MockConnectionPool connectionPool =
+        new MockConnectionPool(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), clusterMap, batchSize);
+    ReplicaThread replicaThread =
+        createReplicaThread(clusterMap, localHost, remoteReplicaInfoList, connectionPool, null, null, null,
+            replicationMetrics);
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      // three batches of messages so that three cycles of replication are needed.
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), 3 * batchSize);
+    }
+
+    // the fetch size doubles while the replicas lag behind, up to the maximum, and halves once they have caught up.
+    long[] expectedFetchSizes = {2000, 3000, 1500};
+    for (long expectedFetchSize : expectedFetchSizes) {
+      replicaThread.replicate();
+      for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+        assertEquals("Unexpected fetch size", expectedFetchSize, remoteReplicaInfo.getFetchSizeInBytes());
+      }
+    }
+    assertEquals("Local host should have caught up", 0,
+        remoteHost.getMissingBuffers(localHost.buffersByPartition).size());
+    for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+      assertTrue("Fetch rate should have been recorded", remoteReplicaInfo.getFetchBytesPerSec() > 0);
+    }
+
+    // a remote node that takes longer than the latency target shrinks the fetch size, down to the minimum.
+    properties.setProperty("replication.adaptive.fetch.latency.target.ms", "1");
+    config = new ReplicationConfig(new VerifiableProperties(properties));
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      addPutMessagesToReplicasOfPartition(partitionId, Collections.singletonList(remoteHost), 3 * batchSize);
+    }
+    connectionPool =
+        new MockConnectionPool(Collections.singletonMap(remoteHost.dataNodeId, remoteHost), clusterMap, batchSize) {
+          @Override
+          public ConnectedChannel checkOutConnection(String host, Port port, long timeout) {
+            return new MockConnectionPool.MockConnection(remoteHost, batchSize) {
+              @Override
+              public ChannelOutput receive() throws IOException {
+                try {
+                  // make the exchange with the remote node take longer than the latency target.
+                  Thread.sleep(2);
+                } catch (InterruptedException e) {
+                  Thread.currentThread().interrupt();
+                }
+                return super.receive();
+              }
+            };
+          }
+        };
+    replicaThread =
+        createReplicaThread(clusterMap, localHost, remoteReplicaInfoList, connectionPool, null, null, null,
+            replicationMetrics);
+    long[] expectedShrunkFetchSizes = {750, 500};
+    for (long expectedFetchSize : expectedShrunkFetchSizes) {
+      replicaThread.replicate();
+      for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfoList) {
+        assertEquals("Unexpected fetch size", expectedFetchSize, remoteReplicaInfo.getFetchSizeInBytes());
+      }
+    }
+  }
+
+  /**
+   * Tests that {@link LagPrioritizedReplicaScheduler} orders nodes and replicas by lag and only schedules the replicas
+   * that have caught up once every interval.
+   * @throws Exception
+   */
+  @Test
+  public void lagPrioritizedReplicaSchedulerTest() throws Exception {
+    MockClusterMap clusterMap = new MockClusterMap();
+    Pair<MockHost, MockHost> localAndRemoteHosts = getLocalAndRemoteHosts(clusterMap);
+    MockHost localHost = localAndRemoteHosts.getFirst();
+    MockHost remoteHost = localAndRemoteHosts.getSecond();
+    PartitionId specialPartitionId = clusterMap.getWritablePartitionIds(MockClusterMap.SPECIAL_PARTITION_CLASS).get(0);
+    MockHost otherRemoteHost = new MockHost(specialPartitionId.getReplicaIds().get(2).getDataNodeId(), clusterMap);
+    List<RemoteReplicaInfo> remoteReplicaInfos = localHost.getRemoteReplicaInfos(remoteHost, null);
+    List<RemoteReplicaInfo> otherRemoteReplicaInfos = localHost.getRemoteReplicaInfos(otherRemoteHost, null);
+    assertTrue("Test needs at least three replicas per node",
+        remoteReplicaInfos.size() >= 3 && otherRemoteReplicaInfos.size() >= 3);
+    for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfos) {
+      remoteReplicaInfo.setLocalLagFromRemoteInBytes(0);
+    }
+    for (RemoteReplicaInfo remoteReplicaInfo : otherRemoteReplicaInfos) {
+      remoteReplicaInfo.setLocalLagFromRemoteInBytes(0);
+    }
+    RemoteReplicaInfo lagging = remoteReplicaInfos.get(0);
+    lagging.setLocalLagFromRemoteInBytes(100);
+    RemoteReplicaInfo laggingMore = otherRemoteReplicaInfos.get(0);
+    laggingMore.setLocalLagFromRemoteInBytes(1000);
+    // a replica that has not been exchanged with yet.
+    RemoteReplicaInfo unknown = otherRemoteReplicaInfos.get(1);
+    unknown.setLocalLagFromRemoteInBytes(-1);
+    Map<DataNodeId, List<RemoteReplicaInfo>> replicasByNode = new HashMap<>();
+    replicasByNode.put(remoteHost.dataNodeId, remoteReplicaInfos);
+    replicasByNode.put(otherRemoteHost.dataNodeId, otherRemoteReplicaInfos);
+
+    ReplicationMetrics replicationMetrics =
+        new ReplicationMetrics(new MetricRegistry(), clusterMap.getReplicaIds(localHost.dataNodeId));
+    LagPrioritizedReplicaScheduler scheduler = new LagPrioritizedReplicaScheduler(2, replicationMetrics);
+    int caughtUpReplicaCount = remoteReplicaInfos.size() + otherRemoteReplicaInfos.size() - 3;
+    for (int cycle = 0; cycle < 4; cycle++) {
+      Map<DataNodeId, List<RemoteReplicaInfo>> schedule = scheduler.schedule(replicasByNode);
+      assertEquals("Node with the most lag should come first",
+          Arrays.asList(otherRemoteHost.dataNodeId, remoteHost.dataNodeId), new ArrayList<>(schedule.keySet()));
+      List<RemoteReplicaInfo> otherScheduled = schedule.get(otherRemoteHost.dataNodeId);
+      List<RemoteReplicaInfo> scheduled = schedule.get(remoteHost.dataNodeId);
+      assertEquals("Replicas should be ordered by lag", Arrays.asList(unknown, laggingMore),
+          otherScheduled.subList(0, 2));
+      assertEquals("Replicas should be ordered by lag", lagging, scheduled.get(0));
+      if (cycle % 2 == 0) {
+        assertEquals("Caught up replicas should have been skipped", 2, otherScheduled.size());
+        assertEquals("Caught up replicas should have been skipped", 1, scheduled.size());
+      } else {
+        assertEquals("Caught up replicas should have been scheduled", otherRemoteReplicaInfos.size(),
+            otherScheduled.size());
+        assertEquals("Caught up replicas should have been scheduled", remoteReplicaInfos.size(), scheduled.size());
+      }
+    }
+    assertEquals("Unexpected number of skipped replicas", 2 * caughtUpReplicaCount,
+        replicationMetrics.lagPrioritizedSchedulerSkippedReplicaCount.getCount());
+
+    // nodes whose replicas have all caught up are left out of the cycles in which they are skipped.
+    lagging.setLocalLagFromRemoteInBytes(0);
+    assertEquals("Only the lagging node should have been scheduled",
+        Collections.singletonList(otherRemoteHost.dataNodeId),
+        new ArrayList<>(scheduler.schedule(replicasByNode).keySet()));
+  }
+
   /**
    * Tests {@link ReplicationMetrics#getMaxLagForPartition(PartitionId)}
    * @throws Exception
@@ -1343,6 +1952,72 @@ public class ReplicationTest {
     return new Pair<>(replicasToReplicate, replicaThread);
   }
 
+  /**
+   * Creates the {@link ReplicationMetrics} of a replica thread of {@code localHost} that replicates from the datacenter
+   * of {@code remoteHost}, with the lag of every partition tracked.
+   * @param clusterMap the {@link ClusterMap} to use
+   * @param localHost the local {@link MockHost} (the one running the replica thread)
+   * @param remoteHost a remote {@link MockHost} in the datacenter that is replicated from
+   * @return the {@link ReplicationMetrics} created
+   */
+  private ReplicationMetrics createReplicationMetrics(ClusterMap clusterMap, MockHost localHost, MockHost remoteHost) {
+    ReplicationMetrics replicationMetrics =
+        new ReplicationMetrics(new MetricRegistry(), clusterMap.getReplicaIds(localHost.dataNodeId));
+    replicationMetrics.populateSingleColoMetrics(remoteHost.dataNodeId.getDatacenterName());
+    for (PartitionId partitionId : clusterMap.getAllPartitionIds(null)) {
+      replicationMetrics.addLagMetricForPartition(partitionId);
+    }
+    return replicationMetrics;
+  }
+
+  /**
+   * Creates a {@link ReplicaThread} of {@code localHost} with the current {@link #config} that replicates from
+   * {@code remoteReplicaInfos} using the {@link StoreKeyConverter} returned by {@link #getStoreKeyConverter()}.
+   * @see #createReplicaThread(ClusterMap, MockHost, List, ConnectionPool, NetworkClient, MissingKeyFetchRegistry,
+   * ReplicationBandwidthBudget, ReplicationMetrics, StoreKeyConverter, Transformer)
+   */
+  private ReplicaThread createReplicaThread(ClusterMap clusterMap, MockHost localHost,
+      List<RemoteReplicaInfo> remoteReplicaInfos, ConnectionPool connectionPool, NetworkClient networkClient,
+      MissingKeyFetchRegistry missingKeyFetchRegistry, ReplicationBandwidthBudget bandwidthBudget,
+      ReplicationMetrics replicationMetrics) {
+    return createReplicaThread(clusterMap, localHost, remoteReplicaInfos, connectionPool, networkClient,
+        missingKeyFetchRegistry, bandwidthBudget, replicationMetrics, getStoreKeyConverter(),
+        new BlobIdTransformer(new BlobIdFactory(clusterMap), getStoreKeyConverter()));
+  }
+
+  /**
+   * Creates a {@link ReplicaThread} of {@code localHost} with the current {@link #config} that replicates from
+   * {@code remoteReplicaInfos}, which must all be in the same datacenter.
+   * @param clusterMap the {@link ClusterMap} to use
+   * @param localHost the local {@link MockHost} (the one running the replica thread)
+   * @param remoteReplicaInfos the {@link RemoteReplicaInfo}s of the remote replicas to replicate from
+   * @param connectionPool the {@link ConnectionPool} to replicate over if {@code networkClient} is {@code null}
+   * @param networkClient the {@link NetworkClient} to replicate over. Can be {@code null}.
+   * @param missingKeyFetchRegistry the {@link MissingKeyFetchRegistry} shared with other replica threads. Can be
+   *                                {@code null}.
+   * @param bandwidthBudget the {@link ReplicationBandwidthBudget} of the datacenter. Can be {@code null}.
+   * @param replicationMetrics the {@link ReplicationMetrics} of the replica thread
+   * @param storeKeyConverter the {@link StoreKeyConverter} to be used in {@link ReplicaThread}
+   * @param pipelineTransformer the {@link Transformer} used if the store writes are pipelined
+   * @return the {@link ReplicaThread} created
+   */
+  private ReplicaThread createReplicaThread(ClusterMap clusterMap, MockHost localHost,
+      List<RemoteReplicaInfo> remoteReplicaInfos, ConnectionPool connectionPool, NetworkClient networkClient,
+      MissingKeyFetchRegistry missingKeyFetchRegistry, ReplicationBandwidthBudget bandwidthBudget,
+      ReplicationMetrics replicationMetrics, StoreKeyConverter storeKeyConverter, Transformer pipelineTransformer) {
+    Transformer transformer = new BlobIdTransformer(new BlobIdFactory(clusterMap), storeKeyConverter);
+    String datacenterName = remoteReplicaInfos.get(0).getReplicaId().getDataNodeId().getDatacenterName();
+    ReplicaThread replicaThread =
+        new ReplicaThread("threadtest", new MockFindToken.MockFindTokenFactory(), clusterMap, new AtomicInteger(0),
+            localHost.dataNodeId, connectionPool, networkClient, missingKeyFetchRegistry, bandwidthBudget, config,
+            replicationMetrics, null, storeKeyConverter, transformer, pipelineTransformer,
+            clusterMap.getMetricRegistry(), false, datacenterName, new ResponseHandler(clusterMap), time);
+    for (RemoteReplicaInfo remoteReplicaInfo : remoteReplicaInfos) {
+      replicaThread.addRemoteReplicaInfo(remoteReplicaInfo);
+    }
+    return replicaThread;
+  }
+
   /**
    * Asserts the number of missing keys between the local and remote replicas and fixes the keys
    * @param expectedIndex initial expected index
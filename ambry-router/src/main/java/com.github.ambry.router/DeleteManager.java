@@ -179,6 +179,8 @@ class DeleteManager {
     } else {
       routerMetrics.ignoredResponseCount.inc();
     }
+    // the response has been fully deserialized, so its buffer can be reused.
+    responseInfo.release();
   }
 
   /**
@@ -128,7 +128,8 @@ class DeleteOperation {
       Port port = replica.getDataNodeId().getPortToConnectTo();
       DeleteRequest deleteRequest = createDeleteRequest();
       deleteRequestInfos.put(deleteRequest.getCorrelationId(), new DeleteRequestInfo(time.milliseconds(), replica));
-      RequestInfo requestInfo = new RequestInfo(hostname, port, deleteRequest, replica);
+      RequestInfo requestInfo =
+          new RequestInfo(hostname, port, deleteRequest, replica, deleteRequest.getCorrelationId());
       requestRegistrationCallback.registerRequestToSend(this, requestInfo);
       replicaIterator.remove();
       if (RouterUtils.isRemoteReplica(routerConfig, replica)) {
@@ -274,6 +275,7 @@ class DeleteOperation {
         break;
       case Disk_Unavailable:
       case Replica_Unavailable:
+      case Request_Deadline_Exceeded:
         updateOperationState(replica, RouterErrorCode.AmbryUnavailable);
         break;
       default:
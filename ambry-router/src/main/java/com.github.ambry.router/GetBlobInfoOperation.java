@@ -161,7 +161,7 @@ class GetBlobInfoOperation extends GetOperation {
       String hostname = replicaId.getDataNodeId().getHostname();
       Port port = replicaId.getDataNodeId().getPortToConnectTo();
       GetRequest getRequest = createGetRequest(blobId, getOperationFlag(), options.getBlobOptions.getGetOption());
-      RequestInfo request = new RequestInfo(hostname, port, getRequest, replicaId);
+      RequestInfo request = new RequestInfo(hostname, port, getRequest, replicaId, getRequest.getCorrelationId());
       int correlationId = getRequest.getCorrelationId();
       correlationIdToGetRequestInfo.put(correlationId, new GetRequestInfo(replicaId, time.milliseconds()));
       requestRegistrationCallback.registerRequestToSend(this, request);
@@ -405,6 +405,7 @@ class GetBlobInfoOperation extends GetOperation {
         break;
       case Disk_Unavailable:
       case Replica_Unavailable:
+      case Request_Deadline_Exceeded:
         logger.trace("Disk or replica on which the requested blob resides is not accessible");
         resolvedRouterErrorCode = RouterErrorCode.AmbryUnavailable;
         break;
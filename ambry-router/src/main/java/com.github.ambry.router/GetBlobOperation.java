@@ -673,7 +673,7 @@ class GetBlobOperation extends GetOperation {
         String hostname = replicaId.getDataNodeId().getHostname();
         Port port = replicaId.getDataNodeId().getPortToConnectTo();
         GetRequest getRequest = createGetRequest(chunkBlobId, getOperationFlag(), getGetOption());
-        RequestInfo request = new RequestInfo(hostname, port, getRequest, replicaId);
+        RequestInfo request = new RequestInfo(hostname, port, getRequest, replicaId, getRequest.getCorrelationId());
         int correlationId = getRequest.getCorrelationId();
         correlationIdToGetRequestInfo.put(correlationId, new GetRequestInfo(replicaId, time.milliseconds()));
         correlationIdToGetChunk.put(correlationId, this);
@@ -1203,6 +1203,7 @@ class GetBlobOperation extends GetOperation {
           break;
         case Disk_Unavailable:
         case Replica_Unavailable:
+        case Request_Deadline_Exceeded:
           resolvedRouterErrorCode = RouterErrorCode.AmbryUnavailable;
           break;
         default:
@@ -250,6 +250,8 @@ class PutManager {
     } else {
       routerMetrics.ignoredResponseCount.inc();
     }
+    // the response has been fully deserialized, so its buffer can be reused.
+    responseInfo.release();
   }
 
   /**
@@ -196,6 +196,8 @@ class TtlUpdateManager {
     } else {
       routerMetrics.ignoredResponseCount.inc();
     }
+    // the response has been fully deserialized, so its buffer can be reused.
+    responseInfo.release();
   }
 
   /**
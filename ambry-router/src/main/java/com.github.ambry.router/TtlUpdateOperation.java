@@ -122,7 +122,8 @@ class TtlUpdateOperation {
       TtlUpdateRequest ttlUpdateRequest = createTtlUpdateRequest();
       ttlUpdateRequestInfos.put(ttlUpdateRequest.getCorrelationId(),
           new TtlUpdateRequestInfo(time.milliseconds(), replica));
-      RequestInfo requestInfo = new RequestInfo(hostname, port, ttlUpdateRequest, replica);
+      RequestInfo requestInfo =
+          new RequestInfo(hostname, port, ttlUpdateRequest, replica, ttlUpdateRequest.getCorrelationId());
       requestRegistrationCallback.registerRequestToSend(this, requestInfo);
       replicaIterator.remove();
       if (RouterUtils.isRemoteReplica(routerConfig, replica)) {
@@ -265,6 +266,7 @@ class TtlUpdateOperation {
         break;
       case Disk_Unavailable:
       case Replica_Unavailable:
+      case Request_Deadline_Exceeded:
         updateOperationState(replica, RouterErrorCode.AmbryUnavailable);
         break;
       case Blob_Update_Not_Allowed:
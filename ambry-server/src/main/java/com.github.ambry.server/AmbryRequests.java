@@ -17,6 +17,7 @@ import com.codahale.metrics.Histogram;
 import com.codahale.metrics.MetricRegistry;
 import com.github.ambry.clustermap.ClusterMap;
 import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.clustermap.DiskId;
 import com.github.ambry.clustermap.HardwareState;
 import com.github.ambry.clustermap.PartitionId;
 import com.github.ambry.clustermap.PartitionState;
@@ -35,6 +36,7 @@ import com.github.ambry.messageformat.PutMessageFormatInputStream;
 import com.github.ambry.messageformat.TtlUpdateMessageFormatInputStream;
 import com.github.ambry.network.CompositeSend;
 import com.github.ambry.network.Request;
+import com.github.ambry.network.RequestClass;
 import com.github.ambry.network.RequestResponseChannel;
 import com.github.ambry.network.Send;
 import com.github.ambry.network.ServerNetworkResponseMetrics;
@@ -42,15 +44,20 @@ import com.github.ambry.notification.BlobReplicaSourceType;
 import com.github.ambry.notification.NotificationSystem;
 import com.github.ambry.notification.UpdateType;
 import com.github.ambry.protocol.AdminRequest;
+import com.github.ambry.protocol.AdminRequestOrResponseType;
 import com.github.ambry.protocol.AdminResponse;
 import com.github.ambry.protocol.BlobStoreControlAdminRequest;
 import com.github.ambry.protocol.CatchupStatusAdminRequest;
 import com.github.ambry.protocol.CatchupStatusAdminResponse;
+import com.github.ambry.protocol.CompressedResponse;
+import com.github.ambry.protocol.CompressionType;
 import com.github.ambry.protocol.DeleteRequest;
 import com.github.ambry.protocol.DeleteResponse;
 import com.github.ambry.protocol.GetOption;
 import com.github.ambry.protocol.GetRequest;
 import com.github.ambry.protocol.GetResponse;
+import com.github.ambry.protocol.KeyRangeDigestsAdminRequest;
+import com.github.ambry.protocol.KeyRangeDigestsAdminResponse;
 import com.github.ambry.protocol.PartitionRequestInfo;
 import com.github.ambry.protocol.PartitionResponseInfo;
 import com.github.ambry.protocol.PutRequest;
@@ -59,16 +66,23 @@ import com.github.ambry.protocol.ReplicaMetadataRequest;
 import com.github.ambry.protocol.ReplicaMetadataRequestInfo;
 import com.github.ambry.protocol.ReplicaMetadataResponse;
 import com.github.ambry.protocol.ReplicaMetadataResponseInfo;
+import com.github.ambry.protocol.ReplicationBandwidthBudgetAdminRequest;
 import com.github.ambry.protocol.ReplicationControlAdminRequest;
 import com.github.ambry.protocol.RequestControlAdminRequest;
 import com.github.ambry.protocol.RequestOrResponseType;
+import com.github.ambry.protocol.Response;
+import com.github.ambry.protocol.SealedStoreFileChunkAdminRequest;
+import com.github.ambry.protocol.SealedStoreFileChunkAdminResponse;
+import com.github.ambry.protocol.SealedStoreFilesAdminResponse;
 import com.github.ambry.protocol.TtlUpdateRequest;
 import com.github.ambry.protocol.TtlUpdateResponse;
 import com.github.ambry.replication.ReplicationManager;
 import com.github.ambry.store.FindInfo;
 import com.github.ambry.store.FindToken;
 import com.github.ambry.store.FindTokenFactory;
+import com.github.ambry.store.KeyRangeDigests;
 import com.github.ambry.store.MessageInfo;
+import com.github.ambry.store.SealedStoreFiles;
 import com.github.ambry.store.StorageManager;
 import com.github.ambry.store.Store;
 import com.github.ambry.store.StoreErrorCodes;
@@ -88,10 +102,18 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -121,11 +143,43 @@ public class AmbryRequests implements RequestAPI {
       new ConcurrentHashMap<>();
   private final boolean enableDataPrefetch;
   private final StoreKeyConverterFactory storeKeyConverterFactory;
+  private final DiskRequestExecutorPool diskRequestExecutorPool;
+  private final long requestQueueTimeBudgetMs;
+  private final ScheduledExecutorService scheduler;
+  private final long replicaMetadataRequestMaxWaitTimeMs;
+
+  /**
+   * The work done for a request after it has been deserialized.
+   */
+  private interface RequestTask {
+    void run() throws InterruptedException;
+  }
 
   public AmbryRequests(StorageManager storageManager, RequestResponseChannel requestResponseChannel,
       ClusterMap clusterMap, DataNodeId nodeId, MetricRegistry registry, FindTokenFactory findTokenFactory,
       NotificationSystem operationNotification, ReplicationManager replicationManager, StoreKeyFactory storeKeyFactory,
       boolean enableDataPrefetch, StoreKeyConverterFactory storeKeyConverterFactory) {
+    this(storageManager, requestResponseChannel, clusterMap, nodeId, registry, findTokenFactory, operationNotification,
+        replicationManager, storeKeyFactory, enableDataPrefetch, storeKeyConverterFactory, null, 0, null, 0);
+  }
+
+  /**
+   * @param diskRequestExecutorPool the {@link DiskRequestExecutorPool} that executes requests for each disk. If
+   *                                {@code null}, requests are executed on the thread that calls
+   *                                {@link #handleRequests(Request)}.
+   * @param requestQueueTimeBudgetMs the longest time a client or replication request can wait in the request queue
+   *                                 and still be executed. 0 disables the limit.
+   * @param scheduler the {@link ScheduledExecutorService} used to answer replica metadata requests that wait for new
+   *                  entries. If {@code null}, such requests are answered right away.
+   * @param replicaMetadataRequestMaxWaitTimeMs the longest time a replica metadata request can wait for new entries.
+   *                                            0 answers such requests right away.
+   */
+  AmbryRequests(StorageManager storageManager, RequestResponseChannel requestResponseChannel, ClusterMap clusterMap,
+      DataNodeId nodeId, MetricRegistry registry, FindTokenFactory findTokenFactory,
+      NotificationSystem operationNotification, ReplicationManager replicationManager, StoreKeyFactory storeKeyFactory,
+      boolean enableDataPrefetch, StoreKeyConverterFactory storeKeyConverterFactory,
+      DiskRequestExecutorPool diskRequestExecutorPool, long requestQueueTimeBudgetMs,
+      ScheduledExecutorService scheduler, long replicaMetadataRequestMaxWaitTimeMs) {
     this.storageManager = storageManager;
     this.requestResponseChannel = requestResponseChannel;
     this.clusterMap = clusterMap;
@@ -138,6 +192,10 @@ public class AmbryRequests implements RequestAPI {
     this.storeKeyFactory = storeKeyFactory;
     this.enableDataPrefetch = enableDataPrefetch;
     this.storeKeyConverterFactory = storeKeyConverterFactory;
+    this.diskRequestExecutorPool = diskRequestExecutorPool;
+    this.requestQueueTimeBudgetMs = requestQueueTimeBudgetMs;
+    this.scheduler = scheduler;
+    this.replicaMetadataRequestMaxWaitTimeMs = replicaMetadataRequestMaxWaitTimeMs;
 
     for (RequestOrResponseType requestType : EnumSet.of(RequestOrResponseType.PutRequest,
         RequestOrResponseType.GetRequest, RequestOrResponseType.DeleteRequest,
@@ -181,12 +239,30 @@ public class AmbryRequests implements RequestAPI {
     } catch (Exception e) {
       logger.error("Error while handling request " + request + " closing connection", e);
       requestResponseChannel.closeConnection(request);
+    } finally {
+      // the handlers deserialize the request into objects of its own before any work is handed off to another thread,
+      // so the buffer behind the request is not needed anymore.
+      request.release();
     }
   }
 
   public void handlePutRequest(Request request) throws IOException, InterruptedException {
     PutRequest.ReceivedPutRequest receivedRequest =
         PutRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    executeOnDisk(request, RequestClass.CLIENT_WRITE,
+        Collections.singletonList(receivedRequest.getBlobId().getPartition()),
+        () -> handlePutRequest(request, receivedRequest),
+        error -> new PutResponse(receivedRequest.getCorrelationId(), receivedRequest.getClientId(), error));
+  }
+
+  /**
+   * Does the store work for a put request and sends the response.
+   * @param request the {@link Request} received.
+   * @param receivedRequest the {@link PutRequest.ReceivedPutRequest} deserialized from {@code request}.
+   * @throws InterruptedException if response sending is interrupted.
+   */
+  private void handlePutRequest(Request request, PutRequest.ReceivedPutRequest receivedRequest)
+      throws InterruptedException {
     long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
     long totalTimeSpent = requestQueueTime;
     metrics.putBlobRequestQueueTimeInMs.update(requestQueueTime);
@@ -253,6 +329,23 @@ public class AmbryRequests implements RequestAPI {
 
   public void handleGetRequest(Request request) throws IOException, InterruptedException {
     GetRequest getRequest = GetRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    RequestClass requestClass =
+        getRequest.getClientId().startsWith(GetRequest.Replication_Client_Id_Prefix) ? RequestClass.REPLICATION
+            : RequestClass.CLIENT_READ;
+    executeOnDisk(request, requestClass, getRequest.getPartitionInfoList()
+            .stream()
+            .map(PartitionRequestInfo::getPartition)
+            .collect(Collectors.toList()), () -> handleGetRequest(request, getRequest),
+        error -> new GetResponse(getRequest.getCorrelationId(), getRequest.getClientId(), error));
+  }
+
+  /**
+   * Does the store work for a get request and sends the response.
+   * @param request the {@link Request} received.
+   * @param getRequest the {@link GetRequest} deserialized from {@code request}.
+   * @throws InterruptedException if response sending is interrupted.
+   */
+  private void handleGetRequest(Request request, GetRequest getRequest) throws InterruptedException {
     Histogram responseQueueTime = null;
     Histogram responseSendTime = null;
     Histogram responseTotalTime = null;
@@ -300,7 +393,7 @@ public class AmbryRequests implements RequestAPI {
     }
 
     long startTime = SystemTime.getInstance().milliseconds();
-    GetResponse response = null;
+    Response response = null;
     try {
       List<Send> messagesToSendList = new ArrayList<Send>(getRequest.getPartitionInfoList().size());
       List<PartitionResponseInfo> partitionResponseInfoList =
@@ -384,6 +477,9 @@ public class AmbryRequests implements RequestAPI {
       CompositeSend compositeSend = new CompositeSend(messagesToSendList);
       response = new GetResponse(getRequest.getCorrelationId(), getRequest.getClientId(), partitionResponseInfoList,
           compositeSend, ServerErrorCode.No_Error);
+      if (getRequest.getAcceptedCompression() != CompressionType.None) {
+        response = compress(response, getRequest.getAcceptedCompression());
+      }
     } catch (Exception e) {
       logger.error("Unknown exception for request " + getRequest, e);
       response =
@@ -416,6 +512,19 @@ public class AmbryRequests implements RequestAPI {
 
   public void handleDeleteRequest(Request request) throws IOException, InterruptedException {
     DeleteRequest deleteRequest = DeleteRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    executeOnDisk(request, RequestClass.CLIENT_WRITE,
+        Collections.singletonList(deleteRequest.getBlobId().getPartition()),
+        () -> handleDeleteRequest(request, deleteRequest),
+        error -> new DeleteResponse(deleteRequest.getCorrelationId(), deleteRequest.getClientId(), error));
+  }
+
+  /**
+   * Does the store work for a delete request and sends the response.
+   * @param request the {@link Request} received.
+   * @param deleteRequest the {@link DeleteRequest} deserialized from {@code request}.
+   * @throws InterruptedException if response sending is interrupted.
+   */
+  private void handleDeleteRequest(Request request, DeleteRequest deleteRequest) throws InterruptedException {
     long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
     long totalTimeSpent = requestQueueTime;
     metrics.deleteBlobRequestQueueTimeInMs.update(requestQueueTime);
@@ -491,6 +600,19 @@ public class AmbryRequests implements RequestAPI {
   public void handleTtlUpdateRequest(Request request) throws IOException, InterruptedException {
     TtlUpdateRequest updateRequest =
         TtlUpdateRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap);
+    executeOnDisk(request, RequestClass.CLIENT_WRITE,
+        Collections.singletonList(updateRequest.getBlobId().getPartition()),
+        () -> handleTtlUpdateRequest(request, updateRequest),
+        error -> new TtlUpdateResponse(updateRequest.getCorrelationId(), updateRequest.getClientId(), error));
+  }
+
+  /**
+   * Does the store work for a TTL update request and sends the response.
+   * @param request the {@link Request} received.
+   * @param updateRequest the {@link TtlUpdateRequest} deserialized from {@code request}.
+   * @throws InterruptedException if response sending is interrupted.
+   */
+  private void handleTtlUpdateRequest(Request request, TtlUpdateRequest updateRequest) throws InterruptedException {
     long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
     long totalTimeSpent = requestQueueTime;
     metrics.updateBlobTtlRequestQueueTimeInMs.update(requestQueueTime);
@@ -570,16 +692,43 @@ public class AmbryRequests implements RequestAPI {
   public void handleReplicaMetadataRequest(Request request) throws IOException, InterruptedException {
     ReplicaMetadataRequest replicaMetadataRequest =
         ReplicaMetadataRequest.readFrom(new DataInputStream(request.getInputStream()), clusterMap, findTokenFactory);
-    long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
-    long totalTimeSpent = requestQueueTime;
-    metrics.replicaMetadataRequestQueueTimeInMs.update(requestQueueTime);
-    metrics.replicaMetadataRequestRate.mark();
+    executeOnDisk(request, RequestClass.REPLICATION, replicaMetadataRequest.getReplicaMetadataRequestInfoList()
+            .stream()
+            .map(ReplicaMetadataRequestInfo::getPartitionId)
+            .collect(Collectors.toList()), () -> {
+          long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
+          metrics.replicaMetadataRequestQueueTimeInMs.update(requestQueueTime);
+          metrics.replicaMetadataRequestRate.mark();
+          handleReplicaMetadataRequest(request, replicaMetadataRequest, requestQueueTime, true);
+        }, error -> new ReplicaMetadataResponse(replicaMetadataRequest.getCorrelationId(),
+            replicaMetadataRequest.getClientId(), error));
+  }
 
+  /**
+   * Does the store work for a replica metadata request and sends the response. If the request asks to wait for new
+   * entries and none of its replicas have any, the request is parked instead and this is called again, without
+   * waiting, once an entry is added to one of the replicas or the wait times out.
+   * @param request the {@link Request} received.
+   * @param replicaMetadataRequest the {@link ReplicaMetadataRequest} deserialized from {@code request}.
+   * @param timeSpent the time spent on {@code request} before this call.
+   * @param mayWait {@code true} if the request may be parked to wait for new entries.
+   * @throws InterruptedException if response sending is interrupted.
+   */
+  private void handleReplicaMetadataRequest(Request request, ReplicaMetadataRequest replicaMetadataRequest,
+      long timeSpent, boolean mayWait) throws InterruptedException {
+    long totalTimeSpent = timeSpent;
     List<ReplicaMetadataRequestInfo> replicaMetadataRequestInfoList =
         replicaMetadataRequest.getReplicaMetadataRequestInfoList();
     int partitionCnt = replicaMetadataRequestInfoList.size();
     long startTimeInMs = SystemTime.getInstance().milliseconds();
-    ReplicaMetadataResponse response = null;
+    long waitTimeMs = 0;
+    if (mayWait && scheduler != null) {
+      waitTimeMs = Math.min(replicaMetadataRequest.getMaxWaitTimeMs(), replicaMetadataRequestMaxWaitTimeMs) - (
+          startTimeInMs - request.getStartTimeInMs());
+    }
+    NewEntryWaiter newEntryWaiter = waitTimeMs > 0 ? new NewEntryWaiter(request, replicaMetadataRequest) : null;
+    boolean parked = false;
+    Response response = null;
     try {
       List<ReplicaMetadataResponseInfo> replicaMetadataResponseList =
           new ArrayList<ReplicaMetadataResponseInfo>(partitionCnt);
@@ -600,10 +749,15 @@ public class AmbryRequests implements RequestAPI {
             String hostName = replicaMetadataRequestInfo.getHostName();
             String replicaPath = replicaMetadataRequestInfo.getReplicaPath();
             Store store = storageManager.getStore(partitionId);
+            long maxTotalSizeOfEntriesInBytes =
+                replicaMetadataRequest.getMaxTotalSizeOfEntriesInBytes(replicaMetadataRequestInfo);
 
+            if (newEntryWaiter != null) {
+              // listen before looking for entries so that an entry added in between wakes the request up
+              newEntryWaiter.listen(partitionId);
+            }
             partitionStartTimeInMs = SystemTime.getInstance().milliseconds();
-            FindInfo findInfo =
-                store.findEntriesSince(findToken, replicaMetadataRequest.getMaxTotalSizeOfEntriesInBytes());
+            FindInfo findInfo = store.findEntriesSince(findToken, maxTotalSizeOfEntriesInBytes);
             logger.trace("{} Time used to find entry since: {}", partitionId,
                 (SystemTime.getInstance().milliseconds() - partitionStartTimeInMs));
 
@@ -621,7 +775,7 @@ public class AmbryRequests implements RequestAPI {
                 new ReplicaMetadataResponseInfo(partitionId, findInfo.getFindToken(), findInfo.getMessageEntries(),
                     store.getSizeInBytes() - totalBytesRead);
             if (replicaMetadataResponseInfo.getTotalSizeOfAllMessages()
-                > 5 * replicaMetadataRequest.getMaxTotalSizeOfEntriesInBytes()) {
+                > 5 * maxTotalSizeOfEntriesInBytes) {
               logger.debug("{} generated a metadata response {} where the cumulative size of messages is {}",
                   replicaMetadataRequest, replicaMetadataResponseInfo,
                   replicaMetadataResponseInfo.getTotalSizeOfAllMessages());
@@ -644,20 +798,46 @@ public class AmbryRequests implements RequestAPI {
           }
         }
       }
+      if (newEntryWaiter != null) {
+        boolean hasNoNewEntries = replicaMetadataResponseList.stream()
+            .allMatch(info -> info.getError() == ServerErrorCode.No_Error && info.getMessageInfoList().isEmpty());
+        if (hasNoNewEntries) {
+          newEntryWaiter.park(waitTimeMs);
+          parked = true;
+        } else {
+          // if the waiter has already woken up, the request is answered on the wake up
+          parked = !newEntryWaiter.cancel();
+        }
+        if (parked) {
+          return;
+        }
+      }
       response =
           new ReplicaMetadataResponse(replicaMetadataRequest.getCorrelationId(), replicaMetadataRequest.getClientId(),
               ServerErrorCode.No_Error, replicaMetadataResponseList);
+      if (replicaMetadataRequest.getAcceptedCompression() != CompressionType.None) {
+        response = compress(response, replicaMetadataRequest.getAcceptedCompression());
+      }
     } catch (Exception e) {
       logger.error("Unknown exception for request " + replicaMetadataRequest, e);
-      response =
-          new ReplicaMetadataResponse(replicaMetadataRequest.getCorrelationId(), replicaMetadataRequest.getClientId(),
-              ServerErrorCode.Unknown_Error);
+      if (newEntryWaiter != null && !newEntryWaiter.cancel()) {
+        parked = true;
+      } else {
+        response =
+            new ReplicaMetadataResponse(replicaMetadataRequest.getCorrelationId(), replicaMetadataRequest.getClientId(),
+                ServerErrorCode.Unknown_Error);
+      }
     } finally {
       long processingTime = SystemTime.getInstance().milliseconds() - startTimeInMs;
-      totalTimeSpent += processingTime;
-      publicAccessLogger.info("{} {} processingTime {}", replicaMetadataRequest, response, processingTime);
-      logger.trace("{} {} processingTime {}", replicaMetadataRequest, response, processingTime);
       metrics.replicaMetadataRequestProcessingTimeInMs.update(processingTime);
+      if (!parked) {
+        totalTimeSpent += processingTime;
+        publicAccessLogger.info("{} {} processingTime {}", replicaMetadataRequest, response, processingTime);
+        logger.trace("{} {} processingTime {}", replicaMetadataRequest, response, processingTime);
+      }
+    }
+    if (parked) {
+      return;
     }
 
     requestResponseChannel.sendResponse(response, request,
@@ -665,6 +845,113 @@ public class AmbryRequests implements RequestAPI {
             metrics.replicaMetadataSendTimeInMs, metrics.replicaMetadataTotalTimeInMs, null, null, totalTimeSpent));
   }
 
+  /**
+   * Compresses {@code response} for a request that accepts a compressed response. The response is serialized as part
+   * of the compression, so for get responses the time taken includes reading the blobs from the store.
+   * @param response the {@link Response} to compress.
+   * @param compressionType the {@link CompressionType} that the request accepts.
+   * @return the {@link CompressedResponse} to send instead of {@code response}.
+   * @throws IOException if {@code response} could not be serialized.
+   */
+  private CompressedResponse compress(Response response, CompressionType compressionType) throws IOException {
+    long startTimeNs = SystemTime.getInstance().nanoseconds();
+    CompressedResponse compressedResponse = CompressedResponse.compress(response, compressionType);
+    metrics.responseCompressionTimeInUs.update(
+        TimeUnit.NANOSECONDS.toMicros(SystemTime.getInstance().nanoseconds() - startTimeNs));
+    metrics.responseCompressionUncompressedBytes.inc(compressedResponse.getUncompressedSize());
+    metrics.responseCompressionCompressedBytes.inc(compressedResponse.getCompressedSize());
+    return compressedResponse;
+  }
+
+  /**
+   * Executes {@code task} on the executor of the disk that hosts the local replicas of {@code partitionIds}. The task
+   * is executed on the calling thread if there are no disk executors, or if the partitions are not all on the same
+   * known disk. If the request waited in the request queue for longer than the queue time budget, the task is not
+   * executed and the response for {@link ServerErrorCode#Request_Deadline_Exceeded} is sent instead. If the queue of
+   * the disk is full, the response for {@link ServerErrorCode#Retry_After_Backoff} is sent.
+   * @param request the {@link Request} being handled.
+   * @param requestClass the {@link RequestClass} of the request.
+   * @param partitionIds the {@link PartitionId}s that the request targets.
+   * @param task the work to be done for the request, including sending the response.
+   * @param errorResponse creates the response to send if the task is not executed, for the given error.
+   * @throws InterruptedException if the task is executed inline and is interrupted, or if sending the error response
+   * is interrupted.
+   */
+  private void executeOnDisk(Request request, RequestClass requestClass, List<PartitionId> partitionIds,
+      RequestTask task, Function<ServerErrorCode, Send> errorResponse) throws InterruptedException {
+    long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
+    metrics.updateRequestQueueTime(requestClass, requestQueueTime);
+    if (requestQueueTimeBudgetMs > 0 && requestQueueTime > requestQueueTimeBudgetMs) {
+      logger.debug("Request {} of class {} dropped after waiting {} ms in the request queue", request, requestClass,
+          requestQueueTime);
+      metrics.markRequestShed(requestClass);
+      requestResponseChannel.sendResponse(errorResponse.apply(ServerErrorCode.Request_Deadline_Exceeded), request,
+          null);
+      return;
+    }
+    executeOnDisk(request, partitionIds, null, task, errorResponse);
+  }
+
+  /**
+   * Executes {@code task} on the executor of the disk that hosts the local replicas of {@code partitionIds}, without
+   * checking the queue time budget. If there is no such executor, the task is executed on {@code fallbackExecutor},
+   * or on the calling thread if {@code fallbackExecutor} is {@code null}. If the queue of the disk is full, the
+   * response for {@link ServerErrorCode#Retry_After_Backoff} is sent.
+   * @param request the {@link Request} being handled.
+   * @param partitionIds the {@link PartitionId}s that the request targets.
+   * @param fallbackExecutor the {@link Executor} to execute the task on if there is no disk executor for it. Can be
+   *                         {@code null}.
+   * @param task the work to be done for the request, including sending the response.
+   * @param errorResponse creates the response to send if the task is not executed, for the given error.
+   * @throws InterruptedException if the task is executed inline and is interrupted, or if sending the error response
+   * is interrupted.
+   * @throws RejectedExecutionException if {@code fallbackExecutor} does not accept the task.
+   */
+  private void executeOnDisk(Request request, List<PartitionId> partitionIds, Executor fallbackExecutor,
+      RequestTask task, Function<ServerErrorCode, Send> errorResponse) throws InterruptedException {
+    Runnable guardedTask = () -> {
+      try {
+        task.run();
+      } catch (Exception e) {
+        logger.error("Error while handling request " + request + " closing connection", e);
+        try {
+          requestResponseChannel.closeConnection(request);
+        } catch (InterruptedException ie) {
+          logger.error("Interrupted while closing connection for request {}", request, ie);
+        }
+      }
+    };
+    DiskId diskId = diskRequestExecutorPool == null ? null : getCommonDiskId(partitionIds);
+    if (diskId == null || !diskRequestExecutorPool.hasExecutor(diskId)) {
+      if (fallbackExecutor == null) {
+        task.run();
+      } else {
+        fallbackExecutor.execute(guardedTask);
+      }
+    } else if (!diskRequestExecutorPool.submit(diskId, guardedTask)) {
+      logger.debug("Request {} rejected because the executor queue of {} is full", request, diskId);
+      metrics.diskRequestQueueFullError.inc();
+      requestResponseChannel.sendResponse(errorResponse.apply(ServerErrorCode.Retry_After_Backoff), request, null);
+    }
+  }
+
+  /**
+   * @param partitionIds the {@link PartitionId}s whose local replicas have to be considered.
+   * @return the {@link DiskId} that hosts the local replicas of all of {@code partitionIds}. {@code null} if there is
+   * no such single disk.
+   */
+  private DiskId getCommonDiskId(List<PartitionId> partitionIds) {
+    DiskId commonDiskId = null;
+    for (PartitionId partitionId : partitionIds) {
+      ReplicaId localReplica = partitionId == null ? null : localPartitionToReplicaMap.get(partitionId);
+      if (localReplica == null || (commonDiskId != null && !commonDiskId.equals(localReplica.getDiskId()))) {
+        return null;
+      }
+      commonDiskId = localReplica.getDiskId();
+    }
+    return commonDiskId;
+  }
+
   /**
    * @param requestType the {@link RequestOrResponseType} of the request.
    * @param id the partition id that the request is targeting.
@@ -699,11 +986,21 @@ public class AmbryRequests implements RequestAPI {
    * @throws IOException if there are I/O errors carrying our the required operation.
    */
   private void handleAdminRequest(Request request) throws InterruptedException, IOException {
+    DataInputStream requestStream = new DataInputStream(request.getInputStream());
+    AdminRequest adminRequest = AdminRequest.readFrom(requestStream, clusterMap);
+    if (adminRequest.getType() == AdminRequestOrResponseType.KeyRangeDigests) {
+      // computing the digests reads the index of the store, so it is not done on the request handler thread.
+      KeyRangeDigestsAdminRequest digestsRequest = KeyRangeDigestsAdminRequest.readFrom(requestStream, adminRequest);
+      executeOnDisk(request, RequestClass.ADMIN, Collections.singletonList(adminRequest.getPartitionId()),
+          () -> handleKeyRangeDigestsRequest(request, digestsRequest),
+          error -> new KeyRangeDigestsAdminResponse(Collections.emptyList(), Collections.emptyList(), null,
+              new AdminResponse(adminRequest.getCorrelationId(), adminRequest.getClientId(), error)));
+      return;
+    }
     long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
+    metrics.updateRequestQueueTime(RequestClass.ADMIN, requestQueueTime);
     long totalTimeSpent = requestQueueTime;
     long startTime = SystemTime.getInstance().milliseconds();
-    DataInputStream requestStream = new DataInputStream(request.getInputStream());
-    AdminRequest adminRequest = AdminRequest.readFrom(requestStream, clusterMap);
     Histogram processingTimeHistogram = null;
     Histogram responseQueueTimeHistogram = null;
     Histogram responseSendTimeHistogram = null;
@@ -756,6 +1053,33 @@ public class AmbryRequests implements RequestAPI {
           requestTotalTimeHistogram = metrics.blobStoreControlRequestTotalTimeInMs;
           response = handleBlobStoreControlRequest(requestStream, adminRequest);
           break;
+        case SealedStoreFiles:
+          metrics.sealedStoreFilesRequestQueueTimeInMs.update(requestQueueTime);
+          metrics.sealedStoreFilesRequestRate.mark();
+          processingTimeHistogram = metrics.sealedStoreFilesRequestProcessingTimeInMs;
+          responseQueueTimeHistogram = metrics.sealedStoreFilesResponseQueueTimeInMs;
+          responseSendTimeHistogram = metrics.sealedStoreFilesResponseSendTimeInMs;
+          requestTotalTimeHistogram = metrics.sealedStoreFilesRequestTotalTimeInMs;
+          response = handleSealedStoreFilesRequest(adminRequest);
+          break;
+        case SealedStoreFileChunk:
+          metrics.sealedStoreFileChunkRequestQueueTimeInMs.update(requestQueueTime);
+          metrics.sealedStoreFileChunkRequestRate.mark();
+          processingTimeHistogram = metrics.sealedStoreFileChunkRequestProcessingTimeInMs;
+          responseQueueTimeHistogram = metrics.sealedStoreFileChunkResponseQueueTimeInMs;
+          responseSendTimeHistogram = metrics.sealedStoreFileChunkResponseSendTimeInMs;
+          requestTotalTimeHistogram = metrics.sealedStoreFileChunkRequestTotalTimeInMs;
+          response = handleSealedStoreFileChunkRequest(requestStream, adminRequest);
+          break;
+        case ReplicationBandwidthBudget:
+          metrics.replicationBandwidthBudgetRequestQueueTimeInMs.update(requestQueueTime);
+          metrics.replicationBandwidthBudgetRequestRate.mark();
+          processingTimeHistogram = metrics.replicationBandwidthBudgetRequestProcessingTimeInMs;
+          responseQueueTimeHistogram = metrics.replicationBandwidthBudgetResponseQueueTimeInMs;
+          responseSendTimeHistogram = metrics.replicationBandwidthBudgetResponseSendTimeInMs;
+          requestTotalTimeHistogram = metrics.replicationBandwidthBudgetRequestTotalTimeInMs;
+          response = handleReplicationBandwidthBudgetRequest(requestStream, adminRequest);
+          break;
       }
     } catch (Exception e) {
       logger.error("Unknown exception for admin request {}", adminRequest, e);
@@ -766,6 +1090,12 @@ public class AmbryRequests implements RequestAPI {
         case CatchupStatus:
           response = new CatchupStatusAdminResponse(false, response);
           break;
+        case SealedStoreFiles:
+          response = new SealedStoreFilesAdminResponse(Collections.emptyMap(), null, response);
+          break;
+        case SealedStoreFileChunk:
+          response = new SealedStoreFileChunkAdminResponse(null, response);
+          break;
       }
     } finally {
       long processingTime = SystemTime.getInstance().milliseconds() - startTime;
@@ -862,6 +1192,26 @@ public class AmbryRequests implements RequestAPI {
     return new AdminResponse(adminRequest.getCorrelationId(), adminRequest.getClientId(), error);
   }
 
+  /**
+   * Handles {@link com.github.ambry.protocol.AdminRequestOrResponseType#ReplicationBandwidthBudget}.
+   * @param requestStream the serialized bytes of the request.
+   * @param adminRequest the {@link AdminRequest} received.
+   * @return the {@link AdminResponse} to the request.
+   * @throws IOException if there is any I/O error reading from the {@code requestStream}.
+   */
+  private AdminResponse handleReplicationBandwidthBudgetRequest(DataInputStream requestStream,
+      AdminRequest adminRequest) throws IOException {
+    ServerErrorCode error = ServerErrorCode.No_Error;
+    ReplicationBandwidthBudgetAdminRequest budgetRequest =
+        ReplicationBandwidthBudgetAdminRequest.readFrom(requestStream, adminRequest);
+    if (!replicationManager.setBandwidthBudget(budgetRequest.getOrigin(), budgetRequest.getBytesPerSec())) {
+      logger.error("Could not set the replication bandwidth budget of {} to {}. Check the origin and the budget",
+          budgetRequest.getOrigin(), budgetRequest.getBytesPerSec());
+      error = ServerErrorCode.Bad_Request;
+    }
+    return new AdminResponse(adminRequest.getCorrelationId(), adminRequest.getClientId(), error);
+  }
+
   /**
    * Handles {@link com.github.ambry.protocol.AdminRequestOrResponseType#CatchupStatus}.
    * @param requestStream the serialized bytes of the request.
@@ -896,6 +1246,140 @@ public class AmbryRequests implements RequestAPI {
     return new CatchupStatusAdminResponse(isCaughtUp, adminResponse);
   }
 
+  /**
+   * Handles {@link com.github.ambry.protocol.AdminRequestOrResponseType#SealedStoreFiles}.
+   * @param adminRequest the {@link AdminRequest} received.
+   * @return the {@link SealedStoreFilesAdminResponse} to the request.
+   */
+  private AdminResponse handleSealedStoreFilesRequest(AdminRequest adminRequest) {
+    SealedStoreFiles sealedStoreFiles = null;
+    ServerErrorCode error = validateRequest(adminRequest.getPartitionId(), RequestOrResponseType.AdminRequest, false);
+    if (error != ServerErrorCode.No_Error) {
+      logger.error("Validating sealed store files request failed with error {} for {}", error, adminRequest);
+    } else {
+      try {
+        sealedStoreFiles = storageManager.getSealedStoreFiles(adminRequest.getPartitionId());
+      } catch (StoreException e) {
+        logger.error("Store exception on listing the sealed files for {}", adminRequest, e);
+        error = ErrorMapping.getStoreErrorMapping(e.getErrorCode());
+      }
+    }
+    AdminResponse adminResponse = new AdminResponse(adminRequest.getCorrelationId(), adminRequest.getClientId(), error);
+    return sealedStoreFiles == null ? new SealedStoreFilesAdminResponse(Collections.emptyMap(), null, adminResponse)
+        : new SealedStoreFilesAdminResponse(sealedStoreFiles.getFileSizes(), sealedStoreFiles.getEndToken(),
+            adminResponse);
+  }
+
+  /**
+   * Handles {@link com.github.ambry.protocol.AdminRequestOrResponseType#SealedStoreFileChunk}.
+   * @param requestStream the serialized bytes of the request.
+   * @param adminRequest the {@link AdminRequest} received.
+   * @return the {@link SealedStoreFileChunkAdminResponse} to the request.
+   * @throws IOException if there is any I/O error reading from the {@code requestStream}.
+   */
+  private AdminResponse handleSealedStoreFileChunkRequest(DataInputStream requestStream, AdminRequest adminRequest)
+      throws IOException {
+    SealedStoreFileChunkAdminRequest chunkRequest =
+        SealedStoreFileChunkAdminRequest.readFrom(requestStream, adminRequest);
+    Send chunk = null;
+    ServerErrorCode error = validateRequest(chunkRequest.getPartitionId(), RequestOrResponseType.AdminRequest, false);
+    if (error != ServerErrorCode.No_Error) {
+      logger.error("Validating sealed store file chunk request failed with error {} for {}", error, chunkRequest);
+    } else {
+      try {
+        chunk = storageManager.getSealedStoreFileChunk(chunkRequest.getPartitionId(), chunkRequest.getFileName(),
+            chunkRequest.getOffset(), chunkRequest.getChunkSizeInBytes());
+      } catch (StoreException e) {
+        logger.error("Store exception on reading a sealed file chunk for {}", chunkRequest, e);
+        error = ErrorMapping.getStoreErrorMapping(e.getErrorCode());
+      } catch (IllegalArgumentException e) {
+        logger.error("Invalid sealed file chunk requested in {}", chunkRequest, e);
+        metrics.badRequestError.inc();
+        error = ServerErrorCode.Bad_Request;
+      }
+    }
+    AdminResponse adminResponse = new AdminResponse(adminRequest.getCorrelationId(), adminRequest.getClientId(), error);
+    return new SealedStoreFileChunkAdminResponse(chunk, adminResponse);
+  }
+
+  /**
+   * Handles {@link com.github.ambry.protocol.AdminRequestOrResponseType#KeyRangeDigests} and sends the response.
+   * @param request the {@link Request} received.
+   * @param digestsRequest the {@link KeyRangeDigestsAdminRequest} deserialized from {@code request}.
+   * @throws InterruptedException if response sending is interrupted.
+   */
+  private void handleKeyRangeDigestsRequest(Request request, KeyRangeDigestsAdminRequest digestsRequest)
+      throws InterruptedException {
+    long requestQueueTime = SystemTime.getInstance().milliseconds() - request.getStartTimeInMs();
+    long startTime = SystemTime.getInstance().milliseconds();
+    metrics.keyRangeDigestsRequestQueueTimeInMs.update(requestQueueTime);
+    metrics.keyRangeDigestsRequestRate.mark();
+    AdminResponse response = null;
+    long processingTime = 0;
+    try {
+      response = getKeyRangeDigestsResponse(digestsRequest);
+    } catch (Exception e) {
+      logger.error("Unknown exception for admin request {}", digestsRequest, e);
+      metrics.unExpectedAdminOperationError.inc();
+      response = new KeyRangeDigestsAdminResponse(Collections.emptyList(), Collections.emptyList(), null,
+          new AdminResponse(digestsRequest.getCorrelationId(), digestsRequest.getClientId(),
+              ServerErrorCode.Unknown_Error));
+    } finally {
+      processingTime = SystemTime.getInstance().milliseconds() - startTime;
+      publicAccessLogger.info("{} {} processingTime {}", digestsRequest, response, processingTime);
+      metrics.keyRangeDigestsRequestProcessingTimeInMs.update(processingTime);
+    }
+    requestResponseChannel.sendResponse(response, request,
+        new ServerNetworkResponseMetrics(metrics.keyRangeDigestsResponseQueueTimeInMs,
+            metrics.keyRangeDigestsResponseSendTimeInMs, metrics.keyRangeDigestsRequestTotalTimeInMs, null, null,
+            requestQueueTime + processingTime));
+  }
+
+  /**
+   * Computes the response to a {@link KeyRangeDigestsAdminRequest}.
+   * @param digestsRequest the {@link KeyRangeDigestsAdminRequest} received.
+   * @return the {@link KeyRangeDigestsAdminResponse} to the request.
+   */
+  private AdminResponse getKeyRangeDigestsResponse(KeyRangeDigestsAdminRequest digestsRequest) {
+    List<Long> digests = new ArrayList<>();
+    List<Integer> keyCounts = new ArrayList<>();
+    List<MessageInfo> messageInfos = null;
+    ServerErrorCode error = validateRequest(digestsRequest.getPartitionId(), RequestOrResponseType.AdminRequest, false);
+    int level = digestsRequest.getLevel();
+    if (error == ServerErrorCode.No_Error && (digestsRequest.getBuckets()
+        .stream()
+        .anyMatch(bucket -> !KeyRangeDigests.isValidBucket(level, bucket)) || (digestsRequest.shouldIncludeKeys()
+        && level != KeyRangeDigests.LEAF_LEVEL))) {
+      metrics.badRequestError.inc();
+      error = ServerErrorCode.Bad_Request;
+    }
+    if (error != ServerErrorCode.No_Error) {
+      logger.error("Validating key range digests request failed with error {} for {}", error, digestsRequest);
+    } else {
+      try {
+        KeyRangeDigests keyRangeDigests =
+            storageManager.getKeyRangeDigests(digestsRequest.getPartitionId(), digestsRequest.getReferenceTimeMs());
+        for (int bucket : digestsRequest.getBuckets()) {
+          digests.add(keyRangeDigests.getDigest(level, bucket));
+          keyCounts.add(keyRangeDigests.getKeyCount(level, bucket));
+        }
+        if (digestsRequest.shouldIncludeKeys()) {
+          messageInfos = storageManager.getKeysInLeafBuckets(digestsRequest.getPartitionId(),
+              new HashSet<>(digestsRequest.getBuckets()), digestsRequest.getReferenceTimeMs());
+        }
+      } catch (StoreException e) {
+        logger.error("Store exception on computing the key range digests for {}", digestsRequest, e);
+        error = ErrorMapping.getStoreErrorMapping(e.getErrorCode());
+        digests.clear();
+        keyCounts.clear();
+        messageInfos = null;
+      }
+    }
+    AdminResponse adminResponse =
+        new AdminResponse(digestsRequest.getCorrelationId(), digestsRequest.getClientId(), error);
+    return new KeyRangeDigestsAdminResponse(digests, keyCounts, messageInfos, adminResponse);
+  }
+
   /**
    * Handles {@link com.github.ambry.protocol.AdminRequestOrResponseType#BlobStoreControl}.
    * @param requestStream the serialized bytes of the request.
@@ -1032,7 +1516,7 @@ public class AmbryRequests implements RequestAPI {
     }
   }
 
-  private void sendGetResponse(RequestResponseChannel requestResponseChannel, GetResponse response, Request request,
+  private void sendGetResponse(RequestResponseChannel requestResponseChannel, Response response, Request request,
       Histogram responseQueueTime, Histogram responseSendTime, Histogram requestTotalTime, long totalTimeSpent,
       long blobSize, MessageFormatFlags flags, ServerMetrics metrics) throws InterruptedException {
 
@@ -1198,4 +1682,137 @@ public class AmbryRequests implements RequestAPI {
     }
     return convertedStoreKeys;
   }
+
+  /**
+   * Wakes up a parked replica metadata request when an entry is added to the store of one of its partitions or when
+   * its wait times out, whichever happens first, and answers the request again without waiting. The request is not
+   * holding a request handler thread while it is parked.
+   */
+  private class NewEntryWaiter implements Runnable {
+    private final Request request;
+    private final ReplicaMetadataRequest replicaMetadataRequest;
+    private final Set<PartitionId> partitionIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private volatile long parkTimeMs;
+    private volatile ScheduledFuture<?> timeout = null;
+
+    /**
+     * @param request the {@link Request} received.
+     * @param replicaMetadataRequest the {@link ReplicaMetadataRequest} deserialized from {@code request}.
+     */
+    NewEntryWaiter(Request request, ReplicaMetadataRequest replicaMetadataRequest) {
+      this.request = request;
+      this.replicaMetadataRequest = replicaMetadataRequest;
+    }
+
+    /**
+     * Listens to new entries in the store of {@code partitionId}.
+     * @param partitionId the {@link PartitionId} of the store to listen to.
+     * @throws StoreException if the store of {@code partitionId} is not started.
+     */
+    void listen(PartitionId partitionId) throws StoreException {
+      partitionIds.add(partitionId);
+      storageManager.addNewEntryListener(partitionId, this);
+      if (done.get()) {
+        removeListeners();
+      }
+    }
+
+    /**
+     * Parks the request until an entry is added to one of the stores listened to or until {@code waitTimeMs} passes.
+     * The request is answered when the waiter wakes up.
+     * @param waitTimeMs the longest time to wait.
+     */
+    void park(long waitTimeMs) {
+      parkTimeMs = SystemTime.getInstance().milliseconds();
+      timeout = scheduler.schedule(() -> wakeUp(true), waitTimeMs, TimeUnit.MILLISECONDS);
+      if (done.get()) {
+        timeout.cancel(false);
+      }
+    }
+
+    /**
+     * Stops listening so that the request can be answered right away.
+     * @return {@code true} if the waiter was stopped. {@code false} if it has already woken up, in which case the
+     * request is answered on the wake up.
+     */
+    boolean cancel() {
+      if (!done.compareAndSet(false, true)) {
+        return false;
+      }
+      removeListeners();
+      return true;
+    }
+
+    @Override
+    public void run() {
+      wakeUp(false);
+    }
+
+    /**
+     * Stops listening and answers the request again on the executor of the disk of its partitions, like any other
+     * replication request, or on the scheduler if there is none. It is never answered on the thread that woke it up,
+     * which may be the one writing to a store.
+     * @param timedOut {@code true} if the wait timed out. {@code false} if an entry was added.
+     */
+    private void wakeUp(boolean timedOut) {
+      if (!done.compareAndSet(false, true)) {
+        return;
+      }
+      removeListeners();
+      if (timeout != null) {
+        timeout.cancel(false);
+      }
+      if (timedOut) {
+        metrics.replicaMetadataRequestWaitTimedOutCount.inc();
+      } else {
+        metrics.replicaMetadataRequestWokenByNewEntryCount.inc();
+      }
+      if (parkTimeMs > 0) {
+        metrics.replicaMetadataRequestWaitTimeInMs.update(SystemTime.getInstance().milliseconds() - parkTimeMs);
+      }
+      List<PartitionId> requestPartitionIds = replicaMetadataRequest.getReplicaMetadataRequestInfoList()
+          .stream()
+          .map(ReplicaMetadataRequestInfo::getPartitionId)
+          .collect(Collectors.toList());
+      try {
+        executeOnDisk(request, requestPartitionIds, scheduler,
+            () -> handleReplicaMetadataRequest(request, replicaMetadataRequest,
+                SystemTime.getInstance().milliseconds() - request.getStartTimeInMs(), false),
+            error -> new ReplicaMetadataResponse(replicaMetadataRequest.getCorrelationId(),
+                replicaMetadataRequest.getClientId(), error));
+      } catch (RejectedExecutionException e) {
+        logger.error("Could not answer parked request {} closing connection", request, e);
+        closeConnection();
+      } catch (InterruptedException e) {
+        logger.error("Interrupted while answering parked request {}", request, e);
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /**
+     * Removes the listeners from all the stores listened to.
+     */
+    private void removeListeners() {
+      for (PartitionId partitionId : partitionIds) {
+        try {
+          storageManager.removeNewEntryListener(partitionId, this);
+        } catch (StoreException e) {
+          // the listeners of a store that is not started anymore were dropped with it
+          logger.trace("Could not remove new entry listener of {} from {}", request, partitionId, e);
+        }
+      }
+    }
+
+    /**
+     * Closes the connection of the request.
+     */
+    private void closeConnection() {
+      try {
+        requestResponseChannel.closeConnection(request);
+      } catch (InterruptedException e) {
+        logger.error("Interrupted while closing connection for request {}", request, e);
+      }
+    }
+  }
 }
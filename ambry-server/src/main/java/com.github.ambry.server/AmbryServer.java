@@ -21,6 +21,7 @@ import com.github.ambry.clustermap.ClusterParticipant;
 import com.github.ambry.clustermap.DataNodeId;
 import com.github.ambry.clustermap.ReplicaStatusDelegate;
 import com.github.ambry.commons.LoggingNotificationSystem;
+import com.github.ambry.commons.SSLFactory;
 import com.github.ambry.config.ClusterMapConfig;
 import com.github.ambry.config.ConnectionPoolConfig;
 import com.github.ambry.config.DiskManagerConfig;
@@ -35,6 +36,9 @@ import com.github.ambry.messageformat.BlobStoreHardDelete;
 import com.github.ambry.messageformat.BlobStoreRecovery;
 import com.github.ambry.network.BlockingChannelConnectionPool;
 import com.github.ambry.network.ConnectionPool;
+import com.github.ambry.network.NettySocketServer;
+import com.github.ambry.network.NetworkClientFactory;
+import com.github.ambry.network.NetworkMetrics;
 import com.github.ambry.network.NetworkServer;
 import com.github.ambry.network.Port;
 import com.github.ambry.network.PortType;
@@ -71,6 +75,7 @@ public class AmbryServer {
   private NetworkServer networkServer = null;
   private AmbryRequests requests = null;
   private RequestHandlerPool requestHandlerPool = null;
+  private DiskRequestExecutorPool diskRequestExecutorPool = null;
   private ScheduledExecutorService scheduler = null;
   private StorageManager storageManager = null;
   private StatsManager statsManager = null;
@@ -148,10 +153,25 @@ public class AmbryServer {
       StoreKeyConverterFactory storeKeyConverterFactory =
           Utils.getObj(serverConfig.serverStoreKeyConverterFactory, properties, registry);
 
+      NetworkClientFactory replicationNetworkClientFactory = null;
+      if (replicationConfig.replicationNetworkClientEnabled) {
+        // the network server registers the network metrics in the server registry, so the metrics of the replication
+        // network clients are kept in a registry of their own that is added to it under a prefix.
+        MetricRegistry replicationNetworkRegistry = new MetricRegistry();
+        NetworkMetrics replicationNetworkMetrics = new NetworkMetrics(replicationNetworkRegistry);
+        registry.register(MetricRegistry.name(ReplicationManager.class, "NetworkClient"), replicationNetworkRegistry);
+        SSLFactory replicationSslFactory =
+            clusterMapConfig.clusterMapSslEnabledDatacenters.isEmpty() ? null : SSLFactory.getNewInstance(sslConfig);
+        replicationNetworkClientFactory =
+            new NetworkClientFactory(replicationNetworkMetrics, networkConfig, replicationSslFactory,
+                connectionPoolConfig.connectionPoolMaxConnectionsPerPortPlainText,
+                connectionPoolConfig.connectionPoolMaxConnectionsPerPortSSL,
+                replicationConfig.replicationConnectionPoolCheckoutTimeoutMs, time);
+      }
       replicationManager =
           new ReplicationManager(replicationConfig, clusterMapConfig, storeConfig, storageManager, storeKeyFactory,
-              clusterMap, scheduler, nodeId, connectionPool, registry, notificationSystem, storeKeyConverterFactory,
-              serverConfig.serverMessageTransformer);
+              clusterMap, scheduler, nodeId, connectionPool, replicationNetworkClientFactory, registry,
+              notificationSystem, storeKeyConverterFactory, serverConfig.serverMessageTransformer);
       replicationManager.start();
 
       ArrayList<Port> ports = new ArrayList<Port>();
@@ -160,11 +180,20 @@ public class AmbryServer {
         ports.add(new Port(nodeId.getSSLPort(), PortType.SSL));
       }
 
-      networkServer = new SocketServer(networkConfig, sslConfig, registry, ports);
+      networkServer = networkConfig.networkNettyServerEnabled ? new NettySocketServer(networkConfig, sslConfig,
+          registry, ports)
+          : new SocketServer(networkConfig, sslConfig, registry, ports, new ServerRequestClassifier());
+      if (serverConfig.serverRequestDiskExecutorNumOfThreads > 0) {
+        diskRequestExecutorPool = new DiskRequestExecutorPool(clusterMap.getReplicaIds(nodeId),
+            serverConfig.serverRequestDiskExecutorNumOfThreads, serverConfig.serverRequestDiskExecutorQueueSize,
+            registry, time);
+      }
       requests =
           new AmbryRequests(storageManager, networkServer.getRequestResponseChannel(), clusterMap, nodeId, registry,
               findTokenFactory, notificationSystem, replicationManager, storeKeyFactory,
-              serverConfig.serverEnableStoreDataPrefetch, storeKeyConverterFactory);
+              serverConfig.serverEnableStoreDataPrefetch, storeKeyConverterFactory, diskRequestExecutorPool,
+              serverConfig.serverRequestQueueTimeBudgetMs, scheduler,
+              serverConfig.serverReplicaMetadataRequestMaxWaitTimeMs);
       requestHandlerPool = new RequestHandlerPool(serverConfig.serverRequestHandlerNumOfThreads,
           networkServer.getRequestResponseChannel(), requests);
       networkServer.start();
@@ -225,6 +254,9 @@ public class AmbryServer {
       if (requestHandlerPool != null) {
         requestHandlerPool.shutdown();
       }
+      if (diskRequestExecutorPool != null) {
+        diskRequestExecutorPool.shutdown();
+      }
       if (replicationManager != null) {
         replicationManager.shutdown();
       }
@@ -0,0 +1,170 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.server;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.clustermap.DiskId;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.utils.Time;
+import com.github.ambry.utils.Utils;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * A set of thread pools, one per {@link DiskId}, that execute the store work of requests targeting replicas on that
+ * disk. A slow or failing disk only holds up the threads and the queue assigned to it, so requests to replicas on
+ * healthy disks do not wait behind it. The queue of each disk is bounded and work is rejected immediately once it is
+ * full.
+ */
+class DiskRequestExecutorPool {
+  private final Map<DiskId, DiskExecutor> diskExecutors = new HashMap<>();
+  private final Time time;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param replicaIds the {@link ReplicaId}s hosted on this node. One executor is created for each distinct disk.
+   * @param numThreadsPerDisk the number of threads that execute requests for each disk.
+   * @param queueSizePerDisk the maximum number of requests that can be waiting for a thread on each disk.
+   * @param registry the {@link MetricRegistry} to register the per disk metrics with.
+   * @param time the {@link Time} instance to use.
+   */
+  DiskRequestExecutorPool(List<? extends ReplicaId> replicaIds, int numThreadsPerDisk, int queueSizePerDisk,
+      MetricRegistry registry, Time time) {
+    if (numThreadsPerDisk <= 0 || queueSizePerDisk <= 0) {
+      throw new IllegalArgumentException(
+          "Invalid number of threads [" + numThreadsPerDisk + "] or queue size [" + queueSizePerDisk + "] per disk");
+    }
+    this.time = time;
+    for (ReplicaId replicaId : replicaIds) {
+      DiskId diskId = replicaId.getDiskId();
+      if (!diskExecutors.containsKey(diskId)) {
+        diskExecutors.put(diskId, new DiskExecutor(diskId, numThreadsPerDisk, queueSizePerDisk, registry));
+      }
+    }
+    logger.info("Created request executors for {} disks with {} threads and a queue size of {} per disk",
+        diskExecutors.size(), numThreadsPerDisk, queueSizePerDisk);
+  }
+
+  /**
+   * @param diskId the {@link DiskId} to check.
+   * @return {@code true} if there is an executor for {@code diskId}. {@code false} otherwise.
+   */
+  boolean hasExecutor(DiskId diskId) {
+    return diskExecutors.containsKey(diskId);
+  }
+
+  /**
+   * Queues {@code task} for execution on the threads of {@code diskId}.
+   * @param diskId the {@link DiskId} whose threads should execute the task.
+   * @param task the work to execute.
+   * @return {@code true} if the task was queued. {@code false} if the queue of the disk is full (or the pool has been
+   * shut down) and the task was rejected.
+   * @throws IllegalArgumentException if there is no executor for {@code diskId}.
+   */
+  boolean submit(DiskId diskId, Runnable task) {
+    DiskExecutor diskExecutor = diskExecutors.get(diskId);
+    if (diskExecutor == null) {
+      throw new IllegalArgumentException("There is no request executor for disk " + diskId);
+    }
+    return diskExecutor.submit(task);
+  }
+
+  /**
+   * @param diskId the {@link DiskId} whose queue size is required.
+   * @return the number of requests waiting for a thread on {@code diskId}.
+   */
+  int getQueueSize(DiskId diskId) {
+    return diskExecutors.get(diskId).executor.getQueue().size();
+  }
+
+  /**
+   * Stops accepting new work and waits for the work already queued to complete.
+   */
+  void shutdown() {
+    logger.info("Shutting down disk request executors");
+    for (DiskExecutor diskExecutor : diskExecutors.values()) {
+      diskExecutor.executor.shutdown();
+    }
+    for (DiskExecutor diskExecutor : diskExecutors.values()) {
+      try {
+        if (!diskExecutor.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+          logger.error("Request executor for {} did not terminate in time", diskExecutor.mountPath);
+          diskExecutor.executor.shutdownNow();
+        }
+      } catch (InterruptedException e) {
+        logger.error("Interrupted while waiting for the request executor of {} to terminate", diskExecutor.mountPath);
+        diskExecutor.executor.shutdownNow();
+      }
+    }
+    logger.info("Disk request executors shut down completely");
+  }
+
+  /**
+   * The executor and the metrics of a single disk.
+   */
+  private class DiskExecutor {
+    final String mountPath;
+    final ThreadPoolExecutor executor;
+    final Histogram queueTimeInMs;
+    final Counter rejectedCount;
+
+    DiskExecutor(DiskId diskId, int numThreads, int queueSize, MetricRegistry registry) {
+      mountPath = diskId.getMountPath();
+      AtomicInteger threadCount = new AtomicInteger(0);
+      executor = new ThreadPoolExecutor(numThreads, numThreads, 0L, TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(queueSize),
+          runnable -> Utils.newThread("disk-request-executor-" + mountPath + "-" + threadCount.getAndIncrement(),
+              runnable, true));
+      String prefix = mountPath + "-";
+      queueTimeInMs =
+          registry.histogram(MetricRegistry.name(DiskRequestExecutorPool.class, prefix + "RequestQueueTimeInMs"));
+      rejectedCount =
+          registry.counter(MetricRegistry.name(DiskRequestExecutorPool.class, prefix + "RejectedRequestCount"));
+      Gauge<Integer> queueSizeGauge = () -> executor.getQueue().size();
+      registry.register(MetricRegistry.name(DiskRequestExecutorPool.class, prefix + "RequestQueueSize"),
+          queueSizeGauge);
+    }
+
+    /**
+     * @param task the work to execute.
+     * @return {@code true} if the task was queued. {@code false} if it was rejected.
+     */
+    boolean submit(Runnable task) {
+      long enqueueTimeInMs = time.milliseconds();
+      try {
+        executor.execute(() -> {
+          queueTimeInMs.update(time.milliseconds() - enqueueTimeInMs);
+          task.run();
+        });
+        return true;
+      } catch (RejectedExecutionException e) {
+        rejectedCount.inc();
+        logger.trace("Request executor for {} rejected a task", mountPath);
+        return false;
+      }
+    }
+  }
+}
@@ -17,6 +17,9 @@ import com.codahale.metrics.Counter;
 import com.codahale.metrics.Histogram;
 import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.network.RequestClass;
+import java.util.EnumMap;
+import java.util.Map;
 
 
 /**
@@ -112,6 +115,7 @@ public class ServerMetrics {
   public final Histogram replicaMetadataSendTimeInMs;
   public final Histogram replicaMetadataTotalTimeInMs;
   public final Histogram replicaMetadataTotalSizeOfMessages;
+  public final Histogram replicaMetadataRequestWaitTimeInMs;
 
   public final Histogram triggerCompactionRequestQueueTimeInMs;
   public final Histogram triggerCompactionRequestProcessingTimeInMs;
@@ -143,6 +147,29 @@ public class ServerMetrics {
   public final Histogram blobStoreControlResponseSendTimeInMs;
   public final Histogram blobStoreControlRequestTotalTimeInMs;
 
+  public final Histogram sealedStoreFilesRequestQueueTimeInMs;
+  public final Histogram sealedStoreFilesRequestProcessingTimeInMs;
+  public final Histogram sealedStoreFilesResponseQueueTimeInMs;
+  public final Histogram sealedStoreFilesResponseSendTimeInMs;
+  public final Histogram sealedStoreFilesRequestTotalTimeInMs;
+
+  public final Histogram sealedStoreFileChunkRequestQueueTimeInMs;
+  public final Histogram sealedStoreFileChunkRequestProcessingTimeInMs;
+  public final Histogram sealedStoreFileChunkResponseQueueTimeInMs;
+  public final Histogram sealedStoreFileChunkResponseSendTimeInMs;
+  public final Histogram sealedStoreFileChunkRequestTotalTimeInMs;
+  public final Histogram keyRangeDigestsRequestQueueTimeInMs;
+  public final Histogram keyRangeDigestsRequestProcessingTimeInMs;
+  public final Histogram keyRangeDigestsResponseQueueTimeInMs;
+  public final Histogram keyRangeDigestsResponseSendTimeInMs;
+  public final Histogram keyRangeDigestsRequestTotalTimeInMs;
+
+  public final Histogram replicationBandwidthBudgetRequestQueueTimeInMs;
+  public final Histogram replicationBandwidthBudgetRequestProcessingTimeInMs;
+  public final Histogram replicationBandwidthBudgetResponseQueueTimeInMs;
+  public final Histogram replicationBandwidthBudgetResponseSendTimeInMs;
+  public final Histogram replicationBandwidthBudgetRequestTotalTimeInMs;
+
   public final Histogram blobSizeInBytes;
   public final Histogram blobUserMetadataSizeInBytes;
 
@@ -164,6 +191,10 @@ public class ServerMetrics {
   public final Meter replicationControlRequestRate;
   public final Meter catchupStatusRequestRate;
   public final Meter blobStoreControlRequestRate;
+  public final Meter sealedStoreFilesRequestRate;
+  public final Meter sealedStoreFileChunkRequestRate;
+  public final Meter keyRangeDigestsRequestRate;
+  public final Meter replicationBandwidthBudgetRequestRate;
 
   public final Meter putSmallBlobRequestRate;
   public final Meter getSmallBlobRequestRate;
@@ -199,6 +230,16 @@ public class ServerMetrics {
   public final Counter ttlAlreadyUpdatedError;
   public final Counter ttlUpdateRejectedError;
   public final Counter replicationResponseMessageSizeTooHigh;
+  public final Counter diskRequestQueueFullError;
+  public final Counter replicaMetadataRequestWokenByNewEntryCount;
+  public final Counter replicaMetadataRequestWaitTimedOutCount;
+
+  public final Histogram responseCompressionTimeInUs;
+  public final Counter responseCompressionUncompressedBytes;
+  public final Counter responseCompressionCompressedBytes;
+
+  private final Map<RequestClass, Histogram> requestClassQueueTimeInMs = new EnumMap<>(RequestClass.class);
+  private final Map<RequestClass, Counter> requestClassShedCount = new EnumMap<>(RequestClass.class);
 
   public ServerMetrics(MetricRegistry registry) {
     putBlobRequestQueueTimeInMs =
@@ -328,6 +369,8 @@ public class ServerMetrics {
         registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaMetadataTotalTime"));
     replicaMetadataTotalSizeOfMessages =
         registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaMetadataTotalSizeOfMessages"));
+    replicaMetadataRequestWaitTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicaMetadataRequestWaitTime"));
 
     triggerCompactionRequestQueueTimeInMs =
         registry.histogram(MetricRegistry.name(AmbryRequests.class, "TriggerCompactionRequestQueueTimeInMs"));
@@ -384,6 +427,50 @@ public class ServerMetrics {
     blobStoreControlRequestTotalTimeInMs =
         registry.histogram(MetricRegistry.name(AmbryRequests.class, "BlobStoreControlRequestTotalTimeInMs"));
 
+    sealedStoreFilesRequestQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFilesRequestQueueTimeInMs"));
+    sealedStoreFilesRequestProcessingTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFilesRequestProcessingTimeInMs"));
+    sealedStoreFilesResponseQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFilesResponseQueueTimeInMs"));
+    sealedStoreFilesResponseSendTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFilesResponseSendTimeInMs"));
+    sealedStoreFilesRequestTotalTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFilesRequestTotalTimeInMs"));
+
+    sealedStoreFileChunkRequestQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFileChunkRequestQueueTimeInMs"));
+    sealedStoreFileChunkRequestProcessingTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFileChunkRequestProcessingTimeInMs"));
+    sealedStoreFileChunkResponseQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFileChunkResponseQueueTimeInMs"));
+    sealedStoreFileChunkResponseSendTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFileChunkResponseSendTimeInMs"));
+    sealedStoreFileChunkRequestTotalTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "SealedStoreFileChunkRequestTotalTimeInMs"));
+
+    keyRangeDigestsRequestQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "KeyRangeDigestsRequestQueueTimeInMs"));
+    keyRangeDigestsRequestProcessingTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "KeyRangeDigestsRequestProcessingTimeInMs"));
+    keyRangeDigestsResponseQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "KeyRangeDigestsResponseQueueTimeInMs"));
+    keyRangeDigestsResponseSendTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "KeyRangeDigestsResponseSendTimeInMs"));
+    keyRangeDigestsRequestTotalTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "KeyRangeDigestsRequestTotalTimeInMs"));
+
+    replicationBandwidthBudgetRequestQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicationBandwidthBudgetRequestQueueTimeInMs"));
+    replicationBandwidthBudgetRequestProcessingTimeInMs = registry.histogram(
+        MetricRegistry.name(AmbryRequests.class, "ReplicationBandwidthBudgetRequestProcessingTimeInMs"));
+    replicationBandwidthBudgetResponseQueueTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicationBandwidthBudgetResponseQueueTimeInMs"));
+    replicationBandwidthBudgetResponseSendTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicationBandwidthBudgetResponseSendTimeInMs"));
+    replicationBandwidthBudgetRequestTotalTimeInMs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ReplicationBandwidthBudgetRequestTotalTimeInMs"));
+
     blobSizeInBytes = registry.histogram(MetricRegistry.name(AmbryRequests.class, "BlobSize"));
     blobUserMetadataSizeInBytes = registry.histogram(MetricRegistry.name(AmbryRequests.class, "BlobUserMetadataSize"));
 
@@ -411,6 +498,13 @@ public class ServerMetrics {
     catchupStatusRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "CatchupStatusRequestRate"));
     blobStoreControlRequestRate =
         registry.meter(MetricRegistry.name(AmbryRequests.class, "BlobStoreControlRequestRate"));
+    sealedStoreFilesRequestRate =
+        registry.meter(MetricRegistry.name(AmbryRequests.class, "SealedStoreFilesRequestRate"));
+    sealedStoreFileChunkRequestRate =
+        registry.meter(MetricRegistry.name(AmbryRequests.class, "SealedStoreFileChunkRequestRate"));
+    keyRangeDigestsRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "KeyRangeDigestsRequestRate"));
+    replicationBandwidthBudgetRequestRate =
+        registry.meter(MetricRegistry.name(AmbryRequests.class, "ReplicationBandwidthBudgetRequestRate"));
 
     putSmallBlobRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "PutSmallBlobRequestRate"));
     getSmallBlobRequestRate = registry.meter(MetricRegistry.name(AmbryRequests.class, "GetSmallBlobRequestRate"));
@@ -453,6 +547,37 @@ public class ServerMetrics {
     ttlUpdateRejectedError = registry.counter(MetricRegistry.name(AmbryRequests.class, "TtlUpdateRejectedError"));
     replicationResponseMessageSizeTooHigh =
         registry.counter(MetricRegistry.name(AmbryRequests.class, "ReplicationResponseMessageSizeTooHigh"));
+    diskRequestQueueFullError = registry.counter(MetricRegistry.name(AmbryRequests.class, "DiskRequestQueueFullError"));
+    replicaMetadataRequestWokenByNewEntryCount =
+        registry.counter(MetricRegistry.name(AmbryRequests.class, "ReplicaMetadataRequestWokenByNewEntryCount"));
+    replicaMetadataRequestWaitTimedOutCount =
+        registry.counter(MetricRegistry.name(AmbryRequests.class, "ReplicaMetadataRequestWaitTimedOutCount"));
+    responseCompressionTimeInUs =
+        registry.histogram(MetricRegistry.name(AmbryRequests.class, "ResponseCompressionTimeInUs"));
+    responseCompressionUncompressedBytes =
+        registry.counter(MetricRegistry.name(AmbryRequests.class, "ResponseCompressionUncompressedBytes"));
+    responseCompressionCompressedBytes =
+        registry.counter(MetricRegistry.name(AmbryRequests.class, "ResponseCompressionCompressedBytes"));
+    for (RequestClass requestClass : RequestClass.values()) {
+      requestClassQueueTimeInMs.put(requestClass,
+          registry.histogram(MetricRegistry.name(AmbryRequests.class, requestClass + "-RequestQueueTime")));
+      requestClassShedCount.put(requestClass,
+          registry.counter(MetricRegistry.name(AmbryRequests.class, requestClass + "-RequestShedCount")));
+    }
+  }
+
+  /**
+   * Update the time that a request of {@code requestClass} waited in the request queue.
+   */
+  public void updateRequestQueueTime(RequestClass requestClass, long queueTimeInMs) {
+    requestClassQueueTimeInMs.get(requestClass).update(queueTimeInMs);
+  }
+
+  /**
+   * Count a request of {@code requestClass} that was not executed because it waited too long in the request queue.
+   */
+  public void markRequestShed(RequestClass requestClass) {
+    requestClassShedCount.get(requestClass).inc();
   }
 
   /**
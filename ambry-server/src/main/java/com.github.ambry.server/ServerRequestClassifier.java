@@ -0,0 +1,98 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.server;
+
+import com.github.ambry.network.Request;
+import com.github.ambry.network.RequestClass;
+import com.github.ambry.network.RequestClassifier;
+import com.github.ambry.protocol.GetRequest;
+import com.github.ambry.protocol.RequestOrResponseType;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+
+/**
+ * {@link RequestClassifier} for the requests of the storage server. It peeks at the header of the request (type,
+ * version, correlation id and client id) and resets the input stream of the request afterwards. Get requests are
+ * replication requests if their client id has the {@link GetRequest#Replication_Client_Id_Prefix}.
+ * <p/>
+ * Requests that cannot be classified, such as requests whose stream does not support mark and reset or that are too
+ * short to have a header, are classified as {@link RequestClass#CLIENT_READ}. They fail when they are handled.
+ */
+class ServerRequestClassifier implements RequestClassifier {
+  private static final byte[] REPLICATION_CLIENT_ID_PREFIX =
+      GetRequest.Replication_Client_Id_Prefix.getBytes(StandardCharsets.UTF_8);
+  // type + version + correlation id + client id size + the replication prefix of the client id
+  private static final int MAX_HEADER_BYTES_READ = 2 + 2 + 4 + 4 + REPLICATION_CLIENT_ID_PREFIX.length;
+
+  @Override
+  public RequestClass classify(Request request) {
+    InputStream inputStream = request.getInputStream();
+    if (inputStream == null || !inputStream.markSupported()) {
+      return RequestClass.CLIENT_READ;
+    }
+    inputStream.mark(MAX_HEADER_BYTES_READ);
+    try {
+      DataInputStream stream = new DataInputStream(inputStream);
+      short type = stream.readShort();
+      if (type < 0 || type >= RequestOrResponseType.values().length) {
+        return RequestClass.CLIENT_READ;
+      }
+      switch (RequestOrResponseType.values()[type]) {
+        case PutRequest:
+        case DeleteRequest:
+        case TtlUpdateRequest:
+          return RequestClass.CLIENT_WRITE;
+        case ReplicaMetadataRequest:
+          return RequestClass.REPLICATION;
+        case AdminRequest:
+          return RequestClass.ADMIN;
+        case GetRequest:
+          // skip the version and the correlation id
+          stream.readShort();
+          stream.readInt();
+          return hasReplicationClientId(stream) ? RequestClass.REPLICATION : RequestClass.CLIENT_READ;
+        default:
+          return RequestClass.CLIENT_READ;
+      }
+    } catch (IOException e) {
+      return RequestClass.CLIENT_READ;
+    } finally {
+      try {
+        inputStream.reset();
+      } catch (IOException e) {
+        throw new IllegalStateException("Could not reset the stream of request " + request + " after classifying it",
+            e);
+      }
+    }
+  }
+
+  /**
+   * @param stream the stream of the request, positioned at the size of the client id.
+   * @return {@code true} if the client id starts with the {@link GetRequest#Replication_Client_Id_Prefix}.
+   * @throws IOException if the stream ends before the prefix could be read.
+   */
+  private boolean hasReplicationClientId(DataInputStream stream) throws IOException {
+    int clientIdSize = stream.readInt();
+    if (clientIdSize < REPLICATION_CLIENT_ID_PREFIX.length) {
+      return false;
+    }
+    byte[] prefix = new byte[REPLICATION_CLIENT_ID_PREFIX.length];
+    stream.readFully(prefix);
+    return Arrays.equals(prefix, REPLICATION_CLIENT_ID_PREFIX);
+  }
+}
@@ -44,6 +44,7 @@ import com.github.ambry.protocol.AdminRequest;
 import com.github.ambry.protocol.AdminRequestOrResponseType;
 import com.github.ambry.protocol.AdminResponse;
 import com.github.ambry.protocol.BlobStoreControlAdminRequest;
+import com.github.ambry.protocol.CompressionType;
 import com.github.ambry.protocol.CatchupStatusAdminRequest;
 import com.github.ambry.protocol.CatchupStatusAdminResponse;
 import com.github.ambry.protocol.DeleteRequest;
@@ -57,6 +58,7 @@ import com.github.ambry.protocol.ReplicaMetadataRequest;
 import com.github.ambry.protocol.ReplicaMetadataRequestInfo;
 import com.github.ambry.protocol.ReplicaMetadataResponse;
 import com.github.ambry.protocol.ReplicaMetadataResponseInfo;
+import com.github.ambry.protocol.ReplicationBandwidthBudgetAdminRequest;
 import com.github.ambry.protocol.ReplicationControlAdminRequest;
 import com.github.ambry.protocol.RequestControlAdminRequest;
 import com.github.ambry.protocol.RequestOrResponse;
@@ -108,6 +110,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.Test;
@@ -286,6 +291,21 @@ public class AmbryRequestsTest {
     // PartitionUnknown is hard to simulate without betraying knowledge of the internals of MockClusterMap.
   }
 
+  /**
+   * Tests that {@link AdminRequestOrResponseType#ReplicationBandwidthBudget} changes the budget of datacenters that
+   * are replicated from and fails for other datacenters or for negative budgets.
+   * @throws InterruptedException
+   * @throws IOException
+   */
+  @Test
+  public void replicationBandwidthBudgetTest() throws InterruptedException, IOException {
+    String datacenter = dataNodeId.getDatacenterName();
+    sendAndVerifyReplicationBandwidthBudgetRequest(datacenter, 1000, ServerErrorCode.No_Error);
+    sendAndVerifyReplicationBandwidthBudgetRequest(datacenter, 0, ServerErrorCode.No_Error);
+    sendAndVerifyReplicationBandwidthBudgetRequest(datacenter, -1, ServerErrorCode.Bad_Request);
+    sendAndVerifyReplicationBandwidthBudgetRequest(UtilsTest.getRandomString(10), 1000, ServerErrorCode.Bad_Request);
+  }
+
   /**
    * Tests for the response received on a {@link CatchupStatusAdminRequest} for different cases
    * @throws InterruptedException
@@ -605,10 +625,127 @@ public class AmbryRequestsTest {
     miscTtlUpdateFailuresTest();
   }
 
+  /**
+   * Tests that requests that waited in the request queue for longer than the queue time budget are answered with
+   * {@link ServerErrorCode#Request_Deadline_Exceeded} without being executed.
+   * @throws InterruptedException
+   * @throws IOException
+   */
+  @Test
+  public void requestQueueTimeBudgetTest() throws InterruptedException, IOException {
+    MockPartitionId id =
+        (MockPartitionId) clusterMap.getWritablePartitionIds(MockClusterMap.DEFAULT_PARTITION_CLASS).get(0);
+    BlobId blobId = new BlobId(CommonTestUtils.getCurrentBlobIdVersion(), BlobId.BlobIdType.NATIVE,
+        ClusterMapUtils.UNKNOWN_DATACENTER_ID, Utils.getRandomShort(TestUtils.RANDOM),
+        Utils.getRandomShort(TestUtils.RANDOM), id, false, BlobId.BlobDataType.DATACHUNK);
+    validKeysInStore.add(blobId);
+    AmbryRequests requestsWithBudget =
+        new AmbryRequests(storageManager, requestResponseChannel, clusterMap, dataNodeId, new MetricRegistry(),
+            FIND_TOKEN_FACTORY, null, replicationManager, null, false, storeKeyConverterFactory, null, 1000,
+            null, 0);
+    TtlUpdateRequest request =
+        new TtlUpdateRequest(TestUtils.RANDOM.nextInt(), UtilsTest.getRandomString(10), blobId, Utils.Infinite_Time,
+            SystemTime.getInstance().milliseconds());
+    storageManager.resetStore();
+    // MockRequest reports a start time of 0, so it is long past the budget
+    Request mockRequest = MockRequest.fromRequest(request);
+    requestsWithBudget.handleRequests(mockRequest);
+    assertEquals("Request accompanying response does not match original request", mockRequest,
+        requestResponseChannel.lastOriginalRequest);
+    Response response = (Response) requestResponseChannel.lastResponse;
+    assertEquals("Correlation id in response does match the one in the request", request.getCorrelationId(),
+        response.getCorrelationId());
+    assertEquals("Error code does not match expected", ServerErrorCode.Request_Deadline_Exceeded,
+        response.getError());
+    assertNull("The request should not have reached the store", MockStorageManager.operationReceived);
+  }
+
+  /**
+   * Tests that a replica metadata request that asks to wait for new entries is parked when there are none, and that it
+   * is answered on the executor of the disk of its partition once an entry is appended to the journal of its store.
+   * @throws Exception
+   */
+  @Test
+  public void replicaMetadataRequestWakeUpOnNewEntryTest() throws Exception {
+    doReplicaMetadataRequestWaitTest(60000, true);
+  }
+
+  /**
+   * Tests that a parked replica metadata request is answered without any entries once its wait times out.
+   * @throws Exception
+   */
+  @Test
+  public void replicaMetadataRequestWaitTimeoutTest() throws Exception {
+    doReplicaMetadataRequestWaitTest(2000, false);
+  }
+
   // helpers
 
   // general
 
+  /**
+   * Sends a replica metadata request that waits for new entries for up to {@code maxWaitTimeMs} and verifies that it is
+   * parked and answered once it wakes up.
+   * @param maxWaitTimeMs the longest time the request waits for new entries.
+   * @param appendEntry {@code true} if an entry should be appended to the store to wake the request up. {@code false}
+   *                    if the request should time out.
+   * @throws Exception
+   */
+  private void doReplicaMetadataRequestWaitTest(long maxWaitTimeMs, boolean appendEntry) throws Exception {
+    PartitionId id = clusterMap.getWritablePartitionIds(MockClusterMap.DEFAULT_PARTITION_CLASS).get(0);
+    ScheduledExecutorService scheduler = Utils.newScheduler(1, false);
+    DiskRequestExecutorPool diskRequestExecutorPool =
+        new DiskRequestExecutorPool(clusterMap.getReplicaIds(dataNodeId), 1, 10, new MetricRegistry(),
+            SystemTime.getInstance());
+    try {
+      AmbryRequests waitingRequests =
+          new AmbryRequests(storageManager, requestResponseChannel, clusterMap, dataNodeId, new MetricRegistry(),
+              FIND_TOKEN_FACTORY, null, replicationManager, null, false, storeKeyConverterFactory,
+              diskRequestExecutorPool, 0, scheduler, maxWaitTimeMs);
+      ReplicaMetadataRequestInfo requestInfo =
+          new ReplicaMetadataRequestInfo(id, FIND_TOKEN_FACTORY.getNewFindToken(), "localhost", "/tmp");
+      ReplicaMetadataRequest request =
+          new ReplicaMetadataRequest(TestUtils.RANDOM.nextInt(), UtilsTest.getRandomString(10),
+              Collections.singletonList(requestInfo), Long.MAX_VALUE, CompressionType.None, maxWaitTimeMs);
+      storageManager.resetStore();
+      requestResponseChannel.lastResponse = null;
+      requestResponseChannel.lastOriginalRequest = null;
+      Request mockRequest = MockRequest.fromRequest(request, SystemTime.getInstance().milliseconds());
+      waitingRequests.handleRequests(mockRequest);
+
+      long deadlineMs = System.currentTimeMillis() + 10000;
+      while (storageManager.getNewEntryListenerCount(id) == 0) {
+        assertTrue("Request should have been parked", System.currentTimeMillis() < deadlineMs);
+        Thread.sleep(10);
+      }
+      assertNull("Parked request should not have been answered", requestResponseChannel.lastResponse);
+      assertEquals("The store should have been looked at", RequestOrResponseType.ReplicaMetadataRequest,
+          MockStorageManager.operationReceived);
+      storageManager.resetStore();
+      if (appendEntry) {
+        storageManager.appendEntry(id);
+      }
+
+      while (requestResponseChannel.lastOriginalRequest != mockRequest) {
+        assertTrue("Request should have been answered", System.currentTimeMillis() < deadlineMs);
+        Thread.sleep(10);
+      }
+      ReplicaMetadataResponse response = (ReplicaMetadataResponse) requestResponseChannel.lastResponse;
+      assertEquals("Unexpected error", ServerErrorCode.No_Error, response.getError());
+      assertEquals("Unexpected number of partitions", 1, response.getReplicaMetadataResponseInfoList().size());
+      assertTrue("There should be no entries",
+          response.getReplicaMetadataResponseInfoList().get(0).getMessageInfoList().isEmpty());
+      assertEquals("The store should have been looked at again", RequestOrResponseType.ReplicaMetadataRequest,
+          MockStorageManager.operationReceived);
+      assertTrue("Request should have been answered on the executor of its disk",
+          MockStorageManager.findEntriesSinceThreadName.startsWith("disk-request-executor-"));
+      assertEquals("Listeners should have been removed", 0, storageManager.getNewEntryListenerCount(id));
+    } finally {
+      diskRequestExecutorPool.shutdown();
+      Utils.shutDownExecutorService(scheduler, 1, TimeUnit.SECONDS);
+    }
+  }
+
   /**
    * Calls {@link AmbryRequests#handleRequests(Request)} with {@code request} and returns the {@link Response} received.
    * @param request the {@link Request} to process
@@ -972,6 +1109,27 @@ public class AmbryRequestsTest {
     }
   }
 
+  /**
+   * Sends a {@link AdminRequestOrResponseType#ReplicationBandwidthBudget} request and verifies that it received the
+   * error code expected.
+   * @param origin the datacenter whose budget should be changed.
+   * @param bytesPerSec the new budget.
+   * @param expectedServerErrorCode the {@link ServerErrorCode} expected in the response.
+   * @throws InterruptedException
+   * @throws IOException
+   */
+  private void sendAndVerifyReplicationBandwidthBudgetRequest(String origin, long bytesPerSec,
+      ServerErrorCode expectedServerErrorCode) throws InterruptedException, IOException {
+    int correlationId = TestUtils.RANDOM.nextInt();
+    String clientId = UtilsTest.getRandomString(10);
+    AdminRequest adminRequest =
+        new AdminRequest(AdminRequestOrResponseType.ReplicationBandwidthBudget, null, correlationId, clientId);
+    ReplicationBandwidthBudgetAdminRequest budgetRequest =
+        new ReplicationBandwidthBudgetAdminRequest(origin, bytesPerSec, adminRequest);
+    Response response = sendRequestGetResponse(budgetRequest, expectedServerErrorCode);
+    assertTrue("Response not of type AdminResponse", response instanceof AdminResponse);
+  }
+
   // catchupStatusSuccessTest() helpers
 
   /**
@@ -1136,6 +1294,7 @@ public class AmbryRequestsTest {
   private static class MockRequest implements Request {
 
     private final InputStream stream;
+    private final long startTimeInMs;
 
     /**
      * Constructs a {@link MockRequest} from {@code request}.
@@ -1144,20 +1303,33 @@ public class AmbryRequestsTest {
      * @throws IOException
      */
     static MockRequest fromRequest(RequestOrResponse request) throws IOException {
+      return fromRequest(request, 0);
+    }
+
+    /**
+     * Constructs a {@link MockRequest} from {@code request}.
+     * @param request the {@link RequestOrResponse} to construct the {@link MockRequest} for.
+     * @param startTimeInMs the time at which the request was received.
+     * @return an instance of {@link MockRequest} that represents {@code request}.
+     * @throws IOException
+     */
+    static MockRequest fromRequest(RequestOrResponse request, long startTimeInMs) throws IOException {
       ByteBuffer buffer = ByteBuffer.allocate((int) request.sizeInBytes());
       request.writeTo(new ByteBufferChannel(buffer));
       buffer.flip();
       // read length (to bring it to a state where AmbryRequests can handle it).
       buffer.getLong();
-      return new MockRequest(new ByteBufferInputStream(buffer));
+      return new MockRequest(new ByteBufferInputStream(buffer), startTimeInMs);
     }
 
     /**
      * Constructs a {@link MockRequest}.
      * @param stream the {@link InputStream} that will be returned on a call to {@link #getInputStream()}.
+     * @param startTimeInMs the time that will be returned on a call to {@link #getStartTimeInMs()}.
      */
-    private MockRequest(InputStream stream) {
+    private MockRequest(InputStream stream, long startTimeInMs) {
       this.stream = stream;
+      this.startTimeInMs = startTimeInMs;
     }
 
     @Override
@@ -1167,7 +1339,7 @@ public class AmbryRequestsTest {
 
     @Override
     public long getStartTimeInMs() {
-      return 0;
+      return startTimeInMs;
     }
   }
 
@@ -1178,12 +1350,12 @@ public class AmbryRequestsTest {
     /**
      * {@link Request} provided in the last call to {@link #sendResponse(Send, Request, ServerNetworkResponseMetrics).
      */
-    Request lastOriginalRequest = null;
+    volatile Request lastOriginalRequest = null;
 
     /**
      * The {@link Send} provided in the last call to {@link #sendResponse(Send, Request, ServerNetworkResponseMetrics).
      */
-    Send lastResponse = null;
+    volatile Send lastResponse = null;
 
     MockRequestResponseChannel() {
       super(1, 1);
@@ -1231,6 +1403,11 @@ public class AmbryRequestsTest {
      */
     static Long maxTotalSizeOfEntriesReceived = null;
 
+    /**
+     * The name of the thread that called findEntriesSince() last.
+     */
+    static volatile String findEntriesSinceThreadName = null;
+
     /**
      * StoreException to throw when an API is invoked
      */
@@ -1314,6 +1491,7 @@ public class AmbryRequestsTest {
       @Override
       public FindInfo findEntriesSince(FindToken token, long maxTotalSizeOfEntries) throws StoreException {
         operationReceived = RequestOrResponseType.ReplicaMetadataRequest;
+        findEntriesSinceThreadName = Thread.currentThread().getName();
         tokenReceived = token;
         maxTotalSizeOfEntriesReceived = maxTotalSizeOfEntries;
         throwExceptionIfRequired();
@@ -1437,6 +1615,7 @@ public class AmbryRequestsTest {
     PartitionId startedPartitionId = null;
 
     private final Set<StoreKey> validKeysInStore;
+    private final Map<PartitionId, Set<Runnable>> newEntryListeners = new ConcurrentHashMap<>();
 
     MockStorageManager(Set<StoreKey> validKeysInStore, List<? extends ReplicaId> replicas) throws StoreException {
       super(new StoreConfig(VPROPS), new DiskManagerConfig(VPROPS), Utils.newScheduler(1, true), new MetricRegistry(),
@@ -1486,6 +1665,38 @@ public class AmbryRequestsTest {
       return returnValueOfStartingBlobStore;
     }
 
+    @Override
+    public void addNewEntryListener(PartitionId id, Runnable listener) {
+      newEntryListeners.computeIfAbsent(id, partitionId -> ConcurrentHashMap.newKeySet()).add(listener);
+    }
+
+    @Override
+    public void removeNewEntryListener(PartitionId id, Runnable listener) {
+      newEntryListeners.getOrDefault(id, Collections.emptySet()).remove(listener);
+    }
+
+    /**
+     * @param id the {@link PartitionId} of the store.
+     * @return the number of listeners waiting for a new entry in the store of {@code id}.
+     */
+    int getNewEntryListenerCount(PartitionId id) {
+      return newEntryListeners.getOrDefault(id, Collections.emptySet()).size();
+    }
+
+    /**
+     * Runs the listeners waiting for a new entry in the store of {@code id} once, like the journal of the store does
+     * when an entry is appended to it.
+     * @param id the {@link PartitionId} of the store.
+     */
+    void appendEntry(PartitionId id) {
+      Set<Runnable> listeners = newEntryListeners.getOrDefault(id, Collections.emptySet());
+      for (Runnable listener : listeners) {
+        if (listeners.remove(listener)) {
+          listener.run();
+        }
+      }
+    }
+
     /**
      * Resets variables associated with the {@link Store} impl
      */
@@ -1496,6 +1707,7 @@ public class AmbryRequestsTest {
       storeGetOptionsReceived = null;
       tokenReceived = null;
       maxTotalSizeOfEntriesReceived = null;
+      findEntriesSinceThreadName = null;
     }
   }
 
@@ -1557,7 +1769,7 @@ public class AmbryRequestsTest {
             public StoreKey getStoreKey(String input) {
               return null;
             }
-          }, clusterMap, null, dataNodeId, null, clusterMap.getMetricRegistry(), null, storeKeyConverterFactory,
+          }, clusterMap, null, dataNodeId, null, null, clusterMap.getMetricRegistry(), null, storeKeyConverterFactory,
           BlobIdTransformer.class.getName());
       reset();
     }
@@ -0,0 +1,155 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.server;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.clustermap.DataNodeId;
+import com.github.ambry.clustermap.DiskId;
+import com.github.ambry.clustermap.MockClusterMap;
+import com.github.ambry.clustermap.ReplicaId;
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.TestUtils;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link DiskRequestExecutorPool}.
+ */
+public class DiskRequestExecutorPoolTest {
+  private static final int QUEUE_SIZE = 2;
+
+  private final MockClusterMap clusterMap;
+  private final List<? extends ReplicaId> replicaIds;
+  private final List<DiskId> diskIds;
+  private final MetricRegistry registry = new MetricRegistry();
+  private final DiskRequestExecutorPool pool;
+
+  public DiskRequestExecutorPoolTest() throws IOException {
+    clusterMap = new MockClusterMap();
+    DataNodeId dataNodeId = clusterMap.getDataNodeIds().get(0);
+    replicaIds = clusterMap.getReplicaIds(dataNodeId);
+    Set<DiskId> disks = new LinkedHashSet<>();
+    replicaIds.forEach(replicaId -> disks.add(replicaId.getDiskId()));
+    diskIds = new ArrayList<>(disks);
+    pool = new DiskRequestExecutorPool(replicaIds, 1, QUEUE_SIZE, registry, SystemTime.getInstance());
+  }
+
+  @After
+  public void cleanup() throws IOException {
+    pool.shutdown();
+    clusterMap.cleanup();
+  }
+
+  /**
+   * Tests that a saturated disk rejects new work while other disks keep executing requests.
+   * @throws InterruptedException
+   */
+  @Test
+  public void saturatedDiskTest() throws InterruptedException {
+    assertTrue("There should be more than one disk for this test", diskIds.size() > 1);
+    DiskId slowDisk = diskIds.get(0);
+    CountDownLatch slowDiskBlocker = new CountDownLatch(1);
+    CountDownLatch slowDiskTaskStarted = new CountDownLatch(1);
+    assertTrue("Task should have been accepted", pool.submit(slowDisk, () -> {
+      slowDiskTaskStarted.countDown();
+      awaitQuietly(slowDiskBlocker);
+    }));
+    assertTrue("Blocking task did not start", slowDiskTaskStarted.await(1, TimeUnit.SECONDS));
+    // fill up the queue of the slow disk
+    for (int i = 0; i < QUEUE_SIZE; i++) {
+      assertTrue("Task should have been accepted", pool.submit(slowDisk, () -> {
+      }));
+    }
+    assertEquals("Queue size not as expected", QUEUE_SIZE, pool.getQueueSize(slowDisk));
+    assertFalse("Task should have been rejected", pool.submit(slowDisk, () -> {
+    }));
+    assertEquals("Rejected count not as expected", 1, registry.getCounters()
+        .get(MetricRegistry.name(DiskRequestExecutorPool.class, slowDisk.getMountPath() + "-RejectedRequestCount"))
+        .getCount());
+
+    // other disks are not affected
+    for (DiskId diskId : diskIds.subList(1, diskIds.size())) {
+      CountDownLatch executed = new CountDownLatch(1);
+      assertTrue("Task should have been accepted", pool.submit(diskId, executed::countDown));
+      assertTrue("Task on a healthy disk did not execute", executed.await(1, TimeUnit.SECONDS));
+    }
+
+    // once the slow disk recovers, its queue drains
+    slowDiskBlocker.countDown();
+    CountDownLatch executed = new CountDownLatch(1);
+    TestUtils.checkAndSleep(0, () -> pool.getQueueSize(slowDisk), 1000);
+    assertTrue("Task should have been accepted", pool.submit(slowDisk, executed::countDown));
+    assertTrue("Task on the recovered disk did not execute", executed.await(1, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Tests that there are executors only for disks that host replicas of this node and that submitting to an unknown
+   * disk fails.
+   * @throws IOException
+   */
+  @Test
+  public void unknownDiskTest() throws IOException {
+    DataNodeId otherNode = clusterMap.getDataNodeIds().get(1);
+    DiskId otherDisk = clusterMap.getReplicaIds(otherNode).get(0).getDiskId();
+    for (DiskId diskId : diskIds) {
+      assertTrue("There should be an executor for " + diskId, pool.hasExecutor(diskId));
+    }
+    assertFalse("There should be no executor for " + otherDisk, pool.hasExecutor(otherDisk));
+    try {
+      pool.submit(otherDisk, () -> {
+      });
+      fail("Submit to an unknown disk should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Tests that invalid arguments to the constructor are rejected.
+   */
+  @Test
+  public void badConstructionTest() {
+    int[][] badArgs = {{0, 1}, {1, 0}, {-1, 1}};
+    for (int[] args : badArgs) {
+      try {
+        new DiskRequestExecutorPool(replicaIds, args[0], args[1], new MetricRegistry(), SystemTime.getInstance());
+        fail("Construction should have failed");
+      } catch (IllegalArgumentException e) {
+        // expected. Nothing to do.
+      }
+    }
+  }
+
+  /**
+   * Waits on {@code latch} and ignores interrupts.
+   * @param latch the {@link CountDownLatch} to wait on.
+   */
+  private static void awaitQuietly(CountDownLatch latch) {
+    try {
+      latch.await();
+    } catch (InterruptedException e) {
+      // ignore
+    }
+  }
+}
@@ -17,16 +17,23 @@ import com.codahale.metrics.Timer;
 import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.clustermap.ReplicaStatusDelegate;
 import com.github.ambry.config.StoreConfig;
+import com.github.ambry.network.Send;
 import com.github.ambry.utils.FileLock;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,6 +51,8 @@ import org.slf4j.LoggerFactory;
 class BlobStore implements Store {
   static final String SEPARATOR = "_";
   private final static String LockFile = ".lock";
+  // the number of reference times whose key range digests are kept, about one for every peer of a replica
+  private final static int MAX_CACHED_KEY_RANGE_DIGESTS = 8;
 
   private final String storeId;
   private final String dataDir;
@@ -68,6 +77,14 @@ class BlobStore implements Store {
   private final long thresholdBytesLow;
   private final long ttlUpdateBufferTimeMs;
   private final AtomicInteger errorCount;
+  private final MetadataRecordCache metadataRecordCache;
+  private final Map<Long, KeyRangeDigests> keyRangeDigestsByReferenceTime =
+      Collections.synchronizedMap(new LinkedHashMap<Long, KeyRangeDigests>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, KeyRangeDigests> eldest) {
+          return size() > MAX_CACHED_KEY_RANGE_DIGESTS;
+        }
+      });
 
   private Log log;
   private BlobStoreCompactor compactor;
@@ -169,6 +186,8 @@ class BlobStore implements Store {
     this.thresholdBytesLow = (long) (capacityInBytes * ((threshold - delta) / 100.0));
     ttlUpdateBufferTimeMs = TimeUnit.SECONDS.toMillis(config.storeTtlUpdateBufferTimeSeconds);
     errorCount = new AtomicInteger(0);
+    metadataRecordCache = config.storeMetadataCacheMaxSizeInBytes > 0 ? new MetadataRecordCacheImpl(
+        config.storeMetadataCacheMaxSizeInBytes, metrics) : null;
     logger.debug(
         "The enable state of replicaStatusDelegate is {} on store {}. The high threshold is {} bytes and the low threshold is {} bytes",
         config.storeReplicaStatusDelegateEnable, storeId, this.thresholdBytesHigh, this.thresholdBytesLow);
@@ -181,6 +200,7 @@ class BlobStore implements Store {
         throw new StoreException("Store already started", StoreErrorCodes.Store_Already_Started);
       }
       final Timer.Context context = metrics.storeStartTime.time();
+      boolean locked = false;
       try {
         // Check if the data dir exist. If it does not exist, create it
         File dataFile = new File(dataDir);
@@ -204,6 +224,7 @@ class BlobStore implements Store {
               "Failed to acquire lock on file " + dataDir + ". Another process or thread is using this directory.",
               StoreErrorCodes.Initialization_Error);
         }
+        locked = true;
 
         StoreDescriptor storeDescriptor = new StoreDescriptor(dataDir);
         log = new Log(dataDir, capacityInBytes, config.storeSegmentSizeInBytes, diskSpaceAllocator, metrics);
@@ -230,6 +251,14 @@ class BlobStore implements Store {
         }
       } catch (Exception e) {
         metrics.storeStartFailure.inc();
+        if (locked) {
+          // release the directory so that the store can be started again, e.g. after a failed bootstrap is rolled back
+          try {
+            fileLock.destroy();
+          } catch (IOException ioe) {
+            logger.error("Store : " + dataDir + " IO Exception while trying to close the file lock", ioe);
+          }
+        }
         throw new StoreException("Error while starting store for dir " + dataDir, e,
             StoreErrorCodes.Initialization_Error);
       } finally {
@@ -270,7 +299,9 @@ class BlobStore implements Store {
         }
       }
 
-      MessageReadSet readSet = new StoreMessageReadSet(readOptions);
+      // records of deleted blobs may be changed by hard delete, so they are never served from or added to the cache
+      MessageReadSet readSet = new StoreMessageReadSet(readOptions,
+          storeGetOptions.contains(StoreGetOptions.Store_Include_Deleted) ? null : metadataRecordCache);
       // We ensure that the metadata list is ordered with the order of the message read set view that the
       // log provides. This ensures ordering of all messages across the log and metadata from the index.
       List<MessageInfo> messageInfoList = new ArrayList<MessageInfo>(readSet.count());
@@ -487,6 +518,7 @@ class BlobStore implements Store {
         for (MessageInfo info : infoList) {
           FileSpan fileSpan = log.getFileSpanForMessage(endOffsetOfLastMessage, info.getSize());
           IndexValue deleteIndexValue = index.markAsDeleted(info.getStoreKey(), fileSpan, info.getOperationTimeMs());
+          invalidateMetadataRecords(info.getStoreKey());
           endOffsetOfLastMessage = fileSpan.getEndOffset();
           blobStoreStats.handleNewDeleteEntry(deleteIndexValue, indexValuesToDelete.get(correspondingPutIndex++));
         }
@@ -583,6 +615,7 @@ class BlobStore implements Store {
         for (MessageInfo info : infoList) {
           FileSpan fileSpan = log.getFileSpanForMessage(endOffsetOfLastMessage, info.getSize());
           IndexValue ttlUpdateValue = index.markAsPermanent(info.getStoreKey(), fileSpan, info.getOperationTimeMs());
+          invalidateMetadataRecords(info.getStoreKey());
           endOffsetOfLastMessage = fileSpan.getEndOffset();
           blobStoreStats.handleNewTtlUpdateEntry(ttlUpdateValue, indexValuesToUpdate.get(correspondingPutIndex++));
         }
@@ -682,6 +715,16 @@ class BlobStore implements Store {
         LogSegment.HEADER_SIZE, index.getLogSegmentsNotInJournal(), blobStoreStats);
   }
 
+  /**
+   * Removes the cached metadata records of {@code key}, if there is a metadata record cache.
+   * @param key the {@link StoreKey} of the blob that was updated or deleted.
+   */
+  private void invalidateMetadataRecords(StoreKey key) {
+    if (metadataRecordCache != null) {
+      metadataRecordCache.invalidate(key);
+    }
+  }
+
   @Override
   public void shutdown() throws StoreException {
     shutdown(false);
@@ -764,6 +807,157 @@ class BlobStore implements Store {
     return started;
   }
 
+  /**
+   * @return the {@link SealedStoreFiles} of this store.
+   * @throws StoreException if the store is not started.
+   */
+  SealedStoreFiles getSealedStoreFiles() throws StoreException {
+    checkStarted();
+    return index.getSealedStoreFiles();
+  }
+
+  /**
+   * Gets a chunk of one of the {@link SealedStoreFiles} of this store. Only the files that are currently sealed can be
+   * read, so a file that has been compacted away since it was listed cannot be read anymore.
+   * @param fileName the name of the sealed file.
+   * @param offset the offset in the file at which the chunk starts.
+   * @param sizeInBytes the size of the chunk.
+   * @return the {@link Send} of the chunk.
+   * @throws StoreException if the store is not started, if {@code fileName} is not a sealed file of this store or if
+   * the chunk could not be read.
+   * @throws IllegalArgumentException if the chunk is empty or is not within the part of the file that is sealed.
+   */
+  Send getSealedStoreFileChunk(String fileName, long offset, long sizeInBytes) throws StoreException {
+    checkStarted();
+    Long fileSize = index.getSealedStoreFiles().getFileSizes().get(fileName);
+    if (fileSize == null) {
+      throw new StoreException("File " + fileName + " is not a sealed file of store " + storeId,
+          StoreErrorCodes.File_Not_Found);
+    }
+    if (offset < 0 || sizeInBytes <= 0 || offset + sizeInBytes > fileSize) {
+      throw new IllegalArgumentException(
+          "Invalid chunk of " + fileName + " at offset " + offset + " of size " + sizeInBytes + ". File size: "
+              + fileSize);
+    }
+    LogSegment segment = log.getFirstSegment();
+    while (segment != null && !LogSegmentNameHelper.nameToFilename(segment.getName()).equals(fileName)) {
+      segment = log.getNextSegment(segment);
+    }
+    if (segment != null) {
+      return new SealedStoreFileChunkSend(segment, offset, sizeInBytes);
+    }
+    ByteBuffer buffer = ByteBuffer.allocate((int) sizeInBytes);
+    try (FileChannel fileChannel = Utils.openChannel(new File(dataDir, fileName), false)) {
+      Utils.readFileToByteBuffer(fileChannel, offset, buffer);
+    } catch (IOException e) {
+      StoreErrorCodes errorCode = StoreException.resolveErrorCode(e);
+      throw new StoreException(errorCode.toString() + " while reading sealed file " + fileName, e, errorCode);
+    }
+    buffer.flip();
+    return new SealedStoreFileChunkSend(buffer);
+  }
+
+  /**
+   * Replaces the log segments and index files of this store with the sealed files of another replica of the store and
+   * starts the store. The store has to be shut down and should have been empty. If the store cannot be started from
+   * the new files, they are removed again, so that the store can be started empty.
+   * @param stagingDir the directory with the sealed files. It has to be on the same disk as the store.
+   * @throws StoreException if the store is started, or if the files could not be installed or the store could not be
+   * started from them.
+   */
+  void startFromSealedStoreFiles(File stagingDir) throws StoreException {
+    synchronized (storeWriteLock) {
+      if (started) {
+        throw new StoreException("Store already started", StoreErrorCodes.Store_Already_Started);
+      }
+      List<File> installedFiles = new ArrayList<>();
+      try {
+        File[] stagedFiles = stagingDir.listFiles();
+        File[] existingFiles = new File(dataDir).listFiles(
+            (dir, name) -> LogSegmentNameHelper.LOG_FILE_FILTER.accept(dir, name) || name.endsWith(
+                IndexSegment.INDEX_SEGMENT_FILE_NAME_SUFFIX) || name.endsWith(IndexSegment.BLOOM_FILE_NAME_SUFFIX));
+        if (stagedFiles == null || existingFiles == null) {
+          throw new IOException("Could not list the files in " + stagingDir + " or " + dataDir);
+        }
+        for (File file : existingFiles) {
+          Files.delete(file.toPath());
+        }
+        for (File file : stagedFiles) {
+          File installedFile = new File(dataDir, file.getName());
+          Files.move(file.toPath(), installedFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+          installedFiles.add(installedFile);
+        }
+        logger.info("Store : {} installed {} sealed files from {}", dataDir, installedFiles.size(), stagingDir);
+        start();
+      } catch (Exception e) {
+        for (File file : installedFiles) {
+          if (!file.delete()) {
+            logger.error("Store : {} could not remove installed sealed file {}", dataDir, file);
+          }
+        }
+        throw new StoreException("Error while starting store for dir " + dataDir + " from sealed files", e,
+            StoreErrorCodes.Initialization_Error);
+      }
+    }
+  }
+
+  /**
+   * Gets the {@link KeyRangeDigests} of this store. The digests are kept by reference time for the last few reference
+   * times, so that the requests of the peers that drill down into them level by level at the same time do not scan the
+   * index again.
+   * @param referenceTimeMs the time as of which the state of the keys is taken. Operations after it are left
+   *                        out.
+   * @return the {@link KeyRangeDigests} of this store for {@code referenceTimeMs}.
+   * @throws StoreException if the store is not started or there are problems reading the index.
+   */
+  KeyRangeDigests getKeyRangeDigests(long referenceTimeMs) throws StoreException {
+    checkStarted();
+    KeyRangeDigests keyRangeDigests = keyRangeDigestsByReferenceTime.get(referenceTimeMs);
+    if (keyRangeDigests == null) {
+      long startTimeMs = time.milliseconds();
+      keyRangeDigests = index.getKeyRangeDigests(referenceTimeMs);
+      metrics.keyRangeDigestsComputeTimeMs.update(time.milliseconds() - startTimeMs);
+      keyRangeDigestsByReferenceTime.put(referenceTimeMs, keyRangeDigests);
+    }
+    return keyRangeDigests;
+  }
+
+  /**
+   * Gets the keys in some of the leaf buckets of the {@link KeyRangeDigests} of this store, with their state.
+   * @param leafBuckets the leaf buckets to get the keys of.
+   * @param referenceTimeMs the time as of which the state of the keys is taken. Operations after it are left
+   *                        out.
+   * @return the {@link MessageInfo}s of the keys in {@code leafBuckets}.
+   * @throws StoreException if the store is not started or there are problems reading the index.
+   */
+  List<MessageInfo> getKeysInLeafBuckets(Set<Integer> leafBuckets, long referenceTimeMs) throws StoreException {
+    checkStarted();
+    return index.getKeysInLeafBuckets(leafBuckets, referenceTimeMs);
+  }
+
+  /**
+   * Adds a listener that is run once, the next time a put, delete or TTL update is added to the index of this store.
+   * This lets a caller wait for new entries after {@link #findEntriesSince(FindToken, long)} has returned none without
+   * polling. A listener that is added before {@link #findEntriesSince(FindToken, long)} is called does not miss
+   * entries that are added in between.
+   * @param listener the listener to run. It runs on the thread that writes to the store and should not block.
+   * @throws StoreException if the store is not started.
+   */
+  void addNewEntryListener(Runnable listener) throws StoreException {
+    checkStarted();
+    index.addNewEntryListener(listener);
+  }
+
+  /**
+   * Removes a listener added through {@link #addNewEntryListener(Runnable)} that has not run yet.
+   * @param listener the listener to remove.
+   * @throws StoreException if the store is not started.
+   */
+  void removeNewEntryListener(Runnable listener) throws StoreException {
+    checkStarted();
+    index.removeNewEntryListener(listener);
+  }
+
   /**
    * Compacts the store data based on {@code details}.
    * @param details the {@link CompactionDetails} describing what needs to be compacted.
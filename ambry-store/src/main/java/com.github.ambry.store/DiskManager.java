@@ -86,7 +86,9 @@ class DiskManager {
     longLivedTaskScheduler = Utils.newScheduler(1, true);
     File reserveFileDir = new File(disk.getMountPath(), diskManagerConfig.diskManagerReserveFileDirName);
     diskSpaceAllocator = new DiskSpaceAllocator(diskManagerConfig.diskManagerEnableSegmentPooling, reserveFileDir,
-        diskManagerConfig.diskManagerRequiredSwapSegmentsPerSize, metrics);
+        diskManagerConfig.diskManagerRequiredSwapSegmentsPerSize,
+        diskManagerConfig.diskManagerReservePoolReplenishIntervalMs,
+        diskManagerConfig.diskManagerReservePoolMaxExtraSegmentsPerSize, metrics);
     this.replicaStatusDelegate = replicaStatusDelegate;
     this.stoppedReplicas = stoppedReplicas;
     expectedDirs.add(reserveFileDir.getAbsolutePath());
@@ -204,6 +206,7 @@ class DiskManager {
             "Could not shutdown " + numFailures.get() + " out of " + stores.size() + " stores on the disk " + disk);
       }
       compactionManager.awaitTermination();
+      diskSpaceAllocator.shutdown();
       longLivedTaskScheduler.shutdown();
       if (!longLivedTaskScheduler.awaitTermination(30, TimeUnit.SECONDS)) {
         logger.error("Could not terminate long live tasks after DiskManager shutdown");
@@ -280,6 +283,26 @@ class DiskManager {
     }
   }
 
+  /**
+   * Start the BlobStore with given {@link PartitionId} {@code id} from the sealed files of another replica.
+   * @param id the {@link PartitionId} of the {@link BlobStore} which should be started.
+   * @param stagingDir the directory with the sealed files.
+   * @return {@code true} if start store was successful. {@code false} if not.
+   */
+  boolean startBlobStoreFromSealedFiles(PartitionId id, File stagingDir) {
+    BlobStore store = stores.get(id);
+    if (store == null || !running || store.isStarted()) {
+      return false;
+    }
+    try {
+      store.startFromSealedStoreFiles(stagingDir);
+    } catch (Exception e) {
+      logger.error("Exception while starting store {} on disk {} from sealed files in {}", id, disk, stagingDir, e);
+      return false;
+    }
+    return true;
+  }
+
   /**
    * Shutdown the BlobStore with given {@link PartitionId} {@code id}.
    * @param id the {@link PartitionId} of the {@link BlobStore} which should be shutdown.
@@ -29,6 +29,11 @@ import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,6 +50,12 @@ import org.slf4j.LoggerFactory;
  *
  * NOTE: Segments can be allocated and freed before pool initialization.  This will fall back to preallocating at
  * runtime if the current pool does not include a segment of the correct size.
+ *
+ * If background replenishment is enabled, freed segments are recreated in the pool by a background thread instead of
+ * in the thread that frees them. The same thread periodically tops up the pool of each segment size to the number of
+ * segments the stores are still entitled to, plus a few extra segments if the recent allocation rate predicts that
+ * they will be needed before the next run, so that allocations rarely have to preallocate a file in the caller's
+ * thread.
  */
 class DiskSpaceAllocator {
   private static final Logger logger = LoggerFactory.getLogger(DiskSpaceAllocator.class);
@@ -59,7 +70,12 @@ class DiskSpaceAllocator {
   private final long requiredSwapSegmentsPerSize;
   private final StorageManagerMetrics metrics;
   private final ReserveFileMap reserveFiles = new ReserveFileMap();
-  private PoolState poolState = PoolState.NOT_INVENTORIED;
+  private final long replenishIntervalMs;
+  private final long maxExtraSegmentsPerSize;
+  private final ConcurrentMap<Long, SegmentDemand> demandBySize = new ConcurrentHashMap<>();
+  private final AtomicBoolean replenishPending = new AtomicBoolean(false);
+  private volatile ScheduledExecutorService replenishScheduler = null;
+  private volatile PoolState poolState = PoolState.NOT_INVENTORIED;
   private Exception inventoryException = null;
 
   /**
@@ -77,9 +93,30 @@ class DiskSpaceAllocator {
    */
   DiskSpaceAllocator(boolean enablePooling, File reserveDir, long requiredSwapSegmentsPerSize,
       StorageManagerMetrics metrics) {
+    this(enablePooling, reserveDir, requiredSwapSegmentsPerSize, 0, 0, metrics);
+  }
+
+  /**
+   * Creates a {@link DiskSpaceAllocator} that, if {@code replenishIntervalMs} is positive, replenishes the pool in the
+   * background once it is initialized.
+   * @param enablePooling if set to {@code false}, the reserve pool will not be initialized/used and new files will be
+   *                      created each time a segment is allocated.
+   * @param reserveDir the directory where reserve files will reside. If this directory does not exist yet, it will
+   *                   be created. This can be {@code null} if pooling is disabled.
+   * @param requiredSwapSegmentsPerSize the number of swap segments needed for each segment size in the pool.
+   * @param replenishIntervalMs the interval at which the pool is replenished in the background. 0 disables background
+   *                            replenishment.
+   * @param maxExtraSegmentsPerSize the maximum number of segments of each size that are kept in the pool in addition to
+   *                                the ones the stores are entitled to, based on the predicted allocations.
+   * @param metrics a {@link StorageManagerMetrics} instance.
+   */
+  DiskSpaceAllocator(boolean enablePooling, File reserveDir, long requiredSwapSegmentsPerSize, long replenishIntervalMs,
+      long maxExtraSegmentsPerSize, StorageManagerMetrics metrics) {
     this.enablePooling = enablePooling;
     this.reserveDir = reserveDir;
     this.requiredSwapSegmentsPerSize = requiredSwapSegmentsPerSize;
+    this.replenishIntervalMs = replenishIntervalMs;
+    this.maxExtraSegmentsPerSize = maxExtraSegmentsPerSize;
     this.metrics = metrics;
     try {
       if (enablePooling) {
@@ -134,6 +171,7 @@ class DiskSpaceAllocator {
         addRequiredSegments(overallRequirements);
         // TODO fill the disk with additional swap segments
         poolState = PoolState.INITIALIZED;
+        startReplenisher(overallRequirements);
       } else {
         logger.info("Disk segment pooling disabled; pool will not be initialized.");
       }
@@ -173,6 +211,12 @@ class DiskSpaceAllocator {
       if (poolState != PoolState.NOT_INVENTORIED) {
         reserveFile = reserveFiles.remove(sizeInBytes);
       }
+      SegmentDemand demand = replenishScheduler != null ? demandBySize.get(sizeInBytes) : null;
+      if (demand != null) {
+        demand.entitledSegments.decrementAndGet();
+        demand.allocationsSinceLastRun.incrementAndGet();
+        triggerReplenish();
+      }
       if (reserveFile == null) {
         if (enablePooling) {
           logger.info(
@@ -180,7 +224,9 @@ class DiskSpaceAllocator {
               sizeInBytes, poolState);
           metrics.diskSpaceAllocatorSegmentNotFoundCount.inc();
         }
+        long syncAllocStartTime = System.currentTimeMillis();
         Utils.preAllocateFileIfNeeded(destinationFile, sizeInBytes);
+        metrics.diskSpaceAllocatorSyncAllocTimeMs.update(System.currentTimeMillis() - syncAllocStartTime);
       } else {
         try {
           Files.move(reserveFile.toPath(), destinationFile.toPath());
@@ -215,7 +261,12 @@ class DiskSpaceAllocator {
       // For now, we delete the file and create a new one. Newer linux kernel versions support
       // additional fallocate flags, which will be useful for cleaning up returned files.
       Files.delete(fileToReturn.toPath());
-      if (poolState == PoolState.INITIALIZED) {
+      SegmentDemand demand = replenishScheduler != null ? demandBySize.get(sizeInBytes) : null;
+      if (demand != null) {
+        // the replenisher recreates the segment so that the caller does not wait for the preallocation
+        demand.entitledSegments.incrementAndGet();
+        triggerReplenish();
+      } else if (poolState == PoolState.INITIALIZED) {
         fileToReturn = createReserveFile(sizeInBytes);
         reserveFiles.add(sizeInBytes, fileToReturn);
       }
@@ -226,6 +277,106 @@ class DiskSpaceAllocator {
     }
   }
 
+  /**
+   * Stops background replenishment, if it was started. Segments that were not replenished yet are accounted for the next
+   * time the pool is initialized.
+   * @throws InterruptedException if interrupted while waiting for an ongoing replenishment to complete.
+   */
+  void shutdown() throws InterruptedException {
+    if (replenishScheduler != null) {
+      replenishScheduler.shutdown();
+      if (!replenishScheduler.awaitTermination(30, TimeUnit.SECONDS)) {
+        logger.error("Could not terminate the reserve pool replenisher of {}", reserveDir.getAbsolutePath());
+      }
+    }
+  }
+
+  /**
+   * @param sizeInBytes the segment size of interest.
+   * @return the number of segments of size {@code sizeInBytes} currently in the pool.
+   */
+  int getPoolDepth(long sizeInBytes) {
+    return reserveFiles.getCount(sizeInBytes);
+  }
+
+  /**
+   * Starts replenishing the pool in the background if it is enabled and not already started.
+   * @param overallRequirements a map between segment sizes in bytes and the number of segments the stores are entitled
+   *                            to for that size.
+   */
+  private synchronized void startReplenisher(Map<Long, Long> overallRequirements) {
+    if (replenishIntervalMs <= 0 || replenishScheduler != null) {
+      return;
+    }
+    for (Map.Entry<Long, Long> sizeAndSegmentsNeeded : overallRequirements.entrySet()) {
+      demandBySize.put(sizeAndSegmentsNeeded.getKey(), new SegmentDemand(sizeAndSegmentsNeeded.getValue()));
+    }
+    replenishScheduler = Utils.newScheduler(1, "reserve-pool-replenisher-", true);
+    replenishScheduler.scheduleAtFixedRate(this::runScheduledReplenish, replenishIntervalMs, replenishIntervalMs,
+        TimeUnit.MILLISECONDS);
+    logger.info("Started replenishing the reserve pool in {} every {} ms", reserveDir.getAbsolutePath(),
+        replenishIntervalMs);
+  }
+
+  /**
+   * Updates the predicted allocations of each segment size with the allocations since the last run and replenishes the
+   * pool. Runs periodically once the replenisher is started.
+   */
+  void runScheduledReplenish() {
+    for (SegmentDemand demand : demandBySize.values()) {
+      demand.updatePrediction();
+    }
+    replenish();
+  }
+
+  /**
+   * Schedules an immediate replenishment of the pool unless one is already pending.
+   */
+  private void triggerReplenish() {
+    if (replenishPending.compareAndSet(false, true)) {
+      try {
+        replenishScheduler.execute(() -> {
+          replenishPending.set(false);
+          replenish();
+        });
+      } catch (RejectedExecutionException e) {
+        // shutting down.
+        replenishPending.set(false);
+      }
+    }
+  }
+
+  /**
+   * Brings the number of segments of each size in the pool to the target of that size: the number of segments the
+   * stores are entitled to plus the extra segments that the predicted allocations require. Extra segments that are no
+   * longer predicted to be needed are deleted.
+   */
+  private synchronized void replenish() {
+    for (Map.Entry<Long, SegmentDemand> sizeAndDemand : demandBySize.entrySet()) {
+      long sizeInBytes = sizeAndDemand.getKey();
+      SegmentDemand demand = sizeAndDemand.getValue();
+      long entitled = Math.max(demand.entitledSegments.get(), 0);
+      long predicted = Math.round(demand.predictedAllocationsPerRun);
+      long target = entitled + Math.min(maxExtraSegmentsPerSize, Math.max(predicted - entitled, 0));
+      try {
+        while (poolState == PoolState.INITIALIZED && reserveFiles.getCount(sizeInBytes) < target) {
+          reserveFiles.add(sizeInBytes, createReserveFile(sizeInBytes));
+          metrics.diskSpaceAllocatorReplenishedSegmentCount.inc();
+        }
+        while (reserveFiles.getCount(sizeInBytes) > target) {
+          File extraFile = reserveFiles.remove(sizeInBytes);
+          if (extraFile != null) {
+            Files.delete(extraFile.toPath());
+          }
+        }
+      } catch (Exception e) {
+        metrics.diskSpaceAllocatorReplenishErrorCount.inc();
+        logger.error("Could not replenish reserve segments of size {} in {}", sizeInBytes,
+            reserveDir.getAbsolutePath(), e);
+      }
+    }
+  }
+
   /**
    * Inventory existing reserve directories and add entries to {@link #reserveFiles}
    * @return a populated {@link ReserveFileMap}
@@ -421,6 +572,35 @@ class DiskSpaceAllocator {
     }
   }
 
+  /**
+   * Tracks the demand for segments of a single size, as seen by the background replenisher.
+   */
+  private static class SegmentDemand {
+    // weight of the most recent run in the predicted allocations
+    private static final double PREDICTION_WEIGHT = 0.5;
+
+    /**
+     * The number of segments the stores are still entitled to take from the pool. Decremented on allocation and
+     * incremented on free. Can go negative if more segments are allocated than were required at initialization.
+     */
+    final AtomicLong entitledSegments;
+    final AtomicLong allocationsSinceLastRun = new AtomicLong(0);
+    volatile double predictedAllocationsPerRun = 0;
+
+    SegmentDemand(long entitledSegments) {
+      this.entitledSegments = new AtomicLong(entitledSegments);
+    }
+
+    /**
+     * Updates the predicted number of allocations per replenisher run with the allocations since the last run.
+     */
+    void updatePrediction() {
+      long allocations = allocationsSinceLastRun.getAndSet(0);
+      predictedAllocationsPerRun =
+          PREDICTION_WEIGHT * allocations + (1 - PREDICTION_WEIGHT) * predictedAllocationsPerRun;
+    }
+  }
+
   /**
    * Represents the state of pool initialization.
    */
@@ -15,18 +15,23 @@ package com.github.ambry.store;
 
 import com.codahale.metrics.Timer;
 import com.github.ambry.config.StoreConfig;
+import com.github.ambry.utils.ByteBufferInputStream;
 import com.github.ambry.utils.CrcInputStream;
 import com.github.ambry.utils.CrcOutputStream;
 import com.github.ambry.utils.Time;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
@@ -62,6 +67,8 @@ public class HardDeleter implements Runnable {
   private final Time time;
   private final DiskIOScheduler diskIOScheduler;
   private final int scanSizeInBytes;
+  private final int coalesceMaxGapBytes;
+  private final long maxBytesPerLogWrite;
   private final int messageRetentionSeconds;
   private final CountDownLatch shutdownLatch = new CountDownLatch(1);
   private final Logger logger = LoggerFactory.getLogger(getClass());
@@ -109,6 +116,9 @@ public class HardDeleter implements Runnable {
     this.time = time;
     // Times 10 is an optimization for findDeletedEntriesSince, which keeps delete entries only in the end.
     scanSizeInBytes = config.storeHardDeleteOperationsBytesPerSec * 10;
+    coalesceMaxGapBytes = config.storeHardDeleteCoalesceMaxGapBytes;
+    // a single write should not take more than about a second of the hard delete I/O budget
+    maxBytesPerLogWrite = config.storeHardDeleteOperationsBytesPerSec;
     messageRetentionSeconds = (int) TimeUnit.DAYS.toSeconds(config.storeDeletedMessageRetentionDays);
   }
 
@@ -215,6 +225,7 @@ public class HardDeleter implements Runnable {
           hardDelete.getHardDeleteMessages(readSet, factory, hardDeleteRecoveryRange.getMessageStoreRecoveryInfoList());
 
       Iterator<BlobReadOptions> readOptionsIterator = readOptionsList.iterator();
+      List<LogWriteInfo> logWriteInfoList = new ArrayList<>();
       while (hardDeleteIterator.hasNext()) {
         if (!enabled.get()) {
           throw new StoreException("Aborting hard deletes as store is shutting down",
@@ -225,13 +236,12 @@ public class HardDeleter implements Runnable {
         if (hardDeleteInfo == null) {
           metrics.hardDeleteFailedCount.inc(1);
         } else {
-          LogSegment logSegment = log.getSegment(readOptions.getLogSegmentName());
-          logSegment.writeFrom(hardDeleteInfo.getHardDeleteChannel(),
-              readOptions.getOffset() + hardDeleteInfo.getStartOffsetInMessage(),
-              hardDeleteInfo.getHardDeletedMessageSize());
-          metrics.hardDeleteDoneCount.inc(1);
+          logWriteInfoList.add(new LogWriteInfo(log.getSegment(readOptions.getLogSegmentName()),
+              hardDeleteInfo.getHardDeleteChannel(), readOptions.getOffset() + hardDeleteInfo.getStartOffsetInMessage(),
+              hardDeleteInfo.getHardDeletedMessageSize()));
         }
       }
+      writeToLog(logWriteInfoList);
     } catch (IOException e) {
       metrics.hardDeleteExceptionsCount.inc();
       StoreErrorCodes errorCode = StoreException.resolveErrorCode(e);
@@ -609,15 +619,7 @@ public class HardDeleter implements Runnable {
       persistCleanupToken();
 
       /* Finally, write the hard delete stream into the Log */
-      for (LogWriteInfo logWriteInfo : logWriteInfoList) {
-        if (!enabled.get()) {
-          throw new StoreException("Aborting hard deletes as store is shutting down",
-              StoreErrorCodes.Store_Shutting_Down);
-        }
-        logWriteInfo.logSegment.writeFrom(logWriteInfo.channel, logWriteInfo.offset, logWriteInfo.size);
-        metrics.hardDeleteDoneCount.inc(1);
-        diskIOScheduler.getSlice(HARD_DELETE_CLEANUP_JOB_NAME, HARD_DELETE_CLEANUP_JOB_NAME, logWriteInfo.size);
-      }
+      writeToLog(logWriteInfoList);
     } catch (IOException e) {
       StoreErrorCodes errorCode = StoreException.resolveErrorCode(e);
       throw new StoreException(errorCode.toString() + " while performing hard delete ", e, errorCode);
@@ -625,20 +627,146 @@ public class HardDeleter implements Runnable {
     logger.trace("Performed hard deletes from {} to {} for {}", startToken, endToken, dataDir);
   }
 
+  /**
+   * Writes the hard delete streams into the Log in offset order. Records of the same log segment whose regions are at
+   * most {@link #coalesceMaxGapBytes} apart are combined into a single write, rewriting the bytes between them with
+   * their current content, so that a segment is overwritten with a few sequential writes rather than one random write
+   * per record. Every write is charged to the hard delete I/O budget. Like single record writes, these writes are made
+   * durable by the next log flush.
+   * @param logWriteInfoList the hard delete streams to write. This list is sorted by this method.
+   * @throws IOException if there is an I/O error while reading from or writing to the Log.
+   * @throws StoreException if the store is shutting down.
+   */
+  private void writeToLog(List<LogWriteInfo> logWriteInfoList) throws IOException, StoreException {
+    Collections.sort(logWriteInfoList);
+    int batchStart = 0;
+    while (batchStart < logWriteInfoList.size()) {
+      if (!enabled.get()) {
+        throw new StoreException("Aborting hard deletes as store is shutting down",
+            StoreErrorCodes.Store_Shutting_Down);
+      }
+      LogWriteInfo first = logWriteInfoList.get(batchStart);
+      BatchedWriteChannel batchChannel = new BatchedWriteChannel();
+      batchChannel.add(first.channel, first.size);
+      long batchEndOffset = first.offset + first.size;
+      int batchEnd = batchStart + 1;
+      while (batchEnd < logWriteInfoList.size()) {
+        LogWriteInfo next = logWriteInfoList.get(batchEnd);
+        long gap = next.offset - batchEndOffset;
+        if (!next.logSegment.getName().equals(first.logSegment.getName()) || gap < 0 || gap > coalesceMaxGapBytes
+            || next.offset + next.size - first.offset > maxBytesPerLogWrite) {
+          break;
+        }
+        if (gap > 0) {
+          ByteBuffer gapContent = ByteBuffer.allocate((int) gap);
+          first.logSegment.readInto(gapContent, batchEndOffset);
+          gapContent.flip();
+          batchChannel.add(gapContent);
+          metrics.hardDeleteGapBytesRewrittenCount.inc(gap);
+        }
+        batchChannel.add(next.channel, next.size);
+        batchEndOffset = next.offset + next.size;
+        batchEnd++;
+      }
+      long batchSize = batchEndOffset - first.offset;
+      first.logSegment.writeFrom(batchChannel, first.offset, batchSize);
+      metrics.hardDeleteLogWriteCount.inc();
+      metrics.hardDeleteDoneCount.inc(batchEnd - batchStart);
+      diskIOScheduler.getSlice(HARD_DELETE_CLEANUP_JOB_NAME, HARD_DELETE_CLEANUP_JOB_NAME, batchSize);
+      logger.trace("Wrote {} hard deleted records in {} bytes at offset {} of {} for {}", batchEnd - batchStart,
+          batchSize, first.offset, first.logSegment.getName(), dataDir);
+      batchStart = batchEnd;
+    }
+  }
+
   /**
    * A class to hold the information required to write hard delete stream to the Log.
    */
-  private class LogWriteInfo {
+  private class LogWriteInfo implements Comparable<LogWriteInfo> {
     final LogSegment logSegment;
     final ReadableByteChannel channel;
     final long offset;
     final long size;
+    private final Offset logOffset;
 
     LogWriteInfo(LogSegment logSegment, ReadableByteChannel channel, long offset, long size) {
       this.logSegment = logSegment;
       this.channel = channel;
       this.offset = offset;
       this.size = size;
+      logOffset = new Offset(logSegment.getName(), offset);
+    }
+
+    @Override
+    public int compareTo(LogWriteInfo o) {
+      return logOffset.compareTo(o.logOffset);
+    }
+  }
+
+  /**
+   * A {@link ReadableByteChannel} that reads a fixed number of bytes from each of its parts in turn. Used to overwrite
+   * a range of the log that spans several hard deleted records with a single write.
+   */
+  private static class BatchedWriteChannel implements ReadableByteChannel {
+    private final List<ReadableByteChannel> parts = new ArrayList<>();
+    private final List<Long> partSizes = new ArrayList<>();
+    private int currentPart = 0;
+    private long readFromCurrentPart = 0;
+
+    /**
+     * Adds {@code size} bytes from {@code channel} to the end of this channel.
+     * @param channel the channel to read from.
+     * @param size the number of bytes to read from {@code channel}.
+     */
+    void add(ReadableByteChannel channel, long size) {
+      parts.add(channel);
+      partSizes.add(size);
+    }
+
+    /**
+     * Adds the remaining bytes of {@code buffer} to the end of this channel.
+     * @param buffer the content to add.
+     */
+    void add(ByteBuffer buffer) {
+      add(Channels.newChannel(new ByteBufferInputStream(buffer)), buffer.remaining());
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      while (currentPart < parts.size() && readFromCurrentPart == partSizes.get(currentPart)) {
+        currentPart++;
+        readFromCurrentPart = 0;
+      }
+      if (currentPart == parts.size()) {
+        return -1;
+      }
+      long remainingInPart = partSizes.get(currentPart) - readFromCurrentPart;
+      ByteBuffer target = dst;
+      if (dst.remaining() > remainingInPart) {
+        target = dst.duplicate();
+        target.limit(dst.position() + (int) remainingInPart);
+      }
+      int read = parts.get(currentPart).read(target);
+      if (read < 0) {
+        throw new EOFException("Hard delete stream ended " + remainingInPart + " bytes early");
+      }
+      if (target != dst) {
+        dst.position(target.position());
+      }
+      readFromCurrentPart += read;
+      return read;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (ReadableByteChannel part : parts) {
+        part.close();
+      }
     }
   }
 
@@ -52,6 +52,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -96,6 +97,8 @@ class IndexSegment {
   private final StoreMetrics metrics;
   private final AtomicInteger numberOfItems = new AtomicInteger(0);
   private final Time time;
+  // the number of lookups in this segment while it was sealed. Used to decide which segments are kept in memory.
+  private final AtomicLong accessCount = new AtomicLong(0);
 
   // an approximation of the last modified time.
   private final AtomicLong lastModifiedTimeSec = new AtomicLong(0);
@@ -108,6 +111,8 @@ class IndexSegment {
   // reset key refers to the first StoreKey that is added to the index segment
   private Pair<StoreKey, PersistentIndex.IndexEntryType> resetKey = null;
   private NavigableMap<StoreKey, ConcurrentSkipListSet<IndexValue>> index = null;
+  // whether a sealed segment has been loaded into heap memory irrespective of the configured IndexMemState
+  private volatile boolean pinned = false;
 
   /**
    * Creates a new segment
@@ -316,6 +321,7 @@ class IndexSegment {
           toReturn = values.clone();
         }
       } else {
+        accessCount.incrementAndGet();
         if (bloomFilter != null) {
           metrics.bloomAccessedCount.inc();
         }
@@ -458,6 +464,27 @@ class IndexSegment {
     return storeKey;
   }
 
+  /**
+   * @param key the {@link StoreKey} to find the first key after.
+   * @param mmap the serEntries to search.
+   * @return the index of the first entry whose key is greater than {@code key}. The number of entries if there is no
+   * such entry.
+   * @throws StoreException if there are problems reading from the mmap
+   */
+  private int findIndexOfFirstKeyAfter(StoreKey key, ByteBuffer mmap) throws StoreException {
+    int low = 0;
+    int high = numberOfEntries(mmap);
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (getKeyAt(mmap, mid).compareTo(key) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
   private int findIndex(StoreKey keyToFind, ByteBuffer mmap) throws StoreException {
     // binary search on the mapped file
     int low = 0;
@@ -718,6 +745,63 @@ class IndexSegment {
     persistBloomFilter();
   }
 
+  /**
+   * @return the number of lookups in this segment since it was sealed (or since the count was last set).
+   */
+  long getAccessCount() {
+    return accessCount.get();
+  }
+
+  /**
+   * @param accessCount the value to set the access count to.
+   */
+  void setAccessCount(long accessCount) {
+    this.accessCount.set(accessCount);
+  }
+
+  /**
+   * @return {@code true} if the segment has been loaded into heap memory with {@link #pin()}.
+   */
+  boolean isPinned() {
+    return pinned;
+  }
+
+  /**
+   * Loads a sealed segment into heap memory irrespective of {@link StoreConfig#storeIndexMemState}. No-op if the
+   * segment is not sealed or is already pinned.
+   * @return {@code true} if the segment was loaded into heap memory by this call.
+   * @throws StoreException if there are problems with the index
+   */
+  boolean pin() throws StoreException {
+    if (!sealed.get() || pinned || indexFile.length() > Integer.MAX_VALUE) {
+      return false;
+    }
+    pinned = true;
+    try {
+      map();
+    } catch (StoreException | RuntimeException e) {
+      // the segment was not loaded, so it must not be treated as pinned.
+      pinned = false;
+      throw e;
+    }
+    return true;
+  }
+
+  /**
+   * Releases the heap copy of a segment loaded with {@link #pin()} and memory maps the segment again. The pages of the
+   * memory map are not loaded so that the OS can reclaim them.
+   * @return {@code true} if the segment was released by this call.
+   * @throws StoreException if there are problems with the index
+   */
+  boolean unpin() throws StoreException {
+    if (!pinned) {
+      return false;
+    }
+    pinned = false;
+    map();
+    return true;
+  }
+
   /**
    * Maps the segment of index either as a memory map or a in memory buffer depending on config.
    * @throws StoreException if there are problems with the index
@@ -725,7 +809,7 @@ class IndexSegment {
   private void map() throws StoreException {
     rwLock.writeLock().lock();
     try (RandomAccessFile raf = new RandomAccessFile(indexFile, "r")) {
-      if (config.storeIndexMemState.equals(IndexMemState.IN_HEAP_MEM)) {
+      if (pinned || config.storeIndexMemState.equals(IndexMemState.IN_HEAP_MEM)) {
         if (indexFile.length() > Integer.MAX_VALUE) {
           throw new IllegalStateException("Configured to keep indexes in memory but index file length > IntegerMax");
         }
@@ -1008,6 +1092,67 @@ class IndexSegment {
     return entriesLocal.size() > 0;
   }
 
+  /**
+   * Gets the index entries of the keys after {@code key} in this segment, in the order of the keys, until the entries
+   * of {@code maxKeys} keys that pass {@code keyFilter} have been added. All the entries of a key are added together,
+   * in the order of their offsets. Only the key is read for the entries of the keys that do not pass
+   * {@code keyFilter}.
+   * @param key the key after which to get the entries (exclusive). If {@code null}, the entries are got from the first
+   *            key.
+   * @param keyFilter the filter of the keys to get the entries of.
+   * @param maxKeys the most keys to add the entries of.
+   * @param entries the list to add the entries to.
+   * @return the last key read, whether or not it passed {@code keyFilter}. {@code null} if no key was read.
+   * @throws StoreException if there are problems reading the segment.
+   */
+  StoreKey getIndexEntriesAfter(StoreKey key, Predicate<StoreKey> keyFilter, int maxKeys, List<IndexEntry> entries)
+      throws StoreException {
+    StoreKey lastKey = null;
+    int keyCount = 0;
+    if (sealed.get()) {
+      ByteBuffer readBuf = serEntries.duplicate();
+      int totalEntries = numberOfEntries(readBuf);
+      int index = key == null ? 0 : findIndexOfFirstKeyAfter(key, readBuf);
+      NavigableSet<IndexValue> values = new TreeSet<>();
+      while (index < totalEntries && keyCount < maxKeys) {
+        lastKey = getKeyAt(readBuf, index);
+        boolean include = keyFilter.test(lastKey);
+        values.clear();
+        // the entries of a key are next to each other and the key has been read for the first of them
+        do {
+          if (include) {
+            byte[] buf = new byte[valueSize];
+            readBuf.get(buf);
+            values.add(new IndexValue(startOffset.getName(), ByteBuffer.wrap(buf), getVersion()));
+          }
+          index++;
+        } while (index < totalEntries && getKeyAt(readBuf, index).equals(lastKey));
+        if (include) {
+          for (IndexValue value : values) {
+            entries.add(new IndexEntry(lastKey, value));
+          }
+          keyCount++;
+        }
+      }
+    } else {
+      NavigableMap<StoreKey, ConcurrentSkipListSet<IndexValue>> tempMap =
+          key == null ? index : index.tailMap(key, false);
+      for (Map.Entry<StoreKey, ConcurrentSkipListSet<IndexValue>> entry : tempMap.entrySet()) {
+        if (keyCount == maxKeys) {
+          break;
+        }
+        lastKey = entry.getKey();
+        if (keyFilter.test(lastKey)) {
+          for (IndexValue value : entry.getValue()) {
+            entries.add(new IndexEntry(lastKey, new IndexValue(startOffset.getName(), value.getBytes(), getVersion())));
+          }
+          keyCount++;
+        }
+      }
+    }
+    return lastKey;
+  }
+
   /**
    * Eliminates duplicates in {@code entries}
    * @param entries the entries to eliminate duplicates from.
@@ -0,0 +1,212 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.utils.CrcInputStream;
+import com.github.ambry.utils.CrcOutputStream;
+import com.github.ambry.utils.Time;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Decides which sealed {@link IndexSegment}s of a store are kept in heap memory when the index is configured with
+ * {@link IndexMemState#ADAPTIVE}. Segments are ranked by the number of lookups they served since the last rebalance
+ * (older lookups count for less) and, for equal counts, by recency. The ranked segments are loaded into memory until
+ * the memory budget is used up and the rest are released back to an unloaded memory map.
+ * <p/>
+ * The access counts are persisted in an access profile when the index is closed so that the hottest segments can be
+ * loaded on startup, before the first requests have to fault their pages in.
+ */
+class IndexSegmentPager {
+  static final String ACCESS_PROFILE_FILE_NAME = "index_access_profile";
+  static final short ACCESS_PROFILE_VERSION_V0 = 0;
+
+  private static final Comparator<IndexSegment> HOTTEST_FIRST_COMPARATOR =
+      Comparator.comparingLong(IndexSegment::getAccessCount)
+          .thenComparing(IndexSegment::getStartOffset)
+          .reversed();
+
+  private final File profileFile;
+  private final long memBudgetBytes;
+  private final StoreMetrics metrics;
+  private final Time time;
+  private final Logger logger = LoggerFactory.getLogger(getClass());
+
+  /**
+   * @param dataDir the directory where the access profile is persisted.
+   * @param memBudgetBytes the maximum number of bytes of index segments to keep in heap memory.
+   * @param metrics the {@link StoreMetrics} to use.
+   * @param time the {@link Time} instance to use.
+   */
+  IndexSegmentPager(String dataDir, long memBudgetBytes, StoreMetrics metrics, Time time) {
+    this.profileFile = new File(dataDir, ACCESS_PROFILE_FILE_NAME);
+    this.memBudgetBytes = memBudgetBytes;
+    this.metrics = metrics;
+    this.time = time;
+  }
+
+  /**
+   * Restores the access counts of {@code indexSegments} from the persisted access profile (if any) and loads the hottest
+   * segments into memory.
+   * @param indexSegments the index segments of the store.
+   */
+  void warm(Collection<IndexSegment> indexSegments) {
+    Map<String, Long> accessCounts = readAccessProfile();
+    for (IndexSegment indexSegment : indexSegments) {
+      Long accessCount = accessCounts.get(indexSegment.getFile().getName());
+      if (accessCount != null) {
+        indexSegment.setAccessCount(accessCount);
+      }
+    }
+    logger.info("Index : {} warming index segments using access counts of {} segments", profileFile.getParent(),
+        accessCounts.size());
+    rebalance(indexSegments);
+  }
+
+  /**
+   * Loads the hottest sealed segments in {@code indexSegments} into memory within the budget and releases the others.
+   * The access counts are halved afterwards so that recent lookups weigh more than old ones.
+   * @param indexSegments the index segments of the store.
+   */
+  synchronized void rebalance(Collection<IndexSegment> indexSegments) {
+    long startTimeMs = time.milliseconds();
+    List<IndexSegment> sealedSegments = new ArrayList<>();
+    for (IndexSegment indexSegment : indexSegments) {
+      if (indexSegment.isSealed()) {
+        sealedSegments.add(indexSegment);
+      }
+    }
+    sealedSegments.sort(HOTTEST_FIRST_COMPARATOR);
+    long bytesInMemory = 0;
+    for (IndexSegment indexSegment : sealedSegments) {
+      long size = indexSegment.getFile().length();
+      try {
+        if (bytesInMemory + size <= memBudgetBytes) {
+          bytesInMemory += size;
+          if (indexSegment.pin()) {
+            metrics.indexSegmentPinCount.inc();
+          }
+        } else if (indexSegment.unpin()) {
+          metrics.indexSegmentUnpinCount.inc();
+        }
+      } catch (StoreException e) {
+        logger.error("Index : {} could not change the memory state of index segment {}", profileFile.getParent(),
+            indexSegment.getFile(), e);
+      }
+      indexSegment.setAccessCount(indexSegment.getAccessCount() / 2);
+    }
+    metrics.indexSegmentPagingTimeInMs.update(time.milliseconds() - startTimeMs);
+    logger.trace("Index : {} keeps {} bytes of index segments in memory", profileFile.getParent(), bytesInMemory);
+  }
+
+  /**
+   * Persists the access counts of {@code indexSegments} so that they can be restored by {@link #warm(Collection)}.
+   * @param indexSegments the index segments of the store.
+   * @throws StoreException if the access profile could not be written.
+   */
+  void persistAccessProfile(Collection<IndexSegment> indexSegments) throws StoreException {
+    List<IndexSegment> segmentsToPersist = new ArrayList<>(indexSegments);
+    /* The access profile format is as follows:
+       --
+       version
+       numSegments
+       --
+       segment1_fileNameLength segment1_fileName segment1_accessCount
+       ....
+       segmentN_fileNameLength segmentN_fileName segmentN_accessCount
+       --
+       crc
+       --
+     */
+    File tempFile = new File(profileFile.getParent(), ACCESS_PROFILE_FILE_NAME + ".tmp");
+    try {
+      FileOutputStream fileStream = new FileOutputStream(tempFile);
+      CrcOutputStream crc = new CrcOutputStream(fileStream);
+      try (DataOutputStream writer = new DataOutputStream(crc)) {
+        writer.writeShort(ACCESS_PROFILE_VERSION_V0);
+        writer.writeInt(segmentsToPersist.size());
+        for (IndexSegment indexSegment : segmentsToPersist) {
+          byte[] fileName = indexSegment.getFile().getName().getBytes(StandardCharsets.UTF_8);
+          writer.writeInt(fileName.length);
+          writer.write(fileName);
+          writer.writeLong(indexSegment.getAccessCount());
+        }
+        writer.writeLong(crc.getValue());
+        fileStream.getChannel().force(true);
+      }
+      if (!tempFile.renameTo(profileFile)) {
+        throw new IOException("Could not rename " + tempFile + " to " + profileFile);
+      }
+    } catch (IOException e) {
+      metrics.indexAccessProfileErrorCount.inc();
+      StoreErrorCodes errorCode = StoreException.resolveErrorCode(e);
+      throw new StoreException(errorCode.toString() + " while persisting index access profile " + profileFile, e,
+          errorCode);
+    }
+  }
+
+  /**
+   * @return the access counts in the persisted access profile keyed by index segment file name. Empty if there is no
+   * profile or it could not be read. The profile is only a hint, so errors are logged and otherwise ignored.
+   */
+  private Map<String, Long> readAccessProfile() {
+    Map<String, Long> accessCounts = new HashMap<>();
+    if (!profileFile.exists()) {
+      return accessCounts;
+    }
+    try {
+      CrcInputStream crcStream = new CrcInputStream(new FileInputStream(profileFile));
+      try (DataInputStream stream = new DataInputStream(crcStream)) {
+        short version = stream.readShort();
+        if (version != ACCESS_PROFILE_VERSION_V0) {
+          throw new IOException("Unknown access profile version " + version);
+        }
+        int numSegments = stream.readInt();
+        for (int i = 0; i < numSegments; i++) {
+          int fileNameLength = stream.readInt();
+          if (fileNameLength < 0) {
+            throw new IOException("Invalid file name length " + fileNameLength + " in access profile");
+          }
+          byte[] fileName = new byte[fileNameLength];
+          stream.readFully(fileName);
+          accessCounts.put(new String(fileName, StandardCharsets.UTF_8), stream.readLong());
+        }
+        long crc = crcStream.getValue();
+        if (crc != stream.readLong()) {
+          throw new IOException("Crc check does not match for access profile");
+        }
+      }
+    } catch (IOException e) {
+      metrics.indexAccessProfileErrorCount.inc();
+      logger.error("Index : {} could not read index access profile {}. Ignoring it", profileFile.getParent(),
+          profileFile, e);
+      accessCounts.clear();
+    }
+    return accessCounts;
+  }
+}
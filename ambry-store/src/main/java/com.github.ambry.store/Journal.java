@@ -16,6 +16,7 @@ package com.github.ambry.store;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
@@ -53,6 +54,7 @@ class Journal {
   private final int maxEntriesToReturn;
   private final AtomicInteger currentNumberOfEntries;
   private final String dataDir;
+  private final Set<Runnable> appendListeners = ConcurrentHashMap.newKeySet();
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private boolean inBootstrapMode = false;
 
@@ -96,6 +98,11 @@ class Journal {
       currentNumberOfEntries.incrementAndGet();
       logger.trace("Journal : " + dataDir + " number of entries " + currentNumberOfEntries.get());
     }
+    for (Runnable listener : appendListeners) {
+      if (appendListeners.remove(listener)) {
+        listener.run();
+      }
+    }
   }
 
   /**
@@ -202,6 +209,23 @@ class Journal {
     inBootstrapMode = false;
   }
 
+  /**
+   * Adds a listener that is run once, the next time an entry is added to the journal. The listener runs on the thread
+   * that adds the entry, while the store may be holding its write lock, so it should hand off any work it has to do.
+   * @param listener the listener to run.
+   */
+  void addAppendListener(Runnable listener) {
+    appendListeners.add(listener);
+  }
+
+  /**
+   * Removes a listener added through {@link #addAppendListener(Runnable)} that has not run yet.
+   * @param listener the listener to remove.
+   */
+  void removeAppendListener(Runnable listener) {
+    appendListeners.remove(listener);
+  }
+
   /**
    * @return the number of entries that is currently in the {@link Journal}.
    */
@@ -0,0 +1,151 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.utils.MurmurHash;
+import com.github.ambry.utils.Utils;
+import java.nio.ByteBuffer;
+
+
+/**
+ * A hash tree over the keys of a store and their lifecycle state, used to find the keys on which two replicas of a
+ * partition disagree without exchanging all of them.
+ * <p/>
+ * The key space is split into {@code 2^LEAF_LEVEL} leaf buckets by a hash of the key. Bucket {@code b} at level
+ * {@code l} covers the leaf buckets whose top {@code l} bits are {@code b}, so level 0 is the whole store and every
+ * bucket has two children on the next level. The digest of a bucket is the sum of the digests of the keys in it,
+ * which does not depend on the order in which the keys were written, and so does not depend on the layout of the log
+ * that differs between replicas. Two replicas only have to compare the children of the buckets whose digests differ.
+ * <p/>
+ * The digests cover the state of the keys as of a reference time, made up of the operations at or before it, so that
+ * operations that are still being replicated do not show up as differences.
+ */
+public class KeyRangeDigests {
+  /**
+   * The level of the leaf buckets of the tree.
+   */
+  public static final int LEAF_LEVEL = 12;
+
+  private static final int STATE_SIZE_IN_BYTES = Byte.BYTES + Long.BYTES + Short.BYTES + Short.BYTES;
+  private static final byte DELETED = 1;
+
+  private final long referenceTimeMs;
+  private final long[] leafDigests;
+  private final int[] leafKeyCounts;
+
+  /**
+   * @param referenceTimeMs the time as of which the state of the keys is taken. Operations after it are left
+   *                        out.
+   */
+  public KeyRangeDigests(long referenceTimeMs) {
+    this.referenceTimeMs = referenceTimeMs;
+    leafDigests = new long[1 << LEAF_LEVEL];
+    leafKeyCounts = new int[1 << LEAF_LEVEL];
+  }
+
+  /**
+   * Adds a key to the leaf bucket it belongs to.
+   * @param info the {@link MessageInfo} with the key and its state as of the reference time.
+   */
+  public void add(MessageInfo info) {
+    int leafBucket = getLeafBucket(info.getStoreKey());
+    leafDigests[leafBucket] += getDigest(info);
+    leafKeyCounts[leafBucket]++;
+  }
+
+  /**
+   * @return the time as of which the state of the keys is taken. Operations after it are left out.
+   */
+  public long getReferenceTimeMs() {
+    return referenceTimeMs;
+  }
+
+  /**
+   * @param level the level of the bucket, between 0 and {@link #LEAF_LEVEL}.
+   * @param bucket the bucket on {@code level}.
+   * @return the digest of the keys in {@code bucket}.
+   */
+  public long getDigest(int level, int bucket) {
+    long digest = 0;
+    int firstLeafBucket = getFirstLeafBucket(level, bucket);
+    for (int i = firstLeafBucket; i < firstLeafBucket + (1 << (LEAF_LEVEL - level)); i++) {
+      digest += leafDigests[i];
+    }
+    return digest;
+  }
+
+  /**
+   * @param level the level of the bucket, between 0 and {@link #LEAF_LEVEL}.
+   * @param bucket the bucket on {@code level}.
+   * @return the number of keys in {@code bucket}.
+   */
+  public int getKeyCount(int level, int bucket) {
+    int keyCount = 0;
+    int firstLeafBucket = getFirstLeafBucket(level, bucket);
+    for (int i = firstLeafBucket; i < firstLeafBucket + (1 << (LEAF_LEVEL - level)); i++) {
+      keyCount += leafKeyCounts[i];
+    }
+    return keyCount;
+  }
+
+  /**
+   * @param key the {@link StoreKey} to find the bucket of.
+   * @return the leaf bucket that {@code key} belongs to.
+   */
+  public static int getLeafBucket(StoreKey key) {
+    byte[] keyBytes = key.toBytes();
+    long hash = MurmurHash.hash3_x64_128(ByteBuffer.wrap(keyBytes), 0, keyBytes.length, 0)[0];
+    return (int) (hash >>> (Long.SIZE - LEAF_LEVEL));
+  }
+
+  /**
+   * @param level the level of the bucket, between 0 and {@link #LEAF_LEVEL}.
+   * @param bucket the bucket on {@code level}.
+   * @return {@code true} if {@code bucket} is a valid bucket on {@code level}.
+   */
+  public static boolean isValidBucket(int level, int bucket) {
+    return level >= 0 && level <= LEAF_LEVEL && bucket >= 0 && bucket < (1 << level);
+  }
+
+  /**
+   * Computes the digest of a key and its state. Only the parts of the state that replicas should agree on are
+   * included: whether the key is deleted and, if it is not, its expiry time. The account and container are included
+   * as well.
+   * @param info the {@link MessageInfo} with the key and its state.
+   * @return the digest of {@code info}.
+   */
+  public static long getDigest(MessageInfo info) {
+    byte[] keyBytes = info.getStoreKey().toBytes();
+    ByteBuffer buffer = ByteBuffer.allocate(keyBytes.length + STATE_SIZE_IN_BYTES);
+    buffer.put(keyBytes);
+    buffer.put(info.isDeleted() ? DELETED : 0);
+    buffer.putLong(info.isDeleted() ? Utils.Infinite_Time : info.getExpirationTimeInMs());
+    buffer.putShort(info.getAccountId());
+    buffer.putShort(info.getContainerId());
+    return MurmurHash.hash3_x64_128(buffer, 0, buffer.capacity(), 0)[0];
+  }
+
+  /**
+   * @param level the level of the bucket.
+   * @param bucket the bucket on {@code level}.
+   * @return the first leaf bucket covered by {@code bucket}.
+   * @throws IllegalArgumentException if {@code bucket} is not a valid bucket on {@code level}.
+   */
+  private static int getFirstLeafBucket(int level, int bucket) {
+    if (!isValidBucket(level, bucket)) {
+      throw new IllegalArgumentException("Invalid bucket " + bucket + " on level " + level);
+    }
+    return bucket << (LEAF_LEVEL - level);
+  }
+}
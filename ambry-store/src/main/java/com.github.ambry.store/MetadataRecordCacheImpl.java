@@ -0,0 +1,96 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * A {@link MetadataRecordCache} that holds up to a configured number of bytes of records and evicts the least recently
+ * used entries once that limit is reached.
+ */
+class MetadataRecordCacheImpl implements MetadataRecordCache {
+  private final long maxSizeInBytes;
+  private final StoreMetrics metrics;
+  private final LinkedHashMap<StoreKey, ByteBuffer> records = new LinkedHashMap<>(16, 0.75f, true);
+  private long sizeInBytes = 0;
+
+  /**
+   * @param maxSizeInBytes the maximum number of bytes of records that can be cached.
+   * @param metrics the {@link StoreMetrics} to record cache hits, misses and evictions in.
+   */
+  MetadataRecordCacheImpl(long maxSizeInBytes, StoreMetrics metrics) {
+    if (maxSizeInBytes <= 0) {
+      throw new IllegalArgumentException("Invalid max size for the metadata record cache: " + maxSizeInBytes);
+    }
+    this.maxSizeInBytes = maxSizeInBytes;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public synchronized ByteBuffer get(StoreKey key) {
+    ByteBuffer cached = records.get(key);
+    if (cached == null) {
+      metrics.metadataCacheMissCount.inc();
+      return null;
+    }
+    metrics.metadataCacheHitCount.inc();
+    return cached.asReadOnlyBuffer();
+  }
+
+  @Override
+  public synchronized void put(StoreKey key, ByteBuffer value) {
+    ByteBuffer toCache = value.slice();
+    if (toCache.remaining() > maxSizeInBytes) {
+      return;
+    }
+    ByteBuffer previous = records.put(key, toCache);
+    if (previous != null) {
+      sizeInBytes -= previous.remaining();
+    }
+    sizeInBytes += toCache.remaining();
+    Iterator<Map.Entry<StoreKey, ByteBuffer>> iterator = records.entrySet().iterator();
+    while (sizeInBytes > maxSizeInBytes && iterator.hasNext()) {
+      Map.Entry<StoreKey, ByteBuffer> eldest = iterator.next();
+      sizeInBytes -= eldest.getValue().remaining();
+      iterator.remove();
+      metrics.metadataCacheEvictionCount.inc();
+    }
+  }
+
+  @Override
+  public synchronized void invalidate(StoreKey key) {
+    ByteBuffer removed = records.remove(key);
+    if (removed != null) {
+      sizeInBytes -= removed.remaining();
+    }
+  }
+
+  /**
+   * @return the number of bytes of records that are currently cached.
+   */
+  synchronized long getSizeInBytes() {
+    return sizeInBytes;
+  }
+
+  /**
+   * @return the number of entries that are currently cached.
+   */
+  synchronized int getEntryCount() {
+    return records.size();
+  }
+}
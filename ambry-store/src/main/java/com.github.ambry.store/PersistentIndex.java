@@ -28,10 +28,12 @@ import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Map;
 import java.util.NavigableSet;
+import java.util.PriorityQueue;
 import java.util.Random;
 import java.util.Set;
 import java.util.TreeMap;
@@ -42,6 +44,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,6 +68,8 @@ class PersistentIndex {
   static final short VERSION_2 = 2;
   static final short CURRENT_VERSION = VERSION_2;
   static final String CLEAN_SHUTDOWN_FILENAME = "cleanshutdown";
+  // the number of keys read from an index segment at a time when the state of all the keys is computed.
+  static final int KEY_STATE_SCAN_KEYS_PER_READ = 100;
 
   static final FilenameFilter INDEX_SEGMENT_FILE_FILTER = new FilenameFilter() {
     @Override
@@ -117,6 +123,7 @@ class PersistentIndex {
   private final Logger logger = LoggerFactory.getLogger(getClass());
   private final IndexPersistor persistor = new IndexPersistor();
   private final ScheduledFuture<?> persistorTask;
+  private final IndexSegmentPager indexSegmentPager;
 
   /**
    * Creates a new persistent index
@@ -214,6 +221,13 @@ class PersistentIndex {
       logEndOffsetOnStartup = log.getEndOffset();
       journal.finishBootstrap();
 
+      if (config.storeIndexMemState.equals(IndexMemState.ADAPTIVE)) {
+        indexSegmentPager = new IndexSegmentPager(datadir, config.storeIndexAdaptiveMemBudgetBytes, metrics, time);
+        indexSegmentPager.warm(validIndexSegments.values());
+      } else {
+        indexSegmentPager = null;
+      }
+
       if (hardDelete != null) {
         // After recovering the last messages, and setting the log end offset, let the hard delete thread do its recovery.
         // NOTE: It is safe to do the hard delete recovery after the regular recovery because we ensure that hard deletes
@@ -448,6 +462,22 @@ class PersistentIndex {
     journal.addEntry(entry.getValue().getOffset(), entry.getKey(), entry.getCrc());
   }
 
+  /**
+   * Adds a listener that is run once, the next time an entry is added to the index.
+   * @param listener the listener to run. It should not block.
+   */
+  void addNewEntryListener(Runnable listener) {
+    journal.addAppendListener(listener);
+  }
+
+  /**
+   * Removes a listener added through {@link #addNewEntryListener(Runnable)} that has not run yet.
+   * @param listener the listener to remove.
+   */
+  void removeNewEntryListener(Runnable listener) {
+    journal.removeAppendListener(listener);
+  }
+
   /**
    * Adds a set of entries to the index
    * @param entries The entries to be added to the index
@@ -1128,6 +1158,122 @@ class PersistentIndex {
     return mapping;
   }
 
+  /**
+   * Gets the files of the log segments that are no longer written to, along with the index segment and bloom filter
+   * files of those log segments. A log segment is only included if all of its index segments have been sealed, so the
+   * files that are returned do not change unless they are compacted. The log segments that are included are always a
+   * prefix of the log.
+   * @return the {@link SealedStoreFiles} of this index.
+   */
+  SealedStoreFiles getSealedStoreFiles() {
+    ConcurrentSkipListMap<Offset, IndexSegment> indexSegments = validIndexSegments;
+    Map<String, Long> fileSizes = new LinkedHashMap<>();
+    Offset endOffset = null;
+    if (!indexSegments.isEmpty()) {
+      String activeLogSegmentName = indexSegments.lastKey().getName();
+      for (Map.Entry<String, List<IndexSegment>> entry : getLogSegmentToIndexSegmentMapping(indexSegments).entrySet()) {
+        String logSegmentName = entry.getKey();
+        List<IndexSegment> logSegmentIndexSegments = entry.getValue();
+        if (logSegmentName.equals(activeLogSegmentName) || !logSegmentIndexSegments.stream()
+            .allMatch(IndexSegment::isSealed)) {
+          break;
+        }
+        fileSizes.put(LogSegmentNameHelper.nameToFilename(logSegmentName),
+            log.getSegment(logSegmentName).getEndOffset());
+        for (IndexSegment indexSegment : logSegmentIndexSegments) {
+          fileSizes.put(indexSegment.getFile().getName(), indexSegment.getFile().length());
+          File bloomFile = new File(dataDir,
+              IndexSegment.generateIndexSegmentFilenamePrefix(indexSegment.getStartOffset())
+                  + IndexSegment.BLOOM_FILE_NAME_SUFFIX);
+          if (bloomFile.exists()) {
+            fileSizes.put(bloomFile.getName(), bloomFile.length());
+          }
+        }
+        endOffset = indexSegments.higherKey(logSegmentIndexSegments.get(logSegmentIndexSegments.size() - 1)
+            .getStartOffset());
+      }
+    }
+    // the entries after the sealed files start at the first index segment that was not included. The journal may have
+    // moved past it, in which case the token is served from that index segment.
+    return new SealedStoreFiles(fileSizes,
+        endOffset == null ? null : new StoreFindToken(endOffset, sessionId, incarnationId, true));
+  }
+
+  /**
+   * Computes the {@link KeyRangeDigests} of the keys in this index. Only the index is read, not the log.
+   * @param referenceTimeMs the time as of which the state of the keys is taken. Operations after it are left
+   *                        out. Keys that expired by then are not included.
+   * @return the {@link KeyRangeDigests} of the keys in this index.
+   * @throws StoreException if there are problems reading the index.
+   */
+  KeyRangeDigests getKeyRangeDigests(long referenceTimeMs) throws StoreException {
+    KeyRangeDigests keyRangeDigests = new KeyRangeDigests(referenceTimeMs);
+    forEachKeyAsOf(referenceTimeMs, key -> true, keyRangeDigests::add);
+    return keyRangeDigests;
+  }
+
+  /**
+   * Gets the keys in some of the leaf buckets of the {@link KeyRangeDigests} of this index, with their state.
+   * @param leafBuckets the leaf buckets to get the keys of.
+   * @param referenceTimeMs the time as of which the state of the keys is returned. Keys that expired by then are not
+   *                        included.
+   * @return the {@link MessageInfo}s of the keys in {@code leafBuckets}.
+   * @throws StoreException if there are problems reading the index.
+   */
+  List<MessageInfo> getKeysInLeafBuckets(Set<Integer> leafBuckets, long referenceTimeMs) throws StoreException {
+    List<MessageInfo> messageInfos = new ArrayList<>();
+    forEachKeyAsOf(referenceTimeMs, key -> leafBuckets.contains(KeyRangeDigests.getLeafBucket(key)),
+        messageInfos::add);
+    return messageInfos;
+  }
+
+  /**
+   * Calls {@code consumer} once for every key in {@code keyFilter} with the state of the key as of
+   * {@code referenceTimeMs}, which is the state that the entries of the key at or before {@code referenceTimeMs} make
+   * up. Keys that have no such entries or that had expired by then are skipped. The keys are visited in order: every
+   * index segment is read in the order of its keys, {@link #KEY_STATE_SCAN_KEYS_PER_READ} keys at a time, and the
+   * segments are merged so that all the entries of a key are seen together. Only the keys read last from every segment
+   * are held in memory.
+   * @param referenceTimeMs the time as of which the state of the keys is computed.
+   * @param keyFilter the filter of the keys to compute the state of.
+   * @param consumer the consumer of the {@link MessageInfo} of every key.
+   * @throws StoreException if there are problems reading the index.
+   */
+  private void forEachKeyAsOf(long referenceTimeMs, Predicate<StoreKey> keyFilter, Consumer<MessageInfo> consumer)
+      throws StoreException {
+    PriorityQueue<SegmentKeyCursor> cursors = new PriorityQueue<>();
+    for (IndexSegment indexSegment : validIndexSegments.values()) {
+      SegmentKeyCursor cursor = new SegmentKeyCursor(indexSegment, keyFilter);
+      if (cursor.next()) {
+        cursors.add(cursor);
+      }
+    }
+    while (!cursors.isEmpty()) {
+      StoreKey key = cursors.peek().key;
+      KeyStateAsOf state = new KeyStateAsOf();
+      // the cursors on the key are polled from the oldest segment to the newest
+      while (!cursors.isEmpty() && cursors.peek().key.equals(key)) {
+        SegmentKeyCursor cursor = cursors.poll();
+        for (IndexValue value : cursor.values) {
+          if (value.getOperationTimeInMs() <= referenceTimeMs) {
+            state.apply(value);
+          }
+        }
+        if (cursor.next()) {
+          cursors.add(cursor);
+        }
+      }
+      if (state.size == -1) {
+        continue;
+      }
+      if (!state.deleted && state.expiresAtMs != Utils.Infinite_Time && state.expiresAtMs <= referenceTimeMs) {
+        continue;
+      }
+      consumer.accept(new MessageInfo(key, state.size, state.deleted, state.ttlUpdated, state.expiresAtMs,
+          state.accountId, state.containerId, state.operationTimeMs));
+    }
+  }
+
   /**
    * Finds entries starting from a key from the segment with start offset initialSegmentStartOffset. The key represents
    * the position in the segment starting from where entries needs to be fetched.
@@ -1348,6 +1494,13 @@ class PersistentIndex {
             logger.error("Index : " + dataDir + " error while persisting cleanup token ", e);
           }
         }
+        if (indexSegmentPager != null) {
+          try {
+            indexSegmentPager.persistAccessProfile(validIndexSegments.values());
+          } catch (StoreException e) {
+            logger.error("Index : " + dataDir + " error while persisting index access profile ", e);
+          }
+        }
         try {
           cleanShutdownFile.createNewFile();
         } catch (IOException e) {
@@ -1677,6 +1830,106 @@ class PersistentIndex {
       } catch (Exception e) {
         logger.error("Index : " + dataDir + " error while persisting the index to disk ", e);
       }
+      if (indexSegmentPager != null) {
+        // segments sealed by the write above become candidates for staying in memory
+        indexSegmentPager.rebalance(validIndexSegments.values());
+      }
+    }
+  }
+
+  /**
+   * Reads the keys of an {@link IndexSegment} that pass a filter in order, with the entries of every key.
+   * Cursors are ordered by their current key and then by the start offset of their segment.
+   */
+  private static class SegmentKeyCursor implements Comparable<SegmentKeyCursor> {
+    private final IndexSegment indexSegment;
+    private final Predicate<StoreKey> keyFilter;
+    private final List<IndexEntry> entries = new ArrayList<>();
+    private int position = 0;
+    private StoreKey lastKeyRead = null;
+    StoreKey key = null;
+    final List<IndexValue> values = new ArrayList<>();
+
+    /**
+     * @param indexSegment the {@link IndexSegment} to read.
+     * @param keyFilter the filter of the keys to read.
+     */
+    SegmentKeyCursor(IndexSegment indexSegment, Predicate<StoreKey> keyFilter) {
+      this.indexSegment = indexSegment;
+      this.keyFilter = keyFilter;
+    }
+
+    /**
+     * Moves to the next key of the segment.
+     * @return {@code true} if there is a next key. {@code false} if all the keys of the segment have been read.
+     * @throws StoreException if there are problems reading the segment.
+     */
+    boolean next() throws StoreException {
+      if (position == entries.size()) {
+        entries.clear();
+        position = 0;
+        lastKeyRead = indexSegment.getIndexEntriesAfter(lastKeyRead, keyFilter, KEY_STATE_SCAN_KEYS_PER_READ, entries);
+        if (entries.isEmpty()) {
+          return false;
+        }
+      }
+      key = entries.get(position).getKey();
+      values.clear();
+      while (position < entries.size() && entries.get(position).getKey().equals(key)) {
+        values.add(entries.get(position).getValue());
+        position++;
+      }
+      return true;
+    }
+
+    @Override
+    public int compareTo(SegmentKeyCursor other) {
+      int result = key.compareTo(other.key);
+      return result != 0 ? result : indexSegment.getStartOffset().compareTo(other.indexSegment.getStartOffset());
+    }
+  }
+
+  /**
+   * The state of a key that is made up of the entries of the key in the index, applied in the order of their offsets.
+   */
+  private static class KeyStateAsOf {
+    long size = -1;
+    boolean deleted = false;
+    boolean ttlUpdated = false;
+    long expiresAtMs = Utils.Infinite_Time;
+    short accountId;
+    short containerId;
+    long operationTimeMs;
+
+    /**
+     * Applies the next entry of the key.
+     * @param value the {@link IndexValue} of the entry.
+     */
+    void apply(IndexValue value) {
+      if (deleted) {
+        return;
+      }
+      operationTimeMs = value.getOperationTimeInMs();
+      if (value.isFlagSet(IndexValue.Flags.Delete_Index)) {
+        deleted = true;
+        size = value.getSize();
+        ttlUpdated |= value.isFlagSet(IndexValue.Flags.Ttl_Update_Index);
+        if (!ttlUpdated) {
+          expiresAtMs = value.getExpiresAtMs();
+        }
+        accountId = value.getAccountId();
+        containerId = value.getContainerId();
+      } else if (value.isFlagSet(IndexValue.Flags.Ttl_Update_Index)) {
+        ttlUpdated = true;
+        expiresAtMs = value.getExpiresAtMs();
+      } else {
+        size = value.getSize();
+        if (!ttlUpdated) {
+          expiresAtMs = value.getExpiresAtMs();
+        }
+        accountId = value.getAccountId();
+        containerId = value.getContainerId();
+      }
     }
   }
 }
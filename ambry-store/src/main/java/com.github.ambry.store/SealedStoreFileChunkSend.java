@@ -0,0 +1,99 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.network.Send;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+
+/**
+ * A {@link Send} of a chunk of one of the {@link SealedStoreFiles} of a store.
+ * <p/>
+ * A chunk of a log segment is transferred straight from the file channel of the segment with
+ * {@link FileChannel#transferTo(long, long, WritableByteChannel)}. The view of the segment that is held until the
+ * send is released keeps compaction from removing the segment in the meantime. The send releases itself once the chunk
+ * has been sent, and has to be released by whoever drops it before that. The index segment and bloom filter files are
+ * small, so their chunks are read into memory.
+ */
+class SealedStoreFileChunkSend implements Send {
+  private final LogSegment segment;
+  private final FileChannel segmentChannel;
+  private final long segmentOffset;
+  private final ByteBuffer buffer;
+  private final long sizeInBytes;
+  private long sizeWritten = 0;
+  private boolean viewClosed = false;
+
+  /**
+   * Creates a send of a chunk of {@code segment}.
+   * @param segment the {@link LogSegment} to send the chunk of.
+   * @param offset the offset in the segment at which the chunk starts.
+   * @param sizeInBytes the size of the chunk.
+   */
+  SealedStoreFileChunkSend(LogSegment segment, long offset, long sizeInBytes) {
+    this.segment = segment;
+    segmentChannel = segment.getView().getSecond();
+    segmentOffset = offset;
+    buffer = null;
+    this.sizeInBytes = sizeInBytes;
+  }
+
+  /**
+   * Creates a send of a chunk that has been read into memory.
+   * @param buffer the chunk.
+   */
+  SealedStoreFileChunkSend(ByteBuffer buffer) {
+    segment = null;
+    segmentChannel = null;
+    segmentOffset = 0;
+    this.buffer = buffer;
+    sizeInBytes = buffer.remaining();
+  }
+
+  @Override
+  public long writeTo(WritableByteChannel channel) throws IOException {
+    long written;
+    if (buffer != null) {
+      written = channel.write(buffer);
+    } else {
+      written = segmentChannel.transferTo(segmentOffset + sizeWritten, sizeInBytes - sizeWritten, channel);
+    }
+    sizeWritten += written;
+    if (isSendComplete()) {
+      release();
+    }
+    return written;
+  }
+
+  @Override
+  public synchronized void release() {
+    if (segment != null && !viewClosed) {
+      segment.closeView();
+      viewClosed = true;
+    }
+  }
+
+  @Override
+  public boolean isSendComplete() {
+    return sizeWritten >= sizeInBytes;
+  }
+
+  @Override
+  public long sizeInBytes() {
+    return sizeInBytes;
+  }
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import java.util.Collections;
+import java.util.Map;
+
+
+/**
+ * The files of a store that are no longer written to: the log segments before the one that is being appended to and
+ * the index segment and bloom filter files of those log segments. A new replica of the store can be bootstrapped by
+ * copying these files, after which it replicates the rest of the store starting from {@link #getEndToken()}.
+ */
+public class SealedStoreFiles {
+  private final Map<String, Long> fileSizes;
+  private final FindToken endToken;
+
+  /**
+   * @param fileSizes the names of the sealed files mapped to the number of bytes of each of them that has to be copied,
+   *                  in the order in which they should be copied.
+   * @param endToken the token from which the entries that were written after the sealed files can be found. Can be
+   *                 {@code null} if there are no sealed files.
+   */
+  SealedStoreFiles(Map<String, Long> fileSizes, FindToken endToken) {
+    this.fileSizes = Collections.unmodifiableMap(fileSizes);
+    this.endToken = endToken;
+  }
+
+  /**
+   * @return the names of the sealed files mapped to the number of bytes of each of them that has to be copied, in the
+   * order in which they should be copied.
+   */
+  public Map<String, Long> getFileSizes() {
+    return fileSizes;
+  }
+
+  /**
+   * @return the token from which the entries that were written after the sealed files can be found, or {@code null} if
+   * there are no sealed files.
+   */
+  public FindToken getEndToken() {
+    return endToken;
+  }
+
+  @Override
+  public String toString() {
+    return "SealedStoreFiles[FileCount=" + fileSizes.size() + ", EndToken=" + endToken + "]";
+  }
+}
@@ -21,13 +21,16 @@ import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.clustermap.ReplicaStatusDelegate;
 import com.github.ambry.config.DiskManagerConfig;
 import com.github.ambry.config.StoreConfig;
+import com.github.ambry.network.Send;
 import com.github.ambry.utils.Time;
 import com.github.ambry.utils.Utils;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
@@ -229,6 +232,101 @@ public class StorageManager {
     return diskManager != null && diskManager.startBlobStore(id);
   }
 
+  /**
+   * Start BlobStore with given {@link PartitionId} {@code id} from the sealed files of another replica of the
+   * partition. The BlobStore has to be shut down and should have been empty. Its log segments and index files are
+   * replaced with the files in {@code stagingDir}.
+   * @param id the {@link PartitionId} of the {@link Store} which would be started.
+   * @param stagingDir the directory with the sealed files. It has to be on the same disk as the store.
+   * @return {@code true} if the store was started from the sealed files. {@code false} if not, in which case the files
+   * of the store are the ones it had before.
+   */
+  public boolean startBlobStoreFromSealedFiles(PartitionId id, File stagingDir) {
+    DiskManager diskManager = partitionToDiskManager.get(id);
+    return diskManager != null && diskManager.startBlobStoreFromSealedFiles(id, stagingDir);
+  }
+
+  /**
+   * @param id the {@link PartitionId} of the {@link Store} whose sealed files are needed.
+   * @return the {@link SealedStoreFiles} of the store of {@code id}.
+   * @throws StoreException if the store of {@code id} is not started.
+   */
+  public SealedStoreFiles getSealedStoreFiles(PartitionId id) throws StoreException {
+    return getStartedBlobStore(id).getSealedStoreFiles();
+  }
+
+  /**
+   * Gets a chunk of one of the {@link SealedStoreFiles} of the store of {@code id}.
+   * @param id the {@link PartitionId} of the {@link Store} to read from.
+   * @param fileName the name of the sealed file.
+   * @param offset the offset in the file at which the chunk starts.
+   * @param sizeInBytes the size of the chunk.
+   * @return the {@link Send} of the chunk.
+   * @throws StoreException if the store of {@code id} is not started, if {@code fileName} is not one of its sealed
+   * files or if the chunk could not be read.
+   */
+  public Send getSealedStoreFileChunk(PartitionId id, String fileName, long offset, long sizeInBytes)
+      throws StoreException {
+    return getStartedBlobStore(id).getSealedStoreFileChunk(fileName, offset, sizeInBytes);
+  }
+
+  /**
+   * @param id the {@link PartitionId} of the {@link Store} whose digests are needed.
+   * @param referenceTimeMs the time as of which the state of the keys is taken. Operations after it are left
+   *                        out.
+   * @return the {@link KeyRangeDigests} of the store of {@code id}.
+   * @throws StoreException if the store of {@code id} is not started or its index could not be read.
+   */
+  public KeyRangeDigests getKeyRangeDigests(PartitionId id, long referenceTimeMs) throws StoreException {
+    return getStartedBlobStore(id).getKeyRangeDigests(referenceTimeMs);
+  }
+
+  /**
+   * @param id the {@link PartitionId} of the {@link Store} whose keys are needed.
+   * @param leafBuckets the leaf buckets of the {@link KeyRangeDigests} to get the keys of.
+   * @param referenceTimeMs the time as of which the state of the keys is taken. Operations after it are left
+   *                        out.
+   * @return the {@link MessageInfo}s of the keys in {@code leafBuckets} in the store of {@code id}.
+   * @throws StoreException if the store of {@code id} is not started or its index could not be read.
+   */
+  public List<MessageInfo> getKeysInLeafBuckets(PartitionId id, Set<Integer> leafBuckets, long referenceTimeMs)
+      throws StoreException {
+    return getStartedBlobStore(id).getKeysInLeafBuckets(leafBuckets, referenceTimeMs);
+  }
+
+  /**
+   * Adds a listener that is run once, the next time an entry is added to the index of the store of {@code id}.
+   * @param id the {@link PartitionId} of the {@link Store} to listen to.
+   * @param listener the listener to run. It runs on the thread that writes to the store and should not block.
+   * @throws StoreException if the store of {@code id} is not started.
+   */
+  public void addNewEntryListener(PartitionId id, Runnable listener) throws StoreException {
+    getStartedBlobStore(id).addNewEntryListener(listener);
+  }
+
+  /**
+   * Removes a listener added through {@link #addNewEntryListener(PartitionId, Runnable)} that has not run yet.
+   * @param id the {@link PartitionId} of the {@link Store} that was listened to.
+   * @param listener the listener to remove.
+   * @throws StoreException if the store of {@code id} is not started.
+   */
+  public void removeNewEntryListener(PartitionId id, Runnable listener) throws StoreException {
+    getStartedBlobStore(id).removeNewEntryListener(listener);
+  }
+
+  /**
+   * @param id the {@link PartitionId} to find the store for.
+   * @return the started {@link BlobStore} of {@code id}.
+   * @throws StoreException if there is no started store for {@code id}.
+   */
+  private BlobStore getStartedBlobStore(PartitionId id) throws StoreException {
+    Store store = getStore(id);
+    if (store == null) {
+      throw new StoreException("Store for partition " + id + " is not started", StoreErrorCodes.Store_Not_Started);
+    }
+    return (BlobStore) store;
+  }
+
   /**
    * Shutdown BlobStore with given {@link PartitionId} {@code id}.
    * @param id the {@link PartitionId} of the {@link Store} which would be shutdown.
@@ -43,6 +43,9 @@ public class StorageManagerMetrics {
   public final Counter diskSpaceAllocatorSegmentNotFoundCount;
   public final Counter diskSpaceAllocatorAllocBeforeInitCount;
   public final Counter diskSpaceAllocatorFreeBeforeInitCount;
+  public final Histogram diskSpaceAllocatorSyncAllocTimeMs;
+  public final Counter diskSpaceAllocatorReplenishedSegmentCount;
+  public final Counter diskSpaceAllocatorReplenishErrorCount;
 
   // CompactionManager related metrics
   public final Counter compactionManagerTerminateErrorCount;
@@ -84,6 +87,12 @@ public class StorageManagerMetrics {
         registry.counter(MetricRegistry.name(DiskSpaceAllocator.class, "DiskSpaceAllocatorAllocBeforeInitCount"));
     diskSpaceAllocatorFreeBeforeInitCount =
         registry.counter(MetricRegistry.name(DiskSpaceAllocator.class, "DiskSpaceAllocatorFreeBeforeInitCount"));
+    diskSpaceAllocatorSyncAllocTimeMs =
+        registry.histogram(MetricRegistry.name(DiskSpaceAllocator.class, "DiskSpaceAllocatorSyncAllocTimeMs"));
+    diskSpaceAllocatorReplenishedSegmentCount =
+        registry.counter(MetricRegistry.name(DiskSpaceAllocator.class, "DiskSpaceAllocatorReplenishedSegmentCount"));
+    diskSpaceAllocatorReplenishErrorCount =
+        registry.counter(MetricRegistry.name(DiskSpaceAllocator.class, "DiskSpaceAllocatorReplenishErrorCount"));
     compactionCount = registry.counter(MetricRegistry.name(CompactionManager.class, "CompactionCount"));
     compactionManagerTerminateErrorCount =
         registry.counter(MetricRegistry.name(CompactionManager.class, "CompactionManagerTerminateErrorCount"));
@@ -178,11 +178,22 @@ class BlobReadOptions implements Comparable<BlobReadOptions>, Closeable {
 class StoreMessageReadSet implements MessageReadSet {
 
   private final List<BlobReadOptions> readOptions;
+  private final MetadataRecordCache metadataRecordCache;
   private final Logger logger = LoggerFactory.getLogger(getClass());
 
   StoreMessageReadSet(List<BlobReadOptions> readOptions) {
+    this(readOptions, null);
+  }
+
+  /**
+   * @param readOptions the {@link BlobReadOptions} of the messages in this set.
+   * @param metadataRecordCache the {@link MetadataRecordCache} that the metadata records of the messages in this set can
+   *                            be served from. Can be {@code null}.
+   */
+  StoreMessageReadSet(List<BlobReadOptions> readOptions, MetadataRecordCache metadataRecordCache) {
     Collections.sort(readOptions);
     this.readOptions = readOptions;
+    this.metadataRecordCache = metadataRecordCache;
   }
 
   @Override
@@ -233,4 +244,9 @@ class StoreMessageReadSet implements MessageReadSet {
   public void doPrefetch(int index, long relativeOffset, long size) throws IOException {
     readOptions.get(index).doPrefetch(relativeOffset, size);
   }
+
+  @Override
+  public MetadataRecordCache getMetadataRecordCache() {
+    return metadataRecordCache;
+  }
 }
@@ -65,6 +65,8 @@ public class StoreMetrics {
   public final Counter hardDeleteFailedCount;
   public final Counter hardDeleteIncompleteRecoveryCount;
   public final Counter hardDeleteExceptionsCount;
+  public final Counter hardDeleteLogWriteCount;
+  public final Counter hardDeleteGapBytesRewrittenCount;
   public final Histogram segmentSizeForExists;
   public final Histogram segmentsAccessedPerBlobCount;
   public final Counter identicalPutAttemptCount;
@@ -74,6 +76,14 @@ public class StoreMetrics {
   public final Counter keyInFindEntriesAbsent;
   public final Counter duplicateKeysInBatch;
   public final Counter storeIoErrorTriggeredShutdownCount;
+  public final Counter metadataCacheHitCount;
+  public final Counter metadataCacheMissCount;
+  public final Counter metadataCacheEvictionCount;
+  public final Counter indexSegmentPinCount;
+  public final Counter indexSegmentUnpinCount;
+  public final Counter indexAccessProfileErrorCount;
+  public final Histogram indexSegmentPagingTimeInMs;
+  public final Histogram keyRangeDigestsComputeTimeMs;
 
   // Compaction related metrics
   public final Counter compactionFixStateCount;
@@ -152,6 +162,10 @@ public class StoreMetrics {
         registry.counter(MetricRegistry.name(PersistentIndex.class, name + "HardDeleteIncompleteRecoveryCount"));
     hardDeleteExceptionsCount =
         registry.counter(MetricRegistry.name(PersistentIndex.class, name + "HardDeleteExceptionsCount"));
+    hardDeleteLogWriteCount =
+        registry.counter(MetricRegistry.name(HardDeleter.class, name + "HardDeleteLogWriteCount"));
+    hardDeleteGapBytesRewrittenCount =
+        registry.counter(MetricRegistry.name(HardDeleter.class, name + "HardDeleteGapBytesRewrittenCount"));
     segmentSizeForExists = registry.histogram(MetricRegistry.name(IndexSegment.class, name + "SegmentSizeForExists"));
     segmentsAccessedPerBlobCount =
         registry.histogram(MetricRegistry.name(IndexSegment.class, name + "SegmentsAccessedPerBlobCount"));
@@ -167,6 +181,22 @@ public class StoreMetrics {
     duplicateKeysInBatch = registry.counter(MetricRegistry.name(BlobStore.class, name + "DuplicateKeysInBatch"));
     storeIoErrorTriggeredShutdownCount =
         registry.counter(MetricRegistry.name(BlobStore.class, name + "StoreIoErrorTriggeredShutdownCount"));
+    metadataCacheHitCount =
+        registry.counter(MetricRegistry.name(MetadataRecordCacheImpl.class, name + "MetadataCacheHitCount"));
+    metadataCacheMissCount =
+        registry.counter(MetricRegistry.name(MetadataRecordCacheImpl.class, name + "MetadataCacheMissCount"));
+    metadataCacheEvictionCount =
+        registry.counter(MetricRegistry.name(MetadataRecordCacheImpl.class, name + "MetadataCacheEvictionCount"));
+    indexSegmentPinCount =
+        registry.counter(MetricRegistry.name(IndexSegmentPager.class, name + "IndexSegmentPinCount"));
+    indexSegmentUnpinCount =
+        registry.counter(MetricRegistry.name(IndexSegmentPager.class, name + "IndexSegmentUnpinCount"));
+    indexAccessProfileErrorCount =
+        registry.counter(MetricRegistry.name(IndexSegmentPager.class, name + "IndexAccessProfileErrorCount"));
+    indexSegmentPagingTimeInMs =
+        registry.histogram(MetricRegistry.name(IndexSegmentPager.class, name + "IndexSegmentPagingTimeInMs"));
+    keyRangeDigestsComputeTimeMs =
+        registry.histogram(MetricRegistry.name(KeyRangeDigests.class, name + "KeyRangeDigestsComputeTimeMs"));
     compactionFixStateCount = registry.counter(MetricRegistry.name(BlobStoreCompactor.class, name + "FixStateCount"));
     compactionCopyRateInBytes = registry.meter(MetricRegistry.name(BlobStoreCompactor.class, name + "CopyRateInBytes"));
     compactionBytesReclaimedCount =
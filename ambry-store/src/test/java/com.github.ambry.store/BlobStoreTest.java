@@ -18,6 +18,7 @@ import com.github.ambry.clustermap.ReplicaId;
 import com.github.ambry.clustermap.ReplicaStatusDelegate;
 import com.github.ambry.config.StoreConfig;
 import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.network.Send;
 import com.github.ambry.utils.ByteBufferOutputStream;
 import com.github.ambry.utils.MockTime;
 import com.github.ambry.utils.Pair;
@@ -31,12 +32,14 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -57,6 +60,7 @@ import org.junit.runners.Parameterized;
 import org.mockito.Mockito;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.*;
 import static org.mockito.Mockito.*;
 
 
@@ -488,6 +492,37 @@ public class BlobStoreTest {
     verifyGetFailure(getUniqueId(), StoreErrorCodes.ID_Not_Found);
   }
 
+  /**
+   * Tests that the {@link MetadataRecordCache} of the store is exposed through gets and that cached records are
+   * invalidated when a blob's TTL is updated or the blob is deleted.
+   * @throws Exception
+   */
+  @Test
+  public void metadataRecordCacheTest() throws Exception {
+    StoreInfo storeInfo = store.get(new ArrayList<>(liveKeys), EnumSet.noneOf(StoreGetOptions.class));
+    assertNull("There should be no cache by default", storeInfo.getMessageReadSet().getMetadataRecordCache());
+
+    properties.put("store.metadata.cache.max.size.in.bytes", Integer.toString(1024));
+    reloadStore();
+    MockId id = put(1, PUT_RECORD_SIZE, Utils.Infinite_Time).get(0);
+    storeInfo = store.get(Collections.singletonList(id), EnumSet.noneOf(StoreGetOptions.class));
+    MetadataRecordCache cache = storeInfo.getMessageReadSet().getMetadataRecordCache();
+    assertNotNull("There should be a cache", cache);
+    ByteBuffer records = ByteBuffer.wrap(TestUtils.getRandomBytes(10));
+
+    cache.put(id, records.duplicate());
+    assertEquals("Cached records not as expected", records, cache.get(id));
+    updateTtl(id);
+    assertNull("Records should have been invalidated by the TTL update", cache.get(id));
+
+    cache.put(id, records.duplicate());
+    delete(id);
+    assertNull("Records should have been invalidated by the delete", cache.get(id));
+    storeInfo = store.get(Collections.singletonList(id), EnumSet.of(StoreGetOptions.Store_Include_Deleted));
+    assertNull("Gets that include deleted blobs should not use the cache",
+        storeInfo.getMessageReadSet().getMetadataRecordCache());
+  }
+
   /**
    * Tests the case where there are many concurrent PUTs.
    * @throws Exception
@@ -1180,6 +1215,167 @@ public class BlobStoreTest {
     reloadStore();
   }
 
+  /**
+   * Tests that {@link BlobStore#getSealedStoreFiles()} lists the log segments that are no longer written to along with
+   * their index segment and bloom filter files, in order, and that the end token points at the entries after them.
+   * @throws StoreException
+   */
+  @Test
+  public void sealedStoreFilesTest() throws StoreException {
+    SealedStoreFiles sealedStoreFiles = store.getSealedStoreFiles();
+    if (!isLogSegmented) {
+      assertEquals("A log with a single segment has no sealed files", Collections.emptyMap(),
+          sealedStoreFiles.getFileSizes());
+      assertNull("There should be no end token", sealedStoreFiles.getEndToken());
+      return;
+    }
+    // the first two log segments are full and all of their index segments are sealed.
+    long[] logSegmentEndOffsets = {SEGMENT_CAPACITY, SEGMENT_CAPACITY - (DELETE_RECORD_SIZE - 1)};
+    List<Offset> indexSegmentStartOffsets = getIndexSegmentStartOffsets();
+    String activeLogSegmentName = indexSegmentStartOffsets.get(indexSegmentStartOffsets.size() - 1).getName();
+    Map<String, Long> expectedFileSizes = new LinkedHashMap<>();
+    Offset expectedEndOffset = null;
+    String logSegmentName = null;
+    int logSegmentCount = 0;
+    for (Offset startOffset : indexSegmentStartOffsets) {
+      if (startOffset.getName().equals(activeLogSegmentName)) {
+        expectedEndOffset = startOffset;
+        break;
+      }
+      if (!startOffset.getName().equals(logSegmentName)) {
+        logSegmentName = startOffset.getName();
+        expectedFileSizes.put(LogSegmentNameHelper.nameToFilename(logSegmentName),
+            logSegmentEndOffsets[logSegmentCount++]);
+      }
+      String filenamePrefix = IndexSegment.generateIndexSegmentFilenamePrefix(startOffset);
+      File indexFile = new File(tempDir, filenamePrefix + IndexSegment.INDEX_SEGMENT_FILE_NAME_SUFFIX);
+      expectedFileSizes.put(indexFile.getName(), indexFile.length());
+      File bloomFile = new File(tempDir, filenamePrefix + IndexSegment.BLOOM_FILE_NAME_SUFFIX);
+      if (bloomFile.exists()) {
+        expectedFileSizes.put(bloomFile.getName(), bloomFile.length());
+      }
+    }
+    assertEquals("Unexpected number of sealed log segments", 2, logSegmentCount);
+    assertEquals("Unexpected sealed files", new ArrayList<>(expectedFileSizes.entrySet()),
+        new ArrayList<>(sealedStoreFiles.getFileSizes().entrySet()));
+    StoreFindToken endToken = (StoreFindToken) sealedStoreFiles.getEndToken();
+    assertEquals("End token should be at the first index segment after the sealed files", expectedEndOffset,
+        endToken.getOffset());
+
+    // only the entries of the active log segment are found from the end token.
+    Set<StoreKey> keysFound = new HashSet<>();
+    for (MessageInfo info : store.findEntriesSince(endToken, Long.MAX_VALUE).getMessageEntries()) {
+      keysFound.add(info.getStoreKey());
+      assertTrue("Only keys with entries in the active log segment should be found: " + info,
+          idsByLogSegment.get(2).contains(info.getStoreKey()) || info.isTtlUpdated());
+    }
+    assertTrue("Keys of the active log segment should have been found", keysFound.containsAll(idsByLogSegment.get(2)));
+  }
+
+  /**
+   * Tests that {@link BlobStore#getSealedStoreFileChunk(String, long, long)} returns the bytes of the sealed files and
+   * rejects files that are not sealed and chunks that are not within the sealed part of a file.
+   * @throws Exception
+   */
+  @Test
+  public void sealedStoreFileChunkTest() throws Exception {
+    SealedStoreFiles sealedStoreFiles = store.getSealedStoreFiles();
+    List<String> unsealedFileNames = new ArrayList<>(Arrays.asList(tempDir.list(LogSegmentNameHelper.LOG_FILE_FILTER)));
+    unsealedFileNames.removeAll(sealedStoreFiles.getFileSizes().keySet());
+    assertFalse("The active log segment should not be sealed", unsealedFileNames.isEmpty());
+    unsealedFileNames.add("non-existent-file");
+    for (String fileName : unsealedFileNames) {
+      try {
+        store.getSealedStoreFileChunk(fileName, 0, 1);
+        fail("Getting a chunk of " + fileName + " should have failed");
+      } catch (StoreException e) {
+        assertEquals("Unexpected error code", StoreErrorCodes.File_Not_Found, e.getErrorCode());
+      }
+    }
+
+    for (Map.Entry<String, Long> entry : sealedStoreFiles.getFileSizes().entrySet()) {
+      String fileName = entry.getKey();
+      long fileSize = entry.getValue();
+      byte[] fileBytes = Files.readAllBytes(new File(tempDir, fileName).toPath());
+      // chunks that do not divide the file evenly
+      long chunkSize = fileSize / 3 + 1;
+      for (long offset = 0; offset < fileSize; offset += chunkSize) {
+        long size = Math.min(chunkSize, fileSize - offset);
+        assertArrayEquals("Unexpected chunk of " + fileName + " at " + offset,
+            Arrays.copyOfRange(fileBytes, (int) offset, (int) (offset + size)),
+            readSealedStoreFileChunk(store, fileName, offset, size));
+      }
+      long[][] invalidChunks = {{-1, 1}, {0, 0}, {0, fileSize + 1}, {fileSize, 1}, {fileSize - 1, 2}};
+      for (long[] chunk : invalidChunks) {
+        try {
+          store.getSealedStoreFileChunk(fileName, chunk[0], chunk[1]);
+          fail("Getting a chunk of " + fileName + " at " + chunk[0] + " of size " + chunk[1] + " should have failed");
+        } catch (IllegalArgumentException e) {
+          // expected. Nothing to do.
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests that {@link BlobStore#startFromSealedStoreFiles(File)} starts an empty store from the sealed files of another
+   * store, and that the files are removed again if the store cannot be started from them, so that it can start empty.
+   * @throws Exception
+   */
+  @Test
+  public void startFromSealedStoreFilesTest() throws Exception {
+    assumeTrue(isLogSegmented);
+    SealedStoreFiles sealedStoreFiles = store.getSealedStoreFiles();
+    File bootstrapDir = StoreTestUtils.createTempDirectory("bootstrapStoreDir-" + UtilsTest.getRandomString(10));
+    File stagingDir = new File(bootstrapDir, "staging");
+    try {
+      BlobStore bootstrapStore =
+          createBlobStore(StoreTestUtils.createMockReplicaId(storeId, LOG_CAPACITY, bootstrapDir.getAbsolutePath()));
+      bootstrapStore.start();
+      assertTrue("Store should be empty", bootstrapStore.isEmpty());
+      try {
+        bootstrapStore.startFromSealedStoreFiles(stagingDir);
+        fail("Starting a store that is started should have failed");
+      } catch (StoreException e) {
+        assertEquals("Unexpected error code", StoreErrorCodes.Store_Already_Started, e.getErrorCode());
+      }
+      bootstrapStore.shutdown();
+
+      // a copy whose first log segment file was not copied completely cannot be started from.
+      copySealedStoreFiles(sealedStoreFiles, stagingDir, true);
+      try {
+        bootstrapStore.startFromSealedStoreFiles(stagingDir);
+        fail("Starting from a partial copy should have failed");
+      } catch (StoreException e) {
+        assertEquals("Unexpected error code", StoreErrorCodes.Initialization_Error, e.getErrorCode());
+      }
+      assertFalse("Store should not be started", bootstrapStore.isStarted());
+      for (String fileName : sealedStoreFiles.getFileSizes().keySet()) {
+        assertFalse(fileName + " should have been removed", new File(bootstrapDir, fileName).exists());
+      }
+      bootstrapStore.start();
+      assertTrue("Store should have started empty", bootstrapStore.isEmpty());
+      bootstrapStore.shutdown();
+
+      Utils.deleteFileOrDirectory(stagingDir);
+      copySealedStoreFiles(sealedStoreFiles, stagingDir, false);
+      bootstrapStore.startFromSealedStoreFiles(stagingDir);
+      assertTrue("Store should be started", bootstrapStore.isStarted());
+      assertEquals("Every staged file should have been installed", 0, stagingDir.list().length);
+      Set<StoreKey> copiedKeys = new HashSet<>(idsByLogSegment.get(0));
+      copiedKeys.addAll(idsByLogSegment.get(1));
+      assertEquals("Keys of the sealed log segments should have been copied", Collections.emptySet(),
+          bootstrapStore.findMissingKeys(new ArrayList<>(copiedKeys)));
+      Set<StoreKey> keysAfterSealedFiles = new HashSet<>(idsByLogSegment.get(2));
+      keysAfterSealedFiles.removeAll(copiedKeys);
+      assertEquals("Keys put after the sealed files should be missing", keysAfterSealedFiles,
+          bootstrapStore.findMissingKeys(new ArrayList<>(keysAfterSealedFiles)));
+      bootstrapStore.shutdown();
+    } finally {
+      assertTrue(bootstrapDir + " could not be deleted", StoreTestUtils.cleanDirectory(bootstrapDir, true));
+    }
+  }
+
   // helpers
   // general
 
@@ -2041,6 +2237,63 @@ public class BlobStoreTest {
     }
   }
 
+  // sealed store files helpers
+
+  /**
+   * @return the start {@link Offset}s of the index segments of the store, in order.
+   */
+  private List<Offset> getIndexSegmentStartOffsets() {
+    List<Offset> startOffsets = new ArrayList<>();
+    for (String fileName : tempDir.list((dir, name) -> name.endsWith(IndexSegment.INDEX_SEGMENT_FILE_NAME_SUFFIX))) {
+      startOffsets.add(IndexSegment.getIndexSegmentStartOffset(fileName));
+    }
+    Collections.sort(startOffsets);
+    return startOffsets;
+  }
+
+  /**
+   * Reads a chunk of a sealed file of {@code blobStore} by writing its {@link Send} to a buffer.
+   * @param blobStore the {@link BlobStore} to read from.
+   * @param fileName the name of the sealed file.
+   * @param offset the offset in the file at which the chunk starts.
+   * @param sizeInBytes the size of the chunk.
+   * @return the bytes of the chunk.
+   * @throws Exception
+   */
+  private byte[] readSealedStoreFileChunk(BlobStore blobStore, String fileName, long offset, long sizeInBytes)
+      throws Exception {
+    Send send = blobStore.getSealedStoreFileChunk(fileName, offset, sizeInBytes);
+    assertEquals("Unexpected size of chunk", sizeInBytes, send.sizeInBytes());
+    ByteBuffer buffer = ByteBuffer.allocate((int) sizeInBytes);
+    WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(buffer));
+    while (!send.isSendComplete()) {
+      send.writeTo(channel);
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Copies the sealed files of {@link #store} into {@code stagingDir} the way a replica that bootstraps from them does.
+   * @param sealedStoreFiles the {@link SealedStoreFiles} to copy.
+   * @param stagingDir the directory to copy the files into.
+   * @param partial if {@code true}, only the first half of the first log segment file is copied.
+   * @throws Exception
+   */
+  private void copySealedStoreFiles(SealedStoreFiles sealedStoreFiles, File stagingDir, boolean partial)
+      throws Exception {
+    assertTrue("Could not create " + stagingDir, stagingDir.mkdirs());
+    boolean truncated = false;
+    for (Map.Entry<String, Long> entry : sealedStoreFiles.getFileSizes().entrySet()) {
+      long sizeToCopy = entry.getValue();
+      if (partial && !truncated && entry.getKey().endsWith(LogSegmentNameHelper.SUFFIX)) {
+        sizeToCopy /= 2;
+        truncated = true;
+      }
+      Files.write(new File(stagingDir, entry.getKey()).toPath(),
+          readSealedStoreFileChunk(store, entry.getKey(), 0, sizeToCopy));
+    }
+  }
+
   private BlobStore createBlobStore(ReplicaId replicaId) {
     StoreConfig config = new StoreConfig(new VerifiableProperties(properties));
     return createBlobStore(replicaId, config, null);
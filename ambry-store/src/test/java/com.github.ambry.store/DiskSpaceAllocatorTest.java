@@ -61,6 +61,9 @@ public class DiskSpaceAllocatorTest {
     if (exec != null) {
       exec.shutdownNow();
     }
+    if (alloc != null) {
+      alloc.shutdown();
+    }
   }
 
   /**
@@ -303,6 +306,54 @@ public class DiskSpaceAllocatorTest {
     verifyPoolState(null);
   }
 
+  /**
+   * Test that freed segments are recreated in the background and that the pool keeps extra segments only while the
+   * allocation rate predicts that they will be needed.
+   * @throws Exception
+   */
+  @Test
+  public void backgroundReplenishTest() throws Exception {
+    StorageManagerMetrics metrics = new StorageManagerMetrics(new MetricRegistry());
+    // a long interval so that the test controls the scheduled runs
+    alloc = new DiskSpaceAllocator(true, reserveFileDir, requiredSwapSegmentsPerSize, TimeUnit.HOURS.toMillis(1), 1,
+        metrics);
+    alloc.initializePool(Collections.singletonList(new DiskSpaceRequirements(50, 2, 0)));
+    verifyPoolState(new ExpectedState().add(50, 2));
+
+    // a freed segment is recreated in the background
+    File f1 = allocateAndVerify("file1", 50);
+    freeAndVerify(f1, 50);
+    assertTrue("Freed segment was not replenished", TestUtils.checkAndSleep(2, () -> alloc.getPoolDepth(50), 5000));
+
+    // the allocations predict more demand than the stores are entitled to, so an extra segment is kept in the pool
+    f1 = allocateAndVerify("file1", 50);
+    File f2 = allocateAndVerify("file2", 50);
+    alloc.runScheduledReplenish();
+    assertEquals("Extra segment should have been added", 1, alloc.getPoolDepth(50));
+    File f3 = allocateAndVerify("file3", 50);
+    assertEquals("Allocations should have been served from the pool", 0,
+        metrics.diskSpaceAllocatorSegmentNotFoundCount.getCount());
+    assertTrue("Extra segment was not replenished", TestUtils.checkAndSleep(1, () -> alloc.getPoolDepth(50), 5000));
+
+    // without allocations the prediction decays and the extra segment is deleted
+    alloc.runScheduledReplenish();
+    alloc.runScheduledReplenish();
+    assertEquals("Extra segment should still be in the pool", 1, alloc.getPoolDepth(50));
+    alloc.runScheduledReplenish();
+    verifyPoolState(new ExpectedState().add(50, 0));
+
+    // freeing everything brings the pool back to the entitled segments
+    freeAndVerify(f1, 50);
+    freeAndVerify(f2, 50);
+    freeAndVerify(f3, 50);
+    assertTrue("Freed segments were not replenished", TestUtils.checkAndSleep(2, () -> alloc.getPoolDepth(50), 5000));
+    verifyPoolState(new ExpectedState().add(50, 2));
+    assertEquals("Unexpected number of replenished segments", 5,
+        metrics.diskSpaceAllocatorReplenishedSegmentCount.getCount());
+    assertEquals("There should have been no replenish errors", 0,
+        metrics.diskSpaceAllocatorReplenishErrorCount.getCount());
+  }
+
   /**
    * Allocate a file and check for existence and write permissions.
    * @param filename the name of the destination file. This file will be created in the allocated file directory.
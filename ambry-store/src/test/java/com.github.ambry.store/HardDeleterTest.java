@@ -79,7 +79,7 @@ public class HardDeleterTest {
               containerId);
       index.addToIndex(new IndexEntry(id, indexValue),
           new FileSpan(offset, new Offset(logSegmentName, nextOffset + sizeOfEntry)));
-      ByteBuffer byteBuffer = ByteBuffer.allocate((int) sizeOfEntry);
+      ByteBuffer byteBuffer = ByteBuffer.wrap(TestUtils.getRandomBytes((int) sizeOfEntry));
       log.appendFrom(byteBuffer);
       offsetMap.put(nextOffset, new MessageInfo(id, sizeOfEntry, acccountId, containerId, time.milliseconds()));
       nextOffset += sizeOfEntry;
@@ -149,18 +149,11 @@ public class HardDeleterTest {
   private MockTime time = null;
   private ScheduledExecutorService scheduler;
   private Log log;
+  private StoreMetrics metrics;
 
   @Before
   public void setup() throws Exception {
-    File rootDirectory = StoreTestUtils.createTempDirectory("ambry");
-    File indexFile = new File(rootDirectory.getAbsolutePath());
-    for (File c : indexFile.listFiles()) {
-      c.delete();
-    }
     scheduler = Utils.newScheduler(1, false);
-    MetricRegistry metricRegistry = new MetricRegistry();
-    StoreMetrics metrics = new StoreMetrics(metricRegistry);
-    log = new Log(rootDirectory.getAbsolutePath(), 10000, 10000, StoreTestUtils.DEFAULT_DISK_SPACE_ALLOCATOR, metrics);
     Properties props = new Properties();
     // the test will set the tokens, so disable the index persistor.
     props.setProperty("store.data.flush.interval.seconds", "3600");
@@ -169,13 +162,29 @@ public class HardDeleterTest {
     // the following determines the number of entries that will be fetched at most. We need this to test the
     // case where the endToken does not reach the journal.
     props.setProperty("store.hard.delete.operations.bytes.per.sec", "40");
+    createLogAndIndex(props);
+  }
+
+  /**
+   * Creates a new {@link Log} and {@link MockIndex} in a new directory.
+   * @param props the {@link Properties} to create the {@link StoreConfig} of the index from.
+   * @throws Exception
+   */
+  private void createLogAndIndex(Properties props) throws Exception {
+    File rootDirectory = StoreTestUtils.createTempDirectory("ambry");
+    File indexFile = new File(rootDirectory.getAbsolutePath());
+    for (File c : indexFile.listFiles()) {
+      c.delete();
+    }
+    metrics = new StoreMetrics(new MetricRegistry());
+    log = new Log(rootDirectory.getAbsolutePath(), 10000, 10000, StoreTestUtils.DEFAULT_DISK_SPACE_ALLOCATOR, metrics);
     StoreConfig config = new StoreConfig(new VerifiableProperties(props));
     StoreKeyFactory factory = Utils.getObj("com.github.ambry.store.MockIdFactory");
     time = new MockTime(SystemTime.getInstance().milliseconds());
 
     helper = new HardDeleteTestHelper(0, 200);
     index = new MockIndex(rootDirectory.getAbsolutePath(), scheduler, log, config, factory, helper, time,
-        UUID.randomUUID());
+        UUID.randomUUID(), metrics);
     helper.setIndex(index, log);
     // Setting this below will not enable the hard delete thread. This being a unit test, the methods
     // are going to be called directly. We simply want to set the enabled flag to avoid those methods
@@ -230,6 +239,54 @@ public class HardDeleterTest {
     }
   }
 
+  /**
+   * Tests that hard deletes of nearby records in a log segment are coalesced into a single write that preserves the
+   * content between the hard deleted regions.
+   * @throws Exception
+   */
+  @Test
+  public void coalescedHardDeleteTest() throws Exception {
+    index.close(false);
+    log.close(false);
+    Properties props = new Properties();
+    props.setProperty("store.data.flush.interval.seconds", "3600");
+    props.setProperty("store.deleted.message.retention.days", "1");
+    // keep all the entries in the journal so that all the deletes are found in a single scan
+    props.setProperty("store.index.max.number.of.inmem.elements", "100");
+    props.setProperty("store.hard.delete.operations.bytes.per.sec", "10000");
+    createLogAndIndex(props);
+
+    MockId[] ids = new MockId[6];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = new MockId("id0" + i);
+      helper.add(ids[i]);
+    }
+    // each put record is 200 bytes and the mock hard deletes the last 100 bytes of the record
+    int[] toDelete = {1, 2, 4};
+    for (int i : toDelete) {
+      helper.delete(ids[i]);
+    }
+    LogSegment segment = log.getFirstSegment();
+    int putsSize = 200 * ids.length;
+    ByteBuffer expected = ByteBuffer.allocate(putsSize);
+    segment.readInto(expected, 0);
+    for (int i : toDelete) {
+      Arrays.fill(expected.array(), i * 200 + 100, (i + 1) * 200, (byte) 0);
+    }
+
+    time.sleep(TimeUnit.DAYS.toMillis(2));
+    while (index.hardDelete()) {
+      // keep going till caught up
+    }
+    ByteBuffer actual = ByteBuffer.allocate(putsSize);
+    segment.readInto(actual, 0);
+    assertArrayEquals("Log content not as expected after hard delete", expected.array(), actual.array());
+    assertEquals("Hard deleted record count not as expected", toDelete.length, metrics.hardDeleteDoneCount.getCount());
+    assertEquals("All the hard deletes should have been written together", 1,
+        metrics.hardDeleteLogWriteCount.getCount());
+    assertEquals("Rewritten gap bytes not as expected", 100 + 300, metrics.hardDeleteGapBytesRewrittenCount.getCount());
+  }
+
   @Test
   public void testHardDelete() {
     // Create a mock index with regular log.
@@ -367,9 +424,10 @@ public class HardDeleterTest {
   private class MockIndex extends PersistentIndex {
 
     MockIndex(String datadir, ScheduledExecutorService scheduler, Log log, StoreConfig config, StoreKeyFactory factory,
-        MessageStoreHardDelete messageStoreHardDelete, Time time, UUID incarnationId) throws StoreException {
+        MessageStoreHardDelete messageStoreHardDelete, Time time, UUID incarnationId, StoreMetrics metrics)
+        throws StoreException {
       super(datadir, datadir, scheduler, log, config, factory, new DummyMessageStoreRecovery(), messageStoreHardDelete,
-          new DiskIOScheduler(null), new StoreMetrics(new MetricRegistry()), time, new UUID(1, 1), incarnationId);
+          new DiskIOScheduler(null), metrics, time, new UUID(1, 1), incarnationId);
     }
 
     /**
@@ -41,6 +41,7 @@ import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -353,6 +354,133 @@ public class IndexSegmentTest {
     }
   }
 
+  /**
+   * Tests {@link IndexSegment#getIndexEntriesAfter(StoreKey, Predicate, int, List)} on sealed and unsealed segments.
+   * @throws IOException
+   * @throws StoreException
+   */
+  @Test
+  public void getIndexEntriesAfterTest() throws IOException, StoreException {
+    String logSegmentName = LogSegmentNameHelper.getName(0, 0);
+    MockId id1 = new MockId("0" + UtilsTest.getRandomString(CUSTOM_ID_SIZE - 1));
+    MockId id2 = new MockId("1" + UtilsTest.getRandomString(CUSTOM_ID_SIZE - 1));
+    MockId id3 = new MockId("2" + UtilsTest.getRandomString(CUSTOM_ID_SIZE - 1));
+    short accountId = Utils.getRandomShort(TestUtils.RANDOM);
+    short containerId = Utils.getRandomShort(TestUtils.RANDOM);
+    IndexValue value1 =
+        IndexValueTest.getIndexValue(1000, new Offset(logSegmentName, 0), Utils.Infinite_Time, time.milliseconds(),
+            accountId, containerId, version);
+    IndexValue value2 =
+        IndexValueTest.getIndexValue(1000, new Offset(logSegmentName, 1000), Utils.Infinite_Time, time.milliseconds(),
+            accountId, containerId, version);
+    IndexValue value3 =
+        IndexValueTest.getIndexValue(1000, new Offset(logSegmentName, 2000), Utils.Infinite_Time, time.milliseconds(),
+            accountId, containerId, version);
+    time.sleep(TimeUnit.SECONDS.toMillis(1));
+    IndexValue delValue2 = IndexValueTest.getIndexValue(value2.getSize(), value2.getOffset(), value2.getFlags(),
+        value2.getExpiresAtMs(), value2.getOffset().getOffset(), time.milliseconds(), value2.getAccountId(),
+        value2.getContainerId(), version);
+    delValue2.setNewOffset(new Offset(logSegmentName, 3000));
+    delValue2.setNewSize(100);
+    delValue2.setFlag(IndexValue.Flags.Delete_Index);
+    IndexSegment indexSegment = generateIndexSegment(new Offset(logSegmentName, 0), STORE_KEY_FACTORY);
+    indexSegment.addEntry(new IndexEntry(id3, value1), new Offset(logSegmentName, 1000));
+    indexSegment.addEntry(new IndexEntry(id2, value2), new Offset(logSegmentName, 2000));
+    indexSegment.addEntry(new IndexEntry(id1, value3), new Offset(logSegmentName, 3000));
+    indexSegment.addEntry(new IndexEntry(id2, delValue2), new Offset(logSegmentName, 3100));
+    indexSegment.writeIndexSegmentToFile(new Offset(logSegmentName, 3100));
+    indexSegment.seal();
+    // a key that is not in the segment and that is between id1 and id2
+    MockId absentId = new MockId("1");
+    List<IndexEntry> entries = new ArrayList<>();
+    for (boolean sealed : new boolean[]{false, true}) {
+      Journal journal = new Journal(tempDir.getAbsolutePath(), 3, 3);
+      IndexSegment fromDisk =
+          new IndexSegment(indexSegment.getFile(), sealed, STORE_KEY_FACTORY, config, metrics, journal, time);
+      assertEquals("Unexpected last key read", id1, fromDisk.getIndexEntriesAfter(null, key -> true, 1, entries));
+      verifyIndexEntries(Collections.singletonList(new IndexEntry(id1, value3)), entries);
+      entries.clear();
+      // all the entries of a key are returned, in the order of their offsets
+      for (MockId key : new MockId[]{id1, absentId}) {
+        assertEquals("Unexpected last key read", id2, fromDisk.getIndexEntriesAfter(key, k -> true, 1, entries));
+        verifyIndexEntries(Arrays.asList(new IndexEntry(id2, value2), new IndexEntry(id2, delValue2)), entries);
+        entries.clear();
+      }
+      assertEquals("Unexpected last key read", id3, fromDisk.getIndexEntriesAfter(id2, key -> true, 5, entries));
+      verifyIndexEntries(Collections.singletonList(new IndexEntry(id3, value1)), entries);
+      entries.clear();
+      assertNull("No key should have been read", fromDisk.getIndexEntriesAfter(id3, key -> true, 5, entries));
+      assertEquals("There should be no entries", 0, entries.size());
+      // the keys that are filtered out are read but do not count towards the most keys
+      assertEquals("Unexpected last key read", id3,
+          fromDisk.getIndexEntriesAfter(null, key -> !key.equals(id2), 2, entries));
+      verifyIndexEntries(Arrays.asList(new IndexEntry(id1, value3), new IndexEntry(id3, value1)), entries);
+      entries.clear();
+      assertEquals("Unexpected last key read", id3,
+          fromDisk.getIndexEntriesAfter(null, key -> key.equals(id1), 2, entries));
+      verifyIndexEntries(Collections.singletonList(new IndexEntry(id1, value3)), entries);
+      entries.clear();
+    }
+  }
+
+  /**
+   * Tests that {@link IndexSegmentPager} keeps the most accessed sealed segments in memory within the budget and that the
+   * access profile it persists is used to load the same segments into memory when the segments are loaded again.
+   * @throws IOException
+   * @throws StoreException
+   */
+  @Test
+  public void adaptivePagingTest() throws IOException, StoreException {
+    assumeTrue(version == PersistentIndex.VERSION_2 && config.storeIndexMemState.equals(IndexMemState.ADAPTIVE));
+    String logSegmentName = LogSegmentNameHelper.getName(0, 0);
+    List<IndexSegment> segments = new ArrayList<>();
+    List<NavigableMap<MockId, NavigableSet<IndexValue>>> referenceIndexes = new ArrayList<>();
+    for (long startOffset = 0; startOffset < 3000; startOffset += 1000) {
+      IndexSegment indexSegment = generateIndexSegment(new Offset(logSegmentName, startOffset), STORE_KEY_FACTORY);
+      NavigableMap<MockId, NavigableSet<IndexValue>> referenceIndex = new TreeMap<>();
+      addPutEntries(Arrays.asList(startOffset, startOffset + 100, startOffset + 200), 100, indexSegment,
+          referenceIndex, false, false);
+      indexSegment.writeIndexSegmentToFile(indexSegment.getEndOffset());
+      indexSegment.seal();
+      segments.add(indexSegment);
+      referenceIndexes.add(referenceIndex);
+    }
+    // the budget fits exactly one segment
+    IndexSegmentPager pager =
+        new IndexSegmentPager(tempDir.getAbsolutePath(), segments.get(0).getFile().length(), metrics, time);
+
+    // the accessed segment is loaded into memory and lookups in it still work
+    verifyFind(referenceIndexes.get(0), segments.get(0));
+    pager.rebalance(segments);
+    verifyPinnedSegments(segments, 0);
+    verifyFind(referenceIndexes.get(0), segments.get(0));
+
+    // a segment that is accessed more replaces it
+    verifyFind(referenceIndexes.get(2), segments.get(2));
+    verifyFind(referenceIndexes.get(2), segments.get(2));
+    verifyFind(referenceIndexes.get(2), segments.get(2));
+    pager.rebalance(segments);
+    verifyPinnedSegments(segments, 2);
+    verifyFind(referenceIndexes.get(0), segments.get(0));
+    verifyFind(referenceIndexes.get(2), segments.get(2));
+    assertEquals("Unexpected pin count", 2, metrics.indexSegmentPinCount.getCount());
+    assertEquals("Unexpected unpin count", 1, metrics.indexSegmentUnpinCount.getCount());
+
+    // the persisted profile loads the hottest segment into memory when the segments are loaded again
+    pager.persistAccessProfile(segments);
+    List<IndexSegment> loadedSegments = new ArrayList<>();
+    for (IndexSegment indexSegment : segments) {
+      loadedSegments.add(createIndexSegmentFromFile(indexSegment.getFile(), true, null));
+    }
+    verifyPinnedSegments(loadedSegments, -1);
+    new IndexSegmentPager(tempDir.getAbsolutePath(), segments.get(0).getFile().length(), metrics, time).warm(
+        loadedSegments);
+    verifyPinnedSegments(loadedSegments, 2);
+    verifyFind(referenceIndexes.get(2), loadedSegments.get(2));
+    assertEquals("There should have been no access profile errors", 0,
+        metrics.indexAccessProfileErrorCount.getCount());
+  }
+
   /**
    * Test cases where exceptions occurred while performing memory mapping of index segment.
    * @throws IOException
@@ -703,6 +831,17 @@ public class IndexSegmentTest {
         IndexSegment.getIndexSegmentStartOffset(indexSegment.getFile().getName()));
   }
 
+  /**
+   * Verifies that only the segment at {@code pinnedIndex} in {@code segments} is pinned in memory.
+   * @param segments the {@link IndexSegment}s to check.
+   * @param pinnedIndex the index of the pinned segment in {@code segments}. -1 if no segment should be pinned.
+   */
+  private void verifyPinnedSegments(List<IndexSegment> segments, int pinnedIndex) {
+    for (int i = 0; i < segments.size(); i++) {
+      assertEquals("Pinned state of segment " + i + " not as expected", i == pinnedIndex, segments.get(i).isPinned());
+    }
+  }
+
   /**
    * Verifies {@link IndexSegment#find(StoreKey)} to make sure that it returns/does not return values.
    * @param referenceIndex the index entries to be used as reference.
@@ -728,6 +867,20 @@ public class IndexSegmentTest {
     assertNull("Should have failed to find non existent key", segment.find(id));
   }
 
+  /**
+   * Verifies that {@code entries} have the keys and values of {@code expectedEntries}, in the same order.
+   * @param expectedEntries the {@link IndexEntry}s expected.
+   * @param entries the {@link IndexEntry}s to verify.
+   */
+  private void verifyIndexEntries(List<IndexEntry> expectedEntries, List<IndexEntry> entries) {
+    assertEquals("Unexpected number of entries", expectedEntries.size(), entries.size());
+    for (int i = 0; i < entries.size(); i++) {
+      assertEquals("Key in entry is incorrect", expectedEntries.get(i).getKey(), entries.get(i).getKey());
+      assertEquals("Value in entry is incorrect", expectedEntries.get(i).getValue().getBytes(),
+          entries.get(i).getValue().getBytes());
+    }
+  }
+
   /**
    * Verifies {@link IndexSegment#getEntriesSince(StoreKey, FindEntriesCondition, List, AtomicLong)} to make sure that
    * it returns the right values for all keys in {@code referenceIndex} and for all conditions.
@@ -50,6 +50,7 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import org.junit.After;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -1246,6 +1247,77 @@ public class IndexTest {
     verifyValue(idToCheck, state.index.findKey(idToCheck));
   }
 
+  /**
+   * Tests that {@link PersistentIndex#getKeysInLeafBuckets(Set, long)} and
+   * {@link PersistentIndex#getKeyRangeDigests(long)} use the state of every key as of the reference time, made up of
+   * the puts, deletes and TTL updates at or before it, whether or not the key changed after it.
+   * @throws IOException
+   * @throws StoreException
+   */
+  @Test
+  public void keysAsOfReferenceTimeTest() throws IOException, StoreException {
+    // operation times are kept in seconds, so the operations are at least a second apart from the reference times
+    long beforePutsMs = state.time.milliseconds();
+    state.advanceTime(Time.MsPerSec);
+    MockId permanentId = getIdOfNewPut(Utils.Infinite_Time);
+    MockId ttlUpdatedId = getIdOfNewPut(state.time.milliseconds() + TimeUnit.HOURS.toMillis(10));
+    MockId deletedId = getIdOfNewPut(Utils.Infinite_Time);
+    // a rollover moves the time forward by less than the 100 seconds left, so the key only expires after afterPutsMs
+    MockId expiringId = getIdOfNewPut(state.time.milliseconds() + 100 * Time.MsPerSec);
+    long afterPutsMs = state.time.milliseconds();
+
+    state.advanceTime(Time.MsPerSec);
+    state.makePermanent(ttlUpdatedId, false);
+    state.addDeleteEntry(deletedId);
+    long afterUpdatesMs = state.time.milliseconds();
+
+    state.advanceTime(200 * Time.MsPerSec);
+    state.addDeleteEntry(permanentId);
+    MockId newId = getIdOfNewPut(Utils.Infinite_Time);
+    long nowMs = state.time.milliseconds();
+
+    List<MockId> ids = Arrays.asList(permanentId, ttlUpdatedId, deletedId, expiringId, newId);
+    assertTrue("No key should exist before the puts", getKeysAsOf(ids, beforePutsMs).isEmpty());
+
+    Map<StoreKey, MessageInfo> infos = getKeysAsOf(ids, afterPutsMs);
+    assertEquals("Unexpected keys after the puts", new HashSet<>(Arrays.asList(permanentId, ttlUpdatedId, deletedId,
+        expiringId)), infos.keySet());
+    for (MessageInfo info : infos.values()) {
+      assertFalse("No key should be deleted after the puts", info.isDeleted());
+      assertFalse("No key should be TTL updated after the puts", info.isTtlUpdated());
+    }
+    assertTrue("Key should still expire after the puts",
+        infos.get(ttlUpdatedId).getExpirationTimeInMs() != Utils.Infinite_Time);
+
+    infos = getKeysAsOf(ids, afterUpdatesMs);
+    assertEquals("Unexpected keys after the updates", new HashSet<>(Arrays.asList(permanentId, ttlUpdatedId, deletedId,
+        expiringId)), infos.keySet());
+    assertFalse("Key should not be deleted yet", infos.get(permanentId).isDeleted());
+    assertTrue("Key should be TTL updated", infos.get(ttlUpdatedId).isTtlUpdated());
+    assertEquals("Key should not expire", Utils.Infinite_Time, infos.get(ttlUpdatedId).getExpirationTimeInMs());
+    assertTrue("Key should be deleted", infos.get(deletedId).isDeleted());
+    assertTrue("Key should not have expired yet",
+        infos.get(expiringId).getExpirationTimeInMs() != Utils.Infinite_Time);
+
+    infos = getKeysAsOf(ids, nowMs);
+    assertEquals("Unexpected keys now", new HashSet<>(Arrays.asList(permanentId, ttlUpdatedId, deletedId, newId)),
+        infos.keySet());
+    assertTrue("Key should be deleted", infos.get(permanentId).isDeleted());
+    assertTrue("Key should still be TTL updated", infos.get(ttlUpdatedId).isTtlUpdated());
+    assertTrue("Key should still be deleted", infos.get(deletedId).isDeleted());
+    assertFalse("New key should not be deleted", infos.get(newId).isDeleted());
+
+    // the digests cover the same keys as the leaf buckets
+    Set<Integer> allLeafBuckets = new HashSet<>();
+    for (int bucket = 0; bucket < (1 << KeyRangeDigests.LEAF_LEVEL); bucket++) {
+      allLeafBuckets.add(bucket);
+    }
+    for (long referenceTimeMs : new long[]{afterPutsMs, nowMs}) {
+      assertEquals("Digests should cover all the keys", state.index.getKeysInLeafBuckets(allLeafBuckets,
+          referenceTimeMs).size(), state.index.getKeyRangeDigests(referenceTimeMs).getKeyCount(0, 0));
+    }
+  }
+
   /**
    * Tests correctness of {@link PersistentIndex#getIndexSegmentFilesForLogSegment(String, String)} and makes sure
    * it picks up all the files.
@@ -1392,6 +1464,34 @@ public class IndexTest {
 
   // helpers
 
+  /**
+   * Adds a put to the index.
+   * @param expiresAtMs the time at which the put expires.
+   * @return the {@link MockId} of the put.
+   * @throws IOException
+   * @throws StoreException
+   */
+  private MockId getIdOfNewPut(long expiresAtMs) throws IOException, StoreException {
+    return (MockId) state.addPutEntries(1, PUT_RECORD_SIZE, expiresAtMs).get(0).getKey();
+  }
+
+  /**
+   * @param ids the keys to get the state of.
+   * @param referenceTimeMs the time as of which the state is needed.
+   * @return the {@link MessageInfo}s of the keys in {@code ids} as of {@code referenceTimeMs}, by key.
+   * @throws StoreException
+   */
+  private Map<StoreKey, MessageInfo> getKeysAsOf(List<MockId> ids, long referenceTimeMs) throws StoreException {
+    Set<Integer> leafBuckets = ids.stream().map(KeyRangeDigests::getLeafBucket).collect(Collectors.toSet());
+    Map<StoreKey, MessageInfo> infos = new HashMap<>();
+    for (MessageInfo info : state.index.getKeysInLeafBuckets(leafBuckets, referenceTimeMs)) {
+      if (ids.contains(info.getStoreKey())) {
+        assertNull("Key should be returned once", infos.put(info.getStoreKey(), info));
+      }
+    }
+    return infos;
+  }
+
   // general
 
   /**
@@ -16,6 +16,7 @@ package com.github.ambry.store;
 import com.github.ambry.utils.TestUtils;
 import com.github.ambry.utils.Utils;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -128,6 +129,27 @@ public class JournalTest {
     Assert.assertEquals("Oldest entry is not being replaced", offsets[2], journal.getFirstOffset());
   }
 
+  /**
+   * Tests that append listeners run once, on the next entry added, and not at all once removed.
+   */
+  @Test
+  public void testJournalAppendListeners() {
+    String logSegmentName = LogSegmentNameHelper.getName(0, 0);
+    Journal journal = new Journal("test", 10, 5);
+    AtomicInteger firstListenerRunCount = new AtomicInteger(0);
+    AtomicInteger secondListenerRunCount = new AtomicInteger(0);
+    Runnable firstListener = firstListenerRunCount::incrementAndGet;
+    Runnable secondListener = secondListenerRunCount::incrementAndGet;
+    journal.addAppendListener(firstListener);
+    journal.addAppendListener(secondListener);
+    journal.removeAppendListener(secondListener);
+    addEntryAndVerify(journal, new Offset(logSegmentName, 0), new MockId("id1"));
+    Assert.assertEquals("Listener should have run once", 1, firstListenerRunCount.get());
+    Assert.assertEquals("Removed listener should not have run", 0, secondListenerRunCount.get());
+    addEntryAndVerify(journal, new Offset(logSegmentName, 1000), new MockId("id2"));
+    Assert.assertEquals("Listener should only run once", 1, firstListenerRunCount.get());
+  }
+
   /**
    * Adds an entry to the journal and verifies some getters
    * @param journal the {@link Journal} to add to
@@ -0,0 +1,102 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.github.ambry.utils.Utils;
+import com.github.ambry.utils.UtilsTest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link KeyRangeDigests}.
+ */
+public class KeyRangeDigestsTest {
+
+  /**
+   * Tests that the digests do not depend on the order in which keys are added and that the digest and key count of a
+   * bucket are those of its children combined.
+   */
+  @Test
+  public void digestsTest() {
+    List<MessageInfo> infos = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      infos.add(new MessageInfo(new MockId(UtilsTest.getRandomString(10)), 100, Utils.Infinite_Time, (short) 1,
+          (short) 1, Utils.Infinite_Time));
+    }
+    KeyRangeDigests digests = new KeyRangeDigests(0);
+    infos.forEach(digests::add);
+    Collections.shuffle(infos);
+    KeyRangeDigests shuffledDigests = new KeyRangeDigests(0);
+    infos.forEach(shuffledDigests::add);
+
+    assertEquals("Root key count should be the number of keys", infos.size(), digests.getKeyCount(0, 0));
+    for (int level = 0; level <= KeyRangeDigests.LEAF_LEVEL; level++) {
+      for (int bucket = 0; bucket < (1 << level); bucket++) {
+        assertEquals("Digests should not depend on order", digests.getDigest(level, bucket),
+            shuffledDigests.getDigest(level, bucket));
+        if (level < KeyRangeDigests.LEAF_LEVEL) {
+          assertEquals("Digest should be the sum of the children",
+              digests.getDigest(level + 1, 2 * bucket) + digests.getDigest(level + 1, 2 * bucket + 1),
+              digests.getDigest(level, bucket));
+          assertEquals("Key count should be the sum of the children",
+              digests.getKeyCount(level + 1, 2 * bucket) + digests.getKeyCount(level + 1, 2 * bucket + 1),
+              digests.getKeyCount(level, bucket));
+        }
+      }
+    }
+    try {
+      digests.getDigest(1, 2);
+      fail("Getting the digest of an invalid bucket should fail");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+    try {
+      digests.getKeyCount(KeyRangeDigests.LEAF_LEVEL + 1, 0);
+      fail("Getting the key count of an invalid level should fail");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+
+  /**
+   * Tests that the digest of a key changes with the parts of its state that replicas should agree on, and only with
+   * those.
+   */
+  @Test
+  public void keyDigestTest() {
+    MockId id = new MockId(UtilsTest.getRandomString(10), (short) 1, (short) 2);
+    MessageInfo info = new MessageInfo(id, 100, false, false, 1000, (short) 1, (short) 2, 10);
+    long digest = KeyRangeDigests.getDigest(info);
+    assertEquals("Size and operation time should not change the digest", digest,
+        KeyRangeDigests.getDigest(new MessageInfo(id, 200, false, false, 1000, (short) 1, (short) 2, 20)));
+    assertTrue("Expiry time should change the digest", digest != KeyRangeDigests.getDigest(
+        new MessageInfo(id, 100, false, true, Utils.Infinite_Time, (short) 1, (short) 2, 10)));
+    assertTrue("Deletion should change the digest",
+        digest != KeyRangeDigests.getDigest(new MessageInfo(id, 100, true, false, 1000, (short) 1, (short) 2, 10)));
+    assertTrue("Container should change the digest",
+        digest != KeyRangeDigests.getDigest(new MessageInfo(id, 100, false, false, 1000, (short) 1, (short) 3, 10)));
+    assertEquals("Expiry time of a deleted key should not change the digest",
+        KeyRangeDigests.getDigest(new MessageInfo(id, 100, true, false, 1000, (short) 1, (short) 2, 10)),
+        KeyRangeDigests.getDigest(new MessageInfo(id, 100, true, true, Utils.Infinite_Time, (short) 1, (short) 2, 10)));
+    assertEquals("Leaf bucket should only depend on the key", KeyRangeDigests.getLeafBucket(id),
+        KeyRangeDigests.getLeafBucket(new MockId(id.getID(), (short) 1, (short) 2)));
+    assertTrue("Leaf bucket should be valid",
+        KeyRangeDigests.isValidBucket(KeyRangeDigests.LEAF_LEVEL, KeyRangeDigests.getLeafBucket(id)));
+  }
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.utils.TestUtils;
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link MetadataRecordCacheImpl}.
+ */
+public class MetadataRecordCacheImplTest {
+  private static final int RECORD_SIZE = 100;
+
+  private final StoreMetrics metrics = new StoreMetrics(new MetricRegistry());
+  private final MetadataRecordCacheImpl cache = new MetadataRecordCacheImpl(3 * RECORD_SIZE, metrics);
+
+  /**
+   * Tests get, put and invalidate along with the hit and miss metrics.
+   */
+  @Test
+  public void basicTest() {
+    MockId id = new MockId("id1");
+    assertNull("Nothing should be cached", cache.get(id));
+    assertEquals("Miss count not as expected", 1, metrics.metadataCacheMissCount.getCount());
+
+    byte[] record = TestUtils.getRandomBytes(RECORD_SIZE);
+    cache.put(id, ByteBuffer.wrap(record));
+    for (int i = 0; i < 2; i++) {
+      // reading the returned buffer should not affect later gets
+      ByteBuffer cached = cache.get(id);
+      byte[] read = new byte[cached.remaining()];
+      cached.get(read);
+      assertArrayEquals("Cached record not as expected", record, read);
+    }
+    assertEquals("Hit count not as expected", 2, metrics.metadataCacheHitCount.getCount());
+    assertEquals("Size not as expected", RECORD_SIZE, cache.getSizeInBytes());
+
+    cache.invalidate(id);
+    assertNull("Record should have been invalidated", cache.get(id));
+    assertEquals("Size not as expected", 0, cache.getSizeInBytes());
+    // invalidating something that is not cached is a no-op
+    cache.invalidate(id);
+    assertEquals("Size not as expected", 0, cache.getSizeInBytes());
+  }
+
+  /**
+   * Tests that the least recently used records are evicted once the cache is full and that records that are larger
+   * than the cache are not cached.
+   */
+  @Test
+  public void evictionTest() {
+    MockId[] ids = {new MockId("id1"), new MockId("id2"), new MockId("id3"), new MockId("id4")};
+    for (int i = 0; i < 3; i++) {
+      cache.put(ids[i], ByteBuffer.wrap(TestUtils.getRandomBytes(RECORD_SIZE)));
+    }
+    // access id1 so that id2 is the least recently used
+    assertNotNull("id1 should be cached", cache.get(ids[0]));
+    cache.put(ids[3], ByteBuffer.wrap(TestUtils.getRandomBytes(RECORD_SIZE)));
+    assertEquals("Entry count not as expected", 3, cache.getEntryCount());
+    assertEquals("Size not as expected", 3 * RECORD_SIZE, cache.getSizeInBytes());
+    assertEquals("Eviction count not as expected", 1, metrics.metadataCacheEvictionCount.getCount());
+    assertNull("id2 should have been evicted", cache.get(ids[1]));
+    assertNotNull("id1 should be cached", cache.get(ids[0]));
+
+    // replacing a record accounts for the size of the old one
+    cache.put(ids[0], ByteBuffer.wrap(TestUtils.getRandomBytes(RECORD_SIZE / 2)));
+    assertEquals("Size not as expected", 5 * RECORD_SIZE / 2, cache.getSizeInBytes());
+
+    MockId largeId = new MockId("large");
+    cache.put(largeId, ByteBuffer.wrap(TestUtils.getRandomBytes(3 * RECORD_SIZE + 1)));
+    assertNull("Record larger than the cache should not be cached", cache.get(largeId));
+    assertEquals("Entry count not as expected", 3, cache.getEntryCount());
+  }
+
+  /**
+   * Tests that a cache cannot be created with a non-positive size.
+   */
+  @Test
+  public void badConstructionTest() {
+    for (long maxSize : new long[]{0, -1}) {
+      try {
+        new MetadataRecordCacheImpl(maxSize, metrics);
+        fail("Construction should have failed");
+      } catch (IllegalArgumentException e) {
+        // expected. Nothing to do.
+      }
+    }
+  }
+}
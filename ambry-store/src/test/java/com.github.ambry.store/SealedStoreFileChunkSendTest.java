@@ -0,0 +1,116 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.store;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.utils.ByteBufferOutputStream;
+import com.github.ambry.utils.TestUtils;
+import com.github.ambry.utils.UtilsTest;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link SealedStoreFileChunkSend}.
+ */
+public class SealedStoreFileChunkSendTest {
+  private static final int SEGMENT_CAPACITY = 1024;
+
+  private final File tempDir;
+  private final LogSegment segment;
+  private final byte[] data = TestUtils.getRandomBytes(SEGMENT_CAPACITY / 2);
+
+  /**
+   * Creates a {@link LogSegment} with some data in it.
+   * @throws IOException
+   * @throws StoreException
+   */
+  public SealedStoreFileChunkSendTest() throws IOException, StoreException {
+    tempDir = Files.createTempDirectory("sealedStoreFileChunkSendDir-" + UtilsTest.getRandomString(10)).toFile();
+    tempDir.deleteOnExit();
+    File file = new File(tempDir, "log_current");
+    assertTrue("Segment file could not be created at path " + file.getAbsolutePath(), file.createNewFile());
+    segment = new LogSegment(file.getName(), file, SEGMENT_CAPACITY, new StoreMetrics(new MetricRegistry()), false);
+    segment.appendFrom(ByteBuffer.wrap(data));
+  }
+
+  /**
+   * Closes the segment and deletes the temporary directory that was created.
+   * @throws Exception
+   */
+  @After
+  public void cleanup() throws Exception {
+    segment.close(false);
+    assertTrue("The directory [" + tempDir.getAbsolutePath() + "] could not be deleted",
+        StoreTestUtils.cleanDirectory(tempDir, true));
+  }
+
+  /**
+   * Tests that a chunk of a segment is sent completely and that the view of the segment is closed once it has been.
+   * @throws IOException
+   */
+  @Test
+  public void sendTest() throws IOException {
+    int offset = 10;
+    int size = 100;
+    SealedStoreFileChunkSend send = new SealedStoreFileChunkSend(segment, offset, size);
+    assertEquals("Send should hold a view of the segment", 1, segment.refCount());
+    assertEquals("Unexpected size", size, send.sizeInBytes());
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    WritableByteChannel channel = Channels.newChannel(new ByteBufferOutputStream(buffer));
+    while (!send.isSendComplete()) {
+      send.writeTo(channel);
+    }
+    assertArrayEquals("Unexpected chunk", Arrays.copyOfRange(data, offset, offset + size), buffer.array());
+    assertEquals("View of the segment should have been closed", 0, segment.refCount());
+    send.release();
+    assertEquals("Releasing a send again should not close the view again", 0, segment.refCount());
+
+    // chunks that have been read into memory do not hold a view
+    byte[] chunk = TestUtils.getRandomBytes(size);
+    send = new SealedStoreFileChunkSend(ByteBuffer.wrap(chunk));
+    buffer = ByteBuffer.allocate(size);
+    send.writeTo(Channels.newChannel(new ByteBufferOutputStream(buffer)));
+    assertTrue("Send should be complete", send.isSendComplete());
+    assertArrayEquals("Unexpected chunk", chunk, buffer.array());
+    send.release();
+    assertEquals("Segment should not have any views", 0, segment.refCount());
+  }
+
+  /**
+   * Tests that the view of the segment is closed when a send that has not been sent completely is released.
+   */
+  @Test
+  public void releaseBeforeCompletionTest() {
+    SealedStoreFileChunkSend send = new SealedStoreFileChunkSend(segment, 0, data.length);
+    SealedStoreFileChunkSend otherSend = new SealedStoreFileChunkSend(segment, 0, data.length);
+    assertEquals("Each send should hold a view of the segment", 2, segment.refCount());
+    send.release();
+    assertFalse("Send should not be complete", send.isSendComplete());
+    assertEquals("View of the released send should have been closed", 1, segment.refCount());
+    send.release();
+    assertEquals("Releasing a send again should not close the view of the other send", 1, segment.refCount());
+    otherSend.release();
+    assertEquals("Segment should not have any views", 0, segment.refCount());
+  }
+}
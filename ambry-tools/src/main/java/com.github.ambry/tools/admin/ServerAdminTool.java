@@ -49,6 +49,7 @@ import com.github.ambry.protocol.GetOption;
 import com.github.ambry.protocol.GetRequest;
 import com.github.ambry.protocol.GetResponse;
 import com.github.ambry.protocol.PartitionRequestInfo;
+import com.github.ambry.protocol.ReplicationBandwidthBudgetAdminRequest;
 import com.github.ambry.protocol.ReplicationControlAdminRequest;
 import com.github.ambry.protocol.RequestControlAdminRequest;
 import com.github.ambry.protocol.RequestOrResponseType;
@@ -108,7 +109,8 @@ public class ServerAdminTool implements Closeable {
     RequestControl,
     ReplicationControl,
     CatchupStatus,
-    BlobStoreControl
+    BlobStoreControl,
+    ReplicationBandwidthBudget
   }
 
   /**
@@ -119,7 +121,7 @@ public class ServerAdminTool implements Closeable {
     /**
      * The type of operation.
      * Operations are: GetBlobProperties,GetUserMetadata,GetBlob,TriggerCompaction,RequestControl,ReplicationControl,
-     * CatchupStatus,BlobStoreControl
+     * CatchupStatus,BlobStoreControl,ReplicationBandwidthBudget
      */
     @Config("type.of.operation")
     final Operation typeOfOperation;
@@ -198,12 +200,20 @@ public class ServerAdminTool implements Closeable {
 
     /**
      * The comma separated names of the datacenters from which replication should be controlled.
-     * Applicable for: ReplicationControl
+     * Applicable for: ReplicationControl,ReplicationBandwidthBudget
      */
     @Config("replication.origins")
     @Default("")
     final String[] origins;
 
+    /**
+     * The bytes per second that replication from each of "replication.origins" can use. 0 removes the limit.
+     * Applicable for: ReplicationBandwidthBudget
+     */
+    @Config("replication.bandwidth.budget.bytes.per.sec")
+    @Default("0")
+    final long bandwidthBudgetBytesPerSec;
+
     /**
      * The acceptable lag in bytes in case of catchup status requests
      * Applicable for: CatchupStatus
@@ -246,6 +256,8 @@ public class ServerAdminTool implements Closeable {
           RequestOrResponseType.valueOf(verifiableProperties.getString("request.type.to.control", "PutRequest"));
       enableState = verifiableProperties.getBoolean("enable.state", true);
       origins = verifiableProperties.getString("replication.origins", "").split(",");
+      bandwidthBudgetBytesPerSec =
+          verifiableProperties.getLongInRange("replication.bandwidth.budget.bytes.per.sec", 0, 0, Long.MAX_VALUE);
       acceptableLagInBytes = verifiableProperties.getLongInRange("acceptable.lag.in.bytes", 0, 0, Long.MAX_VALUE);
       numReplicasCaughtUpPerPartition =
           verifiableProperties.getShortInRange("num.replicas.caught.up.per.partition", Short.MAX_VALUE, (short) 1,
@@ -400,6 +412,23 @@ public class ServerAdminTool implements Closeable {
           LOGGER.error("There were no partitions provided to be controlled (Start/Stop)");
         }
         break;
+      case ReplicationBandwidthBudget:
+        if (config.origins.length > 0 && !config.origins[0].isEmpty()) {
+          for (String origin : config.origins) {
+            ServerErrorCode errorCode =
+                serverAdminTool.setReplicationBandwidthBudget(dataNodeId, origin, config.bandwidthBudgetBytesPerSec);
+            if (errorCode == ServerErrorCode.No_Error) {
+              LOGGER.info("Replication bandwidth budget of {} has been set to {} bytes per second on {}", origin,
+                  config.bandwidthBudgetBytesPerSec, dataNodeId);
+            } else {
+              LOGGER.error("From {}, received server error code {} for request to set replication bandwidth budget of"
+                  + " {} to {} bytes per second", dataNodeId, errorCode, origin, config.bandwidthBudgetBytesPerSec);
+            }
+          }
+        } else {
+          LOGGER.error("There were no origins provided to set the replication bandwidth budget of");
+        }
+        break;
       default:
         throw new IllegalStateException("Recognized but unsupported operation: " + config.typeOfOperation);
     }
@@ -681,6 +710,28 @@ public class ServerAdminTool implements Closeable {
     return adminResponse.getError();
   }
 
+  /**
+   * Sends a {@link ReplicationBandwidthBudgetAdminRequest} to set the bytes per second that {@code dataNodeId} can
+   * replicate from {@code origin}.
+   * @param dataNodeId the {@link DataNodeId} to contact.
+   * @param origin the name of the datacenter whose budget should be set.
+   * @param bytesPerSec the budget in bytes per second. 0 removes the limit.
+   * @return the {@link ServerErrorCode} that is returned.
+   * @throws IOException
+   * @throws TimeoutException
+   */
+  public ServerErrorCode setReplicationBandwidthBudget(DataNodeId dataNodeId, String origin, long bytesPerSec)
+      throws IOException, TimeoutException {
+    AdminRequest adminRequest =
+        new AdminRequest(AdminRequestOrResponseType.ReplicationBandwidthBudget, null, correlationId.incrementAndGet(),
+            CLIENT_ID);
+    ReplicationBandwidthBudgetAdminRequest budgetRequest =
+        new ReplicationBandwidthBudgetAdminRequest(origin, bytesPerSec, adminRequest);
+    ByteBuffer responseBytes = sendRequestGetResponse(dataNodeId, null, budgetRequest);
+    AdminResponse adminResponse = AdminResponse.readFrom(new DataInputStream(new ByteBufferInputStream(responseBytes)));
+    return adminResponse.getError();
+  }
+
   /**
    * Sends a {@link BlobStoreControlAdminRequest} to start or stop a store associated with {@code partitionId}
    * on {@code dataNodeId}.
@@ -0,0 +1,307 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.tools.perf;
+
+import com.codahale.metrics.MetricRegistry;
+import com.github.ambry.config.NetworkConfig;
+import com.github.ambry.config.SSLConfig;
+import com.github.ambry.config.VerifiableProperties;
+import com.github.ambry.network.BlockingChannel;
+import com.github.ambry.network.BoundedByteBufferSend;
+import com.github.ambry.network.NettySocketServer;
+import com.github.ambry.network.NetworkServer;
+import com.github.ambry.network.Port;
+import com.github.ambry.network.PortType;
+import com.github.ambry.network.Request;
+import com.github.ambry.network.RequestResponseChannel;
+import com.github.ambry.network.Send;
+import com.github.ambry.network.SocketServer;
+import com.github.ambry.utils.SystemTime;
+import com.github.ambry.utils.Utils;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import joptsimple.ArgumentAcceptingOptionSpec;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+
+/**
+ * Compares the throughput of the storage server transports ({@link SocketServer} and {@link NettySocketServer}).
+ * <p/>
+ * For each transport, a server is started on a local port with request handler threads that answer every request with
+ * a response read from a file (like the response to a get request). Client threads send requests on blocking
+ * connections for the configured duration and the number of requests and bytes served per second are reported.
+ * <p/>
+ * Small requests and responses (e.g. {@code --requestSize 64 --responseSize 64}) over many clients stress the response
+ * path of the processors rather than the network. For {@link SocketServer}, the number of selector wakeups that the
+ * responses cost is reported as well.
+ */
+public class NetworkServerPerformance {
+  private static final String SOCKET_SERVER = "socket";
+  private static final String NETTY_SERVER = "netty";
+
+  public static void main(String args[]) {
+    try {
+      OptionParser parser = new OptionParser();
+      ArgumentAcceptingOptionSpec<String> transportsOpt =
+          parser.accepts("transports", "The transports to benchmark, one after the other")
+              .withRequiredArg()
+              .describedAs("Comma separated list of socket and netty")
+              .ofType(String.class)
+              .defaultsTo(SOCKET_SERVER + "," + NETTY_SERVER);
+
+      ArgumentAcceptingOptionSpec<Integer> portOpt = parser.accepts("port", "The port the server listens on")
+          .withRequiredArg()
+          .describedAs("port")
+          .ofType(Integer.class)
+          .defaultsTo(16667);
+
+      ArgumentAcceptingOptionSpec<Integer> numClientsOpt =
+          parser.accepts("numClients", "The number of client threads, each with a connection of its own")
+              .withRequiredArg()
+              .describedAs("num_clients")
+              .ofType(Integer.class)
+              .defaultsTo(16);
+
+      ArgumentAcceptingOptionSpec<Integer> numHandlersOpt =
+          parser.accepts("numHandlers", "The number of request handler threads of the server")
+              .withRequiredArg()
+              .describedAs("num_handlers")
+              .ofType(Integer.class)
+              .defaultsTo(8);
+
+      ArgumentAcceptingOptionSpec<Integer> numIoThreadsOpt =
+          parser.accepts("numIoThreads", "The number of network threads of the server")
+              .withRequiredArg()
+              .describedAs("num_io_threads")
+              .ofType(Integer.class)
+              .defaultsTo(8);
+
+      ArgumentAcceptingOptionSpec<Integer> requestSizeOpt =
+          parser.accepts("requestSize", "The size of a request in bytes")
+              .withRequiredArg()
+              .describedAs("request_size")
+              .ofType(Integer.class)
+              .defaultsTo(1024);
+
+      ArgumentAcceptingOptionSpec<Integer> responseSizeOpt =
+          parser.accepts("responseSize", "The size of a response in bytes")
+              .withRequiredArg()
+              .describedAs("response_size")
+              .ofType(Integer.class)
+              .defaultsTo(64 * 1024);
+
+      ArgumentAcceptingOptionSpec<Long> durationOpt =
+          parser.accepts("durationInSecs", "The time to run each transport for")
+              .withRequiredArg()
+              .describedAs("duration_in_secs")
+              .ofType(Long.class)
+              .defaultsTo(30L);
+
+      ArgumentAcceptingOptionSpec<Boolean> useEpollOpt =
+          parser.accepts("useEpoll", "Whether the Netty transport should use epoll if it is available")
+              .withRequiredArg()
+              .describedAs("use_epoll")
+              .ofType(Boolean.class)
+              .defaultsTo(true);
+
+      OptionSet options = parser.parse(args);
+      int requestSize = options.valueOf(requestSizeOpt);
+      int responseSize = options.valueOf(responseSizeOpt);
+      if (requestSize <= 8 || responseSize <= 8) {
+        System.out.println("Requests and responses must be larger than their 8 byte size header");
+        System.exit(1);
+      }
+      Properties props = new Properties();
+      props.setProperty("port", Integer.toString(options.valueOf(portOpt)));
+      props.setProperty("num.io.threads", Integer.toString(options.valueOf(numIoThreadsOpt)));
+      props.setProperty("network.netty.server.use.epoll", Boolean.toString(options.valueOf(useEpollOpt)));
+      VerifiableProperties verifiableProperties = new VerifiableProperties(props);
+      NetworkConfig networkConfig = new NetworkConfig(verifiableProperties);
+      SSLConfig sslConfig = new SSLConfig(verifiableProperties);
+
+      File responseFile = File.createTempFile("network-server-performance", ".data");
+      responseFile.deleteOnExit();
+      byte[] responseBytes = new byte[responseSize];
+      new Random().nextBytes(responseBytes);
+      ByteBuffer.wrap(responseBytes).putLong(0, responseSize);
+      try (RandomAccessFile file = new RandomAccessFile(responseFile, "rw")) {
+        file.write(responseBytes);
+      }
+
+      for (String transport : options.valueOf(transportsOpt).split(",")) {
+        runBenchmark(transport.trim(), networkConfig, sslConfig, responseFile, options.valueOf(numClientsOpt),
+            options.valueOf(numHandlersOpt), requestSize, responseSize, options.valueOf(durationOpt));
+      }
+    } catch (Exception e) {
+      System.out.println("Error while running benchmark " + e);
+      e.printStackTrace();
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Runs the benchmark against one transport and prints the results.
+   * @param transport the transport to use.
+   * @param networkConfig the {@link NetworkConfig} of the server.
+   * @param sslConfig the {@link SSLConfig} of the server.
+   * @param responseFile the file that holds the response.
+   * @param numClients the number of client threads.
+   * @param numHandlers the number of request handler threads.
+   * @param requestSize the size of a request.
+   * @param responseSize the size of a response.
+   * @param durationInSecs the time to run for.
+   * @throws Exception
+   */
+  private static void runBenchmark(String transport, NetworkConfig networkConfig, SSLConfig sslConfig,
+      File responseFile, int numClients, int numHandlers, int requestSize, int responseSize, long durationInSecs)
+      throws Exception {
+    ArrayList<Port> ports = new ArrayList<>();
+    ports.add(new Port(networkConfig.port, PortType.PLAINTEXT));
+    MetricRegistry registry = new MetricRegistry();
+    NetworkServer server;
+    if (transport.equals(SOCKET_SERVER)) {
+      server = new SocketServer(networkConfig, sslConfig, registry, ports);
+    } else if (transport.equals(NETTY_SERVER)) {
+      server = new NettySocketServer(networkConfig, sslConfig, registry, ports);
+    } else {
+      throw new IllegalArgumentException("Unknown transport " + transport);
+    }
+    server.start();
+    AtomicBoolean running = new AtomicBoolean(true);
+    AtomicLong completedRequests = new AtomicLong(0);
+    AtomicLong errors = new AtomicLong(0);
+    List<Thread> handlers = new ArrayList<>();
+    List<Thread> clients = new ArrayList<>();
+    try (RandomAccessFile file = new RandomAccessFile(responseFile, "r")) {
+      FileChannel fileChannel = file.getChannel();
+      RequestResponseChannel requestResponseChannel = server.getRequestResponseChannel();
+      for (int i = 0; i < numHandlers; i++) {
+        handlers.add(Utils.newThread("perf-handler-" + i, () -> {
+          try {
+            while (true) {
+              Request request = requestResponseChannel.receiveRequest();
+              InputStream requestStream = request.getInputStream();
+              while (requestStream.read() != -1) {
+                // consume the request like a real handler would
+              }
+              request.release();
+              requestResponseChannel.sendResponse(new FileSend(fileChannel, responseSize), request, null);
+            }
+          } catch (InterruptedException e) {
+            // shutting down
+          } catch (IOException e) {
+            errors.incrementAndGet();
+          }
+        }, true));
+      }
+      for (int i = 0; i < numClients; i++) {
+        clients.add(Utils.newThread("perf-client-" + i, () -> {
+          BlockingChannel channel = new BlockingChannel("localhost", networkConfig.port, networkConfig.socketSendBufferBytes,
+              networkConfig.socketReceiveBufferBytes, 10000, 2000);
+          byte[] requestBytes = new byte[requestSize];
+          ByteBuffer.wrap(requestBytes).putLong(0, requestSize);
+          byte[] readBuffer = new byte[64 * 1024];
+          try {
+            channel.connect();
+            while (running.get()) {
+              channel.send(new BoundedByteBufferSend(ByteBuffer.wrap(requestBytes)));
+              InputStream responseStream = channel.receive().getInputStream();
+              long remaining = responseSize - 8;
+              while (remaining > 0) {
+                int read = responseStream.read(readBuffer, 0, (int) Math.min(readBuffer.length, remaining));
+                if (read < 0) {
+                  throw new IOException("Connection closed before the response was read completely");
+                }
+                remaining -= read;
+              }
+              completedRequests.incrementAndGet();
+            }
+          } catch (IOException e) {
+            errors.incrementAndGet();
+          } finally {
+            channel.disconnect();
+          }
+        }, false));
+      }
+      handlers.forEach(Thread::start);
+      long startTimeMs = SystemTime.getInstance().milliseconds();
+      clients.forEach(Thread::start);
+      Thread.sleep(TimeUnit.SECONDS.toMillis(durationInSecs));
+      running.set(false);
+      for (Thread client : clients) {
+        client.join();
+      }
+      long elapsedMs = SystemTime.getInstance().milliseconds() - startTimeMs;
+      double requestsPerSec = completedRequests.get() * 1000.0 / elapsedMs;
+      System.out.println(String.format("%s: %d requests in %d ms, %.1f requests/s, %.1f MB/s of responses, %d errors",
+          transport, completedRequests.get(), elapsedMs, requestsPerSec, requestsPerSec * responseSize / 1024 / 1024,
+          errors.get()));
+      if (transport.equals(SOCKET_SERVER)) {
+        long wakeups = registry.counter(MetricRegistry.name(SocketServer.class, "ProcessorWakeupCount")).getCount();
+        long coalesced =
+            registry.counter(MetricRegistry.name(SocketServer.class, "ProcessorWakeupCoalescedCount")).getCount();
+        System.out.println(String.format("%s: %d processor wakeups for %d responses (%.3f wakeups per response)",
+            transport, wakeups, wakeups + coalesced, (double) wakeups / Math.max(1, wakeups + coalesced)));
+      }
+    } finally {
+      running.set(false);
+      server.shutdown();
+      handlers.forEach(Thread::interrupt);
+    }
+  }
+
+  /**
+   * A {@link Send} that transfers the contents of a file, the way the message sets of a get response are written.
+   */
+  private static class FileSend implements Send {
+    private final FileChannel fileChannel;
+    private final long size;
+    private long sent = 0;
+
+    FileSend(FileChannel fileChannel, long size) {
+      this.fileChannel = fileChannel;
+      this.size = size;
+    }
+
+    @Override
+    public long writeTo(WritableByteChannel channel) throws IOException {
+      long written = fileChannel.transferTo(sent, size - sent, channel);
+      sent += written;
+      return written;
+    }
+
+    @Override
+    public boolean isSendComplete() {
+      return sent == size;
+    }
+
+    @Override
+    public long sizeInBytes() {
+      return size;
+    }
+  }
+}
@@ -114,6 +114,23 @@ public class ByteBufferInputStream extends InputStream {
     return new ByteBufferInputStream(byteBuffer.duplicate());
   }
 
+  /**
+   * Returns a stream of the next {@code size} bytes of this stream and moves past them. The returned stream shares its
+   * content with this stream instead of copying it.
+   * @param size the number of bytes to return.
+   * @return a {@link ByteBufferInputStream} of the next {@code size} bytes of this stream.
+   * @throws IOException if fewer than {@code size} bytes are left in this stream.
+   */
+  public ByteBufferInputStream slice(int size) throws IOException {
+    if (size < 0 || size > byteBuffer.remaining()) {
+      throw new IOException("Size to slice " + size + " is more than the remaining size " + byteBuffer.remaining());
+    }
+    ByteBuffer slice = byteBuffer.duplicate();
+    slice.limit(slice.position() + size);
+    byteBuffer.position(byteBuffer.position() + size);
+    return new ByteBufferInputStream(slice.slice());
+  }
+
   /**
    * Return the underlying read-only {@link ByteBuffer} associated with this ByteBufferInputStream.
    * <br>
@@ -23,6 +23,7 @@ import org.slf4j.LoggerFactory;
  * An inputstream that calculates Crc on the fly
  */
 public class CrcInputStream extends InputStream {
+  private static final int CRC_CHUNK_SIZE = 8192;
   private Crc32 crc;
   private InputStream stream;
   private Logger logger = LoggerFactory.getLogger(getClass());
@@ -74,4 +75,26 @@ public class CrcInputStream extends InputStream {
   public long getValue() {
     return crc.getValue();
   }
+
+  /**
+   * Reads {@code size} bytes into a {@link ByteBufferInputStream} and updates the crc with them. If the underlying
+   * stream is a {@link ByteBufferInputStream}, the bytes are not copied: the returned stream shares them with the
+   * underlying stream and the crc is computed over them in chunks.
+   * @param size the number of bytes to read.
+   * @return a {@link ByteBufferInputStream} of the bytes read.
+   * @throws IOException if fewer than {@code size} bytes could be read.
+   */
+  public ByteBufferInputStream readBytes(int size) throws IOException {
+    if (!(stream instanceof ByteBufferInputStream)) {
+      return new ByteBufferInputStream(this, size);
+    }
+    ByteBufferInputStream content = ((ByteBufferInputStream) stream).slice(size);
+    ByteBufferInputStream contentToCrc = content.duplicate();
+    byte[] chunk = new byte[Math.min(size, CRC_CHUNK_SIZE)];
+    int read;
+    while ((read = contentToCrc.read(chunk, 0, chunk.length)) > 0) {
+      crc.update(chunk, 0, read);
+    }
+    return content;
+  }
 }
@@ -0,0 +1,173 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A {@link ByteBufferPool} that reuses deallocated buffers. Buffers are handed out in power of two size classes
+ * between {@link #MIN_SIZE_CLASS} and the maximum pooled size, with the limit of the buffer set to the requested size.
+ * Deallocated buffers are kept in a free list per size class as long as the total size of the free buffers does not
+ * exceed the capacity of the pool, and are dropped otherwise.
+ * <p/>
+ * The pool never blocks: if there is no free buffer of the required size class, a new one is allocated. Requests
+ * larger than the maximum pooled size always get a buffer of their own. Buffers that are not deallocated are simply
+ * garbage collected. This class is thread safe.
+ */
+public class SizeClassedByteBufferPool implements ByteBufferPool {
+  static final int MIN_SIZE_CLASS = 1024;
+
+  private final long capacity;
+  private final int maxPooledSize;
+  private final boolean useDirectBuffers;
+  private final Queue<ByteBuffer>[] freeLists;
+  private final AtomicLong freeBytes = new AtomicLong(0);
+  private final AtomicLong hitCount = new AtomicLong(0);
+  private final AtomicLong missCount = new AtomicLong(0);
+  private final AtomicLong unpooledAllocationCount = new AtomicLong(0);
+  private final AtomicLong droppedCount = new AtomicLong(0);
+
+  /**
+   * @param capacity the maximum total size in bytes of the free buffers that are kept for reuse.
+   * @param maxPooledSize the size of the largest request that is served from the pool. Rounded up to a power of two.
+   * @param useDirectBuffers {@code true} if pooled buffers should be allocated outside of the heap.
+   */
+  @SuppressWarnings("unchecked")
+  public SizeClassedByteBufferPool(long capacity, int maxPooledSize, boolean useDirectBuffers) {
+    if (capacity < 0 || maxPooledSize <= 0 || maxPooledSize > (1 << 30)) {
+      throw new IllegalArgumentException(
+          "Invalid capacity [" + capacity + "] or max pooled size [" + maxPooledSize + "]");
+    }
+    this.capacity = capacity;
+    this.maxPooledSize = sizeClassOf(maxPooledSize);
+    this.useDirectBuffers = useDirectBuffers;
+    freeLists = new Queue[indexOf(this.maxPooledSize) + 1];
+    for (int i = 0; i < freeLists.length; i++) {
+      freeLists[i] = new ConcurrentLinkedQueue<>();
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * This pool does not block, so {@code timeToBlockInMs} is ignored. The capacity of the returned buffer may be larger
+   * than {@code size}.
+   */
+  @Override
+  public ByteBuffer allocate(int size, long timeToBlockInMs) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Invalid size [" + size + "] requested");
+    }
+    if (size > maxPooledSize) {
+      unpooledAllocationCount.incrementAndGet();
+      return ByteBuffer.allocate(size);
+    }
+    int sizeClass = sizeClassOf(size);
+    ByteBuffer buffer = freeLists[indexOf(sizeClass)].poll();
+    if (buffer != null) {
+      freeBytes.addAndGet(-sizeClass);
+      hitCount.incrementAndGet();
+    } else {
+      missCount.incrementAndGet();
+      buffer = useDirectBuffers ? ByteBuffer.allocateDirect(sizeClass) : ByteBuffer.allocate(sizeClass);
+    }
+    buffer.clear();
+    buffer.limit(size);
+    return buffer;
+  }
+
+  /**
+   * {@inheritDoc}
+   * <p/>
+   * Buffers that were not allocated by this pool, or that do not fit in the pool anymore, are dropped. A buffer must
+   * not be used after it has been deallocated.
+   */
+  @Override
+  public void deallocate(ByteBuffer buffer) {
+    int bufferCapacity = buffer.capacity();
+    if (bufferCapacity < MIN_SIZE_CLASS || bufferCapacity > maxPooledSize || Integer.bitCount(bufferCapacity) != 1
+        || buffer.isDirect() != useDirectBuffers || buffer.isReadOnly()) {
+      return;
+    }
+    if (freeBytes.addAndGet(bufferCapacity) > capacity) {
+      freeBytes.addAndGet(-bufferCapacity);
+      droppedCount.incrementAndGet();
+      return;
+    }
+    buffer.clear();
+    freeLists[indexOf(bufferCapacity)].offer(buffer);
+  }
+
+  /**
+   * @return the maximum total size in bytes of the free buffers that are kept for reuse.
+   */
+  public long capacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the total size in bytes of the free buffers that are currently kept for reuse.
+   */
+  public long getFreeBytes() {
+    return freeBytes.get();
+  }
+
+  /**
+   * @return the number of allocations that were served with a free buffer.
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return the number of allocations of a pooled size that had to allocate a new buffer.
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return the number of allocations that were larger than the maximum pooled size.
+   */
+  public long getUnpooledAllocationCount() {
+    return unpooledAllocationCount.get();
+  }
+
+  /**
+   * @return the number of deallocated buffers that were dropped because the pool was full.
+   */
+  public long getDroppedCount() {
+    return droppedCount.get();
+  }
+
+  /**
+   * @param size the requested size.
+   * @return the smallest size class that can hold {@code size} bytes.
+   */
+  private static int sizeClassOf(int size) {
+    return size <= MIN_SIZE_CLASS ? MIN_SIZE_CLASS : Integer.highestOneBit(size - 1) << 1;
+  }
+
+  /**
+   * @param sizeClass a size class.
+   * @return the index of the free list of {@code sizeClass}.
+   */
+  private static int indexOf(int sizeClass) {
+    return Integer.numberOfTrailingZeros(sizeClass) - Integer.numberOfTrailingZeros(MIN_SIZE_CLASS);
+  }
+}
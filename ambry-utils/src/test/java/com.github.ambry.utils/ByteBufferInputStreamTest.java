@@ -118,4 +118,26 @@ public class ByteBufferInputStreamTest {
       // Expected
     }
   }
+
+  @Test
+  public void sliceTest() throws IOException {
+    byte[] buf = new byte[1024];
+    new Random().nextBytes(buf);
+    ByteBufferInputStream stream = new ByteBufferInputStream(ByteBuffer.wrap(buf));
+    stream.skip(100);
+    ByteBufferInputStream slice = stream.slice(500);
+    assertEquals("Stream should have moved past the slice", 424, stream.available());
+    assertEquals("Unexpected slice size", 500, slice.available());
+    for (int i = 100; i < 600; i++) {
+      assertEquals(buf[i] & 0xFF, slice.read());
+    }
+    assertEquals("Slice should end after the size given", -1, slice.read());
+    assertEquals(buf[600] & 0xFF, stream.read());
+    try {
+      stream.slice(424);
+      fail("Slicing more bytes than remaining should have thrown.");
+    } catch (IOException e) {
+      // Expected
+    }
+  }
 }
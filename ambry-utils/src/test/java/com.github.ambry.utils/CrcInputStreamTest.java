@@ -13,8 +13,10 @@
  */
 package com.github.ambry.utils;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.Random;
 import org.junit.Assert;
 import org.junit.Test;
@@ -64,4 +66,46 @@ public class CrcInputStreamTest {
     Assert.assertFalse(value2 == value3);
     crcStream.close();
   }
+
+  /**
+   * Tests that {@link CrcInputStream#readBytes(int)} computes the same crc whether or not it shares the bytes with the
+   * underlying stream, and that it shares them only if the underlying stream is a {@link ByteBufferInputStream}.
+   * @throws IOException
+   */
+  @Test
+  public void testReadBytes() throws IOException {
+    byte[] buf = new byte[20000];
+    new Random().nextBytes(buf);
+    CrcInputStream expectedCrcStream = new CrcInputStream(new ByteBufferInputStream(ByteBuffer.wrap(buf)));
+    expectedCrcStream.read(new byte[buf.length]);
+
+    ByteBufferInputStream sharedStream = new ByteBufferInputStream(ByteBuffer.wrap(buf));
+    CrcInputStream crcStream = new CrcInputStream(sharedStream);
+    Assert.assertEquals(100, crcStream.read(new byte[100]));
+    ByteBufferInputStream content = crcStream.readBytes(buf.length - 200);
+    Assert.assertEquals("Underlying stream should have moved past the bytes read", 100, sharedStream.available());
+    Assert.assertEquals(100, crcStream.read(new byte[100]));
+    Assert.assertEquals("Crc should be that of all the bytes", expectedCrcStream.getValue(), crcStream.getValue());
+    byte[] contentBytes = new byte[buf.length - 200];
+    content.read(contentBytes);
+    Assert.assertArrayEquals(Arrays.copyOfRange(buf, 100, buf.length - 100), contentBytes);
+    buf[100] = (byte) ~buf[100];
+    Assert.assertEquals("Content should be shared with the underlying stream", buf[100],
+        content.duplicate().getByteBuffer().get(0));
+    buf[100] = (byte) ~buf[100];
+
+    crcStream = new CrcInputStream(new ByteArrayInputStream(buf));
+    content = crcStream.readBytes(buf.length);
+    buf[100] = (byte) ~buf[100];
+    Assert.assertFalse("Content should be copied from the underlying stream",
+        buf[100] == content.getByteBuffer().get(100));
+    buf[100] = (byte) ~buf[100];
+    Assert.assertEquals("Crc should be that of all the bytes", expectedCrcStream.getValue(), crcStream.getValue());
+    try {
+      new CrcInputStream(new ByteBufferInputStream(ByteBuffer.wrap(buf))).readBytes(buf.length + 1);
+      Assert.fail("Reading more bytes than there are in the stream should fail");
+    } catch (IOException e) {
+      // expected. Nothing to do.
+    }
+  }
 }
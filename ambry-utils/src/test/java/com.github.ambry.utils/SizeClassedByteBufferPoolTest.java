@@ -0,0 +1,120 @@
+/**
+ * Copyright 2019 LinkedIn Corp. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ */
+package com.github.ambry.utils;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+/**
+ * Tests for {@link SizeClassedByteBufferPool}.
+ */
+public class SizeClassedByteBufferPoolTest {
+  private static final int MIN = SizeClassedByteBufferPool.MIN_SIZE_CLASS;
+
+  /**
+   * Tests that buffers are handed out in size classes and reused after they are deallocated.
+   */
+  @Test
+  public void allocateAndReuseTest() {
+    SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(16 * MIN, 8 * MIN, false);
+    int[] sizes = {0, 1, MIN, MIN + 1, 3 * MIN, 8 * MIN};
+    int[] expectedCapacities = {MIN, MIN, MIN, 2 * MIN, 4 * MIN, 8 * MIN};
+    for (int i = 0; i < sizes.length; i++) {
+      ByteBuffer buffer = pool.allocate(sizes[i], 0);
+      assertEquals("Capacity not as expected", expectedCapacities[i], buffer.capacity());
+      assertEquals("Limit should be the requested size", sizes[i], buffer.limit());
+      assertEquals("Position should be 0", 0, buffer.position());
+      assertFalse("Buffer should not be direct", buffer.isDirect());
+      buffer.position(buffer.limit());
+      pool.deallocate(buffer);
+      assertEquals("Free bytes not as expected", expectedCapacities[i], pool.getFreeBytes());
+      ByteBuffer reused = pool.allocate(sizes[i], 0);
+      assertSame("Buffer should have been reused", buffer, reused);
+      assertEquals("Limit should be the requested size", sizes[i], reused.limit());
+      assertEquals("Position should be 0", 0, reused.position());
+      assertEquals("There should be no free bytes", 0, pool.getFreeBytes());
+    }
+    assertEquals("Hit count not as expected", sizes.length, pool.getHitCount());
+    assertEquals("Miss count not as expected", sizes.length, pool.getMissCount());
+  }
+
+  /**
+   * Tests that requests larger than the maximum pooled size get buffers of their own that are not pooled.
+   */
+  @Test
+  public void unpooledAllocationTest() {
+    SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(64 * MIN, 2 * MIN, false);
+    ByteBuffer buffer = pool.allocate(4 * MIN, 0);
+    assertEquals("Capacity should be the requested size", 4 * MIN, buffer.capacity());
+    assertEquals("Unpooled allocation count not as expected", 1, pool.getUnpooledAllocationCount());
+    pool.deallocate(buffer);
+    assertEquals("Buffer should not have been pooled", 0, pool.getFreeBytes());
+    // buffers that were not allocated by the pool are not pooled either
+    pool.deallocate(ByteBuffer.allocate(MIN + 1));
+    pool.deallocate(ByteBuffer.allocateDirect(MIN));
+    pool.deallocate(ByteBuffer.allocate(MIN).asReadOnlyBuffer());
+    assertEquals("Buffers should not have been pooled", 0, pool.getFreeBytes());
+  }
+
+  /**
+   * Tests that deallocated buffers are dropped once the free buffers reach the capacity of the pool.
+   */
+  @Test
+  public void capacityTest() {
+    SizeClassedByteBufferPool pool = new SizeClassedByteBufferPool(3 * MIN, 2 * MIN, true);
+    ByteBuffer first = pool.allocate(2 * MIN, 0);
+    ByteBuffer second = pool.allocate(2 * MIN, 0);
+    ByteBuffer third = pool.allocate(MIN, 0);
+    assertTrue("Buffer should be direct", first.isDirect());
+    pool.deallocate(first);
+    pool.deallocate(second);
+    pool.deallocate(third);
+    assertEquals("Free bytes not as expected", 3 * MIN, pool.getFreeBytes());
+    assertEquals("Dropped count not as expected", 1, pool.getDroppedCount());
+    assertSame("Pooled buffer should have been reused", first, pool.allocate(2 * MIN, 0));
+    assertSame("Pooled buffer should have been reused", third, pool.allocate(MIN, 0));
+    assertEquals("There should be no free bytes", 0, pool.getFreeBytes());
+
+    // a pool without capacity does not keep anything
+    pool = new SizeClassedByteBufferPool(0, 2 * MIN, false);
+    pool.deallocate(pool.allocate(MIN, 0));
+    assertEquals("There should be no free bytes", 0, pool.getFreeBytes());
+    assertEquals("Dropped count not as expected", 1, pool.getDroppedCount());
+  }
+
+  /**
+   * Tests that invalid arguments are rejected.
+   */
+  @Test
+  public void badInputTest() {
+    long[][] badArgs = {{-1, MIN}, {MIN, 0}, {MIN, (1L << 30) + 1}};
+    for (long[] args : badArgs) {
+      try {
+        new SizeClassedByteBufferPool(args[0], (int) args[1], false);
+        fail("Construction should have failed");
+      } catch (IllegalArgumentException e) {
+        // expected. Nothing to do.
+      }
+    }
+    try {
+      new SizeClassedByteBufferPool(MIN, MIN, false).allocate(-1, 0);
+      fail("Allocation should have failed");
+    } catch (IllegalArgumentException e) {
+      // expected. Nothing to do.
+    }
+  }
+}